@@ -0,0 +1,213 @@
+package com.holman.andrew.memorymatch.metrics;
+
+import android.app.Application;
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.UriMatcher;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+
+import com.holman.andrew.memorymatch.BuildConfig;
+import com.holman.andrew.memorymatch.provider.LeaderboardProvider;
+
+import java.util.List;
+
+/**
+ * Debug-only ContentProvider exposing the {@link GameMetrics} latency histograms and the
+ * {@link StallWatchdog} log
+ * <p>
+ *     Querying {@code content://com.holman.andrew.memorymatch.metrics/latency} returns one row
+ *     per histogram with its sample count and latencies in microseconds. Deleting it resets every
+ *     histogram, so that a build can be measured over a fixed scenario:
+ * </p>
+ * <pre>
+ * adb shell content delete --uri content://com.holman.andrew.memorymatch.metrics/latency
+ * adb shell content query --uri content://com.holman.andrew.memorymatch.metrics/latency
+ * </pre>
+ * <p>
+ *     {@code content://com.holman.andrew.memorymatch.metrics/cache} returns the hits and misses of
+ *     the leaderboard's top scores cache, from which its hit rate over a scenario can be read.
+ * </p>
+ * <p>
+ *     When built with {@code -PstallWatchdog}, the provider installs the {@link StallWatchdog} as
+ *     the process starts, and {@code content://com.holman.andrew.memorymatch.metrics/stalls} lists
+ *     the buffered stalls and StrictMode violations, newest first.
+ * </p>
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+public class MetricsProvider extends ContentProvider {
+	private static final String TAG = "MetricsProvider";
+
+	public static final String AUTHORITY = "com.holman.andrew.memorymatch.metrics";
+
+	public static final Uri LATENCY_CONTENT_URI = Uri.parse("content://" + AUTHORITY + "/latency");
+
+	public static final String NAME = "name";
+	public static final String COUNT = "count";
+	public static final String P50 = "p50_us";
+	public static final String P90 = "p90_us";
+	public static final String P99 = "p99_us";
+	public static final String MAX = "max_us";
+	public static final String MEAN = "mean_us";
+
+	public static final String[] PROJECTION_ALL = {NAME, COUNT, P50, P90, P99, MAX, MEAN};
+
+	public static final Uri STALLS_CONTENT_URI = Uri.parse("content://" + AUTHORITY + "/stalls");
+
+	public static final String STALL_KIND = "kind";
+	public static final String STALL_UPTIME = "uptime_ms";
+	public static final String STALL_DURATION = "duration_ms";
+	public static final String STALL_DESCRIPTION = "description";
+	public static final String STALL_CULPRIT = "culprit";
+
+	public static final String[] STALLS_PROJECTION_ALL = {STALL_KIND, STALL_UPTIME, STALL_DURATION,
+			STALL_DESCRIPTION, STALL_CULPRIT};
+
+	public static final Uri CACHE_CONTENT_URI = Uri.parse("content://" + AUTHORITY + "/cache");
+
+	public static final String CACHE_HITS = "hits";
+	public static final String CACHE_MISSES = "misses";
+
+	public static final String[] CACHE_PROJECTION_ALL = {NAME, CACHE_HITS, CACHE_MISSES};
+
+	private static final int LATENCY = 1;
+	private static final int STALLS = 2;
+	private static final int CACHE = 3;
+
+	private static final UriMatcher URI_MATCHER;
+
+	static {
+		URI_MATCHER = new UriMatcher(UriMatcher.NO_MATCH);
+		URI_MATCHER.addURI(AUTHORITY, "latency", LATENCY);
+		URI_MATCHER.addURI(AUTHORITY, "stalls", STALLS);
+		URI_MATCHER.addURI(AUTHORITY, "cache", CACHE);
+	}
+
+	/**
+	 * Installs the {@link StallWatchdog} when it was opted into
+	 * <p>
+	 *     Providers are created on the main thread before any activity, so the watchdog observes
+	 *     the whole process.
+	 * </p>
+	 *
+	 * @return  True
+	 */
+	@Override
+	public boolean onCreate() {
+		if (BuildConfig.STALL_WATCHDOG) {
+			StallWatchdog.install((Application) getContext().getApplicationContext());
+		}
+		return true;
+	}
+
+	/**
+	 * Reads every latency histogram, the buffered stalls, or the cache counters
+	 *
+	 * @param uri  {@link #LATENCY_CONTENT_URI}, {@link #STALLS_CONTENT_URI}, or
+	 *             {@link #CACHE_CONTENT_URI}
+	 * @param projection  Unused; every column of {@link #PROJECTION_ALL},
+	 *                    {@link #STALLS_PROJECTION_ALL}, or {@link #CACHE_PROJECTION_ALL} is
+	 *                    returned
+	 * @param selection  Unused
+	 * @param selectionArgs  Unused
+	 * @param sortOrder  Unused
+	 * @return  A Cursor holding one row per histogram, stall, or cache
+	 */
+	@Override
+	public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+			String sortOrder) {
+		if (URI_MATCHER.match(uri) == STALLS) {
+			return queryStalls();
+		}
+		if (URI_MATCHER.match(uri) == CACHE) {
+			MatrixCursor cursor = new MatrixCursor(CACHE_PROJECTION_ALL, 1);
+			cursor.newRow()
+					.add("top_scores")
+					.add(LeaderboardProvider.getTopScoresHitCount())
+					.add(LeaderboardProvider.getTopScoresMissCount());
+			return cursor;
+		}
+		checkUri(uri);
+		LatencyHistogram[] histograms = GameMetrics.getAll();
+		MatrixCursor cursor = new MatrixCursor(PROJECTION_ALL, histograms.length);
+		for (LatencyHistogram histogram : histograms) {
+			cursor.newRow()
+					.add(histogram.getName())
+					.add(histogram.getCount())
+					.add(histogram.getPercentileMicros(50))
+					.add(histogram.getPercentileMicros(90))
+					.add(histogram.getPercentileMicros(99))
+					.add(histogram.getMaxMicros())
+					.add(histogram.getMeanMicros());
+		}
+		return cursor;
+	}
+
+	/**
+	 * Reads the buffered stalls and StrictMode violations
+	 *
+	 * @return  A Cursor holding one row per entry, newest first
+	 */
+	private static Cursor queryStalls() {
+		List<StallLog.Entry> entries = StallWatchdog.getLog().getEntries();
+		MatrixCursor cursor = new MatrixCursor(STALLS_PROJECTION_ALL, entries.size());
+		for (StallLog.Entry entry : entries) {
+			StackTraceElement culprit = entry.getCulprit();
+			cursor.newRow()
+					.add(entry.kind == StallLog.Entry.KIND_STALL ? "stall" : "strict_mode")
+					.add(entry.uptimeMillis)
+					.add(entry.durationMillis)
+					.add(entry.description)
+					.add(culprit == null ? null : culprit.toString());
+		}
+		return cursor;
+	}
+
+	/**
+	 * Resets every latency histogram
+	 *
+	 * @param uri  {@link #LATENCY_CONTENT_URI}
+	 * @param selection  Unused
+	 * @param selectionArgs  Unused
+	 * @return  The number of histograms reset
+	 */
+	@Override
+	public int delete(Uri uri, String selection, String[] selectionArgs) {
+		checkUri(uri);
+		LatencyHistogram[] histograms = GameMetrics.getAll();
+		for (LatencyHistogram histogram : histograms) {
+			histogram.reset();
+		}
+		return histograms.length;
+	}
+
+	@Override
+	public String getType(Uri uri) {
+		return null;
+	}
+
+	@Override
+	public Uri insert(Uri uri, ContentValues values) {
+		throw new UnsupportedOperationException("Metrics are read-only: " + uri);
+	}
+
+	@Override
+	public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+		throw new UnsupportedOperationException("Metrics are read-only: " + uri);
+	}
+
+	/**
+	 * Rejects URIs other than {@link #LATENCY_CONTENT_URI}
+	 *
+	 * @param uri  The requested URI
+	 */
+	private static void checkUri(Uri uri) {
+		if (URI_MATCHER.match(uri) != LATENCY) {
+			throw new IllegalArgumentException("Unsupported URI: " + uri);
+		}
+	}
+}
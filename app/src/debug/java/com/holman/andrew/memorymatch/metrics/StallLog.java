@@ -0,0 +1,147 @@
+package com.holman.andrew.memorymatch.metrics;
+
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ring buffer of the most recent main thread stalls and StrictMode violations
+ * <p>
+ *     Entries are added by {@link StallWatchdog} on the main thread, where the listener is also
+ *     notified, and read from any thread.
+ * </p>
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+final class StallLog {
+	private static final String TAG = "StallLog";
+
+	/* Number of entries kept */
+	private static final int CAPACITY = 32;
+
+	/* Package whose frames are preferred when attributing an entry */
+	private static final String APP_PACKAGE = "com.holman.andrew.memorymatch.";
+
+	/**
+	 * Notified on the main thread when an entry is added
+	 */
+	interface Listener {
+		void onEntryAdded(Entry entry);
+	}
+
+	/**
+	 * A stall or StrictMode violation
+	 */
+	static final class Entry {
+		static final int KIND_STALL = 0;
+		static final int KIND_STRICT_MODE = 1;
+
+		final int kind;
+		final long uptimeMillis;
+		final long durationMillis;
+		final String description;
+		final StackTraceElement[] stack;
+
+		/**
+		 * Constructor
+		 *
+		 * @param kind  {@link #KIND_STALL} or {@link #KIND_STRICT_MODE}
+		 * @param durationMillis  Length of the stalled dispatch, or 0 for a violation
+		 * @param description  The dispatched message or the violation
+		 * @param stack  The main thread's stack during the stall or at the violation, may be empty
+		 */
+		Entry(int kind, long durationMillis, String description, StackTraceElement[] stack) {
+			this.kind = kind;
+			this.uptimeMillis = SystemClock.uptimeMillis();
+			this.durationMillis = durationMillis;
+			this.description = description;
+			this.stack = stack;
+		}
+
+		/**
+		 * Retrieves the frame most likely responsible for the entry
+		 *
+		 * @return  The first frame of the app's own code, the top frame otherwise, or null if the
+		 *          stack is empty
+		 */
+		StackTraceElement getCulprit() {
+			for (StackTraceElement frame : stack) {
+				if (frame.getClassName().startsWith(APP_PACKAGE)) {
+					return frame;
+				}
+			}
+			return (stack.length > 0) ? stack[0] : null;
+		}
+	}
+
+	private final Entry[] entries = new Entry[CAPACITY];
+	private int next;
+	private int stalls;
+	private int violations;
+	private Listener listener;
+
+	/**
+	 * Adds an entry, replacing the oldest once the buffer is full. Must be called on the main
+	 * thread.
+	 *
+	 * @param entry  The new entry
+	 */
+	void add(Entry entry) {
+		Listener notified;
+		synchronized (this) {
+			entries[next] = entry;
+			next = (next + 1) % CAPACITY;
+			if (entry.kind == Entry.KIND_STALL) {
+				stalls++;
+			} else {
+				violations++;
+			}
+			notified = listener;
+		}
+		if (notified != null) {
+			notified.onEntryAdded(entry);
+		}
+	}
+
+	/**
+	 * Retrieves the buffered entries
+	 *
+	 * @return  The entries, newest first
+	 */
+	synchronized List<Entry> getEntries() {
+		List<Entry> newestFirst = new ArrayList<>(CAPACITY);
+		for (int i = 1; i <= CAPACITY; i++) {
+			Entry entry = entries[(next - i + CAPACITY) % CAPACITY];
+			if (entry == null) {
+				break;
+			}
+			newestFirst.add(entry);
+		}
+		return newestFirst;
+	}
+
+	/**
+	 * Retrieves the number of stalls recorded since the watchdog was installed
+	 *
+	 * @return  The number of stalls, including those no longer buffered
+	 */
+	synchronized int getStallCount() {
+		return stalls;
+	}
+
+	/**
+	 * Retrieves the number of StrictMode violations recorded since the watchdog was installed
+	 *
+	 * @return  The number of violations, including those no longer buffered
+	 */
+	synchronized int getViolationCount() {
+		return violations;
+	}
+
+	synchronized void setListener(Listener listener) {
+		this.listener = listener;
+	}
+}
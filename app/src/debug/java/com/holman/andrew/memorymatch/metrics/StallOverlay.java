@@ -0,0 +1,162 @@
+package com.holman.andrew.memorymatch.metrics;
+
+import android.app.Activity;
+import android.app.Application;
+import android.graphics.Color;
+import android.graphics.Typeface;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.TypedValue;
+import android.view.Gravity;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Debug overlay listing the entries of a {@link StallLog} over the resumed activity
+ * <p>
+ *     A one-line summary of the latest stall or violation is drawn along the bottom of the
+ *     window. Tapping it expands the list of buffered entries with the frame each one is
+ *     attributed to, and tapping again collapses it.
+ * </p>
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+final class StallOverlay implements Application.ActivityLifecycleCallbacks, StallLog.Listener {
+	private static final String TAG = "StallOverlay";
+
+	/* Entries listed when expanded */
+	private static final int EXPANDED_ENTRIES = 8;
+
+	private final StallLog log;
+
+	/* Overlay of the resumed activity, null while no activity is resumed */
+	private TextView overlay;
+	private boolean expanded;
+
+	/**
+	 * Constructor
+	 *
+	 * @param log  The log to display
+	 */
+	StallOverlay(StallLog log) {
+		this.log = log;
+	}
+
+	/**
+	 * Draws the overlay over the resumed activity's window
+	 *
+	 * @param activity  The resumed Activity
+	 */
+	@Override
+	public void onActivityResumed(Activity activity) {
+		ViewGroup decor = (ViewGroup) activity.getWindow().getDecorView();
+		overlay = new TextView(activity);
+		overlay.setTextSize(TypedValue.COMPLEX_UNIT_SP, 11);
+		overlay.setTextColor(Color.WHITE);
+		overlay.setBackgroundColor(Color.argb(0xb0, 0, 0, 0));
+		overlay.setTypeface(Typeface.MONOSPACE);
+		overlay.setOnClickListener(new View.OnClickListener() {
+			@Override
+			public void onClick(View v) {
+				expanded = !expanded;
+				refresh();
+			}
+		});
+		decor.addView(overlay, new FrameLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+				ViewGroup.LayoutParams.WRAP_CONTENT, Gravity.BOTTOM));
+		log.setListener(this);
+		refresh();
+	}
+
+	/**
+	 * Removes the overlay from the paused activity's window
+	 *
+	 * @param activity  The paused Activity
+	 */
+	@Override
+	public void onActivityPaused(Activity activity) {
+		log.setListener(null);
+		if (overlay != null) {
+			((ViewGroup) overlay.getParent()).removeView(overlay);
+			overlay = null;
+		}
+	}
+
+	@Override
+	public void onEntryAdded(StallLog.Entry entry) {
+		refresh();
+	}
+
+	/**
+	 * Redraws the overlay from the log
+	 */
+	private void refresh() {
+		if (overlay == null) {
+			return;
+		}
+		List<StallLog.Entry> entries = log.getEntries();
+		if (entries.isEmpty()) {
+			overlay.setVisibility(View.GONE);
+			return;
+		}
+		overlay.setVisibility(View.VISIBLE);
+
+		StringBuilder text = new StringBuilder().append(log.getStallCount()).append(" stalls, ")
+				.append(log.getViolationCount()).append(" StrictMode violations");
+		int shown = expanded ? Math.min(EXPANDED_ENTRIES, entries.size()) : 1;
+		long now = SystemClock.uptimeMillis();
+		for (int i = 0; i < shown; i++) {
+			text.append('\n');
+			appendEntry(text, entries.get(i), now);
+		}
+		overlay.setText(text);
+	}
+
+	/**
+	 * Formats an entry as a line of the overlay
+	 *
+	 * @param text  The overlay text
+	 * @param entry  The entry
+	 * @param now  Current uptime in milliseconds
+	 */
+	private static void appendEntry(StringBuilder text, StallLog.Entry entry, long now) {
+		text.append(String.format(Locale.US, "-%ds ", (now - entry.uptimeMillis) / 1000));
+		if (entry.kind == StallLog.Entry.KIND_STALL) {
+			text.append(entry.durationMillis).append(" ms ");
+		} else {
+			text.append("StrictMode ");
+		}
+		text.append(entry.description);
+		StackTraceElement culprit = entry.getCulprit();
+		if (culprit != null) {
+			text.append("\n    at ").append(culprit);
+		}
+	}
+
+	@Override
+	public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+	}
+
+	@Override
+	public void onActivityStarted(Activity activity) {
+	}
+
+	@Override
+	public void onActivityStopped(Activity activity) {
+	}
+
+	@Override
+	public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+	}
+
+	@Override
+	public void onActivityDestroyed(Activity activity) {
+	}
+}
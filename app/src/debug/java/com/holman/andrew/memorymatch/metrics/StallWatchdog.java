@@ -0,0 +1,206 @@
+package com.holman.andrew.memorymatch.metrics;
+
+import android.app.Application;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.StrictMode;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.Printer;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.Executor;
+
+/**
+ * Detects main thread message dispatches that overrun the frame budget
+ * <p>
+ *     The main Looper's message logger marks the start and end of every dispatch. A sampling
+ *     thread checks the running dispatch once per frame budget, and captures the main thread's
+ *     stack once the dispatch has taken longer than {@link #FRAME_BUDGET_MILLIS}, so that the
+ *     stall is attributed to the code that was running rather than to the message that finished.
+ *     Stalls and StrictMode disk and network violations on the main thread are kept in the same
+ *     {@link StallLog}, and displayed by {@link StallOverlay}.
+ * </p>
+ * <p>
+ *     StrictMode can only report violations to the app from API 28. On older devices they are
+ *     only logged.
+ * </p>
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+final class StallWatchdog implements Printer {
+	private static final String TAG = "StallWatchdog";
+
+	/**
+	 * Longest dispatch that still leaves time to draw a 60 Hz frame
+	 */
+	static final long FRAME_BUDGET_MILLIS = 16;
+
+	private static final StallLog LOG = new StallLog();
+	private static boolean installed;
+
+	private final Thread mainThread = Looper.getMainLooper().getThread();
+
+	/* Dispatch in progress, written by the main thread. Start is 0 between dispatches. */
+	private volatile long dispatchStartMillis;
+	private volatile int dispatchSequence;
+	private String dispatchMessage;
+
+	/* Stack captured by the sampler, and the dispatch it was captured during */
+	private volatile StackTraceElement[] stallStack;
+	private volatile int stallSequence = -1;
+
+	private StallWatchdog() {
+	}
+
+	/**
+	 * Installs the watchdog, StrictMode policy, and overlay. Must be called on the main thread.
+	 *
+	 * @param application  The application whose activities display the overlay
+	 */
+	static void install(Application application) {
+		if (installed) {
+			return;
+		}
+		installed = true;
+
+		final StallWatchdog watchdog = new StallWatchdog();
+		Looper.getMainLooper().setMessageLogging(watchdog);
+		Thread sampler = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				watchdog.sample();
+			}
+		}, TAG);
+		sampler.setDaemon(true);
+		sampler.start();
+
+		StrictMode.ThreadPolicy.Builder policy = new StrictMode.ThreadPolicy.Builder()
+				.detectDiskReads()
+				.detectDiskWrites()
+				.detectNetwork()
+				.penaltyLog();
+		addPenaltyListener(policy);
+		StrictMode.setThreadPolicy(policy.build());
+
+		application.registerActivityLifecycleCallbacks(new StallOverlay(LOG));
+		Log.i(TAG, "Watching main thread dispatches longer than " + FRAME_BUDGET_MILLIS + " ms");
+	}
+
+	/**
+	 * Retrieves the log of stalls and violations
+	 *
+	 * @return  The log shared by the watchdog and overlay
+	 */
+	static StallLog getLog() {
+		return LOG;
+	}
+
+	/**
+	 * Marks the start or end of a message dispatch on the main thread
+	 *
+	 * @param x  The Looper's message log line
+	 */
+	@Override
+	public void println(String x) {
+		if (x.startsWith(">>>>>")) {
+			dispatchMessage = x;
+			dispatchSequence++;
+			dispatchStartMillis = SystemClock.uptimeMillis();
+		} else if (x.startsWith("<<<<<") && dispatchStartMillis != 0) {
+			long duration = SystemClock.uptimeMillis() - dispatchStartMillis;
+			dispatchStartMillis = 0;
+			if (duration > FRAME_BUDGET_MILLIS) {
+				StackTraceElement[] stack = (stallSequence == dispatchSequence)
+						? stallStack
+						: new StackTraceElement[0];
+				LOG.add(new StallLog.Entry(StallLog.Entry.KIND_STALL, duration,
+						describe(dispatchMessage), stack));
+			}
+		}
+	}
+
+	/**
+	 * Captures the main thread's stack once during every dispatch overrunning the frame budget
+	 */
+	private void sample() {
+		while (true) {
+			SystemClock.sleep(FRAME_BUDGET_MILLIS);
+			int sequence = dispatchSequence;
+			long start = dispatchStartMillis;
+			if (start != 0 && sequence != stallSequence
+					&& SystemClock.uptimeMillis() - start > FRAME_BUDGET_MILLIS) {
+				StackTraceElement[] stack = mainThread.getStackTrace();
+				/* Only kept if the same dispatch is still running */
+				if (sequence == dispatchSequence) {
+					stallStack = stack;
+					stallSequence = sequence;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Shortens a Looper log line to the dispatched target and callback
+	 *
+	 * @param message  The Looper's ">>>>> Dispatching to" log line
+	 * @return  The target Handler, callback, and message code
+	 */
+	private static String describe(String message) {
+		String prefix = ">>>>> Dispatching to ";
+		return message.startsWith(prefix) ? message.substring(prefix.length()) : message;
+	}
+
+	/**
+	 * Reports StrictMode violations to the log on devices supporting penalty listeners
+	 * <p>
+	 *     {@code penaltyListener} was added in API 28, after the SDK this app compiles against,
+	 *     so it is bound reflectively.
+	 * </p>
+	 *
+	 * @param policy  The policy being built
+	 */
+	private static void addPenaltyListener(StrictMode.ThreadPolicy.Builder policy) {
+		if (Build.VERSION.SDK_INT < 28) {
+			return;
+		}
+		try {
+			Class<?> listenerClass =
+					Class.forName("android.os.StrictMode$OnThreadViolationListener");
+			Object listener = Proxy.newProxyInstance(listenerClass.getClassLoader(),
+					new Class<?>[]{listenerClass}, new InvocationHandler() {
+						@Override
+						public Object invoke(Object proxy, Method method, Object[] args)
+								throws Throwable {
+							if (method.getDeclaringClass() == Object.class) {
+								return method.invoke(this, args);
+							}
+							Throwable violation = (Throwable) args[0];
+							LOG.add(new StallLog.Entry(StallLog.Entry.KIND_STRICT_MODE, 0,
+									violation.getClass().getSimpleName(),
+									violation.getStackTrace()));
+							return null;
+						}
+					});
+
+			final Handler mainHandler = new Handler(Looper.getMainLooper());
+			Executor mainExecutor = new Executor() {
+				@Override
+				public void execute(Runnable command) {
+					mainHandler.post(command);
+				}
+			};
+			policy.getClass().getMethod("penaltyListener", Executor.class, listenerClass)
+					.invoke(policy, mainExecutor, listener);
+		} catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException
+				| InvocationTargetException e) {
+			Log.w(TAG, "StrictMode violations will only be logged", e);
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package com.holman.andrew.memorymatch.game;
+
+import com.holman.andrew.memorymatch.Constants;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded pool of boards shuffled ahead of time on a background thread
+ * <p>
+ *     Each difficulty has {@link #BOARDS_PER_DIFFICULTY} slots, each owning a deck of symbol
+ *     indices. A slot is refilled by the pool's thread once its board has been taken, so
+ *     {@link GameModel#startGame()} only copies a ready deck. Slots are claimed with atomic
+ *     state changes rather than locks, so that taking a board neither blocks the UI thread nor
+ *     allocates.
+ * </p>
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+public final class BoardPool {
+	private static final String TAG = "BoardPool";
+
+	/**
+	 * Number of boards kept ready for each difficulty
+	 */
+	static final int BOARDS_PER_DIFFICULTY = 4;
+
+	/* Slot states. A slot's deck is only written while EMPTY and only read while TAKEN. */
+	private static final int EMPTY = 0;
+	private static final int READY = 1;
+	private static final int TAKEN = 2;
+
+	private static final int[] DIFFICULTIES = {Constants.DIFFICULTY_EASY,
+			Constants.DIFFICULTY_HARD};
+
+	/* Slot (difficulty index * BOARDS_PER_DIFFICULTY + n) */
+	private final int[][] decks;
+	private final AtomicIntegerArray states;
+
+	private final Random random = new Random();
+	private final Thread refillThread;
+
+	/**
+	 * Retrieves the pool, starting to fill it on first use
+	 * <p>
+	 *     Called for every new game, including on every event loop of the server, so it takes no
+	 *     lock once the pool exists.
+	 * </p>
+	 *
+	 * @return  The process-wide pool
+	 */
+	public static BoardPool getInstance() {
+		return Holder.INSTANCE;
+	}
+
+	/**
+	 * Constructor
+	 */
+	private BoardPool() {
+		int slots = DIFFICULTIES.length * BOARDS_PER_DIFFICULTY;
+		decks = new int[slots][GameModel.size * GameModel.size];
+		states = new AtomicIntegerArray(slots);
+
+		refillThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				refill();
+			}
+		}, TAG);
+		refillThread.setDaemon(true);
+		refillThread.setPriority(Thread.MIN_PRIORITY);
+		refillThread.start();
+	}
+
+	/**
+	 * Copies a ready board into a deck and schedules its slot to be refilled
+	 *
+	 * @param difficulty  The difficulty of the board. See {@link Constants} for expected values.
+	 * @param deck  The deck receiving the symbol indices, row-major
+	 * @return  True if a board was copied, false if none was ready
+	 */
+	boolean take(int difficulty, int[] deck) {
+		int first = indexOf(difficulty) * BOARDS_PER_DIFFICULTY;
+		for (int slot = first; slot < first + BOARDS_PER_DIFFICULTY; slot++) {
+			if (states.compareAndSet(slot, READY, TAKEN)) {
+				System.arraycopy(decks[slot], 0, deck, 0, deck.length);
+				states.set(slot, EMPTY);
+				LockSupport.unpark(refillThread);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Shuffles a board into every empty slot, then waits for a board to be taken
+	 */
+	private void refill() {
+		while (true) {
+			for (int slot = 0; slot < states.length(); slot++) {
+				if (states.get(slot) == EMPTY) {
+					int difficulty = DIFFICULTIES[slot / BOARDS_PER_DIFFICULTY];
+					GameModel.shuffleDeck(decks[slot], difficulty, random);
+					states.set(slot, READY);
+				}
+			}
+			/* A board taken since the scan leaves a permit, so no refill is missed */
+			LockSupport.park(this);
+		}
+	}
+
+	/**
+	 * Retrieves the position of a difficulty in {@link #DIFFICULTIES}
+	 *
+	 * @param difficulty  The difficulty. See {@link Constants} for expected values.
+	 * @return  Its index
+	 */
+	private static int indexOf(int difficulty) {
+		for (int i = 0; i < DIFFICULTIES.length; i++) {
+			if (DIFFICULTIES[i] == difficulty) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("Invalid difficulty: " + difficulty);
+	}
+
+	/**
+	 * Holds the pool, which the class loader creates exactly once when getInstance first reads it
+	 */
+	private static final class Holder {
+		static final BoardPool INSTANCE = new BoardPool();
+	}
+}
@@ -5,15 +5,18 @@ import android.graphics.Point;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.support.v7.app.AppCompatActivity;
 import android.util.Log;
 import android.view.View;
 import android.view.Window;
 
+import com.holman.andrew.memorymatch.BuildConfig;
 import com.holman.andrew.memorymatch.Constants;
 import com.holman.andrew.memorymatch.R;
 import com.holman.andrew.memorymatch.leaderboard.LeaderboardActivity;
 import com.holman.andrew.memorymatch.menu.MenuActivity;
+import com.holman.andrew.memorymatch.metrics.GameMetrics;
 
 import java.util.Timer;
 import java.util.TimerTask;
@@ -23,9 +26,13 @@ import java.util.TimerTask;
  * <p>
  *     This class makes frequent use of both {@link GameModel} and {@link GameViewController}.
  * </p>
+ * <p>
+ *     The activity stays beneath {@link LeaderboardActivity} when a game ends. Playing again
+ *     from the leaderboard starts the next game on the same model and board views.
+ * </p>
  *
  * @author Andrew Holman
- * @version 2.0
+ * @version 2.1
  * @since 1.0
  */
 public class GameActivity extends AppCompatActivity {
@@ -46,6 +53,23 @@ public class GameActivity extends AppCompatActivity {
 	 */
 	public static final String EXTRA_INSERT = "com.holman.andrew.memorymatch.game.INSERT";
 
+	/**
+	 * Identifier String for the rematch request time result extra, from {@link System#nanoTime()}
+	 */
+	public static final String EXTRA_REMATCH_NANOS =
+			"com.holman.andrew.memorymatch.game.REMATCH_NANOS";
+
+	/**
+	 * Identifier String for the saved game snapshot
+	 */
+	public static final String BUNDLE_GAME = "com.holman.andrew.memorymatch.game.GAME";
+
+	/* Delay before re-flipping or removing a selected pair */
+	private static final long MATCH_CHECK_DELAY_MILLIS = 500;
+
+	/* Request code of the leaderboard shown when a game ends */
+	private static final int REQUEST_LEADERBOARD = 1;
+
 	private GameModel model;
 	private GameViewController gameController;
 
@@ -55,14 +79,45 @@ public class GameActivity extends AppCompatActivity {
 	/* Current number of selected tiles */
 	private int selectionCount;
 	private Timer gameTimer;
+	private TimerTask tickTask;
+
+	/* Uptime at which the game would have started had it been played without interruption */
+	private long gameStartUptimeMillis;
+
+	private final Handler matchHandler = new Handler();
+	private long pairSelectedNanos;
+
+	/* Removes or re-flips the selected pair */
+	private final Runnable matchCheck = new Runnable() {
+		@Override
+		public void run() {
+			long checkNanos = System.nanoTime();
+			GameMetrics.MATCH_CHECK_DELAY.record(checkNanos - pairSelectedNanos);
+
+			int[][] selections = model.getSelections();
+			if (model.isMatch()) {
+				match(selections);
+			} else {
+				misMatch(selections);
+			}
+			GameMetrics.recordOnNextDraw(gameController, GameMetrics.MATCH_RESOLUTION, checkNanos);
+			/* Only reset the selection count after valid pair was tested */
+			selectionCount = 0;
+		}
+	};
 
 	/**
 	 * Initializes the Activity
+	 * <p>
+	 *     A game saved by {@link #onSaveInstanceState(Bundle)} is restored as it was left, without
+	 *     replaying the entry animations. Otherwise a new game is started.
+	 * </p>
 	 *
 	 * @param savedInstanceState  Bundle of saved state used for activity re-initialization
 	 */
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
+		long createdNanos = System.nanoTime();
 		super.onCreate(savedInstanceState);
 
 		// Enter/Exit transitions
@@ -76,7 +131,11 @@ public class GameActivity extends AppCompatActivity {
 		Intent intent = getIntent();
 		int difficulty = intent.getIntExtra(MenuActivity.EXTRA_DIFFIICULTY, Constants.DIFFICULTY_EASY);
 
-		model = new GameModel(difficulty);
+		GameModel restored = (savedInstanceState == null)
+				? null
+				: restoreModel(savedInstanceState.getByteArray(BUNDLE_GAME));
+		model = (restored == null) ? new GameModel(difficulty) : restored;
+		difficulty = model.getDifficulty();
 
 		Point displaySize = new Point();
 		getWindowManager().getDefaultDisplay().getSize(displaySize);
@@ -85,10 +144,83 @@ public class GameActivity extends AppCompatActivity {
 		initializeTileHandlers(tHandler);
 
 		gameController = new GameViewController(this, displaySize,
-				GameModel.size, difficulty, tHandler);
+				GameModel.size, difficulty, tHandler, restored == null);
 
 		setContentView(gameController);
-		start();
+		if (restored == null) {
+			start();
+			GameMetrics.recordOnNextDraw(gameController, GameMetrics.GAME_START, createdNanos);
+		} else {
+			resume();
+			GameMetrics.recordOnNextDraw(gameController, GameMetrics.GAME_RESTORE, createdNanos);
+		}
+	}
+
+	/**
+	 * Saves the game in progress as a {@link GameModel} snapshot
+	 *
+	 * @param outState  Bundle in which to place the saved state
+	 */
+	@Override
+	protected void onSaveInstanceState(Bundle outState) {
+		super.onSaveInstanceState(outState);
+		model.setElapsedMillis(SystemClock.uptimeMillis() - gameStartUptimeMillis);
+		outState.putByteArray(BUNDLE_GAME, model.toSnapshot());
+	}
+
+	/**
+	 * Stops the score timer and any pending match check
+	 */
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+		gameTimer.cancel();
+		matchHandler.removeCallbacks(matchCheck);
+	}
+
+	/**
+	 * Starts another game if the player chose to play again from the leaderboard, and returns to
+	 * the menu otherwise
+	 *
+	 * @param requestCode  The request code the leaderboard was started with
+	 * @param resultCode  {@link #RESULT_OK} to play again
+	 * @param data  Intent holding {@link #EXTRA_REMATCH_NANOS} when playing again
+	 */
+	@Override
+	protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+		super.onActivityResult(requestCode, resultCode, data);
+		if (requestCode != REQUEST_LEADERBOARD) {
+			return;
+		}
+		if (resultCode == RESULT_OK && data != null) {
+			rematch(data.getLongExtra(EXTRA_REMATCH_NANOS, System.nanoTime()));
+		} else {
+			finish();
+		}
+	}
+
+	/**
+	 * Decodes a saved game
+	 *
+	 * @param snapshot  The snapshot saved by {@link #onSaveInstanceState(Bundle)}, may be null
+	 * @return  The restored game, or null if there is none or it cannot be decoded
+	 */
+	private static GameModel restoreModel(byte[] snapshot) {
+		if (snapshot == null) {
+			return null;
+		}
+		long start = System.nanoTime();
+		try {
+			GameModel restored = GameModel.fromSnapshot(snapshot);
+			if (BuildConfig.DEBUG) {
+				Log.d(TAG, "Restored " + snapshot.length + " byte game snapshot in "
+						+ (System.nanoTime() - start) / 1000 + " us");
+			}
+			return restored;
+		} catch (IllegalArgumentException e) {
+			Log.w(TAG, "Discarding saved game", e);
+			return null;
+		}
 	}
 
 	/**
@@ -119,35 +251,125 @@ public class GameActivity extends AppCompatActivity {
 	 * @see GameModel
 	 */
 	public void start() {
-		long tickDelay;
+		scheduleTicks(0);
+		model.startGame();
+		gameStartUptimeMillis = SystemClock.uptimeMillis();
+		showTiles();
+	}
 
-		switch (model.getDifficulty()) {
-			case Constants.DIFFICULTY_EASY :
-				tickDelay = GameModel.EASY_TICK_DELAY_MILLIS;
-				break;
-			case Constants.DIFFICULTY_HARD :
-				tickDelay = GameModel.HARD_TICK_DELAY_MILLIS;
-				break;
-			default :
-				Log.wtf(TAG, "Unknown difficulty found: " + Integer.toString(model.getDifficulty()));
-				throw new RuntimeException("Invalid variable: " + Integer.toString(model.getDifficulty()));
+	/**
+	 * Continues a restored game
+	 * <p>
+	 *     The score keeps ticking at the phase it had when the game was saved, and a pair that was
+	 *     selected is checked again after the usual delay.
+	 * </p>
+	 */
+	private void resume() {
+		long elapsed = model.getElapsedMillis();
+		long tickDelay = getTickDelay();
+		/* A game that was over is waiting for the leaderboard's result */
+		if (!model.isOver()) {
+			scheduleTicks(tickDelay - elapsed % tickDelay);
 		}
+		gameStartUptimeMillis = SystemClock.uptimeMillis() - elapsed;
 
-		/* Periodically decrease score according to tickDelay */
-		gameTimer.schedule(new TimerTask() {
+		int[][] selections = model.getSelections();
+		for (int i = 0; i < GameModel.size; i++) {
+			for (int j = 0; j < GameModel.size; j++) {
+				if (model.isRemoved(i, j)) {
+					continue;
+				}
+				boolean selected = (selections[0][0] == i && selections[0][1] == j)
+						|| (selections[1][0] == i && selections[1][1] == j);
+				if (selected) {
+					selectionCount++;
+					gameController.setTileText(model.getSymbol(i, j), i, j, false);
+				}
+				gameController.showTile(i, j);
+			}
+		}
+		gameController.setScoreText(getString(R.string.score_fmt, model.getScore()));
+
+		if (selectionCount == maxSelections) {
+			scheduleMatchCheck();
+		}
+	}
+
+	/**
+	 * Starts the next game in place
+	 * <p>
+	 *     The model is reset through {@link GameModel#startGame()} and the existing tiles are
+	 *     rebound to it, so no views, listeners, or timer are created between rounds.
+	 * </p>
+	 *
+	 * @param requestedNanos  Time the player chose to play again, from {@link System#nanoTime()}
+	 */
+	private void rematch(long requestedNanos) {
+		matchHandler.removeCallbacks(matchCheck);
+		selectionCount = 0;
+		start();
+		gameController.setScoreText(getString(R.string.score_fmt, model.getScore()));
+		GameMetrics.recordOnNextDraw(gameController, GameMetrics.REMATCH, requestedNanos);
+	}
+
+	/**
+	 * Periodically decreases the score, replacing any ticks already scheduled
+	 *
+	 * @param delay  Milliseconds before the first tick
+	 */
+	private void scheduleTicks(long delay) {
+		cancelTicks();
+		tickTask = new TimerTask() {
 			@Override
 			public void run() {
+				final long tickNanos = System.nanoTime();
 				runOnUiThread(new Runnable() {
 					@Override
 					public void run() {
-						gameController.setScoreText(getString(R.string.score_fmt, model.tickScore()));
+						/* A tick may already be posted when the game ends */
+						if (!model.isOver()) {
+							showScore(model.tickScore(), tickNanos);
+						}
 					}
 				});
 			}
-		}, 0, tickDelay);
+		};
+		gameTimer.schedule(tickTask, delay, getTickDelay());
+	}
 
-		model.startGame();
-		showTiles();
+	/**
+	 * Stops decreasing the score
+	 */
+	private void cancelTicks() {
+		if (tickTask != null) {
+			tickTask.cancel();
+			tickTask = null;
+		}
+	}
+
+	/**
+	 * Retrieves the interval between score ticks for the game's difficulty
+	 *
+	 * @return  {@link GameModel#EASY_TICK_DELAY_MILLIS} or {@link GameModel#HARD_TICK_DELAY_MILLIS}
+	 */
+	private long getTickDelay() {
+		switch (model.getDifficulty()) {
+			case Constants.DIFFICULTY_EASY :
+				return GameModel.EASY_TICK_DELAY_MILLIS;
+			case Constants.DIFFICULTY_HARD :
+				return GameModel.HARD_TICK_DELAY_MILLIS;
+			default :
+				Log.wtf(TAG, "Unknown difficulty found: " + Integer.toString(model.getDifficulty()));
+				throw new RuntimeException("Invalid variable: " + Integer.toString(model.getDifficulty()));
+		}
+	}
+
+	/**
+	 * Removes or re-flips the selected pair after a delay
+	 */
+	private void scheduleMatchCheck() {
+		pairSelectedNanos = System.nanoTime();
+		matchHandler.postDelayed(matchCheck, MATCH_CHECK_DELAY_MILLIS);
 	}
 
 	/**
@@ -167,16 +389,17 @@ public class GameActivity extends AppCompatActivity {
 	/**
 	 * Launches {@link LeaderboardActivity}
 	 * <p>
-	 *     Called when all tiles have been successfully matched
+	 *     Called when all tiles have been successfully matched. Its result is handled by
+	 *     {@link #onActivityResult(int, int, Intent)}.
 	 * </p>
 	 */
 	private void endGame() {
+		cancelTicks();
 		Intent scoreIntent = new Intent(getApplicationContext(), LeaderboardActivity.class);
 		scoreIntent.putExtra(EXTRA_SCORE, model.getScore());
 		scoreIntent.putExtra(EXTRA_DIFFICULTY, model.getDifficulty());
 		scoreIntent.putExtra(EXTRA_INSERT, true);
-		finish();
-		startActivity(scoreIntent);
+		startActivityForResult(scoreIntent, REQUEST_LEADERBOARD);
 	}
 
 	/**
@@ -192,7 +415,7 @@ public class GameActivity extends AppCompatActivity {
 		gameController.hideTile(selections[1][0], selections[1][1]);
 		model.removePair();
 		model.increaseScore();
-		gameController.setScoreText(getString(R.string.score_fmt, model.getScore()));
+		showScore(model.getScore(), System.nanoTime());
 
 		if (model.isOver()) {
 			endGame();
@@ -212,7 +435,18 @@ public class GameActivity extends AppCompatActivity {
 		gameController.removeTileText(selections[1][0], selections[1][1]);
 		model.decreaseScore();
 		model.resetSelection();
-		gameController.setScoreText(getString(R.string.score_fmt, model.getScore()));
+		showScore(model.getScore(), System.nanoTime());
+	}
+
+	/**
+	 * Displays the score and records how long it takes to be drawn
+	 *
+	 * @param score  The score to display
+	 * @param changedNanos  Time the score changed, from {@link System#nanoTime()}
+	 */
+	private void showScore(int score, long changedNanos) {
+		gameController.setScoreText(getString(R.string.score_fmt, score));
+		GameMetrics.recordOnNextDraw(gameController, GameMetrics.SCORE_RENDER, changedNanos);
 	}
 
 	/**
@@ -242,6 +476,8 @@ public class GameActivity extends AppCompatActivity {
 		 * @see GameViewController
 		 */
 		public void onClick(View v) {
+			long clickNanos = System.nanoTime();
+
 			/* Prevent more than 2 tiles being selected in rapid succession */
 			if (selectionCount < maxSelections) {
 
@@ -253,23 +489,11 @@ public class GameActivity extends AppCompatActivity {
 					/* Flip tile */
 					String symbol = model.getSymbol(row, col);
 					gameController.setTileText(symbol, row, col);
+					GameMetrics.recordOnNextDraw(gameController, GameMetrics.TILE_FLIP, clickNanos);
 
 					/* Pair selected */
 					if (selectionCount == maxSelections) {
-						Handler h = new Handler();
-						/* Delay before re-flipping or removing selected tiles */
-						h.postDelayed(new Runnable() {
-							public void run() {
-								int[][] selections = model.getSelections();
-								if (model.isMatch()) {
-									match(selections);
-								} else {
-									misMatch(selections);
-								}
-								/* Only reset the selection count after valid pair was tested */
-								selectionCount = 0;
-							}
-						}, 500);
+						scheduleMatchCheck();
 					}
 				}
 			}
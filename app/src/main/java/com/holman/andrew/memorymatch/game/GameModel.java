@@ -2,17 +2,23 @@ package com.holman.andrew.memorymatch.game;
 
 import com.holman.andrew.memorymatch.Constants;
 
-import java.util.Collections;
-import java.util.LinkedList;
+import java.nio.ByteBuffer;
+import java.util.Random;
 
 /**
  * Game logic class for the Memory Match game
+ * <p>
+ *     Tiles hold the index of their symbol in {@link #symbols}, matched tiles are marked in a
+ *     bitset, and the number of tiles left is counted as pairs are removed, so selecting, matching,
+ *     and scoring tiles allocates nothing. New boards are taken from the {@link BoardPool}. A game
+ *     in progress is saved as a {@link #SNAPSHOT_SIZE}-byte snapshot by {@link #toSnapshot()}.
+ * </p>
  *
  * @see GameViewController
  * @see GameActivity
  *
  * @author Andrew Holman
- * @version 2.0
+ * @version 2.1
  * @since 1.0
  */
 class GameModel {
@@ -31,12 +37,34 @@ class GameModel {
 	 */
 	static final long HARD_TICK_DELAY_MILLIS = 1000;
 
-	private String[][] board;
+	/**
+	 * Length in bytes of a snapshot: version, difficulty, symbol of each tile, matched tiles
+	 * bitset, times viewed of each tile, the two selected tiles, score, and elapsed time
+	 */
+	static final int SNAPSHOT_SIZE = 2 + size * size + 2 + size * size + 2 + 4 + 8;
+
+	private static final byte SNAPSHOT_VERSION = 1;
+
+	/* Symbol index of each tile */
+	private int[][] board;
 	private int[][] selection;
 	private int[][] timesViewed;
 	private int score;
 	private int difficulty;
 
+	/* Bit (row * size + column) is set once the tile is matched */
+	private int removed;
+
+	/* Tiles not yet matched */
+	private int remainingTiles;
+
+	/* Time played, maintained by the activity */
+	private long elapsedMillis;
+
+	/* Symbol indices dealt onto the board by fillBoard */
+	private final int[] deck = new int[size * size];
+	private final Random random = new Random();
+
 	/**
 	 * The unicode emojis used as tile symbols
 	 */
@@ -59,7 +87,7 @@ class GameModel {
 	 */
 	GameModel(int diff) {
 		difficulty = diff;
-		board = new String[size][size];
+		board = new int[size][size];
 		selection = new int[2][2];
 		timesViewed = new int[size][size];
 	}
@@ -68,37 +96,54 @@ class GameModel {
 	 * Initializes the game board
 	 */
 	private void fillBoard() {
-		LinkedList<String> tileSymbols = new LinkedList<>();
-
-		switch (difficulty) {
-			case Constants.DIFFICULTY_EASY:
-				/* Easy uses 2 pairs per symbol */
-				for (int i = 0; i < ((size * size) / 4); i++) {
-					String symbol = symbols[i];
-					tileSymbols.add(symbol);
-					tileSymbols.add(symbol);
-					tileSymbols.add(symbol);
-					tileSymbols.add(symbol);
-				}
-				break;
-			case Constants.DIFFICULTY_HARD:
-				/* Hard uses 1 pair per symbol */
-				for (int i = 0; i < ((size * size) / 2); i++) {
-					String symbol = symbols[i];
-					tileSymbols.add(symbol);
-					tileSymbols.add(symbol);
-				}
-				break;
+		/* Shuffled here only when the pool has not caught up */
+		if (!BoardPool.getInstance().take(difficulty, deck)) {
+			shuffleDeck(deck, difficulty, random);
 		}
 
-		Collections.shuffle(tileSymbols);
-
 		for (int i = 0; i < size; i++) {
 			for (int j = 0; j < size; j++) {
-				board[i][j] = tileSymbols.removeFirst();
+				board[i][j] = deck[i * size + j];
 				timesViewed[i][j] = 0;
 			}
 		}
+		removed = 0;
+		remainingTiles = size * size;
+	}
+
+	/**
+	 * Deals the symbol indices of a new board into a deck in random order
+	 *
+	 * @param deck  The deck to fill, of {@link #size} squared indices
+	 * @param difficulty  The integer representation of the board's difficulty. See
+	 *                    {@link Constants} for expected values.
+	 * @param random  The source of the shuffle
+	 */
+	static void shuffleDeck(int[] deck, int difficulty, Random random) {
+		int copies = copiesOf(difficulty);
+		for (int i = 0; i < deck.length; i++) {
+			deck[i] = i / copies;
+		}
+
+		/* Fisher-Yates shuffle */
+		for (int i = deck.length - 1; i > 0; i--) {
+			int k = random.nextInt(i + 1);
+			int swap = deck[i];
+			deck[i] = deck[k];
+			deck[k] = swap;
+		}
+	}
+
+	/**
+	 * Retrieves the number of tiles showing each symbol on a board
+	 *
+	 * @param difficulty  The integer representation of the board's difficulty. See
+	 *                    {@link Constants} for expected values.
+	 * @return  The number of copies of each symbol
+	 */
+	private static int copiesOf(int difficulty) {
+		/* Easy uses 2 pairs per symbol, hard uses 1 pair per symbol */
+		return (difficulty == Constants.DIFFICULTY_EASY) ? 4 : 2;
 	}
 
 	/**
@@ -106,10 +151,33 @@ class GameModel {
 	 *
 	 * @param i  The row index of the tile
 	 * @param j  The column index of the tile
-	 * @return  A String containing the Unicode symbol for the specified tile
+	 * @return  A String containing the Unicode symbol for the specified tile, or null if the tile
+	 *          has been matched
 	 */
 	String getSymbol(int i, int j) {
-		return (board[i][j]);
+		return isRemoved(i, j) ? null : symbols[board[i][j]];
+	}
+
+	/**
+	 * Retrieves the index in {@link #symbols} of the tile at row i and column j
+	 *
+	 * @param i  The row index of the tile
+	 * @param j  The column index of the tile
+	 * @return  The symbol index, or -1 if the tile has been matched
+	 */
+	int getSymbolIndex(int i, int j) {
+		return isRemoved(i, j) ? -1 : board[i][j];
+	}
+
+	/**
+	 * Checks whether a tile has been matched
+	 *
+	 * @param i  The row index of the tile
+	 * @param j  The column index of the tile
+	 * @return  True if the tile has been removed from the board
+	 */
+	boolean isRemoved(int i, int j) {
+		return (removed & (1 << (i * size + j))) != 0;
 	}
 
 	/**
@@ -119,6 +187,7 @@ class GameModel {
 		fillBoard();
 		resetSelection();
 		score = 0;
+		elapsedMillis = 0;
 	}
 
 	/**
@@ -171,7 +240,7 @@ class GameModel {
 		int y1 = selection[0][1];
 		int x2 = selection[1][0];
 		int y2 = selection[1][1];
-		return (board[x1][y1].equals(board[x2][y2]));
+		return (board[x1][y1] == board[x2][y2]);
 	}
 
 	/**
@@ -182,8 +251,8 @@ class GameModel {
 		int y1 = selection[0][1];
 		int x2 = selection[1][0];
 		int y2 = selection[1][1];
-		board[x1][y1] = null;
-		board[x2][y2] = null;
+		removed |= (1 << (x1 * size + y1)) | (1 << (x2 * size + y2));
+		remainingTiles -= 2;
 		resetSelection();
 	}
 
@@ -232,19 +301,12 @@ class GameModel {
 	}
 
 	/**
-	 * Checks the board for any remaining un-matched tiles and returns the result
+	 * Checks whether every tile has been matched
 	 *
 	 * @return  Boolean value representing whether the game has finished
 	 */
 	boolean isOver() {
-		for (int i = 0; i < GameModel.size; i++) {
-			for (int j = 0; j < GameModel.size; j++) {
-				if (board[i][j] != null) {
-					return false;
-				}
-			}
-		}
-		return true;
+		return remainingTiles == 0;
 	}
 
 	int[][] getSelections() {
@@ -255,7 +317,113 @@ class GameModel {
 		return score;
 	}
 
+	/**
+	 * Sets the score to be changed by the next match or mismatch, as when several players share
+	 * the board
+	 *
+	 * @param score  The score
+	 */
+	void setScore(int score) {
+		this.score = score;
+	}
+
 	int getDifficulty() {
 		return difficulty;
 	}
+
+	long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	void setElapsedMillis(long elapsedMillis) {
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	/**
+	 * Saves the game in progress
+	 * <p>
+	 *     Times viewed saturate at 255, past which they no longer change the score, which is
+	 *     floored at 0.
+	 * </p>
+	 *
+	 * @return  A snapshot of {@link #SNAPSHOT_SIZE} bytes
+	 * @see #fromSnapshot(byte[])
+	 */
+	byte[] toSnapshot() {
+		ByteBuffer snapshot = ByteBuffer.allocate(SNAPSHOT_SIZE);
+		snapshot.put(SNAPSHOT_VERSION);
+		snapshot.put((byte) difficulty);
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < size; j++) {
+				snapshot.put((byte) board[i][j]);
+			}
+		}
+		snapshot.putShort((short) removed);
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < size; j++) {
+				snapshot.put((byte) Math.min(timesViewed[i][j], 0xff));
+			}
+		}
+		for (int k = 0; k < 2; k++) {
+			int tile = (selection[k][0] == -1) ? -1 : selection[k][0] * size + selection[k][1];
+			snapshot.put((byte) tile);
+		}
+		snapshot.putInt(score);
+		snapshot.putLong(elapsedMillis);
+		return snapshot.array();
+	}
+
+	/**
+	 * Restores a game saved by {@link #toSnapshot()}
+	 *
+	 * @param snapshot  The snapshot
+	 * @return  The restored game
+	 * @throws IllegalArgumentException  If the snapshot is malformed or from another version, or
+	 *                                   describes a game that cannot be played: an unknown
+	 *                                   difficulty, a symbol the difficulty does not deal, or a
+	 *                                   selected tile that was already matched
+	 */
+	static GameModel fromSnapshot(byte[] snapshot) {
+		ByteBuffer buffer = ByteBuffer.wrap(snapshot);
+		if (snapshot.length != SNAPSHOT_SIZE || buffer.get() != SNAPSHOT_VERSION) {
+			throw new IllegalArgumentException("Unsupported game snapshot");
+		}
+
+		int difficulty = buffer.get();
+		if (difficulty != Constants.DIFFICULTY_EASY && difficulty != Constants.DIFFICULTY_HARD) {
+			throw new IllegalArgumentException("Invalid game snapshot difficulty: " + difficulty);
+		}
+		GameModel model = new GameModel(difficulty);
+		int symbolCount = size * size / copiesOf(difficulty);
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < size; j++) {
+				int symbol = buffer.get();
+				if (symbol < 0 || symbol >= symbolCount) {
+					throw new IllegalArgumentException("Invalid game snapshot symbol: " + symbol);
+				}
+				model.board[i][j] = symbol;
+			}
+		}
+		model.removed = buffer.getShort() & 0xffff;
+		model.remainingTiles = size * size - Integer.bitCount(model.removed);
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < size; j++) {
+				model.timesViewed[i][j] = buffer.get() & 0xff;
+			}
+		}
+		model.resetSelection();
+		for (int k = 0; k < 2; k++) {
+			int tile = buffer.get();
+			if (tile < -1 || tile >= size * size
+					|| (tile >= 0 && (model.removed & (1 << tile)) != 0)) {
+				throw new IllegalArgumentException("Invalid selection in game snapshot: " + tile);
+			} else if (tile >= 0) {
+				model.selection[k][0] = tile / size;
+				model.selection[k][1] = tile % size;
+			}
+		}
+		model.score = buffer.getInt();
+		model.elapsedMillis = buffer.getLong();
+		return model;
+	}
 }
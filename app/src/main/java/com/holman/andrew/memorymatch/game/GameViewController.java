@@ -22,7 +22,7 @@ import java.util.Random;
  * Custom GridLayout used to display data from {@link GameModel}
  *
  * @author Andrew Holman
- * @version 2.0
+ * @version 2.1
  * @since 1.0
  */
 public class GameViewController extends GridLayout {
@@ -40,9 +40,12 @@ public class GameViewController extends GridLayout {
 	 * @param difficulty  The integer difficulty of this game instance. See {@link Constants} for
 	 *                    expected values
 	 * @param tileListener  A 2-dimensional array of {@link GameActivity.TileHandler} objects
+	 * @param animateEntry  True to slide the tiles and score into place, false to lay them out in
+	 *                      place, as when a game in progress is restored
 	 */
 	public GameViewController(Context context, Point displaySize, int boardSize,
-	                          int difficulty, OnClickListener[][] tileListener) {
+	                          int difficulty, OnClickListener[][] tileListener,
+	                          boolean animateEntry) {
 		super(context);
 
 		this.displaySize = displaySize;
@@ -54,8 +57,8 @@ public class GameViewController extends GridLayout {
 
 		int tileWidth = this.displaySize.x / this.boardSize;
 
-		initializeTiles(context, tileWidth, difficulty, tileListener);
-		initializeScoreView(context, tileWidth);
+		initializeTiles(context, tileWidth, difficulty, tileListener, animateEntry);
+		initializeScoreView(context, tileWidth, animateEntry);
 	}
 
 	/**
@@ -101,11 +104,24 @@ public class GameViewController extends GridLayout {
 	 * @param j  The column index of the tile
 	 */
 	public void setTileText(String s, int i, int j) {
-		AlphaAnimation animation = new AlphaAnimation(0.1f, 1.0f);
-		animation.setDuration(300);
+		setTileText(s, i, j, true);
+	}
 
+	/**
+	 * Sets the text for the specified tile
+	 *
+	 * @param s  The String to apply to the tile
+	 * @param i  The row index of the tile
+	 * @param j  The column index of the tile
+	 * @param animate  True to fade the text in
+	 */
+	public void setTileText(String s, int i, int j, boolean animate) {
 		tileButtons[i][j].setText(s);
-		tileButtons[i][j].startAnimation(animation);
+		if (animate) {
+			AlphaAnimation animation = new AlphaAnimation(0.1f, 1.0f);
+			animation.setDuration(300);
+			tileButtons[i][j].startAnimation(animation);
+		}
 	}
 
 	/**
@@ -158,8 +174,10 @@ public class GameViewController extends GridLayout {
 	 * @param difficulty  The integer difficulty of this game instance. See {@link Constants} for
 	 *                    expected values.
 	 * @param tileListener  A 2-dimensional array of {@link GameActivity.TileHandler} objects
+	 * @param animate  True to slide the tiles in from off screen
 	 */
-	private void initializeTiles(Context context, int tileWidth, int difficulty, OnClickListener[][] tileListener) {
+	private void initializeTiles(Context context, int tileWidth, int difficulty,
+	                             OnClickListener[][] tileListener, boolean animate) {
 		Random random = new Random();
 
 		/* Set tile colors based on difficulty */
@@ -183,6 +201,10 @@ public class GameViewController extends GridLayout {
 				tileButtons[i][j].setOnClickListener(tileListener[i][j]);
 				tileButtons[i][j].setVisibility(View.INVISIBLE);
 				tileButtons[i][j].getBackground().setColorFilter(tileColor, PorterDuff.Mode.MULTIPLY);
+				if (!animate) {
+					addView(tileButtons[i][j], tileWidth, tileWidth);
+					continue;
+				}
 
 				switch (duration % 3) {
 					case 0:
@@ -211,8 +233,9 @@ public class GameViewController extends GridLayout {
 	 *
 	 * @param context  The current application Context
 	 * @param tileWidth  The width of a single game tile
+	 * @param animate  True to slide the score in from below the screen
 	 */
-	private void initializeScoreView(Context context, int tileWidth) {
+	private void initializeScoreView(Context context, int tileWidth, boolean animate) {
 		score = new TextView(context);
 		Spec rowSpec = GridLayout.spec(boardSize, 0);
 		Spec columnSpec = GridLayout.spec(0, boardSize);
@@ -220,14 +243,17 @@ public class GameViewController extends GridLayout {
 		score.setLayoutParams(lpStatus);
 		score.setWidth(displaySize.x);
 		score.setHeight(tileWidth);
-		score.setTranslationY(displaySize.y);
 		score.setGravity(Gravity.CENTER);
 		score.setBackgroundColor(ContextCompat.getColor(context, R.color.colorAccentDark));
 		score.setTextSize(40);
 		score.setTextColor(ContextCompat.getColor(context, R.color.off_white));
 		addView(score);
+		if (!animate) {
+			return;
+		}
 
 		/* Animate score */
+		score.setTranslationY(displaySize.y);
 		ObjectAnimator animator = ObjectAnimator.ofFloat(score, "translationY", 0f);
 		animator.setDuration(1000);
 		animator.start();
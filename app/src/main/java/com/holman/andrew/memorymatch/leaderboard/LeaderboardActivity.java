@@ -2,25 +2,26 @@ package com.holman.andrew.memorymatch.leaderboard;
 
 import android.content.ContentValues;
 import android.content.Intent;
-import android.database.sqlite.SQLiteException;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
 import android.os.Bundle;
-import android.support.v4.app.FragmentManager;
-import android.support.v4.app.FragmentTransaction;
 import android.support.v4.content.ContextCompat;
 import android.support.v4.content.res.ResourcesCompat;
+import android.support.v4.view.ViewPager;
 import android.support.v7.app.AppCompatActivity;
 import android.util.Log;
 import android.view.View;
+import android.view.ViewGroup;
 import android.widget.Button;
 import android.widget.TextView;
-import android.widget.Toast;
 
 import com.holman.andrew.memorymatch.Constants;
 import com.holman.andrew.memorymatch.R;
 import com.holman.andrew.memorymatch.game.GameActivity;
 import com.holman.andrew.memorymatch.provider.LeaderboardContract;
+import com.holman.andrew.memorymatch.provider.PlayerProfiles;
+import com.holman.andrew.memorymatch.provider.ScoreWriter;
+import com.holman.andrew.memorymatch.sync.ScoreSync;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -28,9 +29,13 @@ import java.util.Locale;
 
 /**
  * Activity responsible for displaying and switching between game leaderboards
+ * <p>
+ *     The leaderboards of both difficulties are pages of a ViewPager and stay loaded, so switching
+ *     between them does not query the provider.
+ * </p>
  *
  * @author Andrew Holman
- * @version 2.0
+ * @version 2.1
  * @since 2.0
  */
 public class LeaderboardActivity extends AppCompatActivity {
@@ -39,14 +44,29 @@ public class LeaderboardActivity extends AppCompatActivity {
 	 */
 	public static String BUNDLE_DIFFICULTY = "com.holman.andrew.memorymatch.leaderboard.DIFFICULTY";
 
+	/**
+	 * Identifier String for the time window bundle argument. See
+	 * {@link LeaderboardContract.Scores#QUERY_PARAMETER_WINDOW} for values.
+	 */
+	public static String BUNDLE_WINDOW = "com.holman.andrew.memorymatch.leaderboard.WINDOW";
+
 	private static String TAG = "LeaderboardActivity";
 
+	/* Difficulty and time window of the displayed leaderboard */
+	private int difficulty;
+	private String window = LeaderboardContract.Scores.WINDOW_ALL_TIME;
+
+	private ViewPager pager;
+	private LeaderboardPagerAdapter pagerAdapter;
+
 	/**
 	 * Initializes the Activity
 	 * <p>
-	 *     Calls to {@link #insertScore(int, int)} if instructed by the previous activity.
-	 *     Initializes the {@link LeaderboardListFragment} to display through a call to
-	 *     {@link #initializeLeaderboardFragment(int)}.
+	 *     Calls to {@link #insertScore(int, int)} if instructed by the previous activity, and
+	 *     offers to play again when started for a result by {@link GameActivity}.
+	 *     Initializes the {@link LeaderboardListFragment} pages through a call to
+	 *     {@link #initializeLeaderboardPager()}. The displayed difficulty and time window survive
+	 *     configuration changes.
 	 * </p>
 	 *
 	 * @param savedInstanceState  Bundle of saved state used for activity re-initialization
@@ -58,9 +78,14 @@ public class LeaderboardActivity extends AppCompatActivity {
 
 		Intent intent = getIntent();
 		int score = intent.getIntExtra(GameActivity.EXTRA_SCORE, 0);
-		int difficulty = intent.getIntExtra(GameActivity.EXTRA_DIFFICULTY,
+		int scoreDifficulty = intent.getIntExtra(GameActivity.EXTRA_DIFFICULTY,
 				Constants.DIFFICULTY_EASY);
+		difficulty = scoreDifficulty;
 		boolean insert = intent.getBooleanExtra(GameActivity.EXTRA_INSERT, false);
+		if (savedInstanceState != null) {
+			difficulty = savedInstanceState.getInt(BUNDLE_DIFFICULTY, difficulty);
+			window = savedInstanceState.getString(BUNDLE_WINDOW, window);
+		}
 
 		TextView scoreView = findViewById(R.id.previous_score);
 		scoreView.setText(getString(R.string.score_fmt, score));
@@ -68,7 +93,7 @@ public class LeaderboardActivity extends AppCompatActivity {
 
 		if (insert) {
 			int color = 0;
-			switch (difficulty) {
+			switch (scoreDifficulty) {
 				case Constants.DIFFICULTY_EASY:
 					color = ContextCompat.getColor(this, R.color.easy_green);
 					break;
@@ -78,10 +103,31 @@ public class LeaderboardActivity extends AppCompatActivity {
 			}
 			scoreView.setBackgroundColor(color);
 			scoreView.setVisibility(View.VISIBLE);
-			insertScore(score, difficulty);
+			/* The score was already inserted if the activity is being recreated */
+			if (savedInstanceState == null) {
+				insertScore(score, scoreDifficulty);
+			}
+			if (getCallingActivity() != null) {
+				findViewById(R.id.play_again).setVisibility(View.VISIBLE);
+			}
 		}
 
-		initializeLeaderboardFragment(difficulty);
+		initializeLeaderboardPager();
+
+		/* Merges remote top scores into the displayed leaderboard when they arrive */
+		ScoreSync.getInstance(this).requestSync();
+	}
+
+	/**
+	 * Returns to the finished {@link GameActivity}, which starts the next game in place
+	 *
+	 * @param view  The View responsible for calling this method in its {@code onClick} attribute
+	 */
+	public void playAgain(View view) {
+		Intent result = new Intent();
+		result.putExtra(GameActivity.EXTRA_REMATCH_NANOS, System.nanoTime());
+		setResult(RESULT_OK, result);
+		finish();
 	}
 
 	/**
@@ -94,54 +140,82 @@ public class LeaderboardActivity extends AppCompatActivity {
 	}
 
 	/**
-	 * Replaces the currently displayed leaderboard with the leaderboard selected by the user
+	 * Saves the displayed difficulty and time window
+	 *
+	 * @param outState  Bundle in which to place the saved state
+	 */
+	@Override
+	protected void onSaveInstanceState(Bundle outState) {
+		super.onSaveInstanceState(outState);
+		outState.putInt(BUNDLE_DIFFICULTY, difficulty);
+		outState.putString(BUNDLE_WINDOW, window);
+	}
+
+	/**
+	 * Displays the leaderboard selected by the user
 	 * <p>
-	 *     Removes the currently displayed {@link LeaderboardListFragment} and calls
-	 *     {@link #initializeLeaderboardFragment(int)} to display the user-selected leaderboard.
+	 *     Scrolls the pager to the page of the selected difficulty, which is already loaded.
 	 * </p>
 	 *
 	 * @param view  The View responsible for calling this method in its {@code onClick}
 	 */
 	public void swapLeaderboard(View view) {
-		FragmentManager fragmentManager = getSupportFragmentManager();
-		FragmentTransaction transaction = fragmentManager.beginTransaction();
-		transaction.remove(fragmentManager.findFragmentById(R.id.leaderboard_fragment_container))
-				.commit();
+		pager.setCurrentItem(Integer.parseInt(view.getTag().toString()));
+	}
 
-		int selectedDifficulty = Integer.parseInt(view.getTag().toString());
-		initializeLeaderboardFragment(selectedDifficulty);
+	/**
+	 * Displays the time window selected by the user on both leaderboards
+	 *
+	 * @param view  The View responsible for calling this method in its {@code onClick}. Its tag
+	 *              holds the selected window.
+	 */
+	public void swapWindow(View view) {
+		window = view.getTag().toString();
+		pagerAdapter.setWindow(window);
+		highlightWindow();
 	}
 
 	/**
-	 * Sets the leaderboard fragment to display
+	 * Sets up the pager holding the leaderboard of each difficulty
 	 * <p>
-	 *     Instantiates and displays a new {@link LeaderboardListFragment} and highlights the button
-	 *     corresponding to it.
+	 *     Both pages are kept resident, so both leaderboards load in parallel. Pages restored after
+	 *     a configuration change reuse their loaders.
 	 * </p>
-	 *
-	 * @param difficulty  The integer representation of the leaderboard to display's difficulty.
-	 *                    See {@link Constants} for expected values.
 	 */
-	private void initializeLeaderboardFragment(int difficulty) {
-		FragmentManager fragmentManager = getSupportFragmentManager();
+	private void initializeLeaderboardPager() {
+		pagerAdapter = new LeaderboardPagerAdapter(getSupportFragmentManager(), window);
+		pager = findViewById(R.id.leaderboard_pager);
+		pager.setOffscreenPageLimit(LeaderboardPagerAdapter.PAGE_COUNT - 1);
+		pager.setAdapter(pagerAdapter);
+		pager.setCurrentItem(difficulty, false);
+		pager.addOnPageChangeListener(new ViewPager.SimpleOnPageChangeListener() {
+			@Override
+			public void onPageSelected(int position) {
+				difficulty = position;
+				highlightDifficulty();
+			}
+		});
+
+		highlightDifficulty();
+		highlightWindow();
+	}
 
+	/**
+	 * Highlights the tab of the current difficulty
+	 */
+	private void highlightDifficulty() {
 		Button activeTab;
 		Button inactiveTab;
 		Drawable activeBackground;
 
-		LeaderboardListFragment leaderboard = new LeaderboardListFragment();
-		Bundle args = new Bundle();
-
 		switch (difficulty) {
 			case Constants.DIFFICULTY_EASY:
-				args.putInt(BUNDLE_DIFFICULTY, Constants.DIFFICULTY_EASY);
 				activeTab = findViewById(R.id.switch_easy_leaderboard);
 				inactiveTab = findViewById(R.id.switch_hard_leaderboard);
 				activeBackground = ResourcesCompat.getDrawable(getResources(),
 						R.drawable.leaderboard_easy_tab_background, null);
 				break;
 			case Constants.DIFFICULTY_HARD:
-				args.putInt(BUNDLE_DIFFICULTY, Constants.DIFFICULTY_HARD);
 				activeTab = findViewById(R.id.switch_hard_leaderboard);
 				inactiveTab = findViewById(R.id.switch_easy_leaderboard);
 				activeBackground = ResourcesCompat.getDrawable(getResources(),
@@ -154,24 +228,34 @@ public class LeaderboardActivity extends AppCompatActivity {
 		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
 			activeTab.setBackground(activeBackground);
 		} else {
-			inactiveTab.setBackgroundDrawable(activeBackground);
+			activeTab.setBackgroundDrawable(activeBackground);
 		}
 		inactiveTab.setBackgroundColor(
 				ContextCompat.getColor(this, R.color.colorPrimaryDark));
 		activeTab.setEnabled(false);
 		inactiveTab.setEnabled(true);
+	}
 
-		leaderboard.setArguments(args);
-		fragmentManager.beginTransaction()
-				.add(R.id.leaderboard_fragment_container, leaderboard)
-				.commit();
+	/**
+	 * Highlights the button of the current time window
+	 */
+	private void highlightWindow() {
+		ViewGroup windows = findViewById(R.id.leaderboard_window_switcher);
+		for (int i = 0; i < windows.getChildCount(); i++) {
+			View button = windows.getChildAt(i);
+			boolean active = window.equals(button.getTag());
+			button.setBackgroundColor(ContextCompat.getColor(this,
+					active ? R.color.colorAccentMaroon : R.color.colorPrimaryDark));
+			button.setEnabled(!active);
+		}
 	}
 
 	/**
 	 * Inserts a score to the leaderboard database
 	 * <p>
-	 *     Inserts the score, difficulty, and current date into
-	 *     {@link com.holman.andrew.memorymatch.provider.LeaderboardProvider}
+	 *     Queues the score, difficulty, current date, and selected player for insertion into
+	 *     {@link com.holman.andrew.memorymatch.provider.LeaderboardProvider} by the background
+	 *     {@link ScoreWriter}. The displayed leaderboard reloads once the write is committed.
 	 * </p>
 	 *
 	 * @param score  The integer score to be inserted
@@ -185,16 +269,11 @@ public class LeaderboardActivity extends AppCompatActivity {
 		ContentValues values = new ContentValues();
 		values.put(LeaderboardContract.Scores.SCORE, score);
 		values.put(LeaderboardContract.Scores.DIFFICULTY, difficulty);
-		values.put(LeaderboardContract.Scores.DATE_TIME, dateFormat.format(new Date()));
-
-		try {
-			getContentResolver().insert(LeaderboardContract.Scores.SCORES_CONTENT_URI, values);
-		} catch (SQLiteException e) {
-			Log.e(TAG, e.getMessage());
-			e.printStackTrace();
-			Toast toast = Toast.makeText(getApplicationContext(),
-					"Failed to insert score", Toast.LENGTH_SHORT);
-			toast.show();
-		}
+		Date now = new Date();
+		values.put(LeaderboardContract.Scores.DATE_TIME, dateFormat.format(now));
+		values.put(LeaderboardContract.Scores.TIMESTAMP, now.getTime());
+		values.put(LeaderboardContract.Scores.PLAYER, PlayerProfiles.getCurrentPlayer(this));
+
+		ScoreWriter.getInstance(this).insert(values);
 	}
 }
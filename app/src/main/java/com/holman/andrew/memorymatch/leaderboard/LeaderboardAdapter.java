@@ -1,77 +1,199 @@
 package com.holman.andrew.memorymatch.leaderboard;
 
 import android.content.Context;
-import android.database.Cursor;
-import android.support.v4.widget.CursorAdapter;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
 import com.holman.andrew.memorymatch.R;
-import com.holman.andrew.memorymatch.provider.LeaderboardContract;
 
-import java.util.Locale;
+import java.util.Collections;
+import java.util.List;
 
 /**
- * Custom Cursor Adapter for interfacing with a Leaderboard Provider
+ * Custom RecyclerView Adapter for displaying a leaderboard loaded by a {@link LeaderboardLoader}
  * <p>
- *     Binds the data of a Cursor obtained from a Leaderboard Provider with a View representing a
- *     row in the {@link LeaderboardListFragment}.
+ *     Binds each {@link LeaderboardEntry} with a {@link ViewHolder} representing a row in the
+ *     {@link LeaderboardListFragment}. Item ids are the row ids of the scores. A newly loaded
+ *     leaderboard is diffed against the displayed one, so only inserted, removed, and re-ranked
+ *     rows are rebound.
  * </p>
  *
- * @see LeaderboardContract
+ * @see com.holman.andrew.memorymatch.provider.LeaderboardContract
  * @see com.holman.andrew.memorymatch.provider.LeaderboardProvider
  *
  * @author Andrew Holman
- * @version 2.0
+ * @version 2.1
  * @since 2.0
  */
-public class LeaderboardAdapter extends CursorAdapter {
+public class LeaderboardAdapter extends RecyclerView.Adapter<LeaderboardAdapter.ViewHolder> {
 	private static final String TAG = "LeaderboardAdapter";
 
+	private final LayoutInflater inflater;
+	private List<LeaderboardEntry> entries = Collections.emptyList();
+
 	/**
 	 * Constructor
 	 *
 	 * @param context  The current application Context
-	 * @param cursor  The Cursor associated with this adapter instance
 	 */
-	LeaderboardAdapter(Context context, Cursor cursor) {
-		super(context, cursor, 0);
+	LeaderboardAdapter(Context context) {
+		inflater = LayoutInflater.from(context);
+		setHasStableIds(true);
 	}
 
 	/**
-	 * Inflates a new view used to hold the data of a Cursor
+	 * Replaces the displayed leaderboard, notifying only the rows that changed
+	 * <p>
+	 *     A leaderboard holds at most
+	 *     {@link com.holman.andrew.memorymatch.provider.LeaderboardContract.Scores#LEADERBOARD_SIZE}
+	 *     rows, so the diff is cheap enough to run on the main thread.
+	 * </p>
 	 *
-	 * @param context  The current application Context
-	 * @param cursor  The Cursor attached associated with this View
-	 * @param parent  The parent ViewGroup of the returned View
-	 * @return The inflated View
+	 * @param entries  The leaderboard ordered by rank, or null to clear it
 	 */
+	void setEntries(List<LeaderboardEntry> entries) {
+		final List<LeaderboardEntry> oldEntries = this.entries;
+		final List<LeaderboardEntry> newEntries = (entries == null)
+				? Collections.<LeaderboardEntry>emptyList()
+				: entries;
+		if (oldEntries == newEntries) {
+			return;
+		}
+
+		DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+			@Override
+			public int getOldListSize() {
+				return oldEntries.size();
+			}
+
+			@Override
+			public int getNewListSize() {
+				return newEntries.size();
+			}
+
+			@Override
+			public boolean areItemsTheSame(int oldPosition, int newPosition) {
+				return oldEntries.get(oldPosition).id == newEntries.get(newPosition).id;
+			}
+
+			@Override
+			public boolean areContentsTheSame(int oldPosition, int newPosition) {
+				/* The rank is the position, so a row that shifted must be rebound too */
+				LeaderboardEntry oldEntry = oldEntries.get(oldPosition);
+				LeaderboardEntry newEntry = newEntries.get(newPosition);
+				/* Scores imported without a date have a null one */
+				return oldPosition == newPosition && oldEntry.score == newEntry.score
+						&& TextUtils.equals(oldEntry.dateTime, newEntry.dateTime);
+			}
+		}, false);
+
+		this.entries = newEntries;
+		diff.dispatchUpdatesTo(this);
+	}
+
 	@Override
-	public View newView(Context context, Cursor cursor, ViewGroup parent) {
-		return LayoutInflater.from(context).inflate(R.layout.leaderboard_item, parent, false);
+	public int getItemCount() {
+		return entries.size();
+	}
+
+	@Override
+	public long getItemId(int position) {
+		return entries.get(position).id;
 	}
 
 	/**
-	 * Binds the data in the specified Cursor to the specified View
+	 * Inflates a new row and caches its child Views in a {@link ViewHolder}
 	 *
-	 * @param view  The View with which to bind the data
-	 * @param context  The current application Context
-	 * @param cursor  The Cursor providing the data to bind
+	 * @param parent  The parent ViewGroup of the row
+	 * @param viewType  Unused parameter inherited from superclass
+	 * @return  The ViewHolder of the new row
+	 */
+	@Override
+	public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+		return new ViewHolder(inflater.inflate(R.layout.leaderboard_item, parent, false));
+	}
+
+	/**
+	 * Binds the entry at the specified position with a row
+	 *
+	 * @param holder  The ViewHolder of the row
+	 * @param position  The position of the entry, which is its rank minus one
 	 */
 	@Override
-	public void bindView(View view, Context context, Cursor cursor) {
-		final int rank = cursor.getPosition() + 1;
-		final int score = cursor.getInt(cursor.getColumnIndex(LeaderboardContract.Scores.SCORE));
-		final String dateTime = cursor.getString(cursor.getColumnIndex(LeaderboardContract.Scores.DATE_TIME));
-
-		TextView rankView = view.findViewById(R.id.score_rank);
-		TextView scoreView = view.findViewById(R.id.score_value);
-		TextView dateView = view.findViewById(R.id.score_date);
-
-		rankView.setText(String.format(Locale.US, "%d", rank));
-		scoreView.setText(String.format(Locale.US, "%d", score));
-		dateView.setText(dateTime);
+	public void onBindViewHolder(ViewHolder holder, int position) {
+		LeaderboardEntry entry = entries.get(position);
+		holder.bind(position + 1, entry.score, entry.dateTime);
+	}
+
+	/**
+	 * Holds the child Views of a leaderboard row
+	 * <p>
+	 *     Numbers are rendered into per-holder character buffers, so binding a row allocates
+	 *     nothing.
+	 * </p>
+	 */
+	static class ViewHolder extends RecyclerView.ViewHolder {
+		/* Digits in Integer.MIN_VALUE, including the sign */
+		private static final int INT_CHARS_MAX = 11;
+
+		private final TextView rankView;
+		private final TextView scoreView;
+		private final TextView dateView;
+
+		private final char[] rankChars = new char[INT_CHARS_MAX];
+		private final char[] scoreChars = new char[INT_CHARS_MAX];
+
+		/**
+		 * Constructor
+		 *
+		 * @param view  The inflated leaderboard row
+		 */
+		ViewHolder(View view) {
+			super(view);
+			rankView = view.findViewById(R.id.score_rank);
+			scoreView = view.findViewById(R.id.score_value);
+			dateView = view.findViewById(R.id.score_date);
+		}
+
+		/**
+		 * Displays a leaderboard entry in this row
+		 *
+		 * @param rank  The rank of the entry, starting at one
+		 * @param score  The score value
+		 * @param dateTime  The formatted date the score was achieved on
+		 */
+		void bind(int rank, int score, String dateTime) {
+			int start = formatInt(rank, rankChars);
+			rankView.setText(rankChars, start, rankChars.length - start);
+			start = formatInt(score, scoreChars);
+			scoreView.setText(scoreChars, start, scoreChars.length - start);
+			dateView.setText(dateTime);
+		}
+
+		/**
+		 * Writes the decimal digits of a number right-aligned into a buffer
+		 *
+		 * @param value  The number to write
+		 * @param chars  The buffer, at least {@link #INT_CHARS_MAX} characters long
+		 * @return  The index of the first written character
+		 */
+		static int formatInt(int value, char[] chars) {
+			int index = chars.length;
+			/* Digits are produced from the negative value, which also covers Integer.MIN_VALUE */
+			int remaining = (value < 0) ? value : -value;
+			do {
+				chars[--index] = (char) ('0' - (remaining % 10));
+				remaining /= 10;
+			} while (remaining != 0);
+			if (value < 0) {
+				chars[--index] = '-';
+			}
+			return index;
+		}
 	}
 }
@@ -0,0 +1,41 @@
+package com.holman.andrew.memorymatch.leaderboard;
+
+/**
+ * A single row of a displayed leaderboard
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+final class LeaderboardEntry {
+	final long id;
+	final int score;
+	final String dateTime;
+
+	/**
+	 * Constructor
+	 *
+	 * @param id  The row id of the score
+	 * @param score  The score value
+	 * @param dateTime  The formatted date the score was achieved on
+	 */
+	LeaderboardEntry(long id, int score, String dateTime) {
+		this.id = id;
+		this.score = score;
+		this.dateTime = dateTime;
+	}
+
+	/**
+	 * Checks whether this entry ranks above another
+	 * <p>
+	 *     Matches {@link com.holman.andrew.memorymatch.provider.LeaderboardContract.Scores#SORT_ORDER_DEFAULT}:
+	 *     higher scores rank first, and equal scores rank in the order they were recorded.
+	 * </p>
+	 *
+	 * @param other  The entry to compare with
+	 * @return  True if this entry is displayed before the other
+	 */
+	boolean ranksAbove(LeaderboardEntry other) {
+		return score > other.score || (score == other.score && id < other.id);
+	}
+}
@@ -1,59 +1,135 @@
 package com.holman.andrew.memorymatch.leaderboard;
 
-import android.database.Cursor;
-import android.net.Uri;
 import android.os.Bundle;
-import android.support.v4.app.ListFragment;
+import android.support.v4.app.Fragment;
 import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SimpleItemAnimator;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
+import com.holman.andrew.memorymatch.BuildConfig;
 import com.holman.andrew.memorymatch.Constants;
 import com.holman.andrew.memorymatch.R;
 import com.holman.andrew.memorymatch.provider.LeaderboardContract;
 
+import java.util.List;
+
 /**
- * List Fragment used to display a single leaderboard
+ * Fragment used to display a single leaderboard in a RecyclerView
  * <p>
- *     Implements {@code LoaderManager.LoaderCallbacks<Cursor>} interface to enable synchronization
- *     with a {@link LeaderboardAdapter}. This allows for asynchronous queries to
- *     {@link com.holman.andrew.memorymatch.provider.LeaderboardProvider}.
+ *     Implements {@code LoaderManager.LoaderCallbacks<List<LeaderboardEntry>>} interface to enable
+ *     synchronization with a {@link LeaderboardAdapter}. The {@link LeaderboardLoader} queries
+ *     {@link com.holman.andrew.memorymatch.provider.LeaderboardProvider} asynchronously and patches
+ *     the displayed leaderboard as scores change.
  * </p>
  *
  * @author Andrew Holman
- * @version 2.0
+ * @version 2.1
  * @since 2.0
  */
-public class LeaderboardListFragment extends ListFragment
-		implements LoaderManager.LoaderCallbacks<Cursor> {
+public class LeaderboardListFragment extends Fragment
+		implements LoaderManager.LoaderCallbacks<List<LeaderboardEntry>> {
 	private static final String TAG = "LeaderboardListFragment";
 
-	/* Difficulty of this leaderboard instance */
+	/* Difficulty and time window of this leaderboard instance */
 	private int difficulty;
+	private String window;
 	private LeaderboardAdapter adapter;
 
 	/**
-	 * Creates a Leaderboard List Fragment and sets the {@link LeaderboardAdapter}
+	 * Reads the difficulty and time window of this leaderboard from its arguments
 	 *
-	 * @param savedInstanceState Bundle of saved state used for fragment re-initialization
+	 * @param savedInstanceState  Unused parameter inherited from superclass
 	 * @see Constants
 	 */
 	@Override
-	public void onActivityCreated(Bundle savedInstanceState) {
-		super.onActivityCreated(savedInstanceState);
+	public void onCreate(Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
 		difficulty = Constants.DIFFICULTY_EASY;
+		window = LeaderboardContract.Scores.WINDOW_ALL_TIME;
 
 		Bundle bundle = getArguments();
 		if (bundle != null) {
 			difficulty = bundle.getInt(LeaderboardActivity.BUNDLE_DIFFICULTY);
+			window = bundle.getString(LeaderboardActivity.BUNDLE_WINDOW, window);
 		}
+	}
+
+	/**
+	 * Sets the {@link LeaderboardAdapter} and starts loading the leaderboard
+	 * <p>
+	 *     After a configuration change the existing loader is reconnected, so its leaderboard is
+	 *     displayed without querying again.
+	 * </p>
+	 *
+	 * @param savedInstanceState Bundle of saved state used for fragment re-initialization
+	 */
+	@Override
+	public void onActivityCreated(Bundle savedInstanceState) {
+		super.onActivityCreated(savedInstanceState);
 
-		adapter = new LeaderboardAdapter(getActivity(), null);
-		setListAdapter(adapter);
-		getLoaderManager().initLoader(0, null, this);
+		adapter = new LeaderboardAdapter(getActivity());
+		RecyclerView list = getView().findViewById(R.id.leaderboard_list);
+		list.setHasFixedSize(true);
+		list.setLayoutManager(new LinearLayoutManager(getActivity()));
+		/* Re-ranked rows are rebound in place rather than cross-faded */
+		((SimpleItemAnimator) list.getItemAnimator()).setSupportsChangeAnimations(false);
+		list.setAdapter(adapter);
+		if (BuildConfig.DEBUG) {
+			ScrollJankMonitor.attach(list, TAG + " " + difficulty);
+		}
+		getLoaderManager().initLoader(loaderId(window), null, this);
+	}
+
+	/**
+	 * Changes the time window of this leaderboard
+	 * <p>
+	 *     Each window has its own loader, which stays loaded after switching away, so switching
+	 *     back to a window displays it without querying again. The window is stored in the
+	 *     arguments of this fragment so that it is restored after a configuration change.
+	 * </p>
+	 *
+	 * @param window  The time window to display. See
+	 *                {@link LeaderboardContract.Scores#QUERY_PARAMETER_WINDOW} for values.
+	 */
+	void setWindow(String window) {
+		if (window.equals(this.window)) {
+			return;
+		}
+		this.window = window;
+		Bundle bundle = getArguments();
+		if (bundle != null) {
+			bundle.putString(LeaderboardActivity.BUNDLE_WINDOW, window);
+		}
+
+		if (adapter != null) {
+			int id = loaderId(window);
+			if (getLoaderManager().getLoader(id) == null) {
+				adapter.setEntries(null);
+			}
+			getLoaderManager().initLoader(id, null, this);
+		}
+	}
+
+	/**
+	 * Maps a time window to the id of its loader
+	 *
+	 * @param window  The time window
+	 * @return  The loader id
+	 */
+	private static int loaderId(String window) {
+		switch (window) {
+			case LeaderboardContract.Scores.WINDOW_DAY:
+				return 1;
+			case LeaderboardContract.Scores.WINDOW_WEEK:
+				return 2;
+			default:
+				return 0;
+		}
 	}
 
 	/**
@@ -69,52 +145,42 @@ public class LeaderboardListFragment extends ListFragment
 		return inflater.inflate(R.layout.leaderboard_list_fragment, group, false);
 	}
 
-	/* Projection used to query Leaderboard Provider */
-	private final String[] LEADERBOARD_PROJECTION = {
-			LeaderboardContract.Scores._ID,
-			LeaderboardContract.Scores.SCORE,
-			LeaderboardContract.Scores.DATE_TIME
-	};
-
 	/**
-	 * Creates a Cursor Loader containing a query to the
-	 * {@link com.holman.andrew.memorymatch.provider.LeaderboardProvider}
+	 * Creates a {@link LeaderboardLoader} for the difficulty and time window of this leaderboard
 	 *
 	 * @param id  Unused parameter inherited from superclass
 	 * @param args  Unused parameter inherited from superclass
-	 * @return  A Loader of type Cursor holding the results of this query
-	 * @see LeaderboardContract
+	 * @return  A Loader holding the leaderboard
 	 */
 	@Override
-	public Loader<Cursor> onCreateLoader(int id, Bundle args) {
-		Uri uri = LeaderboardContract.Scores.SCORES_CONTENT_URI;
-
-		String selection = LeaderboardContract.Scores.DIFFICULTY + " = ?";
-		String[] selectionArgs = new String[]{Integer.toString(difficulty)};
-		return new CursorLoader(getActivity(), uri,
-				LEADERBOARD_PROJECTION, selection,
-				selectionArgs, null);
+	public Loader<List<LeaderboardEntry>> onCreateLoader(int id, Bundle args) {
+		return new LeaderboardLoader(getActivity(), difficulty, window);
 	}
 
 	/**
-	 * Swaps a new Cursor into the {@link LeaderboardAdapter} when the previous Cursor is done
-	 * loading
+	 * Swaps a newly loaded leaderboard into the {@link LeaderboardAdapter}
 	 *
-	 * @param loader  The relevant Cursor Loader
-	 * @param data  The next Cursor to add to the {@link LeaderboardAdapter}
+	 * @param loader  The relevant Leaderboard Loader
+	 * @param data  The leaderboard ordered by rank
 	 */
 	@Override
-	public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-		adapter.swapCursor(data);
+	public void onLoadFinished(Loader<List<LeaderboardEntry>> loader,
+			List<LeaderboardEntry> data) {
+		/* Loaders of other windows keep loading in the background */
+		if (loader.getId() == loaderId(window)) {
+			adapter.setEntries(data);
+		}
 	}
 
 	/**
-	 * Resets previous Cursor. Makes all data in that Cursor unavailable
+	 * Clears the displayed leaderboard when its Loader is reset
 	 *
-	 * @param loader  The relevant Cursor Loader
+	 * @param loader  The relevant Leaderboard Loader
 	 */
 	@Override
-	public void onLoaderReset(Loader<Cursor> loader) {
-		adapter.swapCursor(null);
+	public void onLoaderReset(Loader<List<LeaderboardEntry>> loader) {
+		if (loader.getId() == loaderId(window)) {
+			adapter.setEntries(null);
+		}
 	}
 }
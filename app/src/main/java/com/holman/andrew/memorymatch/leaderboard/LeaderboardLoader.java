@@ -0,0 +1,328 @@
+package com.holman.andrew.memorymatch.leaderboard;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.content.AsyncTaskLoader;
+
+import com.holman.andrew.memorymatch.provider.LeaderboardContract;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Loader keeping a single leaderboard up to date with incremental patches
+ * <p>
+ *     The first load queries the whole leaderboard. Afterwards the loader observes
+ *     {@link LeaderboardContract.Scores#SCORES_CONTENT_URI}. When
+ *     {@link com.holman.andrew.memorymatch.provider.LeaderboardProvider} reports changes of
+ *     individual rows, only those rows are queried and patched into a copy of the previous list.
+ *     Changes of the whole table, changes of too many rows at once, or the removal of a row from a
+ *     full leaderboard fall back to querying the whole leaderboard again.
+ * </p>
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+class LeaderboardLoader extends AsyncTaskLoader<List<LeaderboardEntry>> {
+	private static final String TAG = "LeaderboardLoader";
+
+	/* Most changed rows patched individually before the whole leaderboard is queried instead */
+	private static final int PATCH_ROWS_MAX = 20;
+
+	private static final String[] PROJECTION = {
+			LeaderboardContract.Scores._ID,
+			LeaderboardContract.Scores.SCORE,
+			LeaderboardContract.Scores.DATE_TIME
+	};
+
+	/* Selects one row of this leaderboard. Rows outside the window are excluded by the Uri. */
+	private static final String SELECTION_ROW = LeaderboardContract.Scores._ID + " = ? AND "
+			+ LeaderboardContract.Scores.SELECTION_DIFFICULTY;
+
+	private final int difficulty;
+	private final Uri leaderboardUri;
+	private final Uri windowUri;
+
+	private final ContentObserver observer =
+			new ContentObserver(new Handler(Looper.getMainLooper())) {
+				@Override
+				public boolean deliverSelfNotifications() {
+					return true;
+				}
+
+				@Override
+				public void onChange(boolean selfChange) {
+					onChange(selfChange, null);
+				}
+
+				@Override
+				public void onChange(boolean selfChange, Uri uri) {
+					onScoresChanged(uri);
+				}
+			};
+
+	private final Object lock = new Object();
+
+	/* State shared with the background thread, guarded by lock */
+	private List<LeaderboardEntry> latest;
+	private final HashSet<Long> changedIds = new HashSet<>();
+	private boolean reloadAll;
+
+	/* The list last delivered to the client. Only accessed on the main thread. */
+	private List<LeaderboardEntry> delivered;
+
+	/**
+	 * Constructor
+	 *
+	 * @param context  The current Context
+	 * @param difficulty  The difficulty of the leaderboard. See
+	 *                    {@link com.holman.andrew.memorymatch.Constants} for values.
+	 * @param window  The time window of the leaderboard. See
+	 *                {@link LeaderboardContract.Scores#QUERY_PARAMETER_WINDOW} for values.
+	 */
+	LeaderboardLoader(Context context, int difficulty, String window) {
+		super(context);
+		this.difficulty = difficulty;
+		windowUri = LeaderboardContract.Scores.SCORES_CONTENT_URI.buildUpon()
+				.appendQueryParameter(LeaderboardContract.Scores.QUERY_PARAMETER_WINDOW, window)
+				.build();
+		leaderboardUri = windowUri.buildUpon()
+				.appendQueryParameter(LeaderboardContract.Scores.QUERY_PARAMETER_LIMIT,
+						Integer.toString(LeaderboardContract.Scores.LEADERBOARD_SIZE))
+				.build();
+	}
+
+	/**
+	 * Queries or patches the leaderboard on a background thread
+	 *
+	 * @return  The current leaderboard, ordered by rank
+	 */
+	@Override
+	public List<LeaderboardEntry> loadInBackground() {
+		List<LeaderboardEntry> previous;
+		Long[] ids;
+		synchronized (lock) {
+			previous = latest;
+			ids = changedIds.toArray(new Long[changedIds.size()]);
+			changedIds.clear();
+			if (reloadAll || ids.length > PATCH_ROWS_MAX) {
+				previous = null;
+			}
+			reloadAll = false;
+		}
+
+		List<LeaderboardEntry> entries = (previous == null) ? null : patch(previous, ids);
+		if (entries == null) {
+			entries = queryLeaderboard();
+		}
+
+		synchronized (lock) {
+			latest = entries;
+		}
+		return entries;
+	}
+
+	/**
+	 * Delivers a loaded leaderboard to the client if the loader is started
+	 *
+	 * @param entries  The loaded leaderboard
+	 */
+	@Override
+	public void deliverResult(List<LeaderboardEntry> entries) {
+		if (isReset()) {
+			return;
+		}
+		delivered = entries;
+		if (isStarted()) {
+			super.deliverResult(entries);
+		}
+	}
+
+	/**
+	 * Delivers the current leaderboard, registering for changes on the first start
+	 */
+	@Override
+	protected void onStartLoading() {
+		if (delivered != null) {
+			deliverResult(delivered);
+		} else {
+			getContext().getContentResolver().registerContentObserver(
+					LeaderboardContract.Scores.SCORES_CONTENT_URI, true, observer);
+		}
+		if (takeContentChanged() || delivered == null) {
+			forceLoad();
+		}
+	}
+
+	@Override
+	protected void onStopLoading() {
+		cancelLoad();
+	}
+
+	/**
+	 * Unregisters from changes and releases the loaded leaderboard
+	 */
+	@Override
+	protected void onReset() {
+		super.onReset();
+		onStopLoading();
+		getContext().getContentResolver().unregisterContentObserver(observer);
+		delivered = null;
+		synchronized (lock) {
+			latest = null;
+			changedIds.clear();
+			reloadAll = false;
+		}
+	}
+
+	/**
+	 * Records a change reported by the provider and schedules a load
+	 *
+	 * @param uri  The Uri of the changed row, the Uri of the whole table, or null if unknown
+	 */
+	private void onScoresChanged(Uri uri) {
+		synchronized (lock) {
+			long id = parseRowId(uri);
+			if (id == -1) {
+				reloadAll = true;
+			} else {
+				changedIds.add(id);
+			}
+		}
+		onContentChanged();
+	}
+
+	/**
+	 * Extracts the row id from the Uri of a single score
+	 *
+	 * @param uri  The changed Uri, may be null
+	 * @return  The row id, or -1 if the Uri does not identify a single score
+	 */
+	private static long parseRowId(Uri uri) {
+		if (uri == null) {
+			return -1;
+		}
+		List<String> segments = uri.getPathSegments();
+		List<String> table = LeaderboardContract.Scores.SCORES_CONTENT_URI.getPathSegments();
+		if (segments.size() != table.size() + 1 || !segments.subList(0, table.size()).equals(table)) {
+			return -1;
+		}
+		try {
+			return ContentUris.parseId(uri);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Applies changed rows to a copy of the previous leaderboard
+	 *
+	 * @param previous  The previous leaderboard
+	 * @param ids  The ids of the changed rows
+	 * @return  The patched leaderboard, or null if the whole leaderboard must be queried
+	 */
+	private List<LeaderboardEntry> patch(List<LeaderboardEntry> previous, Long[] ids) {
+		ArrayList<LeaderboardEntry> entries = new ArrayList<>(previous);
+		boolean full = previous.size() >= LeaderboardContract.Scores.LEADERBOARD_SIZE;
+
+		for (long id : ids) {
+			boolean removed = false;
+			for (int i = 0; i < entries.size(); i++) {
+				if (entries.get(i).id == id) {
+					entries.remove(i);
+					removed = true;
+					break;
+				}
+			}
+
+			LeaderboardEntry entry = queryRow(id);
+			if (entry == null) {
+				if (removed && full) {
+					/* The row ranked directly below the leaderboard is not known */
+					return null;
+				}
+				continue;
+			}
+
+			int index = entries.size();
+			while (index > 0 && entry.ranksAbove(entries.get(index - 1))) {
+				index--;
+			}
+			if (index < LeaderboardContract.Scores.LEADERBOARD_SIZE) {
+				entries.add(index, entry);
+			} else if (removed) {
+				/* A cached row fell below the leaderboard; its replacement is not known */
+				return null;
+			}
+		}
+
+		while (entries.size() > LeaderboardContract.Scores.LEADERBOARD_SIZE) {
+			entries.remove(entries.size() - 1);
+		}
+		return Collections.unmodifiableList(entries);
+	}
+
+	/**
+	 * Queries every row of the leaderboard
+	 *
+	 * @return  The leaderboard, ordered by rank
+	 */
+	private List<LeaderboardEntry> queryLeaderboard() {
+		Cursor cursor = getContext().getContentResolver().query(leaderboardUri, PROJECTION,
+				LeaderboardContract.Scores.SELECTION_DIFFICULTY,
+				new String[]{Integer.toString(difficulty)}, null);
+		ArrayList<LeaderboardEntry> entries = new ArrayList<>();
+		if (cursor != null) {
+			try {
+				/* Resolve the columns once per Cursor rather than once per row */
+				int idColumn = cursor.getColumnIndexOrThrow(LeaderboardContract.Scores._ID);
+				int scoreColumn = cursor.getColumnIndexOrThrow(LeaderboardContract.Scores.SCORE);
+				int dateColumn = cursor.getColumnIndexOrThrow(LeaderboardContract.Scores.DATE_TIME);
+				entries.ensureCapacity(cursor.getCount());
+				while (cursor.moveToNext()) {
+					entries.add(new LeaderboardEntry(cursor.getLong(idColumn),
+							cursor.getInt(scoreColumn), cursor.getString(dateColumn)));
+				}
+			} finally {
+				cursor.close();
+			}
+		}
+		return Collections.unmodifiableList(entries);
+	}
+
+	/**
+	 * Queries a single row if it belongs to this leaderboard
+	 *
+	 * @param id  The row id of the score
+	 * @return  The row, or null if it does not exist or belongs to another leaderboard
+	 */
+	private LeaderboardEntry queryRow(long id) {
+		ContentResolver resolver = getContext().getContentResolver();
+		Cursor cursor = resolver.query(windowUri, PROJECTION, SELECTION_ROW,
+				new String[]{Long.toString(id), Integer.toString(difficulty)}, null);
+		if (cursor == null) {
+			return null;
+		}
+		try {
+			if (!cursor.moveToFirst()) {
+				return null;
+			}
+			return new LeaderboardEntry(
+					cursor.getLong(cursor.getColumnIndexOrThrow(LeaderboardContract.Scores._ID)),
+					cursor.getInt(cursor.getColumnIndexOrThrow(LeaderboardContract.Scores.SCORE)),
+					cursor.getString(
+							cursor.getColumnIndexOrThrow(LeaderboardContract.Scores.DATE_TIME)));
+		} finally {
+			cursor.close();
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package com.holman.andrew.memorymatch.leaderboard;
+
+import android.os.Bundle;
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentManager;
+import android.support.v4.app.FragmentPagerAdapter;
+import android.view.ViewGroup;
+
+import com.holman.andrew.memorymatch.Constants;
+
+/**
+ * Pager Adapter holding one {@link LeaderboardListFragment} per difficulty
+ * <p>
+ *     The page position of a leaderboard is its difficulty. Both pages are kept resident by the
+ *     ViewPager, so their loaders run in parallel when the activity starts and stay loaded while
+ *     the other difficulty is displayed. Pages restored by the FragmentManager after a
+ *     configuration change keep their loaders.
+ * </p>
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+class LeaderboardPagerAdapter extends FragmentPagerAdapter {
+	private static final String TAG = "LeaderboardPagerAdapter";
+
+	/**
+	 * Number of pages, one per difficulty
+	 */
+	static final int PAGE_COUNT = 2;
+
+	private final LeaderboardListFragment[] pages = new LeaderboardListFragment[PAGE_COUNT];
+
+	/* Time window displayed by every page */
+	private String window;
+
+	/**
+	 * Constructor
+	 *
+	 * @param fragmentManager  The FragmentManager of the hosting activity
+	 * @param window  The time window to display. See
+	 *                {@link com.holman.andrew.memorymatch.provider.LeaderboardContract.Scores#QUERY_PARAMETER_WINDOW}
+	 *                for values.
+	 */
+	LeaderboardPagerAdapter(FragmentManager fragmentManager, String window) {
+		super(fragmentManager);
+		this.window = window;
+	}
+
+	/**
+	 * Changes the time window displayed by every page
+	 *
+	 * @param window  The time window to display
+	 */
+	void setWindow(String window) {
+		this.window = window;
+		for (LeaderboardListFragment page : pages) {
+			if (page != null) {
+				page.setWindow(window);
+			}
+		}
+	}
+
+	@Override
+	public int getCount() {
+		return PAGE_COUNT;
+	}
+
+	/**
+	 * Creates the leaderboard of a difficulty
+	 * <p>
+	 *     Only called when the FragmentManager does not already hold the page.
+	 * </p>
+	 *
+	 * @param position  The page position, which is the difficulty. See {@link Constants} for
+	 *                  values.
+	 * @return  The new LeaderboardListFragment
+	 */
+	@Override
+	public Fragment getItem(int position) {
+		Bundle args = new Bundle();
+		args.putInt(LeaderboardActivity.BUNDLE_DIFFICULTY, position);
+		args.putString(LeaderboardActivity.BUNDLE_WINDOW, window);
+
+		LeaderboardListFragment leaderboard = new LeaderboardListFragment();
+		leaderboard.setArguments(args);
+		return leaderboard;
+	}
+
+	/**
+	 * Tracks the page at a position, whether it was created or restored
+	 *
+	 * @param container  The ViewPager
+	 * @param position  The page position
+	 * @return  The LeaderboardListFragment displayed at the position
+	 */
+	@Override
+	public Object instantiateItem(ViewGroup container, int position) {
+		LeaderboardListFragment page =
+				(LeaderboardListFragment) super.instantiateItem(container, position);
+		pages[position] = page;
+		/* A restored page may have been saved before the window last changed */
+		page.setWindow(window);
+		return page;
+	}
+
+	@Override
+	public void destroyItem(ViewGroup container, int position, Object object) {
+		super.destroyItem(container, position, object);
+		pages[position] = null;
+	}
+}
@@ -0,0 +1,109 @@
+package com.holman.andrew.memorymatch.leaderboard;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
+import android.view.Choreographer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures dropped frames while a RecyclerView scrolls
+ * <p>
+ *     While the list is scrolling, every frame is timed through {@link Choreographer}. A frame
+ *     arriving later than one refresh interval after the previous one dropped the frames in between.
+ *     When scrolling stops, the number of frames, the number of janky frames, and the total number
+ *     of dropped frames are logged.
+ * </p>
+ * <p>
+ *     Choreographer requires API 16, so nothing is measured on older devices.
+ * </p>
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+class ScrollJankMonitor extends RecyclerView.OnScrollListener
+		implements Choreographer.FrameCallback {
+	private static final String TAG = "ScrollJankMonitor";
+
+	/* Refresh interval of a 60 Hz display */
+	private static final long FRAME_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1) / 60;
+
+	private final String name;
+
+	private boolean scrolling;
+	private long lastFrameNanos;
+	private int frames;
+	private int jankyFrames;
+	private int droppedFrames;
+
+	/**
+	 * Attaches a monitor to a RecyclerView
+	 *
+	 * @param view  The RecyclerView to measure
+	 * @param name  Name identifying the list in the log
+	 */
+	static void attach(RecyclerView view, String name) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+			view.addOnScrollListener(new ScrollJankMonitor(name));
+		}
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param name  Name identifying the list in the log
+	 */
+	private ScrollJankMonitor(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Starts timing frames when scrolling starts, and reports when it stops
+	 *
+	 * @param view  The scrolled RecyclerView
+	 * @param newState  The new scroll state
+	 */
+	@Override
+	public void onScrollStateChanged(RecyclerView view, int newState) {
+		if (newState != RecyclerView.SCROLL_STATE_IDLE && !scrolling) {
+			scrolling = true;
+			lastFrameNanos = 0;
+			frames = 0;
+			jankyFrames = 0;
+			droppedFrames = 0;
+			Choreographer.getInstance().postFrameCallback(this);
+		} else if (newState == RecyclerView.SCROLL_STATE_IDLE && scrolling) {
+			scrolling = false;
+			Choreographer.getInstance().removeFrameCallback(this);
+			Log.d(TAG, name + ": " + frames + " frames, " + jankyFrames + " janky, "
+					+ droppedFrames + " dropped");
+		}
+	}
+
+	/**
+	 * Times a frame drawn while scrolling
+	 *
+	 * @param frameTimeNanos  The time the frame started rendering
+	 */
+	@Override
+	public void doFrame(long frameTimeNanos) {
+		if (!scrolling) {
+			return;
+		}
+		if (lastFrameNanos != 0) {
+			frames++;
+			long missed = (frameTimeNanos - lastFrameNanos - FRAME_INTERVAL_NANOS / 2)
+					/ FRAME_INTERVAL_NANOS;
+			if (missed > 0) {
+				jankyFrames++;
+				droppedFrames += missed;
+			}
+		}
+		lastFrameNanos = frameTimeNanos;
+		Choreographer.getInstance().postFrameCallback(this);
+	}
+}
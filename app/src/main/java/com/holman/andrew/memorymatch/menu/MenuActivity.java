@@ -4,20 +4,27 @@ import android.animation.ObjectAnimator;
 import android.animation.PropertyValuesHolder;
 import android.app.ActivityOptions;
 import android.content.Intent;
+import android.database.ContentObserver;
 import android.graphics.Point;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.v7.app.AppCompatActivity;
 import android.transition.Slide;
 import android.view.Gravity;
 import android.view.View;
 import android.view.Window;
 import android.widget.Button;
+import android.widget.TextView;
 
+import com.holman.andrew.memorymatch.Constants;
 import com.holman.andrew.memorymatch.R;
+import com.holman.andrew.memorymatch.game.BoardPool;
 import com.holman.andrew.memorymatch.game.GameActivity;
 import com.holman.andrew.memorymatch.game.RulesActivity;
 import com.holman.andrew.memorymatch.leaderboard.LeaderboardActivity;
+import com.holman.andrew.memorymatch.provider.LeaderboardContract;
+import com.holman.andrew.memorymatch.provider.PlayerProfiles;
 
 /**
  * Activity representing the main menu of the game
@@ -26,7 +33,7 @@ import com.holman.andrew.memorymatch.leaderboard.LeaderboardActivity;
  * </p>
  *
  * @author Andrew Holman
- * @version 2.0
+ * @version 2.1
  * @since 2.0
  */
 public class MenuActivity extends AppCompatActivity {
@@ -39,6 +46,14 @@ public class MenuActivity extends AppCompatActivity {
 	private static Point displaySize;
 	private static final String TAG = "MenuActivity";
 
+	/* Redisplays personal bests once they have been loaded */
+	private final ContentObserver personalBestsObserver = new ContentObserver(new Handler()) {
+		@Override
+		public void onChange(boolean selfChange) {
+			showPersonalBests();
+		}
+	};
+
 	/**
 	 * Initializes the Activity
 	 *
@@ -57,6 +72,9 @@ public class MenuActivity extends AppCompatActivity {
 
 		displaySize = new Point();
 		getWindowManager().getDefaultDisplay().getSize(displaySize);
+
+		/* Shuffles boards while the player picks a difficulty */
+		BoardPool.getInstance();
 	}
 
 	/**
@@ -70,6 +88,11 @@ public class MenuActivity extends AppCompatActivity {
 	public void onResume() {
 		super.onResume();
 
+		getContentResolver().registerContentObserver(
+				LeaderboardContract.PersonalBests.PERSONAL_BESTS_CONTENT_URI, false,
+				personalBestsObserver);
+		showPersonalBests();
+
 		Button newGameButton = findViewById(R.id.newGameButton);
 		Button easyButton = findViewById(R.id.easyButton);
 		Button hardButton = findViewById(R.id.hardButton);
@@ -93,6 +116,47 @@ public class MenuActivity extends AppCompatActivity {
 		newGameAnimator.start();
 	}
 
+	/**
+	 * Stops listening for personal bests while this Activity is not visible
+	 */
+	@Override
+	public void onPause() {
+		super.onPause();
+		getContentResolver().unregisterContentObserver(personalBestsObserver);
+	}
+
+	/**
+	 * Displays the selected player's personal bests
+	 * <p>
+	 *     Reads them from the in-memory {@link PlayerProfiles} cache, so no query runs. Nothing is
+	 *     shown until the cache has been loaded.
+	 * </p>
+	 */
+	private void showPersonalBests() {
+		TextView bestsView = findViewById(R.id.personalBests);
+		if (!PlayerProfiles.isLoaded()) {
+			bestsView.setVisibility(View.INVISIBLE);
+			return;
+		}
+		long player = PlayerProfiles.getCurrentPlayer(this);
+		bestsView.setText(getString(R.string.personal_bests_fmt,
+				formatPersonalBest(PlayerProfiles.getPersonalBest(player, Constants.DIFFICULTY_EASY)),
+				formatPersonalBest(PlayerProfiles.getPersonalBest(player, Constants.DIFFICULTY_HARD))));
+		bestsView.setVisibility(View.VISIBLE);
+	}
+
+	/**
+	 * Formats a personal best for display
+	 *
+	 * @param best  The personal best, or {@link PlayerProfiles#NO_PERSONAL_BEST}
+	 * @return  The displayed text
+	 */
+	private String formatPersonalBest(int best) {
+		return (best == PlayerProfiles.NO_PERSONAL_BEST)
+				? getString(R.string.no_personal_best)
+				: Integer.toString(best);
+	}
+
 	/**
 	 * Hides the New Game Button and displays the Easy and Hard difficulty buttons
 	 * <p>
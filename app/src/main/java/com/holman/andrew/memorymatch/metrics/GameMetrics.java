@@ -0,0 +1,96 @@
+package com.holman.andrew.memorymatch.metrics;
+
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+/**
+ * Latency histograms of the game's interactive paths
+ * <p>
+ *     Each path is measured from the input or timer event that starts it until the frame showing
+ *     its result is about to be drawn, so that the time spent waiting for layout and the next
+ *     frame is included. Debug builds expose the histograms through
+ *     {@code content://com.holman.andrew.memorymatch.metrics/latency}.
+ * </p>
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+public final class GameMetrics {
+	private static final String TAG = "GameMetrics";
+
+	/**
+	 * From a tile being clicked until its symbol is drawn
+	 */
+	public static final LatencyHistogram TILE_FLIP = new LatencyHistogram("tile_flip");
+
+	/**
+	 * From a pair being selected until the match check runs. Scheduled for 500 ms.
+	 */
+	public static final LatencyHistogram MATCH_CHECK_DELAY =
+			new LatencyHistogram("match_check_delay");
+
+	/**
+	 * From the match check running until the removed or re-flipped pair is drawn
+	 */
+	public static final LatencyHistogram MATCH_RESOLUTION =
+			new LatencyHistogram("match_resolution");
+
+	/**
+	 * From the score changing until it is drawn
+	 */
+	public static final LatencyHistogram SCORE_RENDER = new LatencyHistogram("score_render");
+
+	/**
+	 * From the game activity being created until the board is first drawn
+	 */
+	public static final LatencyHistogram GAME_START = new LatencyHistogram("game_start");
+
+	/**
+	 * From the game activity being recreated until the saved game is first drawn
+	 */
+	public static final LatencyHistogram GAME_RESTORE = new LatencyHistogram("game_restore");
+
+	/**
+	 * From "play again" being pressed on the leaderboard until the next game is first drawn
+	 */
+	public static final LatencyHistogram REMATCH = new LatencyHistogram("rematch");
+
+	private static final LatencyHistogram[] ALL = {TILE_FLIP, MATCH_CHECK_DELAY, MATCH_RESOLUTION,
+			SCORE_RENDER, GAME_START, GAME_RESTORE, REMATCH};
+
+	private GameMetrics() {
+	}
+
+	/**
+	 * Retrieves every game histogram
+	 *
+	 * @return  A new array holding the histograms
+	 */
+	public static LatencyHistogram[] getAll() {
+		return ALL.clone();
+	}
+
+	/**
+	 * Records a latency ending when a View is next drawn
+	 * <p>
+	 *     Must be called on the UI thread after the View has been changed.
+	 * </p>
+	 *
+	 * @param view  The changed View
+	 * @param histogram  The histogram to record into
+	 * @param startNanos  Start of the event, from {@link System#nanoTime()}
+	 */
+	public static void recordOnNextDraw(final View view, final LatencyHistogram histogram,
+			final long startNanos) {
+		view.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+			@Override
+			public boolean onPreDraw() {
+				histogram.recordSince(startNanos);
+				/* The observer the listener was added to is replaced when the View is attached */
+				view.getViewTreeObserver().removeOnPreDrawListener(this);
+				return true;
+			}
+		});
+	}
+}
@@ -0,0 +1,165 @@
+package com.holman.andrew.memorymatch.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies
+ * <p>
+ *     Latencies are counted in microsecond buckets on a log-linear scale: each power of two is
+ *     split into {@link #SUB_BUCKETS} buckets, so a percentile is reported within 12.5% of the
+ *     recorded latency. Recording is a handful of atomic increments without allocation or locking,
+ *     so it can be called from the UI thread and any worker thread on every event. Readers see
+ *     each bucket's count atomically, but not a snapshot of every bucket at once.
+ * </p>
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+public final class LatencyHistogram {
+	private static final String TAG = "LatencyHistogram";
+
+	/* Buckets per power of two. Must be a power of two. */
+	private static final int SUB_BUCKETS = 8;
+	private static final int SUB_BUCKET_BITS = 3;
+
+	/* Enough buckets to count latencies of up to 2^31 microseconds */
+	private static final int BUCKET_COUNT = (31 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+	private final String name;
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong totalMicros = new AtomicLong();
+	private final AtomicLong maxMicros = new AtomicLong();
+
+	/**
+	 * Constructor
+	 *
+	 * @param name  Name identifying the histogram in reports
+	 */
+	public LatencyHistogram(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Records the latency of an event that started at the given time and ended now
+	 *
+	 * @param startNanos  Start of the event, from {@link System#nanoTime()}
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Records a latency
+	 *
+	 * @param nanos  The latency in nanoseconds. Negative latencies are counted as zero.
+	 */
+	public void record(long nanos) {
+		long micros = (nanos > 0) ? TimeUnit.NANOSECONDS.toMicros(nanos) : 0;
+		counts.incrementAndGet(bucketOf(micros));
+		count.incrementAndGet();
+		totalMicros.addAndGet(micros);
+
+		long max = maxMicros.get();
+		while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+			max = maxMicros.get();
+		}
+	}
+
+	/**
+	 * Discards every recorded latency
+	 */
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			counts.set(i, 0);
+		}
+		count.set(0);
+		totalMicros.set(0);
+		maxMicros.set(0);
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getMaxMicros() {
+		return maxMicros.get();
+	}
+
+	/**
+	 * Retrieves the mean of the recorded latencies
+	 *
+	 * @return  The mean in microseconds, or 0 if nothing was recorded
+	 */
+	public long getMeanMicros() {
+		long recorded = count.get();
+		return (recorded == 0) ? 0 : totalMicros.get() / recorded;
+	}
+
+	/**
+	 * Retrieves a percentile of the recorded latencies
+	 *
+	 * @param percentile  The percentile, between 0 and 100
+	 * @return  The upper bound of the bucket holding the percentile in microseconds, capped at the
+	 *          maximum, or 0 if nothing was recorded
+	 */
+	public long getPercentileMicros(double percentile) {
+		long[] snapshot = new long[BUCKET_COUNT];
+		long recorded = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			snapshot[i] = counts.get(i);
+			recorded += snapshot[i];
+		}
+		if (recorded == 0) {
+			return 0;
+		}
+
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * recorded));
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += snapshot[i];
+			if (seen >= rank) {
+				return Math.min(lowerBound(i + 1) - 1, maxMicros.get());
+			}
+		}
+		return maxMicros.get();
+	}
+
+	/**
+	 * Maps a latency to its bucket
+	 *
+	 * @param micros  The latency in microseconds
+	 * @return  The bucket index
+	 */
+	private static int bucketOf(long micros) {
+		if (micros < SUB_BUCKETS) {
+			return (int) micros;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		int bucket = (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+		return Math.min(bucket, BUCKET_COUNT - 1);
+	}
+
+	/**
+	 * Retrieves the smallest latency counted by a bucket
+	 *
+	 * @param bucket  The bucket index
+	 * @return  The latency in microseconds
+	 */
+	private static long lowerBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long subBucket = bucket % SUB_BUCKETS;
+		return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+	}
+}
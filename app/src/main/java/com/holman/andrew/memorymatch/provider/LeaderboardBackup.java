@@ -0,0 +1,505 @@
+package com.holman.andrew.memorymatch.provider;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Exports and imports the recorded scores of {@link LeaderboardProvider}
+ * <p>
+ *     Scores are written either as CSV or in a compact binary format. Both directions stream one
+ *     row at a time through a fixed-size buffer and a {@link FileChannel}, so memory use does not
+ *     depend on the number of scores. Exports read straight from the provider's Cursor. Imports
+ *     are inserted {@link #IMPORT_BATCH_SIZE} rows at a time through
+ *     {@link ContentResolver#bulkInsert(android.net.Uri, ContentValues[])}, which runs each batch
+ *     as a single transaction and skips scores that are already recorded.
+ * </p>
+ * <p>
+ *     Row ids are not exported, so imported scores receive new ids. Each score keeps the id of the
+ *     {@link LeaderboardContract.Players} profile that recorded it. Files written before player
+ *     profiles existed are still read, their scores going to the default player. Both methods
+ *     perform disk I/O and must not be called on the main thread.
+ * </p>
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+public final class LeaderboardBackup {
+	private static final String TAG = "LeaderboardBackup";
+
+	/**
+	 * Comma separated values with a header row
+	 */
+	public static final int FORMAT_CSV = 0;
+
+	/**
+	 * Compact big-endian binary records
+	 */
+	public static final int FORMAT_BINARY = 1;
+
+	/* Number of rows inserted per transaction while importing */
+	private static final int IMPORT_BATCH_SIZE = 500;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/* Binary header: "MMLB" followed by a version byte */
+	private static final int BINARY_MAGIC = 0x4D4D4C42;
+	private static final byte BINARY_VERSION = 2;
+
+	/* Version written before player profiles, whose records have no player */
+	private static final byte BINARY_VERSION_NO_PLAYER = 1;
+
+	/* Binary record: null flags, difficulty, score, timestamp, player, and date length */
+	private static final int BINARY_RECORD_SIZE = 1 + 4 + 4 + 8 + 8 + 2;
+	private static final int BINARY_RECORD_SIZE_NO_PLAYER = BINARY_RECORD_SIZE - 8;
+	private static final int NULL_DIFFICULTY = 1;
+	private static final int NULL_SCORE = 1 << 1;
+
+	/* Exported columns, in file order */
+	private static final String[] COLUMNS = {
+			LeaderboardContract.Scores.DATE_TIME,
+			LeaderboardContract.Scores.DIFFICULTY,
+			LeaderboardContract.Scores.SCORE,
+			LeaderboardContract.Scores.TIMESTAMP,
+			LeaderboardContract.Scores.PLAYER
+	};
+
+	/* Columns of files written before player profiles, which lack the last exported column */
+	private static final String[] COLUMNS_NO_PLAYER = Arrays.copyOf(COLUMNS, COLUMNS.length - 1);
+
+	private LeaderboardBackup() {
+	}
+
+	/**
+	 * Writes every recorded score to a file
+	 *
+	 * @param context  The current Context
+	 * @param file  The file to write. Any existing contents are replaced.
+	 * @param format  {@link #FORMAT_CSV} or {@link #FORMAT_BINARY}
+	 * @return  The number of exported scores
+	 * @throws IOException  If the file cannot be written
+	 */
+	public static int exportScores(Context context, File file, int format) throws IOException {
+		if (format != FORMAT_CSV && format != FORMAT_BINARY) {
+			throw new IllegalArgumentException("Unknown export format: " + format);
+		}
+
+		Cursor cursor = context.getContentResolver().query(
+				LeaderboardContract.Scores.SCORES_CONTENT_URI, COLUMNS, null, null,
+				LeaderboardContract.Scores._ID + " ASC");
+		if (cursor == null) {
+			throw new IOException("Leaderboard provider is unavailable");
+		}
+
+		FileOutputStream output = null;
+		try {
+			output = new FileOutputStream(file);
+			FileChannel channel = output.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+			int count = (format == FORMAT_CSV)
+					? writeCsv(cursor, channel, buffer)
+					: writeBinary(cursor, channel, buffer);
+			drain(channel, buffer);
+			channel.force(false);
+			return count;
+		} finally {
+			cursor.close();
+			if (output != null) {
+				output.close();
+			}
+		}
+	}
+
+	/**
+	 * Inserts the scores held by a file written by {@link #exportScores(Context, File, int)}
+	 * <p>
+	 *     The format is detected from the file's contents. Scores that are already recorded are
+	 *     skipped.
+	 * </p>
+	 *
+	 * @param context  The current Context
+	 * @param file  The file to read
+	 * @return  The number of inserted scores
+	 * @throws IOException  If the file cannot be read or is malformed
+	 */
+	public static int importScores(Context context, File file) throws IOException {
+		FileInputStream input = new FileInputStream(file);
+		try {
+			FileChannel channel = input.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			buffer.limit(0);
+
+			ContentResolver resolver = context.getContentResolver();
+			if (fill(channel, buffer, 4) && buffer.getInt(buffer.position()) == BINARY_MAGIC) {
+				return readBinary(resolver, channel, buffer);
+			}
+			return readCsv(resolver, channel, buffer);
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Writes a header row followed by one line per score
+	 *
+	 * @return  The number of written scores
+	 */
+	private static int writeCsv(Cursor cursor, FileChannel channel, ByteBuffer buffer)
+			throws IOException {
+		StringBuilder line = new StringBuilder();
+		for (int i = 0; i < COLUMNS.length; i++) {
+			line.append(i == 0 ? "" : ",").append(COLUMNS[i]);
+		}
+		put(channel, buffer, line.append('\n').toString().getBytes(UTF_8));
+
+		int count = 0;
+		while (cursor.moveToNext()) {
+			line.setLength(0);
+			if (!cursor.isNull(0)) {
+				/* Dates are always quoted so that an empty date is told apart from a missing one */
+				line.append('"').append(cursor.getString(0).replace("\"", "\"\"")).append('"');
+			}
+			line.append(',');
+			if (!cursor.isNull(1)) {
+				line.append(cursor.getInt(1));
+			}
+			line.append(',');
+			if (!cursor.isNull(2)) {
+				line.append(cursor.getInt(2));
+			}
+			line.append(',').append(cursor.getLong(3))
+					.append(',').append(cursor.getLong(4)).append('\n');
+			put(channel, buffer, line.toString().getBytes(UTF_8));
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Writes the binary header followed by one record per score
+	 *
+	 * @return  The number of written scores
+	 */
+	private static int writeBinary(Cursor cursor, FileChannel channel, ByteBuffer buffer)
+			throws IOException {
+		buffer.putInt(BINARY_MAGIC).put(BINARY_VERSION);
+
+		int count = 0;
+		while (cursor.moveToNext()) {
+			byte[] date = cursor.isNull(0) ? null : cursor.getString(0).getBytes(UTF_8);
+			if (date != null && date.length > Short.MAX_VALUE) {
+				throw new IOException("Score date is too long to export");
+			}
+			int length = (date == null) ? 0 : date.length;
+			if (buffer.remaining() < BINARY_RECORD_SIZE + length) {
+				drain(channel, buffer);
+			}
+
+			int nulls = (cursor.isNull(1) ? NULL_DIFFICULTY : 0)
+					| (cursor.isNull(2) ? NULL_SCORE : 0);
+			buffer.put((byte) nulls)
+					.putInt(cursor.getInt(1))
+					.putInt(cursor.getInt(2))
+					.putLong(cursor.getLong(3))
+					.putLong(cursor.getLong(4))
+					.putShort((short) (date == null ? -1 : length));
+			if (date != null) {
+				buffer.put(date);
+			}
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Reads CSV rows and inserts them in batches
+	 *
+	 * @return  The number of inserted scores
+	 */
+	private static int readCsv(ContentResolver resolver, FileChannel channel, ByteBuffer buffer)
+			throws IOException {
+		Importer importer = new Importer(resolver);
+		String[] fields = new String[COLUMNS.length];
+		/* Set by the header, as older files have fewer columns */
+		int columns = fields.length;
+		byte[] field = new byte[64];
+		int length = 0;
+		int column = 0;
+		int row = 0;
+		boolean inQuotes = false;
+		boolean wasQuoted = false;
+
+		while (fill(channel, buffer, 1)) {
+			byte b = buffer.get();
+			if (inQuotes) {
+				if (b != '"') {
+					field = append(field, length++, b);
+				} else if (fill(channel, buffer, 1) && buffer.get(buffer.position()) == '"') {
+					/* An escaped quote */
+					buffer.get();
+					field = append(field, length++, b);
+				} else {
+					inQuotes = false;
+				}
+			} else if (b == '"') {
+				inQuotes = true;
+				wasQuoted = true;
+			} else if (b == ',' || b == '\n') {
+				if (column == fields.length) {
+					throw new IOException("Too many columns on line " + (row + 1));
+				}
+				fields[column++] = (length == 0 && !wasQuoted)
+						? null
+						: new String(field, 0, length, UTF_8);
+				length = 0;
+				wasQuoted = false;
+
+				if (b == '\n') {
+					if (row == 0) {
+						columns = checkHeader(fields, column);
+					} else if (column != columns) {
+						throw new IOException("Wrong number of columns on line " + (row + 1));
+					} else {
+						importer.add(toValues(fields, columns, row + 1));
+					}
+					column = 0;
+					row++;
+				}
+			} else if (b != '\r') {
+				field = append(field, length++, b);
+			}
+		}
+
+		if (inQuotes || column != 0 || length != 0) {
+			throw new IOException("Unterminated line " + (row + 1));
+		}
+		return importer.finish();
+	}
+
+	/**
+	 * Reads binary records and inserts them in batches
+	 *
+	 * @return  The number of inserted scores
+	 */
+	private static int readBinary(ContentResolver resolver, FileChannel channel, ByteBuffer buffer)
+			throws IOException {
+		buffer.getInt();
+		byte version = fill(channel, buffer, 1) ? buffer.get() : 0;
+		if (version != BINARY_VERSION && version != BINARY_VERSION_NO_PLAYER) {
+			throw new IOException("Unsupported leaderboard export version");
+		}
+		boolean hasPlayer = version != BINARY_VERSION_NO_PLAYER;
+
+		Importer importer = new Importer(resolver);
+		byte[] date = new byte[64];
+		while (fill(channel, buffer,
+				hasPlayer ? BINARY_RECORD_SIZE : BINARY_RECORD_SIZE_NO_PLAYER)) {
+			int nulls = buffer.get();
+			int difficulty = buffer.getInt();
+			int score = buffer.getInt();
+			long timestamp = buffer.getLong();
+			long player = hasPlayer ? buffer.getLong() : LeaderboardSchema.DEFAULT_PLAYER_ID;
+			int length = buffer.getShort();
+
+			ContentValues values = new ContentValues();
+			if (length >= 0) {
+				if (!fill(channel, buffer, length)) {
+					throw new IOException("Truncated leaderboard export");
+				}
+				if (date.length < length) {
+					date = new byte[length];
+				}
+				buffer.get(date, 0, length);
+				values.put(LeaderboardContract.Scores.DATE_TIME,
+						new String(date, 0, length, UTF_8));
+			}
+			if ((nulls & NULL_DIFFICULTY) == 0) {
+				values.put(LeaderboardContract.Scores.DIFFICULTY, difficulty);
+			}
+			if ((nulls & NULL_SCORE) == 0) {
+				values.put(LeaderboardContract.Scores.SCORE, score);
+			}
+			values.put(LeaderboardContract.Scores.TIMESTAMP, timestamp);
+			values.put(LeaderboardContract.Scores.PLAYER, player);
+			importer.add(values);
+		}
+
+		if (buffer.hasRemaining()) {
+			throw new IOException("Truncated leaderboard export");
+		}
+		return importer.finish();
+	}
+
+	/**
+	 * Verifies that a CSV header row names the exported columns, or those exported before
+	 * player profiles
+	 *
+	 * @param fields  The fields of the header row
+	 * @param count  The number of fields in the header row
+	 * @return  The number of columns of every following row
+	 * @throws IOException  If the header does not match
+	 */
+	private static int checkHeader(String[] fields, int count) throws IOException {
+		String[] header = Arrays.copyOf(fields, count);
+		if (!Arrays.equals(header, COLUMNS) && !Arrays.equals(header, COLUMNS_NO_PLAYER)) {
+			throw new IOException("Unrecognized leaderboard export header");
+		}
+		return count;
+	}
+
+	/**
+	 * Converts the fields of a CSV row to the values of a score
+	 *
+	 * @param fields  The fields of the row
+	 * @param columns  The number of fields, fewer than {@link #COLUMNS} if the file has no player
+	 *                 column
+	 * @param line  The line number of the row, for error messages
+	 * @throws IOException  If a numeric field cannot be parsed
+	 */
+	private static ContentValues toValues(String[] fields, int columns, int line)
+			throws IOException {
+		ContentValues values = new ContentValues();
+		try {
+			if (fields[0] != null) {
+				values.put(LeaderboardContract.Scores.DATE_TIME, fields[0]);
+			}
+			if (fields[1] != null) {
+				values.put(LeaderboardContract.Scores.DIFFICULTY, Integer.parseInt(fields[1]));
+			}
+			if (fields[2] != null) {
+				values.put(LeaderboardContract.Scores.SCORE, Integer.parseInt(fields[2]));
+			}
+			/* Scores recorded before timestamps existed are exported with a timestamp of 0 */
+			values.put(LeaderboardContract.Scores.TIMESTAMP,
+					(fields[3] == null) ? 0 : Long.parseLong(fields[3]));
+			values.put(LeaderboardContract.Scores.PLAYER,
+					(columns < COLUMNS.length || fields[4] == null)
+							? LeaderboardSchema.DEFAULT_PLAYER_ID
+							: Long.parseLong(fields[4]));
+		} catch (NumberFormatException e) {
+			throw new IOException("Malformed number on line " + line);
+		}
+		return values;
+	}
+
+	/**
+	 * Appends a byte to a growable array
+	 *
+	 * @return  The array holding the appended byte
+	 */
+	private static byte[] append(byte[] array, int index, byte b) {
+		if (index == array.length) {
+			array = Arrays.copyOf(array, array.length * 2);
+		}
+		array[index] = b;
+		return array;
+	}
+
+	/**
+	 * Copies bytes into the write buffer, writing the buffer to the channel whenever it fills up
+	 */
+	private static void put(FileChannel channel, ByteBuffer buffer, byte[] bytes)
+			throws IOException {
+		int offset = 0;
+		while (offset < bytes.length) {
+			if (!buffer.hasRemaining()) {
+				drain(channel, buffer);
+			}
+			int count = Math.min(buffer.remaining(), bytes.length - offset);
+			buffer.put(bytes, offset, count);
+			offset += count;
+		}
+	}
+
+	/**
+	 * Writes every buffered byte to the channel and clears the buffer for writing
+	 */
+	private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Reads from the channel until the read buffer holds at least the given number of bytes
+	 * <p>
+	 *     The buffer is left ready for reading.
+	 * </p>
+	 *
+	 * @return  False if the channel ended first
+	 */
+	private static boolean fill(FileChannel channel, ByteBuffer buffer, int count)
+			throws IOException {
+		if (buffer.remaining() >= count) {
+			return true;
+		}
+		buffer.compact();
+		try {
+			while (buffer.position() < count) {
+				if (channel.read(buffer) == -1) {
+					return false;
+				}
+			}
+			return true;
+		} finally {
+			buffer.flip();
+		}
+	}
+
+	/**
+	 * Accumulates imported scores and inserts them in fixed-size batches
+	 */
+	private static final class Importer {
+		private final ContentResolver resolver;
+		private final ContentValues[] batch = new ContentValues[IMPORT_BATCH_SIZE];
+		private int size;
+		private int inserted;
+
+		private Importer(ContentResolver resolver) {
+			this.resolver = resolver;
+		}
+
+		private void add(ContentValues values) {
+			batch[size++] = values;
+			if (size == batch.length) {
+				flush();
+			}
+		}
+
+		/**
+		 * Inserts any remaining scores
+		 *
+		 * @return  The total number of inserted scores
+		 */
+		private int finish() {
+			flush();
+			return inserted;
+		}
+
+		private void flush() {
+			if (size == 0) {
+				return;
+			}
+			ContentValues[] values = (size == batch.length) ? batch : Arrays.copyOf(batch, size);
+			inserted += resolver.bulkInsert(LeaderboardContract.Scores.SCORES_CONTENT_URI, values);
+			Arrays.fill(batch, null);
+			size = 0;
+		}
+	}
+}
@@ -24,7 +24,7 @@ public final class LeaderboardContract {
 	 */
 	public static class Scores implements BaseColumns {
 		public static final Uri SCORES_CONTENT_URI =
-				Uri.withAppendedPath(CONTENT_URI, LeaderboardOpenHelper.TABLE_SCORES);
+				Uri.withAppendedPath(CONTENT_URI, LeaderboardSchema.TABLE_SCORES);
 
 		public static final String CONTENT_TYPE =
 				ContentResolver.CURSOR_DIR_BASE_TYPE + "/vnd.com.holman.andrew.leaderboard_scores";
@@ -32,14 +32,221 @@ public final class LeaderboardContract {
 		public static final String CONTENT_ITEM_TYPE =
 				ContentResolver.CURSOR_ITEM_BASE_TYPE + "/vnd.com.holman.andrew.leaderboard_scores";
 
-		public static final String DATE_TIME = LeaderboardOpenHelper.SCORE_DATE_TIME;
+		public static final String DATE_TIME = LeaderboardSchema.SCORE_DATE_TIME;
 
-		public static final String DIFFICULTY = LeaderboardOpenHelper.SCORE_DIFFICULTY;
+		public static final String DIFFICULTY = LeaderboardSchema.SCORE_DIFFICULTY;
 
-		public static final String SCORE = LeaderboardOpenHelper.SCORE_VALUE;
+		public static final String SCORE = LeaderboardSchema.SCORE_VALUE;
 
-		public static final String[] PROJECTION_ALL = {_ID, DATE_TIME, DIFFICULTY, SCORE};
+		/**
+		 * Time the score was recorded, in milliseconds since the epoch. Defaults to the time of
+		 * insertion.
+		 */
+		public static final String TIMESTAMP = LeaderboardSchema.SCORE_TIMESTAMP;
 
-		public static final String SORT_ORDER_DEFAULT = SCORE + " DESC";
+		/**
+		 * Row id of the {@link Players} profile that recorded the score. Defaults to
+		 * {@link Players#DEFAULT_PLAYER_ID}.
+		 */
+		public static final String PLAYER = LeaderboardSchema.SCORE_PLAYER;
+
+		public static final String[] PROJECTION_ALL =
+				{_ID, DATE_TIME, DIFFICULTY, SCORE, TIMESTAMP, PLAYER};
+
+		public static final String SORT_ORDER_DEFAULT = LeaderboardSchema.SORT_ORDER_RANK;
+
+		/**
+		 * Query parameter limiting the number of rows returned by a query
+		 */
+		public static final String QUERY_PARAMETER_LIMIT = "limit";
+
+		/**
+		 * Query parameter restricting a query to the scores recorded within a time window
+		 * <p>
+		 *     One of {@link #WINDOW_DAY}, {@link #WINDOW_WEEK}, or {@link #WINDOW_ALL_TIME}. Days and
+		 *     weeks start at midnight in the device's time zone. Defaults to
+		 *     {@link #WINDOW_ALL_TIME}.
+		 * </p>
+		 */
+		public static final String QUERY_PARAMETER_WINDOW = "window";
+
+		public static final String WINDOW_DAY = "day";
+
+		public static final String WINDOW_WEEK = "week";
+
+		public static final String WINDOW_ALL_TIME = "all";
+
+		/**
+		 * Query parameter marking scores inserted by
+		 * {@link com.holman.andrew.memorymatch.sync.ScoreSync}
+		 * <p>
+		 *     When set to "true", inserted scores were downloaded from the remote leaderboard and are
+		 *     not added to the {@link Outbox}.
+		 * </p>
+		 */
+		public static final String QUERY_PARAMETER_CALLER_IS_SYNC = "caller_is_sync";
+
+		/**
+		 * Number of rows displayed on a leaderboard
+		 * <p>
+		 *     Queries for the scores of a single difficulty and time window limited to this many rows
+		 *     are answered from an in-memory cache.
+		 * </p>
+		 */
+		public static final int LEADERBOARD_SIZE = 100;
+
+		/**
+		 * Selection used to query the scores of a single difficulty
+		 */
+		public static final String SELECTION_DIFFICULTY = DIFFICULTY + " = ?";
+
+		/**
+		 * Selection used to query a single player's scores of a single difficulty. Takes the
+		 * player id followed by the difficulty.
+		 */
+		public static final String SELECTION_PLAYER_DIFFICULTY =
+				LeaderboardSchema.PLAYER_BOARD_SELECTION;
+	}
+
+	/**
+	 * Content Uri and column Strings for the players table
+	 * <p>
+	 *     Every score belongs to a player profile. Deleting a player also deletes their scores. The
+	 *     default player, which holds every score recorded before profiles existed, cannot be
+	 *     deleted.
+	 * </p>
+	 */
+	public static class Players implements BaseColumns {
+		public static final Uri PLAYERS_CONTENT_URI =
+				Uri.withAppendedPath(CONTENT_URI, LeaderboardSchema.TABLE_PLAYERS);
+
+		public static final String CONTENT_TYPE =
+				ContentResolver.CURSOR_DIR_BASE_TYPE + "/vnd.com.holman.andrew.leaderboard_players";
+
+		public static final String CONTENT_ITEM_TYPE =
+				ContentResolver.CURSOR_ITEM_BASE_TYPE + "/vnd.com.holman.andrew.leaderboard_players";
+
+		public static final String NAME = LeaderboardSchema.PLAYER_NAME;
+
+		/**
+		 * Time the profile was created, in milliseconds since the epoch. Defaults to the time of
+		 * insertion.
+		 */
+		public static final String CREATED = LeaderboardSchema.PLAYER_CREATED;
+
+		public static final String[] PROJECTION_ALL = {_ID, NAME, CREATED};
+
+		public static final String SORT_ORDER_DEFAULT = _ID + " ASC";
+
+		public static final long DEFAULT_PLAYER_ID = LeaderboardSchema.DEFAULT_PLAYER_ID;
+
+		/**
+		 * Player id of scores downloaded from the remote leaderboard, which belong to no local
+		 * profile. No row of the players table has this id.
+		 */
+		public static final long REMOTE_PLAYER_ID = 0;
+	}
+
+	/**
+	 * Content Uri and column Strings for each player's best score on each difficulty
+	 * <p>
+	 *     Personal bests are kept up to date as scores are inserted, deleted, and updated. They are
+	 *     also held in memory by {@link PlayerProfiles#getPersonalBest(long, int)}, and observers of
+	 *     this Uri are notified once that cache has been loaded.
+	 * </p>
+	 */
+	public static class PersonalBests {
+		public static final Uri PERSONAL_BESTS_CONTENT_URI =
+				Uri.withAppendedPath(Players.PLAYERS_CONTENT_URI, "bests");
+
+		public static final String CONTENT_TYPE =
+				ContentResolver.CURSOR_DIR_BASE_TYPE + "/vnd.com.holman.andrew.leaderboard_bests";
+
+		public static final String PLAYER = LeaderboardSchema.BEST_PLAYER;
+
+		public static final String DIFFICULTY = LeaderboardSchema.BEST_DIFFICULTY;
+
+		public static final String BEST = LeaderboardSchema.BEST_SCORE;
+
+		public static final String[] PROJECTION_ALL = {PLAYER, DIFFICULTY, BEST};
+
+		public static final String SORT_ORDER_DEFAULT = PLAYER + " ASC, " + DIFFICULTY + " ASC";
+	}
+
+	/**
+	 * Content Uri for the scores waiting to be uploaded to the remote leaderboard
+	 * <p>
+	 *     Queries return the pending rows of the scores table, with the columns of {@link Scores},
+	 *     oldest first. Deleting a row from the outbox marks the score as uploaded without deleting
+	 *     the score itself.
+	 * </p>
+	 */
+	public static class Outbox {
+		public static final Uri OUTBOX_CONTENT_URI = Uri.withAppendedPath(CONTENT_URI, "outbox");
+
+		public static final String CONTENT_TYPE =
+				ContentResolver.CURSOR_DIR_BASE_TYPE + "/vnd.com.holman.andrew.leaderboard_outbox";
+	}
+
+	/**
+	 * Content Uri and column Strings for per-difficulty score statistics
+	 * <p>
+	 *     Statistics are kept up to date as scores are inserted, deleted, and updated, so a query
+	 *     costs O(histogram buckets) no matter how many scores are recorded. They describe the
+	 *     scores currently held by the scores table. Percentiles are estimated from
+	 *     {@link Histogram} by interpolating within the bucket holding the requested rank.
+	 * </p>
+	 */
+	public static class Statistics {
+		public static final Uri STATISTICS_CONTENT_URI =
+				Uri.withAppendedPath(CONTENT_URI, "statistics");
+
+		public static final String CONTENT_TYPE =
+				ContentResolver.CURSOR_DIR_BASE_TYPE + "/vnd.com.holman.andrew.leaderboard_statistics";
+
+		public static final String DIFFICULTY = LeaderboardSchema.SUMMARY_DIFFICULTY;
+
+		public static final String COUNT = LeaderboardSchema.SUMMARY_COUNT;
+
+		public static final String MEAN = "mean";
+
+		public static final String BEST = LeaderboardSchema.SUMMARY_BEST;
+
+		public static final String MEDIAN = "median";
+
+		public static final String PERCENTILE_90 = "percentile90";
+
+		public static final String PERCENTILE_99 = "percentile99";
+
+		public static final String[] PROJECTION_ALL =
+				{DIFFICULTY, COUNT, MEAN, BEST, MEDIAN, PERCENTILE_90, PERCENTILE_99};
+	}
+
+	/**
+	 * Content Uri and column Strings for per-difficulty score histograms
+	 * <p>
+	 *     Each row counts the scores of one difficulty falling within
+	 *     [{@link #BUCKET_MIN}, {@link #BUCKET_MIN} + {@link #BUCKET_WIDTH}). The highest bucket
+	 *     also holds every score above it. Empty buckets are omitted.
+	 * </p>
+	 */
+	public static class Histogram {
+		public static final Uri HISTOGRAM_CONTENT_URI =
+				Uri.withAppendedPath(Statistics.STATISTICS_CONTENT_URI, "histogram");
+
+		public static final String CONTENT_TYPE =
+				ContentResolver.CURSOR_DIR_BASE_TYPE + "/vnd.com.holman.andrew.leaderboard_histogram";
+
+		public static final int BUCKET_WIDTH = LeaderboardSchema.HISTOGRAM_BUCKET_WIDTH;
+
+		public static final String DIFFICULTY = LeaderboardSchema.HISTOGRAM_DIFFICULTY;
+
+		public static final String BUCKET_MIN = "bucketMin";
+
+		public static final String COUNT = LeaderboardSchema.HISTOGRAM_COUNT;
+
+		public static final String[] PROJECTION_ALL = {DIFFICULTY, BUCKET_MIN, COUNT};
+
+		public static final String SORT_ORDER_DEFAULT = DIFFICULTY + " ASC, " + BUCKET_MIN + " ASC";
 	}
 }
@@ -0,0 +1,228 @@
+package com.holman.andrew.memorymatch.provider;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background job enforcing the leaderboard retention policy
+ * <p>
+ *     The top {@link #RETAINED_TOP_SCORES} scores of every difficulty are kept forever, as is every
+ *     score recorded within the last {@link #RETAINED_DAYS} days. All other scores are deleted in
+ *     small transactions so that score writes are never held up for long. Afterwards the freed
+ *     pages are released with an incremental vacuum and the query planner statistics are
+ *     refreshed with {@code ANALYZE}.
+ * </p>
+ * <p>
+ *     Because {@link #RETAINED_TOP_SCORES} is at least
+ *     {@link LeaderboardContract.Scores#LEADERBOARD_SIZE}, no row held by {@link TopScoresCache}
+ *     is ever deleted by this job.
+ * </p>
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+final class LeaderboardMaintenance implements Runnable {
+	private static final String TAG = "LeaderboardMaintenance";
+
+	/**
+	 * Number of highest scores kept for each difficulty regardless of age
+	 */
+	static final int RETAINED_TOP_SCORES = 1000;
+
+	/**
+	 * Number of days for which every score is kept
+	 */
+	static final int RETAINED_DAYS = 30;
+
+	/* Rows deleted per transaction */
+	private static final int DELETE_BATCH_SIZE = 200;
+
+	/* Pause between delete transactions, giving pending score writes a chance to run */
+	private static final long DELETE_BATCH_PAUSE_MILLIS = 20;
+
+	/* Minimum time between two runs of this job */
+	private static final long RUN_INTERVAL_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+	private static final String PREFERENCES = "leaderboard_maintenance";
+	private static final String PREF_LAST_RUN = "last_run";
+
+	/* SQLite's value for PRAGMA auto_vacuum = INCREMENTAL */
+	private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+	/* Deletes one batch of expired scores of a single difficulty */
+	private static final String SQL_DELETE_EXPIRED = "DELETE FROM "
+			+ LeaderboardSchema.TABLE_SCORES + " WHERE " + LeaderboardSchema.SCORE_ID
+			+ " IN (SELECT " + LeaderboardSchema.SCORE_ID
+			+ " FROM " + LeaderboardSchema.TABLE_SCORES
+			+ " WHERE " + LeaderboardSchema.SCORE_DIFFICULTY + " = ?1"
+			+ " AND " + LeaderboardSchema.SCORE_TIMESTAMP + " < ?2"
+			+ " AND " + LeaderboardSchema.SCORE_ID + " NOT IN (SELECT "
+			+ LeaderboardSchema.SCORE_ID + " FROM " + LeaderboardSchema.TABLE_SCORES
+			+ " WHERE " + LeaderboardSchema.SCORE_DIFFICULTY + " = ?1"
+			+ " ORDER BY " + LeaderboardContract.Scores.SORT_ORDER_DEFAULT + " LIMIT ?3)"
+			+ " LIMIT ?4)";
+
+	private final Context context;
+	private final LeaderboardOpenHelper dbManager;
+
+	/**
+	 * Constructor
+	 *
+	 * @param context  The current Context
+	 * @param dbManager  The helper owning the leaderboard database
+	 */
+	LeaderboardMaintenance(Context context, LeaderboardOpenHelper dbManager) {
+		this.context = context;
+		this.dbManager = dbManager;
+	}
+
+	/**
+	 * Runs the job on a background thread if it has not run within the last day
+	 *
+	 * @param context  The current Context
+	 * @param dbManager  The helper owning the leaderboard database
+	 */
+	static void schedule(Context context, LeaderboardOpenHelper dbManager) {
+		Thread thread = new Thread(new LeaderboardMaintenance(context, dbManager), TAG);
+		thread.start();
+	}
+
+	/**
+	 * Enforces the retention policy and compacts the database
+	 */
+	@Override
+	public void run() {
+		Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+		SharedPreferences preferences =
+				context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+		long now = System.currentTimeMillis();
+		if (now - preferences.getLong(PREF_LAST_RUN, 0) < RUN_INTERVAL_MILLIS) {
+			return;
+		}
+
+		SQLiteDatabase db = dbManager.getWritableDatabase();
+		try {
+			int deleted = deleteExpiredScores(db, now - TimeUnit.DAYS.toMillis(RETAINED_DAYS));
+			compact(db);
+			preferences.edit().putLong(PREF_LAST_RUN, now).apply();
+
+			if (deleted > 0) {
+				/* A player's best may have been among the expired scores */
+				PlayerProfiles.reload(db);
+				context.getContentResolver().notifyChange(
+						LeaderboardContract.Scores.SCORES_CONTENT_URI, null);
+			}
+		} catch (RuntimeException e) {
+			Log.e(TAG, "Leaderboard maintenance failed", e);
+		}
+	}
+
+	/**
+	 * Deletes every score outside the retention policy, one small transaction at a time
+	 *
+	 * @param db  The SQLite Database
+	 * @param cutoff  Scores recorded before this time, in milliseconds since the epoch, may be
+	 *                deleted
+	 * @return  The number of deleted scores
+	 */
+	private int deleteExpiredScores(SQLiteDatabase db, long cutoff) {
+		int total = 0;
+		SQLiteStatement delete = db.compileStatement(SQL_DELETE_EXPIRED);
+		try {
+			for (long difficulty : findDifficulties(db)) {
+				int count;
+				do {
+					delete.bindLong(1, difficulty);
+					delete.bindLong(2, cutoff);
+					delete.bindLong(3, RETAINED_TOP_SCORES);
+					delete.bindLong(4, DELETE_BATCH_SIZE);
+
+					db.beginTransactionNonExclusive();
+					try {
+						count = delete.executeUpdateDelete();
+						db.setTransactionSuccessful();
+					} finally {
+						db.endTransaction();
+					}
+					total += count;
+
+					if (count == DELETE_BATCH_SIZE) {
+						pause();
+					}
+				} while (count == DELETE_BATCH_SIZE);
+			}
+		} finally {
+			delete.close();
+		}
+		return total;
+	}
+
+	/**
+	 * Retrieves every difficulty with at least one recorded score
+	 *
+	 * @param db  The SQLite Database
+	 * @return  The distinct difficulties
+	 */
+	private long[] findDifficulties(SQLiteDatabase db) {
+		Cursor cursor = db.rawQuery("SELECT DISTINCT " + LeaderboardSchema.SCORE_DIFFICULTY
+				+ " FROM " + LeaderboardSchema.TABLE_SCORES
+				+ " WHERE " + LeaderboardSchema.SCORE_DIFFICULTY + " IS NOT NULL", null);
+		try {
+			long[] difficulties = new long[cursor.getCount()];
+			for (int i = 0; cursor.moveToNext(); i++) {
+				difficulties[i] = cursor.getLong(0);
+			}
+			return difficulties;
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * Releases free pages back to the file system and refreshes query planner statistics
+	 * <p>
+	 *     The first run switches the database to incremental auto-vacuum, which only takes effect
+	 *     after a full {@code VACUUM}.
+	 * </p>
+	 *
+	 * @param db  The SQLite Database
+	 */
+	private void compact(SQLiteDatabase db) {
+		if (DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null) != AUTO_VACUUM_INCREMENTAL) {
+			db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+			db.execSQL("VACUUM");
+		} else {
+			/* Step the pragma through a cursor so that every free page is released */
+			Cursor cursor = db.rawQuery("PRAGMA incremental_vacuum", null);
+			try {
+				while (cursor.moveToNext()) {
+					/* Each step frees one page */
+				}
+			} finally {
+				cursor.close();
+			}
+		}
+		db.execSQL("ANALYZE");
+	}
+
+	/**
+	 * Sleeps briefly between delete transactions
+	 */
+	private static void pause() {
+		try {
+			Thread.sleep(DELETE_BATCH_PAUSE_MILLIS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
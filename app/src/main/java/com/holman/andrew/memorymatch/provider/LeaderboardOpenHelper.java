@@ -3,13 +3,15 @@ package com.holman.andrew.memorymatch.provider;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
-import android.provider.BaseColumns;
+import android.os.Build;
+
+import java.util.List;
 
 /**
  * SQLiteOpenHelper class used to instantiate and update the Leaderboard database
  *
  * @author Andrew Holman
- * @version 2.0
+ * @version 2.1
  * @since 2.0
  */
 public class LeaderboardOpenHelper extends SQLiteOpenHelper {
@@ -17,14 +19,6 @@ public class LeaderboardOpenHelper extends SQLiteOpenHelper {
 
 	private static final String DATABASE_NAME = "leaderboardDB";
 
-	private static final int DATABASE_VERSION = 2;
-
-	static final String TABLE_SCORES = "scores";
-
-	static final String SCORE_ID = BaseColumns._ID;
-	static final String SCORE_DATE_TIME = "dateTime";
-	static final String SCORE_DIFFICULTY = "difficulty";
-	static final String SCORE_VALUE = "score";
 
 	/**
 	 * Constructor
@@ -32,27 +26,44 @@ public class LeaderboardOpenHelper extends SQLiteOpenHelper {
 	 * @param context  The current application Context
 	 */
 	LeaderboardOpenHelper(Context context) {
-		super(context, DATABASE_NAME, null, DATABASE_VERSION);
+		super(context, DATABASE_NAME, null, LeaderboardSchema.VERSION);
+
+		/* Write-ahead logging lets leaderboard reads proceed while a score is being written */
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+			setWriteAheadLoggingEnabled(true);
+		}
+	}
+
+	/**
+	 * Enables write-ahead logging on devices without
+	 * {@link SQLiteOpenHelper#setWriteAheadLoggingEnabled(boolean)}
+	 *
+	 * @param db  The SQLite Database
+	 */
+	@Override
+	public void onOpen(SQLiteDatabase db) {
+		super.onOpen(db);
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN && !db.isReadOnly()) {
+			db.enableWriteAheadLogging();
+		}
 	}
 
 	/**
-	 * Creates the scores table
+	 * Creates the scores table and its companion tables
 	 *
 	 * @param db The SQLite Database
 	 */
 	@Override
 	public void onCreate(SQLiteDatabase db) {
-		String sqlCreateTable = "create table " + TABLE_SCORES + "( ";
-		sqlCreateTable += SCORE_ID + " integer primary key autoincrement, ";
-		sqlCreateTable += SCORE_DATE_TIME + " text, ";
-		sqlCreateTable += SCORE_DIFFICULTY + " integer, ";
-		sqlCreateTable += SCORE_VALUE + " integer)";
-
-		db.execSQL(sqlCreateTable);
+		execSQL(db, LeaderboardSchema.create());
 	}
 
 	/**
-	 * Drops the old table and creates a new one if the database version number has changed
+	 * Upgrades the database to the current version
+	 * <p>
+	 *     Databases older than version 2 are dropped and recreated. Later versions are migrated in
+	 *     place so that existing scores are kept.
+	 * </p>
 	 *
 	 * @param db  The SQLite Database
 	 * @param oldVersion  Old database version number
@@ -60,7 +71,23 @@ public class LeaderboardOpenHelper extends SQLiteOpenHelper {
 	 */
 	@Override
 	public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-		db.execSQL("drop table if exists " + TABLE_SCORES);
-		onCreate(db);
+		if (oldVersion < LeaderboardSchema.OLDEST_UPGRADABLE_VERSION) {
+			db.execSQL("drop table if exists " + LeaderboardSchema.TABLE_SCORES);
+			onCreate(db);
+			return;
+		}
+		execSQL(db, LeaderboardSchema.upgrade(oldVersion));
+	}
+
+	/**
+	 * Executes schema statements in order
+	 *
+	 * @param db  The SQLite Database
+	 * @param statements  The SQL statements built by {@link LeaderboardSchema}
+	 */
+	private static void execSQL(SQLiteDatabase db, List<String> statements) {
+		for (String statement : statements) {
+			db.execSQL(statement);
+		}
 	}
 }
@@ -1,16 +1,28 @@
 package com.holman.andrew.memorymatch.provider;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.provider.BaseColumns;
 import android.support.annotation.NonNull;
 import android.text.TextUtils;
+import android.util.SparseBooleanArray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 
 /**
  * Content Provider used to access the leaderboard database
@@ -29,25 +41,82 @@ public class LeaderboardProvider extends ContentProvider {
 
 	private static final int SCORE_LIST = 1;
 	private static final int SCORE_ID = 2;
+	private static final int STATISTICS = 3;
+	private static final int HISTOGRAM = 4;
+	private static final int OUTBOX = 5;
+	private static final int PLAYERS = 6;
+	private static final int PLAYER_ID = 7;
+	private static final int PERSONAL_BESTS = 8;
 	private static final UriMatcher URI_MATCHER;
 
+	/* Top scores of each difficulty and time window, shared by every instance of this provider in
+		the process */
+	private static final TopScoresCache TOP_SCORES =
+			new TopScoresCache(LeaderboardContract.Scores.LEADERBOARD_SIZE);
+
+	/* Removes a score downloaded from the remote leaderboard from the outbox */
+	private static final String SQL_DEQUEUE_WHERE = LeaderboardSchema.OUTBOX_SCORE_ID + " = ?";
+	private static final String SQL_DEQUEUE = "DELETE FROM " + LeaderboardSchema.TABLE_OUTBOX
+			+ " WHERE " + SQL_DEQUEUE_WHERE;
+
+	/* Largest change notified row by row rather than as a change of the whole table */
+	private static final int NOTIFY_ROWS_MAX = 20;
+
+	/* The batch being applied by the calling thread, if any */
+	private final ThreadLocal<Batch> currentBatch = new ThreadLocal<>();
+
 	private LeaderboardOpenHelper dbManager = null;
 
+	/**
+	 * Retrieves the number of leaderboard queries answered from the top scores cache
+	 *
+	 * @return  The number of hits since the process started
+	 */
+	public static long getTopScoresHitCount() {
+		return TOP_SCORES.getHitCount();
+	}
+
+	/**
+	 * Retrieves the number of cacheable leaderboard queries that had to read the database
+	 *
+	 * @return  The number of misses since the process started
+	 */
+	public static long getTopScoresMissCount() {
+		return TOP_SCORES.getMissCount();
+	}
+
+	/**
+	 * Drops every cached board. Used by tests, whose databases do not outlive them while the
+	 * cache does.
+	 */
+	static void clearTopScores() {
+		TOP_SCORES.clear();
+	}
+
 	/* Add all valid Uri's to the URI_MATCHER */
 	static {
 		URI_MATCHER = new UriMatcher(UriMatcher.NO_MATCH);
 		URI_MATCHER.addURI(LeaderboardContract.AUTHORITY, "scores", SCORE_LIST);
 		URI_MATCHER.addURI(LeaderboardContract.AUTHORITY, "scores/#", SCORE_ID);
+		URI_MATCHER.addURI(LeaderboardContract.AUTHORITY, "statistics", STATISTICS);
+		URI_MATCHER.addURI(LeaderboardContract.AUTHORITY, "statistics/histogram", HISTOGRAM);
+		URI_MATCHER.addURI(LeaderboardContract.AUTHORITY, "outbox", OUTBOX);
+		URI_MATCHER.addURI(LeaderboardContract.AUTHORITY, "players", PLAYERS);
+		URI_MATCHER.addURI(LeaderboardContract.AUTHORITY, "players/#", PLAYER_ID);
+		URI_MATCHER.addURI(LeaderboardContract.AUTHORITY, "players/bests", PERSONAL_BESTS);
 	}
 
 	/**
-	 * Instantiates a {@link LeaderboardOpenHelper}
+	 * Instantiates a {@link LeaderboardOpenHelper}, schedules {@link LeaderboardMaintenance}, and
+	 * starts loading {@link PlayerProfiles}
 	 *
 	 * @return Always returns true
 	 */
 	@Override
 	public boolean onCreate() {
 		dbManager = new LeaderboardOpenHelper(getContext());
+		LeaderboardMaintenance.schedule(getContext(), dbManager);
+		PlayerProfiles.preload(getContext(), dbManager);
 		return true;
 	}
 
@@ -65,28 +134,192 @@ public class LeaderboardProvider extends ContentProvider {
 	 */
 	@Override
 	public Cursor query(@NonNull Uri uri, String[] projections, String selection, String[] selectionArgs, String sortOrder) {
-		SQLiteDatabase db = dbManager.getWritableDatabase();
+		/* With write-ahead logging enabled, reads run on their own connections and see the last
+			committed state without waiting for a pending write */
+		SQLiteDatabase db = dbManager.getReadableDatabase();
 		SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
-		builder.setTables(LeaderboardOpenHelper.TABLE_SCORES);
+		builder.setTables(LeaderboardSchema.TABLE_SCORES);
+		String limit = uri.getQueryParameter(LeaderboardContract.Scores.QUERY_PARAMETER_LIMIT);
+		int window = TimeWindows.parse(
+				uri.getQueryParameter(LeaderboardContract.Scores.QUERY_PARAMETER_WINDOW));
+		long now = System.currentTimeMillis();
 
 		switch (URI_MATCHER.match(uri)) {
 			case SCORE_LIST:
 				if (TextUtils.isEmpty(sortOrder)) {
 					sortOrder = LeaderboardContract.Scores.SORT_ORDER_DEFAULT;
 				}
+				Cursor cached = queryTopScores(db, projections, selection, selectionArgs, sortOrder, limit,
+						window, now);
+				if (cached != null) {
+					cached.setNotificationUri(getContext().getContentResolver(), uri);
+					return cached;
+				}
+				if (window != TimeWindows.ALL_TIME) {
+					/* The planner picks the index, which for a lookup by id is the row id rather
+						than a scan of the window. Boards are read through boardTable. */
+					builder.appendWhere(LeaderboardSchema.SCORE_TIMESTAMP + " >= ?");
+					selectionArgs = concatArgs(
+							new String[]{Long.toString(TimeWindows.start(window, now))}, selectionArgs);
+				}
 				break;
 			case SCORE_ID:
-				builder.appendWhere(LeaderboardContract.Scores._ID + " = " + uri.getLastPathSegment());
+				Cursor row = queryScore(db, ContentUris.parseId(uri), projections, selection, selectionArgs);
+				row.setNotificationUri(getContext().getContentResolver(), uri);
+				return row;
+			case STATISTICS:
+			case HISTOGRAM:
+				Cursor statistics = (URI_MATCHER.match(uri) == STATISTICS)
+						? ScoreStatistics.queryStatistics(db, projections, selection, selectionArgs)
+						: ScoreStatistics.queryHistogram(db, projections, selection, selectionArgs, sortOrder);
+				/* Statistics change whenever any score does */
+				statistics.setNotificationUri(getContext().getContentResolver(),
+						LeaderboardContract.Scores.SCORES_CONTENT_URI);
+				return statistics;
+			case OUTBOX:
+				builder.appendWhere(LeaderboardSchema.SCORE_ID + " IN (SELECT "
+						+ LeaderboardSchema.OUTBOX_SCORE_ID + " FROM "
+						+ LeaderboardSchema.TABLE_OUTBOX + ")");
+				if (TextUtils.isEmpty(sortOrder)) {
+					sortOrder = LeaderboardContract.Scores._ID + " ASC";
+				}
+				break;
+			case PLAYERS:
+			case PLAYER_ID:
+				builder.setTables(LeaderboardSchema.TABLE_PLAYERS);
+				if (URI_MATCHER.match(uri) == PLAYER_ID) {
+					builder.appendWhere(LeaderboardSchema.PLAYER_ID + " = ?");
+					selectionArgs = buildWhereArgs(uri, selectionArgs);
+				}
+				if (TextUtils.isEmpty(sortOrder)) {
+					sortOrder = LeaderboardContract.Players.SORT_ORDER_DEFAULT;
+				}
+				break;
+			case PERSONAL_BESTS:
+				builder.setTables(LeaderboardSchema.TABLE_BESTS);
+				if (TextUtils.isEmpty(sortOrder)) {
+					sortOrder = LeaderboardContract.PersonalBests.SORT_ORDER_DEFAULT;
+				}
+				/* Personal bests change whenever any score does */
+				Cursor bests = builder.query(db, projections, selection, selectionArgs, null, null,
+						sortOrder, limit);
+				bests.setNotificationUri(getContext().getContentResolver(),
+						LeaderboardContract.Scores.SCORES_CONTENT_URI);
+				return bests;
 			default:
 				throw new IllegalArgumentException("Unsupported URI for selection: " + uri);
 		}
-		Cursor cursor = builder.query(db, projections, selection, selectionArgs, null, null, sortOrder);
+		Cursor cursor = builder.query(db, projections, selection, selectionArgs, null, null, sortOrder, limit);
 		cursor.setNotificationUri(getContext().getContentResolver(), uri);
 		return cursor;
 	}
 
+	/**
+	 * Looks up a single score by its primary key
+	 * <p>
+	 *     Scores held by {@link #TOP_SCORES} are answered from memory. Otherwise lookups without an
+	 *     additional selection run {@link LeaderboardSchema#SQL_SCORE_BY_ID}, whose constant text lets SQLite reuse
+	 *     the compiled statement from the connection's statement cache.
+	 * </p>
+	 *
+	 * @param db  The SQLite Database
+	 * @param id  The row id of the score
+	 * @param projections  The column projections to retrieve
+	 * @param selection  An additional selection criteria, may be null
+	 * @param selectionArgs  Replaces any '?' characters in selection with variables from
+	 *                          selectionArgs
+	 * @return  A Cursor holding the score, or no rows if it does not exist
+	 */
+	private Cursor queryScore(SQLiteDatabase db, long id, String[] projections, String selection,
+	                          String[] selectionArgs) {
+		String[] idArgs = {Long.toString(id)};
+		if (TextUtils.isEmpty(selection)) {
+			Cursor cached = TOP_SCORES.queryRow(id, projections);
+			if (cached != null) {
+				return cached;
+			}
+			if (projections == null
+					|| Arrays.equals(projections, LeaderboardContract.Scores.PROJECTION_ALL)) {
+				return db.rawQuery(LeaderboardSchema.SQL_SCORE_BY_ID, idArgs);
+			}
+		}
+
+		SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+		builder.setTables(LeaderboardSchema.TABLE_SCORES);
+		builder.appendWhere(LeaderboardSchema.SCORE_ID + " = ?");
+		return builder.query(db, projections, selection, concatArgs(idArgs, selectionArgs),
+				null, null, null);
+	}
+
+	/**
+	 * Answers a single difficulty's leaderboard query from {@link #TOP_SCORES}
+	 * <p>
+	 *     Only queries selecting {@link LeaderboardContract.Scores#SELECTION_DIFFICULTY} in the
+	 *     default sort order, limited to at most {@link LeaderboardContract.Scores#LEADERBOARD_SIZE}
+	 *     rows, are cached. The board is loaded from the database on the first miss, and again
+	 *     once its time window rolls over.
+	 * </p>
+	 *
+	 * @param db  The SQLite Database
+	 * @param projections  The column projections to retrieve
+	 * @param selection  The selection criteria of the query
+	 * @param selectionArgs  The arguments of the selection criteria
+	 * @param sortOrder  The sort order of the query
+	 * @param limit  The row limit of the query
+	 * @param window  The time window of the query. See {@link TimeWindows}.
+	 * @param now  The current time, in milliseconds since the epoch
+	 * @return  A Cursor holding the cached rows, or null if the query cannot be cached
+	 */
+	private Cursor queryTopScores(SQLiteDatabase db, String[] projections, String selection,
+	                              String[] selectionArgs, String sortOrder, String limit,
+	                              int window, long now) {
+		if (limit == null
+				|| !LeaderboardContract.Scores.SELECTION_DIFFICULTY.equals(selection)
+				|| selectionArgs == null || selectionArgs.length != 1
+				|| !LeaderboardContract.Scores.SORT_ORDER_DEFAULT.equals(sortOrder)
+				|| !TopScoresCache.isCacheable(projections)) {
+			return null;
+		}
+
+		int rows;
+		int difficulty;
+		try {
+			rows = Integer.parseInt(limit);
+			difficulty = Integer.parseInt(selectionArgs[0]);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+		if (rows < 0 || rows > LeaderboardContract.Scores.LEADERBOARD_SIZE) {
+			return null;
+		}
+
+		int key = TopScoresCache.key(difficulty, window);
+		Cursor cursor = TOP_SCORES.query(key, now, projections, rows);
+		if (cursor == null) {
+			/* Hold the cache while loading so concurrent writes are applied after the load */
+			synchronized (TOP_SCORES) {
+				if (!TOP_SCORES.isLoaded(key, now)) {
+					long since = TimeWindows.start(window, now);
+					TOP_SCORES.load(key, since, TimeWindows.end(window, now),
+							db.query(boardTable(window), LeaderboardContract.Scores.PROJECTION_ALL,
+									LeaderboardSchema.BOARD_SELECTION,
+									new String[]{Integer.toString(difficulty), Long.toString(since)},
+									null, null, sortOrder,
+									Integer.toString(LeaderboardContract.Scores.LEADERBOARD_SIZE)));
+				}
+				/* Already counted as a miss */
+				cursor = TOP_SCORES.query(key, now, projections, rows, false);
+			}
+		}
+		return cursor;
+	}
+
 	/**
 	 * Inserts a row into the Leaderboard database
+	 * <p>
+	 *     The row is queued in the outbox for upload unless the Uri sets
+	 *     {@link LeaderboardContract.Scores#QUERY_PARAMETER_CALLER_IS_SYNC}.
+	 * </p>
 	 *
 	 * @param uri  The Content Uri to insert into
 	 * @param values  The ContentValues to be inserted
@@ -94,14 +327,40 @@ public class LeaderboardProvider extends ContentProvider {
 	 */
 	@Override
 	public Uri insert(@NonNull Uri uri, ContentValues values) {
+		if (URI_MATCHER.match(uri) == PLAYERS) {
+			return insertPlayer(uri, values);
+		}
 
 		if (URI_MATCHER.match(uri) == SCORE_LIST) {
 			SQLiteDatabase db = dbManager.getWritableDatabase();
+			values = withTimestamp(values);
 
 			long id;
-			if ((id = db.insert(LeaderboardOpenHelper.TABLE_SCORES, null, values)) == -1) {
+			db.beginTransactionNonExclusive();
+			try {
+				id = db.insert(LeaderboardSchema.TABLE_SCORES, null, values);
+				if (id != -1 && isSyncCaller(uri)) {
+					db.delete(LeaderboardSchema.TABLE_OUTBOX, SQL_DEQUEUE_WHERE,
+							new String[]{Long.toString(id)});
+				}
+				db.setTransactionSuccessful();
+			} finally {
+				db.endTransaction();
+			}
+
+			if (id == -1) {
 				throw new SQLiteException("SQLite insertion failed");
 			} else {
+				Batch batch = currentBatch.get();
+				if (batch != null) {
+					batch.insertedIds.add(id);
+					batch.insertedValues.add(values);
+					batch.changedUris.add(uri);
+				} else {
+					addTopScore(id, values);
+					addPersonalBest(values);
+					notifyScoresChanged(uri, new long[]{id}, 1);
+				}
 				return ContentUris.withAppendedId(uri, id);
 			}
 		} else {
@@ -109,6 +368,284 @@ public class LeaderboardProvider extends ContentProvider {
 		}
 	}
 
+	/**
+	 * Inserts several rows into the Leaderboard database within a single transaction
+	 * <p>
+	 *     Rows sharing the same columns are inserted through a single compiled statement.
+	 *     Rows matching a score that is already recorded are skipped. Inserted rows are queued in
+	 *     the outbox for upload unless the Uri sets
+	 *     {@link LeaderboardContract.Scores#QUERY_PARAMETER_CALLER_IS_SYNC}. Observers of the
+	 *     Content Uri are notified once, after the transaction commits.
+	 * </p>
+	 *
+	 * @param uri  The Content Uri to insert into
+	 * @param values  The ContentValues of each row to be inserted
+	 * @return  The number of rows inserted, excluding skipped duplicates
+	 */
+	@Override
+	public int bulkInsert(@NonNull Uri uri, @NonNull ContentValues[] values) {
+		if (URI_MATCHER.match(uri) != SCORE_LIST) {
+			throw new IllegalArgumentException("Unsupported URI for insertion: " + uri);
+		}
+
+		SQLiteDatabase db = dbManager.getWritableDatabase();
+		long[] ids = new long[values.length];
+		int inserted = 0;
+		SQLiteStatement statement = null;
+		SQLiteStatement dequeue = null;
+		String[] columns = null;
+
+		db.beginTransactionNonExclusive();
+		try {
+			if (isSyncCaller(uri)) {
+				dequeue = db.compileStatement(SQL_DEQUEUE);
+			}
+
+			for (int i = 0; i < values.length; i++) {
+				values[i] = withTimestamp(values[i]);
+
+				/* Recompile only when a row's columns differ from the previous row */
+				if (columns == null || !hasColumns(values[i], columns)) {
+					if (statement != null) {
+						statement.close();
+					}
+					columns = values[i].keySet().toArray(new String[values[i].size()]);
+					statement = compileInsert(db, columns);
+				}
+
+				statement.clearBindings();
+				for (int j = 0; j < columns.length; j++) {
+					DatabaseUtils.bindObjectToProgram(statement, j + 1, values[i].get(columns[j]));
+				}
+				/* Returns -1 when the row is ignored as a duplicate */
+				if ((ids[i] = statement.executeInsert()) != -1) {
+					inserted++;
+					if (dequeue != null) {
+						dequeue.bindLong(1, ids[i]);
+						dequeue.executeUpdateDelete();
+					}
+				}
+			}
+			db.setTransactionSuccessful();
+		} finally {
+			if (statement != null) {
+				statement.close();
+			}
+			if (dequeue != null) {
+				dequeue.close();
+			}
+			db.endTransaction();
+		}
+
+		for (int i = 0; i < values.length; i++) {
+			if (ids[i] != -1) {
+				addTopScore(ids[i], values[i]);
+				addPersonalBest(values[i]);
+			}
+		}
+		if (inserted > 0) {
+			notifyScoresChanged(uri, ids, inserted);
+		}
+		return inserted;
+	}
+
+	/**
+	 * Applies a batch of operations within a single transaction
+	 * <p>
+	 *     Change notifications raised by the operations are coalesced and sent once per Uri after
+	 *     the transaction commits. If any operation fails, none of the batch is applied.
+	 * </p>
+	 *
+	 * @param operations  The operations to apply
+	 * @return  The results of each operation
+	 * @throws OperationApplicationException  If any operation fails
+	 */
+	@NonNull
+	@Override
+	public ContentProviderResult[] applyBatch(@NonNull ArrayList<ContentProviderOperation> operations)
+			throws OperationApplicationException {
+		SQLiteDatabase db = dbManager.getWritableDatabase();
+		Batch batch = new Batch();
+		ContentProviderResult[] results;
+
+		currentBatch.set(batch);
+		db.beginTransactionNonExclusive();
+		try {
+			results = super.applyBatch(operations);
+			db.setTransactionSuccessful();
+		} finally {
+			db.endTransaction();
+			currentBatch.remove();
+		}
+
+		if (batch.rowsRemoved) {
+			reloadTopScores(db);
+			PlayerProfiles.reload(db);
+		}
+		for (int i = 0; i < batch.insertedIds.size(); i++) {
+			addTopScore(batch.insertedIds.get(i), batch.insertedValues.get(i));
+			addPersonalBest(batch.insertedValues.get(i));
+		}
+		for (Uri uri : batch.changedUris) {
+			getContext().getContentResolver().notifyChange(uri, null);
+		}
+		return results;
+	}
+
+	/**
+	 * Notifies observers of changed scores
+	 * <p>
+	 *     Changes of up to {@link #NOTIFY_ROWS_MAX} known rows are notified through the Uri of
+	 *     each row, so that observers of the scores table such as
+	 *     {@link com.holman.andrew.memorymatch.leaderboard.LeaderboardLoader} can patch just those
+	 *     rows. Larger or unknown changes are notified once through the Uri of the operation.
+	 * </p>
+	 *
+	 * @param uri  The Content Uri of the operation
+	 * @param ids  The ids of the changed rows, or null if they are not known. Ids of -1 are
+	 *             skipped.
+	 * @param count  The number of changed rows
+	 */
+	private void notifyScoresChanged(Uri uri, long[] ids, int count) {
+		ContentResolver resolver = getContext().getContentResolver();
+		if (ids == null || count > NOTIFY_ROWS_MAX) {
+			resolver.notifyChange(uri, null);
+			return;
+		}
+		for (long id : ids) {
+			if (id != -1) {
+				resolver.notifyChange(
+						ContentUris.withAppendedId(LeaderboardContract.Scores.SCORES_CONTENT_URI, id),
+						null);
+			}
+		}
+	}
+
+	/**
+	 * Checks whether an insertion comes from {@link com.holman.andrew.memorymatch.sync.ScoreSync}
+	 *
+	 * @param uri  The Content Uri of the insertion
+	 * @return  True if the inserted rows were downloaded from the remote leaderboard
+	 */
+	private static boolean isSyncCaller(Uri uri) {
+		return Boolean.parseBoolean(
+				uri.getQueryParameter(LeaderboardContract.Scores.QUERY_PARAMETER_CALLER_IS_SYNC));
+	}
+
+	/**
+	 * Fills in the timestamp of a row that does not specify one
+	 *
+	 * @param values  The ContentValues of the row to insert
+	 * @return  The given values, or a copy holding the current time if no timestamp was given
+	 */
+	private static ContentValues withTimestamp(ContentValues values) {
+		if (values.containsKey(LeaderboardSchema.SCORE_TIMESTAMP)) {
+			return values;
+		}
+		ContentValues stamped = new ContentValues(values);
+		stamped.put(LeaderboardSchema.SCORE_TIMESTAMP, System.currentTimeMillis());
+		return stamped;
+	}
+
+	/**
+	 * Adds a committed row to {@link #TOP_SCORES}
+	 *
+	 * @param id  The row id of the inserted score
+	 * @param values  The ContentValues of the inserted score
+	 */
+	private void addTopScore(long id, ContentValues values) {
+		Integer difficulty = values.getAsInteger(LeaderboardSchema.SCORE_DIFFICULTY);
+		Integer score = values.getAsInteger(LeaderboardSchema.SCORE_VALUE);
+		Long timestamp = values.getAsLong(LeaderboardSchema.SCORE_TIMESTAMP);
+		if (difficulty != null && score != null && timestamp != null) {
+			TOP_SCORES.onInsert(id, difficulty, score,
+					values.getAsString(LeaderboardSchema.SCORE_DATE_TIME), timestamp);
+		}
+	}
+
+	/**
+	 * Raises the cached personal best of the player who recorded a committed row
+	 *
+	 * @param values  The ContentValues of the inserted score
+	 */
+	private static void addPersonalBest(ContentValues values) {
+		Integer difficulty = values.getAsInteger(LeaderboardSchema.SCORE_DIFFICULTY);
+		Integer score = values.getAsInteger(LeaderboardSchema.SCORE_VALUE);
+		Long player = values.getAsLong(LeaderboardSchema.SCORE_PLAYER);
+		if (difficulty != null && score != null) {
+			PlayerProfiles.onInsert(
+					(player == null) ? LeaderboardSchema.DEFAULT_PLAYER_ID : player,
+					difficulty, score);
+		}
+	}
+
+	/**
+	 * Creates a player profile
+	 *
+	 * @param uri  The Content Uri of the players table
+	 * @param values  The ContentValues of the player. The creation time defaults to now.
+	 * @return  The Uri of the new player
+	 */
+	private Uri insertPlayer(Uri uri, ContentValues values) {
+		if (!values.containsKey(LeaderboardSchema.PLAYER_CREATED)) {
+			values = new ContentValues(values);
+			values.put(LeaderboardSchema.PLAYER_CREATED, System.currentTimeMillis());
+		}
+		long id = dbManager.getWritableDatabase().insert(LeaderboardSchema.TABLE_PLAYERS,
+				null, values);
+		if (id == -1) {
+			throw new SQLiteException("SQLite insertion failed");
+		}
+		getContext().getContentResolver().notifyChange(uri, null);
+		return ContentUris.withAppendedId(uri, id);
+	}
+
+	/**
+	 * Deletes player profiles together with their scores
+	 * <p>
+	 *     The scores are deleted through {@link #delete(Uri, String, String[])} so that
+	 *     {@link #TOP_SCORES} and observers of the scores table stay up to date.
+	 * </p>
+	 *
+	 * @param uri  The Content Uri of the players to delete
+	 * @param where  The where clause selecting the players
+	 * @param whereArgs  The arguments of the where clause
+	 * @return  The number of players deleted
+	 */
+	private int deletePlayers(Uri uri, String where, String[] whereArgs) {
+		SQLiteDatabase db = dbManager.getWritableDatabase();
+		long[] players;
+		Cursor cursor = db.query(LeaderboardSchema.TABLE_PLAYERS,
+				new String[]{LeaderboardSchema.PLAYER_ID}, where, whereArgs, null, null, null);
+		try {
+			players = new long[cursor.getCount()];
+			for (int i = 0; cursor.moveToNext(); i++) {
+				players[i] = cursor.getLong(0);
+				if (players[i] == LeaderboardSchema.DEFAULT_PLAYER_ID) {
+					throw new IllegalArgumentException("The default player cannot be deleted");
+				}
+			}
+		} finally {
+			cursor.close();
+		}
+		if (players.length == 0) {
+			return 0;
+		}
+
+		StringBuilder ids = new StringBuilder();
+		for (int i = 0; i < players.length; i++) {
+			ids.append(i == 0 ? "" : ",").append(players[i]);
+		}
+		delete(LeaderboardContract.Scores.SCORES_CONTENT_URI,
+				LeaderboardSchema.SCORE_PLAYER + " IN (" + ids + ")", null);
+		int count = db.delete(LeaderboardSchema.TABLE_PLAYERS,
+				LeaderboardSchema.PLAYER_ID + " IN (" + ids + ")", null);
+
+		PlayerProfiles.onPlayersDeleted(getContext(), players);
+		getContext().getContentResolver().notifyChange(uri, null);
+		return count;
+	}
+
 	/**
 	 * Performs a delete operation on the Leaderboard database
 	 *
@@ -121,36 +658,347 @@ public class LeaderboardProvider extends ContentProvider {
 	@Override
 	public int delete(@NonNull Uri uri, String selection, String[] selectionArgs) {
 		SQLiteDatabase db = dbManager.getWritableDatabase();
+		if (URI_MATCHER.match(uri) == OUTBOX) {
+			/* Marks scores as uploaded. The scores themselves are kept. */
+			return db.delete(LeaderboardSchema.TABLE_OUTBOX, selection, selectionArgs);
+		}
+		if (URI_MATCHER.match(uri) == PLAYERS || URI_MATCHER.match(uri) == PLAYER_ID) {
+			return deletePlayers(uri, buildWhere(uri, selection, "deletion"),
+					buildWhereArgs(uri, selectionArgs));
+		}
+
+		String where = buildWhere(uri, selection, "deletion");
+		selectionArgs = buildWhereArgs(uri, selectionArgs);
 
+		Batch batch = currentBatch.get();
 		int count;
+		if (batch != null) {
+			count = db.delete(LeaderboardSchema.TABLE_SCORES, where, selectionArgs);
+			if (count > 0) {
+				batch.rowsRemoved = true;
+				batch.changedUris.add(uri);
+			}
+			return count;
+		}
+
+		/* Hold the cache so no board is loaded between finding and removing the deleted rows */
+		long[] deletedIds;
+		synchronized (TOP_SCORES) {
+			db.beginTransactionNonExclusive();
+			try {
+				deletedIds = findRows(db, where, selectionArgs, TOP_SCORES.cachedIds());
+				count = db.delete(LeaderboardSchema.TABLE_SCORES, where, selectionArgs);
+				db.setTransactionSuccessful();
+			} finally {
+				db.endTransaction();
+			}
+			removeTopScores(db, deletedIds);
+		}
+
+		if (count > 0) {
+			PlayerProfiles.reload(db);
+			/* Only deleted rows that were cached are known individually */
+			notifyScoresChanged(uri, (deletedIds.length == count) ? deletedIds : null, count);
+		}
+		return count;
+	}
+
+	/**
+	 * Performs an update operation on the Leaderboard database
+	 *
+	 * @param uri  The Content Uri to update
+	 * @param values  The new column values
+	 * @param selection  A selection criteria to apply when filtering rows
+	 * @param selectionArgs  Replaces any '?' characters in selection with variables from
+	 *                          selectionArgs
+	 * @return  The number of items updated
+	 */
+	@Override
+	public int update(@NonNull Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+		SQLiteDatabase db = dbManager.getWritableDatabase();
+		String where = buildWhere(uri, selection, "update");
+		selectionArgs = buildWhereArgs(uri, selectionArgs);
+
+		if (URI_MATCHER.match(uri) == PLAYERS || URI_MATCHER.match(uri) == PLAYER_ID) {
+			int count = db.update(LeaderboardSchema.TABLE_PLAYERS, values, where, selectionArgs);
+			if (count > 0) {
+				getContext().getContentResolver().notifyChange(uri, null);
+			}
+			return count;
+		}
+
+		Batch batch = currentBatch.get();
+		int count;
+		if (batch != null) {
+			count = db.update(LeaderboardSchema.TABLE_SCORES, values, where, selectionArgs);
+			if (count > 0) {
+				batch.rowsRemoved = true;
+				batch.changedUris.add(uri);
+			}
+			return count;
+		}
+
+		long[] updatedIds = null;
+		if (!TopScoresCache.affects(values)) {
+			count = db.update(LeaderboardSchema.TABLE_SCORES, values, where, selectionArgs);
+		} else {
+			/* An updated row is moved within the cache by removing and re-adding it */
+			synchronized (TOP_SCORES) {
+				db.beginTransactionNonExclusive();
+				try {
+					updatedIds = findRows(db, where, selectionArgs, null);
+					count = db.update(LeaderboardSchema.TABLE_SCORES, values, where, selectionArgs);
+					db.setTransactionSuccessful();
+				} finally {
+					db.endTransaction();
+				}
+				removeTopScores(db, updatedIds);
+				addTopScores(db, updatedIds);
+			}
+		}
+
+		if (count > 0) {
+			PlayerProfiles.reload(db);
+			notifyScoresChanged(uri, updatedIds, count);
+		}
+		return count;
+	}
+
+	/**
+	 * Builds the where clause of a delete or update operation
+	 *
+	 * @param uri  The Content Uri of the operation
+	 * @param selection  A selection criteria to apply when filtering rows
+	 * @param operation  The name of the operation, used in error messages
+	 * @return  The where clause
+	 */
+	private String buildWhere(Uri uri, String selection, String operation) {
 		switch (URI_MATCHER.match(uri)) {
 			case SCORE_LIST:
-				count = db.delete(LeaderboardOpenHelper.TABLE_SCORES, selection, selectionArgs);
-				break;
+			case PLAYERS:
+				return selection;
 			case SCORE_ID:
-				String id = uri.getLastPathSegment();
-				String where = LeaderboardOpenHelper.SCORE_ID + " = " + id;
+			case PLAYER_ID:
+				String where = BaseColumns._ID + " = ?";
 				if (!TextUtils.isEmpty(selection)) {
-					where += " AND " + selection;
+					where += " AND (" + selection + ")";
 				}
-				count = db.delete(LeaderboardOpenHelper.TABLE_SCORES, where, selectionArgs);
-				break;
+				return where;
 			default:
-				throw new IllegalArgumentException("Unsupported URI for deletion: " + uri);
+				throw new IllegalArgumentException("Unsupported URI for " + operation + ": " + uri);
 		}
+	}
 
-		if (count > 0) {
-			getContext().getContentResolver().notifyChange(uri, null);
+	/**
+	 * Builds the arguments of the where clause returned by {@link #buildWhere(Uri, String, String)}
+	 *
+	 * @param uri  The Content Uri of the operation
+	 * @param selectionArgs  The arguments of the caller's selection
+	 * @return  The arguments of the where clause
+	 */
+	private static String[] buildWhereArgs(Uri uri, String[] selectionArgs) {
+		int match = URI_MATCHER.match(uri);
+		if (match == SCORE_ID || match == PLAYER_ID) {
+			return concatArgs(new String[]{Long.toString(ContentUris.parseId(uri))}, selectionArgs);
 		}
-		return count;
+		return selectionArgs;
 	}
 
 	/**
-	 * Unused method inherited from superclass
+	 * Concatenates two arrays of selection arguments
+	 *
+	 * @param first  The leading arguments
+	 * @param second  The trailing arguments, may be null
+	 * @return  The combined arguments
 	 */
-	@Override
-	public int update(@NonNull Uri uri, ContentValues values, String selection, String[] selectionArgs) {
-		return 0;
+	private static String[] concatArgs(String[] first, String[] second) {
+		if (second == null || second.length == 0) {
+			return first;
+		}
+		String[] args = new String[first.length + second.length];
+		System.arraycopy(first, 0, args, 0, first.length);
+		System.arraycopy(second, 0, args, first.length, second.length);
+		return args;
+	}
+
+	/**
+	 * Finds the ids of the rows matched by a selection
+	 * <p>
+	 *     When candidate ids are given, only those rows are examined. Passing the ids held by
+	 *     {@link #TOP_SCORES} bounds the cost of this lookup by the cache size rather than the size
+	 *     of the table.
+	 * </p>
+	 *
+	 * @param db  The SQLite Database
+	 * @param selection  A selection criteria to apply when filtering rows
+	 * @param selectionArgs  Replaces any '?' characters in selection with variables from
+	 *                          selectionArgs
+	 * @param candidateIds  The ids of the rows to examine, or null to examine every row
+	 * @return  The ids of the rows matched by the selection
+	 */
+	private long[] findRows(SQLiteDatabase db, String selection, String[] selectionArgs,
+	                        long[] candidateIds) {
+		StringBuilder where = new StringBuilder();
+		if (candidateIds != null) {
+			if (candidateIds.length == 0) {
+				return candidateIds;
+			}
+			where.append(LeaderboardSchema.SCORE_ID).append(" IN (");
+			for (int i = 0; i < candidateIds.length; i++) {
+				where.append(i == 0 ? "" : ",").append(candidateIds[i]);
+			}
+			where.append(')');
+		}
+		if (!TextUtils.isEmpty(selection)) {
+			where.append(where.length() == 0 ? "(" : " AND (").append(selection).append(')');
+		}
+
+		Cursor cursor = db.query(LeaderboardSchema.TABLE_SCORES,
+				new String[]{LeaderboardSchema.SCORE_ID}, where.toString(), selectionArgs,
+				null, null, null);
+		try {
+			long[] ids = new long[cursor.getCount()];
+			for (int i = 0; cursor.moveToNext(); i++) {
+				ids[i] = cursor.getLong(0);
+			}
+			return ids;
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * Retrieves the table to read the rows of a board from, when loading, reloading, or
+	 * refilling it
+	 * <p>
+	 *     Day boards read only the day's rows through {@link LeaderboardSchema#INDEX_SCORES_WINDOW}
+	 *     and sort them, which stays cheap however few scores the day holds. All-time and week
+	 *     boards walk {@link LeaderboardSchema#INDEX_SCORES_RANK} in rank order, which finds the
+	 *     top of a week sooner than sorting all of its rows.
+	 * </p>
+	 *
+	 * @param window  The time window of the leaderboard. See {@link TimeWindows}.
+	 * @return  The table, with an index hint for day boards
+	 */
+	private static String boardTable(int window) {
+		return (window == TimeWindows.DAY)
+				? LeaderboardSchema.TABLE_SCORES_BY_WINDOW : LeaderboardSchema.TABLE_SCORES;
+	}
+
+	/**
+	 * Removes deleted rows from {@link #TOP_SCORES}, refilling any board left short with the rows
+	 * ranked directly below it
+	 * <p>
+	 *     Must be called while holding the lock on {@link #TOP_SCORES}.
+	 * </p>
+	 *
+	 * @param db  The SQLite Database
+	 * @param deletedIds  The ids of the deleted rows
+	 */
+	private void removeTopScores(SQLiteDatabase db, long[] deletedIds) {
+		SparseBooleanArray shortBoards = new SparseBooleanArray();
+		for (long id : deletedIds) {
+			TOP_SCORES.onDelete(id, shortBoards);
+		}
+
+		for (int i = 0; i < shortBoards.size(); i++) {
+			int key = shortBoards.keyAt(i);
+			String[] args = TOP_SCORES.refillArgs(key);
+			if (args != null) {
+				TOP_SCORES.refill(key, db.query(boardTable(TopScoresCache.window(key)),
+						LeaderboardContract.Scores.PROJECTION_ALL,
+						LeaderboardSchema.REFILL_SELECTION, args, null, null,
+						LeaderboardContract.Scores.SORT_ORDER_DEFAULT,
+						Integer.toString(TOP_SCORES.missing(key))));
+			}
+		}
+	}
+
+	/**
+	 * Re-reads rows from the database and adds them to {@link #TOP_SCORES}
+	 * <p>
+	 *     Must be called while holding the lock on {@link #TOP_SCORES}.
+	 * </p>
+	 *
+	 * @param db  The SQLite Database
+	 * @param ids  The ids of the rows to add
+	 */
+	private void addTopScores(SQLiteDatabase db, long[] ids) {
+		for (long id : ids) {
+			Cursor cursor = db.rawQuery(LeaderboardSchema.SQL_SCORE_BY_ID, new String[]{Long.toString(id)});
+			try {
+				if (cursor.moveToFirst() && !cursor.isNull(2) && !cursor.isNull(3)) {
+					TOP_SCORES.onInsert(id, cursor.getInt(2), cursor.getInt(3), cursor.getString(1),
+							cursor.getLong(4));
+				}
+			} finally {
+				cursor.close();
+			}
+		}
+	}
+
+	/**
+	 * Reloads every cached board from the database
+	 * <p>
+	 *     Used after a batch that deleted or updated rows, since those rows are not tracked
+	 *     individually while the batch runs.
+	 * </p>
+	 *
+	 * @param db  The SQLite Database
+	 */
+	private void reloadTopScores(SQLiteDatabase db) {
+		synchronized (TOP_SCORES) {
+			for (int key : TOP_SCORES.loadedKeys()) {
+				TOP_SCORES.reload(key, db.query(boardTable(TopScoresCache.window(key)),
+						LeaderboardContract.Scores.PROJECTION_ALL, LeaderboardSchema.BOARD_SELECTION,
+						TOP_SCORES.boardArgs(key), null, null,
+						LeaderboardContract.Scores.SORT_ORDER_DEFAULT,
+						Integer.toString(LeaderboardContract.Scores.LEADERBOARD_SIZE)));
+			}
+		}
+	}
+
+	/**
+	 * Compiles an insert statement binding the given columns in order
+	 * <p>
+	 *     Rows conflicting with {@link LeaderboardSchema#INDEX_SCORES_UNIQUE} are ignored.
+	 * </p>
+	 *
+	 * @param db  The SQLite Database
+	 * @param columns  The columns of the inserted rows
+	 * @return  The compiled statement
+	 */
+	private static SQLiteStatement compileInsert(SQLiteDatabase db, String[] columns) {
+		return db.compileStatement(LeaderboardSchema.buildInsert(columns));
+	}
+
+	/**
+	 * Checks whether a row holds exactly the given columns
+	 *
+	 * @param values  The row
+	 * @param columns  The expected columns
+	 * @return  True if the row's columns match
+	 */
+	private static boolean hasColumns(ContentValues values, String[] columns) {
+		if (values.size() != columns.length) {
+			return false;
+		}
+		for (String column : columns) {
+			if (!values.containsKey(column)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Changes made by an in-progress {@link #applyBatch(ArrayList)} call
+	 */
+	private static final class Batch {
+		private final LinkedHashSet<Uri> changedUris = new LinkedHashSet<>();
+		private final ArrayList<Long> insertedIds = new ArrayList<>();
+		private final ArrayList<ContentValues> insertedValues = new ArrayList<>();
+		private boolean rowsRemoved;
 	}
 
 	/**
@@ -166,6 +1014,18 @@ public class LeaderboardProvider extends ContentProvider {
 				return LeaderboardContract.Scores.CONTENT_TYPE;
 			case SCORE_ID:
 				return LeaderboardContract.Scores.CONTENT_ITEM_TYPE;
+			case STATISTICS:
+				return LeaderboardContract.Statistics.CONTENT_TYPE;
+			case HISTOGRAM:
+				return LeaderboardContract.Histogram.CONTENT_TYPE;
+			case OUTBOX:
+				return LeaderboardContract.Outbox.CONTENT_TYPE;
+			case PLAYERS:
+				return LeaderboardContract.Players.CONTENT_TYPE;
+			case PLAYER_ID:
+				return LeaderboardContract.Players.CONTENT_ITEM_TYPE;
+			case PERSONAL_BESTS:
+				return LeaderboardContract.PersonalBests.CONTENT_TYPE;
 			default:
 				return null;
 		}
@@ -0,0 +1,521 @@
+package com.holman.andrew.memorymatch.provider;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Schema of the leaderboard database and the SQL of its hot paths
+ * <p>
+ *     Holds no Android dependencies, so that {@link LeaderboardOpenHelper} and the JVM benchmark
+ *     harness in the {@code benchmark} module build the same tables, indexes, and triggers and run
+ *     the same statements.
+ * </p>
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+final class LeaderboardSchema {
+	private static final String TAG = "LeaderboardSchema";
+
+	/**
+	 * Current version of the schema
+	 */
+	static final int VERSION = 9;
+
+	/**
+	 * Oldest version that {@link #upgrade(int)} migrates in place
+	 */
+	static final int OLDEST_UPGRADABLE_VERSION = 2;
+
+	static final String TABLE_SCORES = "scores";
+
+	/* Row ids are named after android.provider.BaseColumns._ID */
+	static final String SCORE_ID = "_id";
+	static final String SCORE_DATE_TIME = "dateTime";
+	static final String SCORE_DIFFICULTY = "difficulty";
+	static final String SCORE_VALUE = "score";
+	static final String SCORE_TIMESTAMP = "timestamp";
+	static final String SCORE_PLAYER = "player";
+
+	static final String INDEX_SCORES_RANK = "scores_rank";
+	static final String INDEX_SCORES_TIMESTAMP = "scores_timestamp";
+	static final String INDEX_SCORES_WINDOW = "scores_window";
+	static final String INDEX_SCORES_UNIQUE = "scores_unique";
+	static final String INDEX_SCORES_PLAYER_RANK = "scores_player_rank";
+
+	/**
+	 * Scores table read through {@link #INDEX_SCORES_WINDOW}, for boards of a short time window
+	 * <p>
+	 *     Left to itself the planner walks {@link #INDEX_SCORES_RANK} in rank order and filters by
+	 *     time, which reads the whole difficulty when the window holds few scores. Only for
+	 *     selections of {@link #BOARD_SELECTION} and {@link #REFILL_SELECTION}.
+	 * </p>
+	 */
+	static final String TABLE_SCORES_BY_WINDOW = TABLE_SCORES + " INDEXED BY " + INDEX_SCORES_WINDOW;
+
+	static final String TABLE_PLAYERS = "players";
+	static final String PLAYER_ID = "_id";
+	static final String PLAYER_NAME = "name";
+	static final String PLAYER_CREATED = "created";
+
+	static final String TABLE_BESTS = "player_bests";
+	static final String BEST_PLAYER = "player";
+	static final String BEST_DIFFICULTY = "difficulty";
+	static final String BEST_SCORE = "best";
+
+	/* Profile every score belongs to unless another player is given */
+	static final long DEFAULT_PLAYER_ID = 1;
+	static final String DEFAULT_PLAYER_NAME = "Player 1";
+
+	static final String TABLE_SUMMARY = "score_summary";
+	static final String SUMMARY_DIFFICULTY = "difficulty";
+	static final String SUMMARY_COUNT = "count";
+	static final String SUMMARY_TOTAL = "total";
+	static final String SUMMARY_BEST = "best";
+
+	static final String TABLE_HISTOGRAM = "score_histogram";
+	static final String HISTOGRAM_DIFFICULTY = "difficulty";
+	static final String HISTOGRAM_BUCKET = "bucket";
+	static final String HISTOGRAM_COUNT = "count";
+
+	static final String TABLE_OUTBOX = "score_outbox";
+	static final String OUTBOX_SCORE_ID = "_id";
+
+	/* Width and number of histogram buckets. The last bucket holds every higher score. */
+	static final int HISTOGRAM_BUCKET_WIDTH = 10;
+	static final int HISTOGRAM_BUCKET_COUNT = 20;
+
+	/**
+	 * Columns of a score, in the order of
+	 * {@link LeaderboardContract.Scores#PROJECTION_ALL}
+	 */
+	static final String[] SCORE_COLUMNS = {SCORE_ID, SCORE_DATE_TIME, SCORE_DIFFICULTY, SCORE_VALUE,
+			SCORE_TIMESTAMP, SCORE_PLAYER};
+
+	/**
+	 * Order in which leaderboards are ranked
+	 */
+	static final String SORT_ORDER_RANK = SCORE_VALUE + " DESC, " + SCORE_ID + " ASC";
+
+	/**
+	 * Point lookup of a score by primary key. Its text never changes, so its compiled form stays
+	 * cached.
+	 */
+	static final String SQL_SCORE_BY_ID = "SELECT " + join(SCORE_COLUMNS)
+			+ " FROM " + TABLE_SCORES + " WHERE " + SCORE_ID + " = ?";
+
+	/**
+	 * Selection locating every row of a board's difficulty and window. Takes the difficulty
+	 * followed by the start of the window.
+	 */
+	static final String BOARD_SELECTION = SCORE_DIFFICULTY + " = ? AND " + SCORE_TIMESTAMP + " >= ?";
+
+	/**
+	 * Selection locating the rows of a board ranked directly below a given score and id. Takes
+	 * the arguments of {@link #BOARD_SELECTION} followed by the score, the score again, and the id.
+	 */
+	static final String REFILL_SELECTION = BOARD_SELECTION + " AND (" + SCORE_VALUE + " < ? OR ("
+			+ SCORE_VALUE + " = ? AND " + SCORE_ID + " > ?))";
+
+	/**
+	 * Selection locating a single player's scores of a difficulty. Takes the player id followed by
+	 * the difficulty.
+	 */
+	static final String PLAYER_BOARD_SELECTION = SCORE_PLAYER + " = ? AND " + SCORE_DIFFICULTY
+			+ " = ?";
+
+	private LeaderboardSchema() {
+	}
+
+	/**
+	 * Builds the statements creating the current schema in an empty database
+	 *
+	 * @return  The SQL statements, in execution order
+	 */
+	static List<String> create() {
+		List<String> sql = new ArrayList<>();
+		String sqlCreateTable = "create table " + TABLE_SCORES + "( ";
+		sqlCreateTable += SCORE_ID + " integer primary key autoincrement, ";
+		sqlCreateTable += SCORE_DATE_TIME + " text, ";
+		sqlCreateTable += SCORE_DIFFICULTY + " integer, ";
+		sqlCreateTable += SCORE_VALUE + " integer, ";
+		sqlCreateTable += SCORE_TIMESTAMP + " integer not null default 0, ";
+		sqlCreateTable += SCORE_PLAYER + " integer not null default " + DEFAULT_PLAYER_ID + ")";
+
+		sql.add(sqlCreateTable);
+		createIndexes(sql);
+		createUniqueIndex(sql);
+		createStatistics(sql);
+		createOutbox(sql);
+		createPlayers(sql);
+		return sql;
+	}
+
+	/**
+	 * Builds the statements migrating a database to the current schema in place, keeping its
+	 * scores
+	 *
+	 * @param oldVersion  The version of the database. Must be at least
+	 *                    {@link #OLDEST_UPGRADABLE_VERSION}.
+	 * @return  The SQL statements, in execution order
+	 */
+	static List<String> upgrade(int oldVersion) {
+		List<String> sql = new ArrayList<>();
+		if (oldVersion < 3) {
+			/* Scores recorded before version 3 have no timestamp and are treated as old */
+			sql.add("alter table " + TABLE_SCORES + " add column "
+					+ SCORE_TIMESTAMP + " integer not null default 0");
+		}
+
+		if (oldVersion < 4) {
+			createStatistics(sql);
+			backfillStatistics(sql);
+		}
+
+		if (oldVersion < 6) {
+			/* Keep the first copy of any timestamped score recorded more than once */
+			String timestamped = " where " + SCORE_TIMESTAMP + " != 0";
+			sql.add("delete from " + TABLE_SCORES + timestamped + " and " + SCORE_ID
+					+ " not in (select min(" + SCORE_ID + ") from " + TABLE_SCORES + timestamped
+					+ " group by " + SCORE_TIMESTAMP + ", " + SCORE_DIFFICULTY + ", "
+					+ SCORE_VALUE + ", " + SCORE_DATE_TIME + ")");
+			/* Scores without a timestamp are only told apart to the minute, so games with the same
+				result in the same minute look alike. They are all kept, the later ones stamped with
+				their row id, a millisecond in 1970, to satisfy the unique index while staying older
+				than every timestamped score. */
+			String untimestamped = " where " + SCORE_TIMESTAMP + " = 0";
+			sql.add("update " + TABLE_SCORES + " set " + SCORE_TIMESTAMP + " = " + SCORE_ID
+					+ untimestamped + " and " + SCORE_ID + " not in (select min(" + SCORE_ID
+					+ ") from " + TABLE_SCORES + untimestamped + " group by " + SCORE_DIFFICULTY
+					+ ", " + SCORE_VALUE + ", " + SCORE_DATE_TIME + ")");
+			createUniqueIndex(sql);
+		}
+
+		if (oldVersion < 7) {
+			/* Every score recorded so far has yet to be uploaded */
+			createOutbox(sql);
+			sql.add("insert into " + TABLE_OUTBOX + " select " + SCORE_ID
+					+ " from " + TABLE_SCORES);
+		}
+
+		if (oldVersion < 8) {
+			/* Every score recorded so far belongs to the default player */
+			sql.add("alter table " + TABLE_SCORES + " add column " + SCORE_PLAYER
+					+ " integer not null default " + DEFAULT_PLAYER_ID);
+			/* Indexes are created here since they cover the player column. The rank index of older
+				versions is replaced by one that makes leaderboard queries index-only. */
+			sql.add("drop index if exists " + INDEX_SCORES_RANK);
+			createIndexes(sql);
+			createPlayers(sql);
+			sql.add("insert into " + TABLE_BESTS + " select " + SCORE_PLAYER + ", "
+					+ SCORE_DIFFICULTY + ", max(" + SCORE_VALUE + ") from " + TABLE_SCORES
+					+ " where " + SCORE_DIFFICULTY + " is not null and " + SCORE_VALUE
+					+ " is not null group by 1, 2");
+		}
+
+		if (oldVersion < 9) {
+			/* The window index now covers leaderboard rows */
+			sql.add("drop index if exists " + INDEX_SCORES_WINDOW);
+			createIndexes(sql);
+		}
+		return sql;
+	}
+
+	/**
+	 * Builds an insert statement binding the given columns in order
+	 * <p>
+	 *     Rows conflicting with {@link #INDEX_SCORES_UNIQUE} are ignored.
+	 * </p>
+	 *
+	 * @param columns  The columns of the inserted rows
+	 * @return  The SQL statement
+	 */
+	static String buildInsert(String[] columns) {
+		StringBuilder sql = new StringBuilder("INSERT OR IGNORE INTO ")
+				.append(TABLE_SCORES).append(" (");
+		for (int i = 0; i < columns.length; i++) {
+			sql.append(i == 0 ? "" : ",").append(columns[i]);
+		}
+		sql.append(") VALUES (");
+		for (int i = 0; i < columns.length; i++) {
+			sql.append(i == 0 ? "?" : ",?");
+		}
+		return sql.append(')').toString();
+	}
+
+	/**
+	 * Joins column names into a comma-separated list
+	 *
+	 * @param columns  The column names
+	 * @return  The joined list
+	 */
+	private static String join(String[] columns) {
+		StringBuilder joined = new StringBuilder();
+		for (int i = 0; i < columns.length; i++) {
+			joined.append(i == 0 ? "" : ",").append(columns[i]);
+		}
+		return joined.toString();
+	}
+
+	/**
+	 * Creates the indexes used by ranked leaderboard queries, time-windowed leaderboard queries,
+	 * and retention
+	 * <p>
+	 *     {@link #INDEX_SCORES_RANK} and {@link #INDEX_SCORES_PLAYER_RANK} hold every column of a
+	 *     leaderboard row after the ranking columns, so the global and per-player leaderboards of a
+	 *     difficulty are read from the index alone, in rank order, without visiting the table.
+	 *     {@link #INDEX_SCORES_WINDOW} holds the same columns after the window columns, so a
+	 *     windowed leaderboard reads only the window's rows from the index and sorts them.
+	 * </p>
+	 *
+	 * @param sql  The list to append the statements to
+	 */
+	private static void createIndexes(List<String> sql) {
+		String covered = SCORE_ID + ", " + SCORE_TIMESTAMP + ", " + SCORE_DATE_TIME;
+		sql.add("create index if not exists " + INDEX_SCORES_RANK + " on " + TABLE_SCORES
+				+ " (" + SCORE_DIFFICULTY + ", " + SCORE_VALUE + " desc, " + covered + ", "
+				+ SCORE_PLAYER + ")");
+		sql.add("create index if not exists " + INDEX_SCORES_PLAYER_RANK + " on " + TABLE_SCORES
+				+ " (" + SCORE_PLAYER + ", " + SCORE_DIFFICULTY + ", " + SCORE_VALUE + " desc, "
+				+ covered + ")");
+		sql.add("create index if not exists " + INDEX_SCORES_TIMESTAMP + " on " + TABLE_SCORES
+				+ " (" + SCORE_TIMESTAMP + ")");
+		sql.add("create index if not exists " + INDEX_SCORES_WINDOW + " on " + TABLE_SCORES
+				+ " (" + SCORE_DIFFICULTY + ", " + SCORE_TIMESTAMP + ", " + SCORE_VALUE + ", "
+				+ SCORE_DATE_TIME + ", " + SCORE_PLAYER + ")");
+	}
+
+	/**
+	 * Creates the index identifying a recorded score
+	 * <p>
+	 *     A score is identified by when, on which difficulty, and with what value it was recorded.
+	 *     Imported and downloaded scores that are already present are skipped through this index.
+	 * </p>
+	 *
+	 * @param sql  The list to append the statements to
+	 */
+	private static void createUniqueIndex(List<String> sql) {
+		sql.add("create unique index if not exists " + INDEX_SCORES_UNIQUE + " on "
+				+ TABLE_SCORES + " (" + SCORE_TIMESTAMP + ", " + SCORE_DIFFICULTY + ", "
+				+ SCORE_VALUE + ", " + SCORE_DATE_TIME + ")");
+	}
+
+	/**
+	 * Creates the score statistics tables and the triggers that keep them up to date
+	 * <p>
+	 *     Every insert, delete, or update of a score adjusts its difficulty's count, total, best
+	 *     score, and histogram bucket within the same transaction, so statistics never require a
+	 *     scan of the scores table.
+	 * </p>
+	 *
+	 * @param sql  The list to append the statements to
+	 */
+	private static void createStatistics(List<String> sql) {
+		sql.add("create table " + TABLE_SUMMARY + " ("
+				+ SUMMARY_DIFFICULTY + " integer primary key, "
+				+ SUMMARY_COUNT + " integer not null default 0, "
+				+ SUMMARY_TOTAL + " integer not null default 0, "
+				+ SUMMARY_BEST + " integer)");
+		sql.add("create table " + TABLE_HISTOGRAM + " ("
+				+ HISTOGRAM_DIFFICULTY + " integer not null, "
+				+ HISTOGRAM_BUCKET + " integer not null, "
+				+ HISTOGRAM_COUNT + " integer not null default 0, "
+				+ "primary key (" + HISTOGRAM_DIFFICULTY + ", " + HISTOGRAM_BUCKET + "))");
+
+		String newRow = SCORE_DIFFICULTY + " is not null and new." + SCORE_VALUE + " is not null";
+		String oldRow = SCORE_DIFFICULTY + " is not null and old." + SCORE_VALUE + " is not null";
+
+		sql.add("create trigger " + TABLE_SCORES + "_statistics_insert after insert on "
+				+ TABLE_SCORES + " when new." + newRow + " begin "
+				+ addToStatistics("new") + " end");
+		sql.add("create trigger " + TABLE_SCORES + "_statistics_delete after delete on "
+				+ TABLE_SCORES + " when old." + oldRow + " begin "
+				+ removeFromStatistics("old") + " end");
+		sql.add("create trigger " + TABLE_SCORES + "_statistics_update_old after update of "
+				+ SCORE_DIFFICULTY + ", " + SCORE_VALUE + " on " + TABLE_SCORES
+				+ " when old." + oldRow + " begin "
+				+ removeFromStatistics("old") + " end");
+		sql.add("create trigger " + TABLE_SCORES + "_statistics_update_new after update of "
+				+ SCORE_DIFFICULTY + ", " + SCORE_VALUE + " on " + TABLE_SCORES
+				+ " when new." + newRow + " begin "
+				+ addToStatistics("new") + " end");
+	}
+
+	/**
+	 * Creates the outbox of scores waiting to be uploaded, and the triggers that maintain it
+	 * <p>
+	 *     Every inserted score is queued within the same transaction, so no score can be recorded
+	 *     without also being queued. Deleting a score also removes it from the outbox.
+	 * </p>
+	 *
+	 * @param sql  The list to append the statements to
+	 */
+	private static void createOutbox(List<String> sql) {
+		sql.add("create table " + TABLE_OUTBOX + " ("
+				+ OUTBOX_SCORE_ID + " integer primary key)");
+		sql.add("create trigger " + TABLE_SCORES + "_outbox_insert after insert on "
+				+ TABLE_SCORES + " begin insert into " + TABLE_OUTBOX + " (" + OUTBOX_SCORE_ID
+				+ ") values (new." + SCORE_ID + "); end");
+		sql.add("create trigger " + TABLE_SCORES + "_outbox_delete after delete on "
+				+ TABLE_SCORES + " begin delete from " + TABLE_OUTBOX + " where "
+				+ OUTBOX_SCORE_ID + " = old." + SCORE_ID + "; end");
+	}
+
+	/**
+	 * Creates the player profiles table with the default player, and the table of personal bests
+	 * with the triggers that maintain it
+	 * <p>
+	 *     A player's best score on a difficulty is raised by every insert. Deleting or updating a
+	 *     score recomputes it from the first entry of {@link #INDEX_SCORES_PLAYER_RANK}, a single
+	 *     index lookup.
+	 * </p>
+	 *
+	 * @param sql  The list to append the statements to
+	 */
+	private static void createPlayers(List<String> sql) {
+		sql.add("create table " + TABLE_PLAYERS + " ("
+				+ PLAYER_ID + " integer primary key autoincrement, "
+				+ PLAYER_NAME + " text not null unique, "
+				+ PLAYER_CREATED + " integer not null default 0)");
+		sql.add("insert into " + TABLE_PLAYERS + " (" + PLAYER_ID + ", " + PLAYER_NAME
+				+ ") values (" + DEFAULT_PLAYER_ID + ", '" + DEFAULT_PLAYER_NAME + "')");
+		sql.add("create table " + TABLE_BESTS + " ("
+				+ BEST_PLAYER + " integer not null, "
+				+ BEST_DIFFICULTY + " integer not null, "
+				+ BEST_SCORE + " integer, "
+				+ "primary key (" + BEST_PLAYER + ", " + BEST_DIFFICULTY + "))");
+
+		String newRow = SCORE_DIFFICULTY + " is not null and new." + SCORE_VALUE + " is not null";
+
+		sql.add("create trigger " + TABLE_SCORES + "_bests_insert after insert on "
+				+ TABLE_SCORES + " when new." + newRow + " begin "
+				+ raiseBest("new") + " end");
+		sql.add("create trigger " + TABLE_SCORES + "_bests_delete after delete on "
+				+ TABLE_SCORES + " when old." + SCORE_DIFFICULTY + " is not null begin "
+				+ recomputeBest("old") + " end");
+		sql.add("create trigger " + TABLE_SCORES + "_bests_update_old after update of "
+				+ SCORE_DIFFICULTY + ", " + SCORE_VALUE + ", " + SCORE_PLAYER + " on " + TABLE_SCORES
+				+ " when old." + SCORE_DIFFICULTY + " is not null begin "
+				+ recomputeBest("old") + " end");
+		sql.add("create trigger " + TABLE_SCORES + "_bests_update_new after update of "
+				+ SCORE_DIFFICULTY + ", " + SCORE_VALUE + ", " + SCORE_PLAYER + " on " + TABLE_SCORES
+				+ " when new." + SCORE_DIFFICULTY + " is not null begin "
+				+ recomputeBest("new") + " end");
+		sql.add("create trigger " + TABLE_PLAYERS + "_delete after delete on "
+				+ TABLE_PLAYERS + " begin delete from " + TABLE_BESTS + " where "
+				+ BEST_PLAYER + " = old." + PLAYER_ID + "; end");
+	}
+
+	/**
+	 * Builds the trigger statements raising a player's best score to a recorded score
+	 *
+	 * @param row  The trigger row holding the score, either "new" or "old"
+	 * @return  The SQL statements
+	 */
+	private static String raiseBest(String row) {
+		String player = row + "." + SCORE_PLAYER;
+		String difficulty = row + "." + SCORE_DIFFICULTY;
+		String score = row + "." + SCORE_VALUE;
+		return "insert or ignore into " + TABLE_BESTS + " (" + BEST_PLAYER + ", "
+				+ BEST_DIFFICULTY + ") values (" + player + ", " + difficulty + "); "
+				+ "update " + TABLE_BESTS + " set "
+				+ BEST_SCORE + " = max(ifnull(" + BEST_SCORE + ", " + score + "), " + score + ")"
+				+ " where " + BEST_PLAYER + " = " + player
+				+ " and " + BEST_DIFFICULTY + " = " + difficulty + ";";
+	}
+
+	/**
+	 * Builds the trigger statement recomputing a player's best score after one of their scores
+	 * was removed or changed
+	 *
+	 * @param row  The trigger row identifying the player and difficulty, either "new" or "old".
+	 *             Its difficulty must not be null.
+	 * @return  The SQL statement
+	 */
+	private static String recomputeBest(String row) {
+		String player = row + "." + SCORE_PLAYER;
+		String difficulty = row + "." + SCORE_DIFFICULTY;
+		return "insert or replace into " + TABLE_BESTS + " select " + player + ", " + difficulty
+				+ ", max(" + SCORE_VALUE + ") from " + TABLE_SCORES
+				+ " where " + SCORE_PLAYER + " = " + player
+				+ " and " + SCORE_DIFFICULTY + " = " + difficulty + ";";
+	}
+
+	/**
+	 * Fills the statistics tables from the scores recorded before they existed
+	 *
+	 * @param sql  The list to append the statements to
+	 */
+	private static void backfillStatistics(List<String> sql) {
+		String recorded = " from " + TABLE_SCORES + " where " + SCORE_DIFFICULTY
+				+ " is not null and " + SCORE_VALUE + " is not null group by ";
+		sql.add("insert into " + TABLE_SUMMARY + " select " + SCORE_DIFFICULTY
+				+ ", count(*), sum(" + SCORE_VALUE + "), max(" + SCORE_VALUE + ")"
+				+ recorded + SCORE_DIFFICULTY);
+		sql.add("insert into " + TABLE_HISTOGRAM + " select " + SCORE_DIFFICULTY + ", "
+				+ bucketOf(SCORE_VALUE) + ", count(*)" + recorded + "1, 2");
+	}
+
+	/**
+	 * Builds the trigger statements adding a score to the statistics tables
+	 *
+	 * @param row  The trigger row holding the score, either "new" or "old"
+	 * @return  The SQL statements
+	 */
+	private static String addToStatistics(String row) {
+		String difficulty = row + "." + SCORE_DIFFICULTY;
+		String score = row + "." + SCORE_VALUE;
+		String bucket = bucketOf(score);
+		return "insert or ignore into " + TABLE_SUMMARY + " (" + SUMMARY_DIFFICULTY + ") values ("
+				+ difficulty + "); "
+				+ "update " + TABLE_SUMMARY + " set "
+				+ SUMMARY_COUNT + " = " + SUMMARY_COUNT + " + 1, "
+				+ SUMMARY_TOTAL + " = " + SUMMARY_TOTAL + " + " + score + ", "
+				+ SUMMARY_BEST + " = max(ifnull(" + SUMMARY_BEST + ", " + score + "), " + score + ")"
+				+ " where " + SUMMARY_DIFFICULTY + " = " + difficulty + "; "
+				+ "insert or ignore into " + TABLE_HISTOGRAM + " (" + HISTOGRAM_DIFFICULTY + ", "
+				+ HISTOGRAM_BUCKET + ") values (" + difficulty + ", " + bucket + "); "
+				+ "update " + TABLE_HISTOGRAM + " set "
+				+ HISTOGRAM_COUNT + " = " + HISTOGRAM_COUNT + " + 1"
+				+ " where " + HISTOGRAM_DIFFICULTY + " = " + difficulty
+				+ " and " + HISTOGRAM_BUCKET + " = " + bucket + ";";
+	}
+
+	/**
+	 * Builds the trigger statements removing a score from the statistics tables
+	 * <p>
+	 *     The best score is only recomputed when the removed score was the best, using
+	 *     {@link #INDEX_SCORES_RANK} to find the new maximum.
+	 * </p>
+	 *
+	 * @param row  The trigger row holding the score, either "new" or "old"
+	 * @return  The SQL statements
+	 */
+	private static String removeFromStatistics(String row) {
+		String difficulty = row + "." + SCORE_DIFFICULTY;
+		String score = row + "." + SCORE_VALUE;
+		return "update " + TABLE_SUMMARY + " set "
+				+ SUMMARY_COUNT + " = " + SUMMARY_COUNT + " - 1, "
+				+ SUMMARY_TOTAL + " = " + SUMMARY_TOTAL + " - " + score + ", "
+				+ SUMMARY_BEST + " = case when " + score + " < " + SUMMARY_BEST + " then "
+				+ SUMMARY_BEST + " else (select max(" + SCORE_VALUE + ") from " + TABLE_SCORES
+				+ " where " + SCORE_DIFFICULTY + " = " + difficulty + ") end"
+				+ " where " + SUMMARY_DIFFICULTY + " = " + difficulty + "; "
+				+ "update " + TABLE_HISTOGRAM + " set "
+				+ HISTOGRAM_COUNT + " = " + HISTOGRAM_COUNT + " - 1"
+				+ " where " + HISTOGRAM_DIFFICULTY + " = " + difficulty
+				+ " and " + HISTOGRAM_BUCKET + " = " + bucketOf(score) + ";";
+	}
+
+	/**
+	 * Builds the SQL expression mapping a score to its histogram bucket
+	 *
+	 * @param score  The SQL expression holding the score
+	 * @return  The bucket expression
+	 */
+	private static String bucketOf(String score) {
+		return "min(max(" + score + ", 0) / " + HISTOGRAM_BUCKET_WIDTH + ", "
+				+ (HISTOGRAM_BUCKET_COUNT - 1) + ")";
+	}
+}
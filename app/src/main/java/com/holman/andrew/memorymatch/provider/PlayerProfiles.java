@@ -0,0 +1,217 @@
+package com.holman.andrew.memorymatch.provider;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Process;
+import android.support.v4.util.LongSparseArray;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The selected player profile and a process-wide cache of every player's personal bests
+ * <p>
+ *     Personal bests are loaded from {@link LeaderboardContract.PersonalBests} on a background
+ *     thread when {@link LeaderboardProvider} is created, and kept up to date by the provider as
+ *     scores are written. Reading a personal best never touches the database, so the menu can
+ *     display them without a query. Once the cache has been loaded, observers of
+ *     {@link LeaderboardContract.PersonalBests#PERSONAL_BESTS_CONTENT_URI} are notified.
+ * </p>
+ * <p>
+ *     The selected player is read from the preferences on the same thread and kept in memory, so
+ *     the activities recording and displaying scores do not read from disk on the main thread.
+ * </p>
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+public final class PlayerProfiles {
+	private static final String TAG = "PlayerProfiles";
+
+	/**
+	 * Returned by {@link #getPersonalBest(long, int)} when a player has no score on a difficulty,
+	 * or the cache has not been loaded yet
+	 */
+	public static final int NO_PERSONAL_BEST = Integer.MIN_VALUE;
+
+	private static final String PREFERENCES = "player_profiles";
+	private static final String PREF_CURRENT_PLAYER = "current_player";
+
+	/* Held by CURRENT_PLAYER until the selected player has been read. Row ids are positive. */
+	private static final long UNKNOWN_PLAYER = -1;
+
+	/* Selected player. Not guarded by the class lock, which is held while bests are queried. */
+	private static final AtomicLong CURRENT_PLAYER = new AtomicLong(UNKNOWN_PLAYER);
+
+	/* Best score of each player, indexed by difficulty. Guarded by the class lock. */
+	private static final LongSparseArray<int[]> BESTS = new LongSparseArray<>();
+	private static boolean loaded;
+
+	private PlayerProfiles() {
+	}
+
+	/**
+	 * Retrieves the player whose scores are being recorded
+	 * <p>
+	 *     Answered from memory once {@link LeaderboardProvider} has been created and the player
+	 *     read in the background, which is always the case after {@link #isLoaded()}. Reads the
+	 *     preferences only if called before then.
+	 * </p>
+	 *
+	 * @param context  The current Context
+	 * @return  The row id of the selected player
+	 */
+	public static long getCurrentPlayer(Context context) {
+		long player = CURRENT_PLAYER.get();
+		if (player == UNKNOWN_PLAYER) {
+			CURRENT_PLAYER.compareAndSet(UNKNOWN_PLAYER, readCurrentPlayer(context));
+			player = CURRENT_PLAYER.get();
+		}
+		return player;
+	}
+
+	/**
+	 * Selects the player whose scores are recorded from now on
+	 *
+	 * @param context  The current Context
+	 * @param player  The row id of the player
+	 */
+	public static void setCurrentPlayer(Context context, long player) {
+		CURRENT_PLAYER.set(player);
+		context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE).edit()
+				.putLong(PREF_CURRENT_PLAYER, player)
+				.apply();
+	}
+
+	/**
+	 * Checks whether personal bests have been loaded
+	 *
+	 * @return  True once {@link #getPersonalBest(long, int)} answers from the database's state
+	 */
+	public static synchronized boolean isLoaded() {
+		return loaded;
+	}
+
+	/**
+	 * Retrieves a player's best score on a difficulty from memory
+	 *
+	 * @param player  The row id of the player
+	 * @param difficulty  The difficulty. See {@link com.holman.andrew.memorymatch.Constants} for
+	 *                    values.
+	 * @return  The best score, or {@link #NO_PERSONAL_BEST}
+	 */
+	public static synchronized int getPersonalBest(long player, int difficulty) {
+		int[] bests = BESTS.get(player);
+		return (bests == null || difficulty < 0 || difficulty >= bests.length)
+				? NO_PERSONAL_BEST
+				: bests[difficulty];
+	}
+
+	/**
+	 * Loads the selected player and personal bests on a background thread, and notifies observers
+	 * once they are loaded
+	 *
+	 * @param context  The current Context
+	 * @param dbManager  The helper owning the leaderboard database
+	 */
+	static void preload(final Context context, final LeaderboardOpenHelper dbManager) {
+		new Thread(new Runnable() {
+			@Override
+			public void run() {
+				Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+				/* A player selected meanwhile is newer than the stored one */
+				CURRENT_PLAYER.compareAndSet(UNKNOWN_PLAYER, readCurrentPlayer(context));
+				reload(dbManager.getReadableDatabase());
+				context.getContentResolver().notifyChange(
+						LeaderboardContract.PersonalBests.PERSONAL_BESTS_CONTENT_URI, null);
+			}
+		}, TAG).start();
+	}
+
+	/**
+	 * Replaces every cached personal best with the committed state of the database
+	 * <p>
+	 *     The query runs while holding the cache, so a score recorded concurrently is either
+	 *     read by it or applied after it.
+	 * </p>
+	 *
+	 * @param db  The SQLite Database
+	 */
+	static synchronized void reload(SQLiteDatabase db) {
+		Cursor cursor = db.query(LeaderboardSchema.TABLE_BESTS,
+				LeaderboardContract.PersonalBests.PROJECTION_ALL,
+				LeaderboardContract.PersonalBests.BEST + " IS NOT NULL", null, null, null, null);
+		try {
+			BESTS.clear();
+			while (cursor.moveToNext()) {
+				put(cursor.getLong(0), cursor.getInt(1), cursor.getInt(2));
+			}
+			loaded = true;
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * Raises a player's cached best with a committed score
+	 *
+	 * @param player  The row id of the player
+	 * @param difficulty  The difficulty of the score
+	 * @param score  The score value
+	 */
+	static synchronized void onInsert(long player, int difficulty, int score) {
+		if (loaded && getPersonalBest(player, difficulty) < score) {
+			put(player, difficulty, score);
+		}
+	}
+
+	/**
+	 * Falls back to the default player if the selected player was deleted
+	 *
+	 * @param context  The current Context
+	 * @param deletedPlayers  The row ids of the deleted players
+	 */
+	static void onPlayersDeleted(Context context, long[] deletedPlayers) {
+		long current = getCurrentPlayer(context);
+		for (long player : deletedPlayers) {
+			if (player == current) {
+				setCurrentPlayer(context, LeaderboardContract.Players.DEFAULT_PLAYER_ID);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Reads the selected player from the preferences, which may read from disk
+	 *
+	 * @param context  The current Context
+	 * @return  The row id of the selected player
+	 */
+	private static long readCurrentPlayer(Context context) {
+		return context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE)
+				.getLong(PREF_CURRENT_PLAYER, LeaderboardContract.Players.DEFAULT_PLAYER_ID);
+	}
+
+	/**
+	 * Stores a personal best. Must be called while holding the class lock.
+	 *
+	 * @param player  The row id of the player
+	 * @param difficulty  The difficulty
+	 * @param best  The best score
+	 */
+	private static void put(long player, int difficulty, int best) {
+		if (difficulty < 0) {
+			return;
+		}
+		int[] bests = BESTS.get(player);
+		if (bests == null || difficulty >= bests.length) {
+			int oldLength = (bests == null) ? 0 : bests.length;
+			bests = (bests == null) ? new int[difficulty + 1] : Arrays.copyOf(bests, difficulty + 1);
+			Arrays.fill(bests, oldLength, bests.length, NO_PERSONAL_BEST);
+			BESTS.put(player, bests);
+		}
+		bests[difficulty] = best;
+	}
+}
@@ -0,0 +1,208 @@
+package com.holman.andrew.memorymatch.provider;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.util.SparseArray;
+
+import java.util.HashMap;
+
+/**
+ * Answers {@link LeaderboardContract.Statistics} and {@link LeaderboardContract.Histogram}
+ * queries from the summary tables maintained by {@link LeaderboardSchema}'s triggers
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+final class ScoreStatistics {
+	private static final String TAG = "ScoreStatistics";
+
+	/* Maps histogram columns exposed by the contract to the stored columns */
+	private static final HashMap<String, String> HISTOGRAM_PROJECTION_MAP = new HashMap<>();
+
+	static {
+		HISTOGRAM_PROJECTION_MAP.put(LeaderboardContract.Histogram.DIFFICULTY,
+				LeaderboardSchema.HISTOGRAM_DIFFICULTY);
+		HISTOGRAM_PROJECTION_MAP.put(LeaderboardContract.Histogram.BUCKET_MIN,
+				LeaderboardSchema.HISTOGRAM_BUCKET + " * "
+						+ LeaderboardSchema.HISTOGRAM_BUCKET_WIDTH + " AS "
+						+ LeaderboardContract.Histogram.BUCKET_MIN);
+		HISTOGRAM_PROJECTION_MAP.put(LeaderboardContract.Histogram.COUNT,
+				LeaderboardSchema.HISTOGRAM_COUNT);
+	}
+
+	private ScoreStatistics() {
+	}
+
+	/**
+	 * Queries the histogram buckets holding at least one score
+	 *
+	 * @param db  The SQLite Database
+	 * @param projection  The columns to retrieve, or null for all columns
+	 * @param selection  A selection criteria to apply when filtering rows
+	 * @param selectionArgs  Replaces any '?' characters in selection with variables from
+	 *                          selectionArgs
+	 * @param sortOrder  The sort order of the results, or null for the default order
+	 * @return  A Cursor over the matching buckets
+	 */
+	static Cursor queryHistogram(SQLiteDatabase db, String[] projection, String selection,
+	                             String[] selectionArgs, String sortOrder) {
+		SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+		builder.setTables(LeaderboardSchema.TABLE_HISTOGRAM);
+		builder.setProjectionMap(HISTOGRAM_PROJECTION_MAP);
+		builder.appendWhere(LeaderboardSchema.HISTOGRAM_COUNT + " > 0");
+		if (projection == null) {
+			projection = LeaderboardContract.Histogram.PROJECTION_ALL;
+		}
+		if (sortOrder == null || sortOrder.isEmpty()) {
+			sortOrder = LeaderboardContract.Histogram.SORT_ORDER_DEFAULT;
+		}
+		return builder.query(db, projection, selection, selectionArgs, null, null, sortOrder);
+	}
+
+	/**
+	 * Queries the summary statistics of each difficulty
+	 * <p>
+	 *     Reads one summary row and at most
+	 *     {@link LeaderboardSchema#HISTOGRAM_BUCKET_COUNT} histogram rows per difficulty.
+	 * </p>
+	 *
+	 * @param db  The SQLite Database
+	 * @param projection  The columns to retrieve, or null for all columns
+	 * @param selection  A selection criteria on {@link LeaderboardContract.Statistics#DIFFICULTY}
+	 * @param selectionArgs  Replaces any '?' characters in selection with variables from
+	 *                          selectionArgs
+	 * @return  A Cursor holding one row per difficulty with at least one score
+	 */
+	static Cursor queryStatistics(SQLiteDatabase db, String[] projection, String selection,
+	                              String[] selectionArgs) {
+		if (projection == null) {
+			projection = LeaderboardContract.Statistics.PROJECTION_ALL;
+		}
+		SparseArray<long[]> histograms = readHistograms(db, selection, selectionArgs);
+
+		SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+		builder.setTables(LeaderboardSchema.TABLE_SUMMARY);
+		builder.appendWhere(LeaderboardSchema.SUMMARY_COUNT + " > 0");
+		Cursor summary = builder.query(db, new String[]{LeaderboardSchema.SUMMARY_DIFFICULTY,
+						LeaderboardSchema.SUMMARY_COUNT, LeaderboardSchema.SUMMARY_TOTAL,
+						LeaderboardSchema.SUMMARY_BEST},
+				selection, selectionArgs, null, null, LeaderboardSchema.SUMMARY_DIFFICULTY);
+
+		MatrixCursor cursor = new MatrixCursor(projection, summary.getCount());
+		try {
+			Object[] row = new Object[projection.length];
+			while (summary.moveToNext()) {
+				int difficulty = summary.getInt(0);
+				long count = summary.getLong(1);
+				long total = summary.getLong(2);
+				int best = summary.getInt(3);
+				long[] histogram = histograms.get(difficulty);
+
+				for (int i = 0; i < projection.length; i++) {
+					row[i] = column(projection[i], difficulty, count, total, best, histogram);
+				}
+				cursor.addRow(row);
+			}
+		} finally {
+			summary.close();
+		}
+		return cursor;
+	}
+
+	/**
+	 * Reads the histogram bucket counts of every difficulty matched by a selection
+	 *
+	 * @param db  The SQLite Database
+	 * @param selection  A selection criteria on the difficulty column
+	 * @param selectionArgs  Replaces any '?' characters in selection with variables from
+	 *                          selectionArgs
+	 * @return  The bucket counts of each difficulty, indexed by bucket
+	 */
+	private static SparseArray<long[]> readHistograms(SQLiteDatabase db, String selection,
+	                                                  String[] selectionArgs) {
+		SparseArray<long[]> histograms = new SparseArray<>();
+		Cursor cursor = db.query(LeaderboardSchema.TABLE_HISTOGRAM,
+				new String[]{LeaderboardSchema.HISTOGRAM_DIFFICULTY,
+						LeaderboardSchema.HISTOGRAM_BUCKET, LeaderboardSchema.HISTOGRAM_COUNT},
+				selection, selectionArgs, null, null, null);
+		try {
+			while (cursor.moveToNext()) {
+				int difficulty = cursor.getInt(0);
+				long[] histogram = histograms.get(difficulty);
+				if (histogram == null) {
+					histogram = new long[LeaderboardSchema.HISTOGRAM_BUCKET_COUNT];
+					histograms.put(difficulty, histogram);
+				}
+				histogram[cursor.getInt(1)] = cursor.getLong(2);
+			}
+		} finally {
+			cursor.close();
+		}
+		return histograms;
+	}
+
+	/**
+	 * Computes the value of a single statistics column
+	 *
+	 * @throws IllegalArgumentException  If the column is not a statistics column
+	 */
+	private static Object column(String column, int difficulty, long count, long total, int best,
+	                             long[] histogram) {
+		switch (column) {
+			case LeaderboardContract.Statistics.DIFFICULTY:
+				return difficulty;
+			case LeaderboardContract.Statistics.COUNT:
+				return count;
+			case LeaderboardContract.Statistics.MEAN:
+				return (double) total / count;
+			case LeaderboardContract.Statistics.BEST:
+				return best;
+			case LeaderboardContract.Statistics.MEDIAN:
+				return percentile(histogram, count, best, 0.5);
+			case LeaderboardContract.Statistics.PERCENTILE_90:
+				return percentile(histogram, count, best, 0.9);
+			case LeaderboardContract.Statistics.PERCENTILE_99:
+				return percentile(histogram, count, best, 0.99);
+			default:
+				throw new IllegalArgumentException("Unknown statistics column: " + column);
+		}
+	}
+
+	/**
+	 * Estimates a score percentile from a histogram
+	 * <p>
+	 *     Walks the buckets once, accumulating counts until the requested rank is reached, then
+	 *     interpolates linearly within that bucket. The open-ended highest bucket is treated as
+	 *     ending at the best score.
+	 * </p>
+	 *
+	 * @param histogram  The bucket counts, or null if no bucket holds a score
+	 * @param count  The total number of scores
+	 * @param best  The highest score
+	 * @param fraction  The percentile to estimate, between 0 and 1
+	 * @return  The estimated score at the percentile
+	 */
+	static double percentile(long[] histogram, long count, int best, double fraction) {
+		if (histogram == null || count == 0) {
+			return 0;
+		}
+
+		int width = LeaderboardSchema.HISTOGRAM_BUCKET_WIDTH;
+		double rank = fraction * count;
+		long below = 0;
+		for (int bucket = 0; bucket < histogram.length; bucket++) {
+			long inBucket = histogram[bucket];
+			if (inBucket > 0 && below + inBucket >= rank) {
+				double lower = bucket * width;
+				double upper = (bucket == histogram.length - 1) ? Math.max(best, lower) : lower + width;
+				double estimate = lower + (upper - lower) * (rank - below) / inBucket;
+				return Math.min(estimate, best);
+			}
+			below += inBucket;
+		}
+		return best;
+	}
+}
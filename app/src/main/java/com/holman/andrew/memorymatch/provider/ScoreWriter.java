@@ -0,0 +1,141 @@
+package com.holman.andrew.memorymatch.provider;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteException;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.widget.Toast;
+
+import com.holman.andrew.memorymatch.sync.ScoreSync;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Write-behind queue persisting scores to {@link LeaderboardProvider} off the main thread
+ * <p>
+ *     Scores are queued by {@link #insert(ContentValues)} and written by a single background
+ *     thread. Every score queued before the writer wakes up is coalesced into one
+ *     {@link ContentResolver#bulkInsert(android.net.Uri, ContentValues[])} call, which the provider
+ *     runs as a single transaction. Observers of
+ *     {@link LeaderboardContract.Scores#SCORES_CONTENT_URI} are notified once the batch is
+ *     committed, and a {@link ScoreSync} is requested to upload the new scores.
+ * </p>
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+public final class ScoreWriter {
+	private static final String TAG = "ScoreWriter";
+
+	private static ScoreWriter instance;
+
+	private final Context context;
+	private final Handler mainHandler;
+	private final Executor executor;
+	private final ConcurrentLinkedQueue<ContentValues> pending = new ConcurrentLinkedQueue<>();
+
+	/* True while a flush has been submitted but has not yet drained the queue */
+	private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+	private final Runnable flush = new Runnable() {
+		@Override
+		public void run() {
+			flush();
+		}
+	};
+
+	/**
+	 * Retrieves the process-wide writer
+	 *
+	 * @param context  The current Context
+	 * @return  The ScoreWriter instance
+	 */
+	public static synchronized ScoreWriter getInstance(Context context) {
+		if (instance == null) {
+			instance = new ScoreWriter(context.getApplicationContext());
+		}
+		return instance;
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param context  The application Context
+	 */
+	private ScoreWriter(Context context) {
+		this.context = context;
+		mainHandler = new Handler(Looper.getMainLooper());
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable runnable) {
+				return new Thread(new Runnable() {
+					@Override
+					public void run() {
+						Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+						runnable.run();
+					}
+				}, TAG);
+			}
+		});
+	}
+
+	/**
+	 * Queues a score for insertion
+	 * <p>
+	 *     Returns immediately. The score is written by the background thread together with any
+	 *     other pending scores.
+	 * </p>
+	 *
+	 * @param values  The score row to insert. See {@link LeaderboardContract.Scores} for columns.
+	 */
+	public void insert(ContentValues values) {
+		pending.add(values);
+		if (flushScheduled.compareAndSet(false, true)) {
+			executor.execute(flush);
+		}
+	}
+
+	/**
+	 * Writes every pending score in a single batch
+	 */
+	private void flush() {
+		/* Clear the flag first so scores queued while draining schedule another flush */
+		flushScheduled.set(false);
+
+		ArrayList<ContentValues> batch = new ArrayList<>();
+		ContentValues values;
+		while ((values = pending.poll()) != null) {
+			batch.add(values);
+		}
+		if (batch.isEmpty()) {
+			return;
+		}
+
+		try {
+			context.getContentResolver().bulkInsert(LeaderboardContract.Scores.SCORES_CONTENT_URI,
+					batch.toArray(new ContentValues[batch.size()]));
+			ScoreSync.getInstance(context).requestSync();
+		} catch (SQLiteException e) {
+			Log.e(TAG, e.getMessage());
+			e.printStackTrace();
+			mainHandler.post(new Runnable() {
+				@Override
+				public void run() {
+					Toast toast = Toast.makeText(context, "Failed to insert score",
+							Toast.LENGTH_SHORT);
+					toast.show();
+				}
+			});
+		}
+	}
+}
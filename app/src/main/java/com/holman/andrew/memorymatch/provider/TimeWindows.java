@@ -0,0 +1,122 @@
+package com.holman.andrew.memorymatch.provider;
+
+import java.util.Calendar;
+
+/**
+ * Boundaries of the time windows offered by the leaderboards
+ * <p>
+ *     The start and end of the current day and week are computed once, in the device's time zone,
+ *     and reused until the window rolls over. Windowed leaderboard queries then become a range
+ *     scan on the timestamp column.
+ * </p>
+ *
+ * @see LeaderboardContract.Scores#QUERY_PARAMETER_WINDOW
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+final class TimeWindows {
+	private static final String TAG = "TimeWindows";
+
+	static final int ALL_TIME = 0;
+	static final int DAY = 1;
+	static final int WEEK = 2;
+
+	/* Cached boundaries, in milliseconds since the epoch */
+	private static long dayStart;
+	private static long dayEnd;
+	private static long weekStart;
+	private static long weekEnd;
+
+	private TimeWindows() {
+	}
+
+	/**
+	 * Converts a window query parameter to its integer representation
+	 *
+	 * @param window  The query parameter value, or null for all time
+	 * @return  {@link #ALL_TIME}, {@link #DAY}, or {@link #WEEK}
+	 * @throws IllegalArgumentException  If the window is not recognized
+	 */
+	static int parse(String window) {
+		if (window == null || LeaderboardContract.Scores.WINDOW_ALL_TIME.equals(window)) {
+			return ALL_TIME;
+		} else if (LeaderboardContract.Scores.WINDOW_DAY.equals(window)) {
+			return DAY;
+		} else if (LeaderboardContract.Scores.WINDOW_WEEK.equals(window)) {
+			return WEEK;
+		}
+		throw new IllegalArgumentException("Unsupported leaderboard window: " + window);
+	}
+
+	/**
+	 * Retrieves the start of the window containing the given time
+	 *
+	 * @param window  {@link #ALL_TIME}, {@link #DAY}, or {@link #WEEK}
+	 * @param now  The current time, in milliseconds since the epoch
+	 * @return  The first millisecond of the window
+	 */
+	static synchronized long start(int window, long now) {
+		switch (window) {
+			case DAY:
+				roll(now);
+				return dayStart;
+			case WEEK:
+				roll(now);
+				return weekStart;
+			default:
+				return Long.MIN_VALUE;
+		}
+	}
+
+	/**
+	 * Retrieves the end of the window containing the given time
+	 *
+	 * @param window  {@link #ALL_TIME}, {@link #DAY}, or {@link #WEEK}
+	 * @param now  The current time, in milliseconds since the epoch
+	 * @return  The first millisecond after the window, when it rolls over
+	 */
+	static synchronized long end(int window, long now) {
+		switch (window) {
+			case DAY:
+				roll(now);
+				return dayEnd;
+			case WEEK:
+				roll(now);
+				return weekEnd;
+			default:
+				return Long.MAX_VALUE;
+		}
+	}
+
+	/**
+	 * Recomputes the cached boundaries if the given time falls outside them
+	 *
+	 * @param now  The current time, in milliseconds since the epoch
+	 */
+	private static void roll(long now) {
+		if (now >= dayStart && now < dayEnd && now >= weekStart && now < weekEnd) {
+			return;
+		}
+
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTimeInMillis(now);
+		calendar.set(Calendar.HOUR_OF_DAY, 0);
+		calendar.set(Calendar.MINUTE, 0);
+		calendar.set(Calendar.SECOND, 0);
+		calendar.set(Calendar.MILLISECOND, 0);
+		dayStart = calendar.getTimeInMillis();
+		calendar.add(Calendar.DAY_OF_MONTH, 1);
+		dayEnd = calendar.getTimeInMillis();
+
+		calendar.setTimeInMillis(dayStart);
+		calendar.set(Calendar.DAY_OF_WEEK, calendar.getFirstDayOfWeek());
+		if (calendar.getTimeInMillis() > dayStart) {
+			calendar.add(Calendar.WEEK_OF_YEAR, -1);
+		}
+		weekStart = calendar.getTimeInMillis();
+		calendar.add(Calendar.WEEK_OF_YEAR, 1);
+		weekEnd = calendar.getTimeInMillis();
+	}
+}
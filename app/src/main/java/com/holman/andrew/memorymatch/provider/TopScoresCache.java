@@ -0,0 +1,559 @@
+package com.holman.andrew.memorymatch.provider;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide cache of the highest scores on each leaderboard
+ * <p>
+ *     A board holds up to {@link LeaderboardContract.Scores#LEADERBOARD_SIZE} rows of a single
+ *     difficulty and time window, sorted by {@link LeaderboardContract.Scores#SORT_ORDER_DEFAULT}.
+ *     {@link LeaderboardProvider} applies every insert and delete to the cached arrays directly
+ *     instead of evicting them, so repeat leaderboard queries are answered without touching the
+ *     database. The board of a daily or weekly window is dropped once the window rolls over.
+ *     Hits and misses are counted for the debug metrics provider.
+ * </p>
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+final class TopScoresCache {
+	private static final String TAG = "TopScoresCache";
+
+	/* Columns that can be served from a cached board */
+	private static final String[] CACHED_COLUMNS = {
+			LeaderboardContract.Scores._ID,
+			LeaderboardContract.Scores.DATE_TIME,
+			LeaderboardContract.Scores.DIFFICULTY,
+			LeaderboardContract.Scores.SCORE,
+			LeaderboardContract.Scores.TIMESTAMP
+	};
+
+	private final int capacity;
+	private final SparseArray<Board> boards = new SparseArray<>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Constructor
+	 *
+	 * @param capacity  The maximum number of rows cached for each board
+	 */
+	TopScoresCache(int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Builds the key identifying the board of a difficulty and time window
+	 *
+	 * @param difficulty  The difficulty of the leaderboard
+	 * @param window  The time window of the leaderboard. See {@link TimeWindows}.
+	 * @return  The board key
+	 */
+	static int key(int difficulty, int window) {
+		return (difficulty << 2) | window;
+	}
+
+	/**
+	 * Retrieves the time window of a board key
+	 *
+	 * @param key  A key built by {@link #key(int, int)}
+	 * @return  The time window of the leaderboard. See {@link TimeWindows}.
+	 */
+	static int window(int key) {
+		return key & 3;
+	}
+
+	/**
+	 * Checks whether a query projection can be answered from a cached board
+	 *
+	 * @param projection  The requested columns, or null for all columns
+	 * @return  True if every requested column is cached. A null projection also selects
+	 *          {@link LeaderboardContract.Scores#PLAYER}, which is not cached.
+	 */
+	static boolean isCacheable(String[] projection) {
+		if (projection == null) {
+			return false;
+		}
+		for (String column : projection) {
+			if (columnIndex(column) == -1) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks whether an update could change the contents or order of a cached board
+	 *
+	 * @param values  The updated column values
+	 * @return  True if any cached column is updated
+	 */
+	static boolean affects(ContentValues values) {
+		for (String column : CACHED_COLUMNS) {
+			if (values.containsKey(column)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Answers a leaderboard query from a cached board
+	 *
+	 * @param key  The key of the board. See {@link #key(int, int)}.
+	 * @param now  The current time, in milliseconds since the epoch
+	 * @param projection  The requested columns. Must satisfy {@link #isCacheable(String[])}.
+	 * @param limit  The maximum number of rows to return. Must not exceed the cache capacity.
+	 * @return  A Cursor holding the cached rows, or null if the board has not been loaded or its
+	 *          window has rolled over
+	 */
+	synchronized Cursor query(int key, long now, String[] projection, int limit) {
+		return query(key, now, projection, limit, true);
+	}
+
+	/**
+	 * Answers a leaderboard query from a cached board, optionally without counting it
+	 * <p>
+	 *     A board read right after being loaded on a miss is not counted again as a hit.
+	 * </p>
+	 *
+	 * @param key  The key of the board. See {@link #key(int, int)}.
+	 * @param now  The current time, in milliseconds since the epoch
+	 * @param projection  The requested columns. Must satisfy {@link #isCacheable(String[])}.
+	 * @param limit  The maximum number of rows to return. Must not exceed the cache capacity.
+	 * @param count  True to count the query as a hit or a miss
+	 * @return  A Cursor holding the cached rows, or null if the board has not been loaded or its
+	 *          window has rolled over
+	 */
+	synchronized Cursor query(int key, long now, String[] projection, int limit, boolean count) {
+		Board board = boards.get(key);
+		if (board == null || board.until <= now) {
+			if (count) {
+				misses.incrementAndGet();
+			}
+			return null;
+		}
+		if (count) {
+			hits.incrementAndGet();
+		}
+		return board.toCursor(projection, 0, limit);
+	}
+
+	/**
+	 * Answers a point lookup from whichever cached board holds the row
+	 *
+	 * @param id  The row id of the score
+	 * @param projection  The requested columns, or null for all columns
+	 * @return  A Cursor holding the row, or null if the row is not cached or a requested column
+	 *          is not cached
+	 */
+	synchronized Cursor queryRow(long id, String[] projection) {
+		if (!isCacheable(projection)) {
+			return null;
+		}
+		for (int i = 0; i < boards.size(); i++) {
+			Board board = boards.valueAt(i);
+			int index = board.indexOf(id);
+			if (index != -1) {
+				return board.toCursor(projection, index, 1);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Loads a board from the database
+	 * <p>
+	 *     The cursor must hold the rows selected by {@link LeaderboardSchema#BOARD_SELECTION},
+	 *     ordered by {@link LeaderboardContract.Scores#SORT_ORDER_DEFAULT}, and contain at most
+	 *     {@link #capacity} rows. The cursor is closed by this method.
+	 * </p>
+	 *
+	 * @param key  The key of the board. See {@link #key(int, int)}.
+	 * @param since  The start of the board's window, in milliseconds since the epoch
+	 * @param until  The time the board's window rolls over, in milliseconds since the epoch
+	 * @param cursor  The top rows of the leaderboard
+	 */
+	synchronized void load(int key, long since, long until, Cursor cursor) {
+		Board board = new Board(key >> 2, since, until, capacity);
+		try {
+			board.append(cursor);
+		} finally {
+			cursor.close();
+		}
+		board.complete = board.size < capacity;
+		boards.put(key, board);
+	}
+
+	/**
+	 * Replaces the contents of a loaded board, keeping its window
+	 * <p>
+	 *     The cursor is closed by this method.
+	 * </p>
+	 *
+	 * @param key  The key of the board
+	 * @param cursor  The rows selected by {@link LeaderboardSchema#BOARD_SELECTION} with
+	 *                   {@link #boardArgs(int)}
+	 */
+	synchronized void reload(int key, Cursor cursor) {
+		Board board = boards.get(key);
+		if (board == null) {
+			cursor.close();
+		} else {
+			load(key, board.since, board.until, cursor);
+		}
+	}
+
+	/**
+	 * Checks whether a board is loaded and its window has not rolled over
+	 *
+	 * @param key  The key of the board
+	 * @param now  The current time, in milliseconds since the epoch
+	 * @return  True if the board can answer queries
+	 */
+	synchronized boolean isLoaded(int key, long now) {
+		Board board = boards.get(key);
+		return board != null && board.until > now;
+	}
+
+	/**
+	 * Retrieves the keys of the loaded boards
+	 *
+	 * @return  The keys of the cached boards
+	 */
+	synchronized int[] loadedKeys() {
+		int[] keys = new int[boards.size()];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = boards.keyAt(i);
+		}
+		return keys;
+	}
+
+	/**
+	 * Retrieves the arguments of {@link LeaderboardSchema#BOARD_SELECTION} for a loaded board
+	 *
+	 * @param key  The key of the board
+	 * @return  The selection arguments, or null if the board is not loaded
+	 */
+	synchronized String[] boardArgs(int key) {
+		Board board = boards.get(key);
+		if (board == null) {
+			return null;
+		}
+		return new String[]{Integer.toString(board.difficulty), Long.toString(board.since)};
+	}
+
+	/**
+	 * Adds a newly inserted row to every cached board whose window holds it, if the score ranks
+	 * high enough
+	 *
+	 * @param id  The row id of the inserted score
+	 * @param difficulty  The difficulty the score was achieved on
+	 * @param score  The inserted score
+	 * @param dateTime  The formatted date of the inserted score
+	 * @param timestamp  The time the score was recorded, in milliseconds since the epoch
+	 */
+	synchronized void onInsert(long id, int difficulty, int score, String dateTime,
+	                           long timestamp) {
+		for (int i = 0; i < boards.size(); i++) {
+			Board board = boards.valueAt(i);
+			if (board.difficulty == difficulty && timestamp >= board.since) {
+				board.insert(id, score, dateTime, timestamp);
+			}
+		}
+	}
+
+	/**
+	 * Removes a deleted row from every cached board holding it
+	 *
+	 * @param id  The row id of the deleted score
+	 * @param shortBoards  Receives the keys of the boards that must be refilled through
+	 *                     {@link #refill(int, Cursor)}
+	 */
+	synchronized void onDelete(long id, SparseBooleanArray shortBoards) {
+		for (int i = 0; i < boards.size(); i++) {
+			Board board = boards.valueAt(i);
+			if (board.remove(id) && !board.complete) {
+				shortBoards.put(boards.keyAt(i), true);
+			}
+		}
+	}
+
+	/**
+	 * Collects the ids of all cached rows
+	 *
+	 * @return  The cached row ids, in no particular order. A row held by several boards is
+	 *          repeated.
+	 */
+	synchronized long[] cachedIds() {
+		int count = 0;
+		for (int i = 0; i < boards.size(); i++) {
+			count += boards.valueAt(i).size;
+		}
+		long[] ids = new long[count];
+		int index = 0;
+		for (int i = 0; i < boards.size(); i++) {
+			Board board = boards.valueAt(i);
+			System.arraycopy(board.ids, 0, ids, index, board.size);
+			index += board.size;
+		}
+		return ids;
+	}
+
+	/**
+	 * Retrieves the selection arguments locating the rows that follow the last cached row of an
+	 * incomplete board
+	 * <p>
+	 *     The arguments match {@link LeaderboardSchema#REFILL_SELECTION}. Returns null if the board
+	 *     is complete or not loaded.
+	 * </p>
+	 *
+	 * @param key  The key of the board
+	 * @return  The selection arguments, or null if no refill is necessary
+	 */
+	synchronized String[] refillArgs(int key) {
+		Board board = boards.get(key);
+		if (board == null || board.complete || board.size == capacity) {
+			return null;
+		}
+		String difficulty = Integer.toString(board.difficulty);
+		String since = Long.toString(board.since);
+		if (board.size == 0) {
+			return new String[]{difficulty, since, Integer.toString(Integer.MAX_VALUE),
+					Integer.toString(Integer.MAX_VALUE), Long.toString(Long.MIN_VALUE)};
+		}
+		String lastScore = Integer.toString(board.scores[board.size - 1]);
+		return new String[]{difficulty, since, lastScore, lastScore,
+				Long.toString(board.ids[board.size - 1])};
+	}
+
+	/**
+	 * The number of rows missing from a board
+	 *
+	 * @param key  The key of the board
+	 * @return  The number of free slots in the board
+	 */
+	synchronized int missing(int key) {
+		Board board = boards.get(key);
+		return (board == null) ? 0 : capacity - board.size;
+	}
+
+	/**
+	 * Appends the rows following the last cached row to an incomplete board
+	 * <p>
+	 *     The cursor is closed by this method.
+	 * </p>
+	 *
+	 * @param key  The key of the board
+	 * @param cursor  The rows selected by {@link LeaderboardSchema#REFILL_SELECTION}, ordered by
+	 *                {@link LeaderboardContract.Scores#SORT_ORDER_DEFAULT}
+	 */
+	synchronized void refill(int key, Cursor cursor) {
+		Board board = boards.get(key);
+		try {
+			if (board != null) {
+				board.append(cursor);
+				board.complete = board.size < capacity;
+			}
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * Drops every board, keeping the counters
+	 */
+	synchronized void clear() {
+		boards.clear();
+	}
+
+	long getHitCount() {
+		return hits.get();
+	}
+
+	long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * Retrieves the index of a column within {@link #CACHED_COLUMNS}
+	 *
+	 * @param column  The column name
+	 * @return  The index of the column, or -1 if it is not cached
+	 */
+	private static int columnIndex(String column) {
+		for (int i = 0; i < CACHED_COLUMNS.length; i++) {
+			if (CACHED_COLUMNS[i].equals(column)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Sorted top scores of a single difficulty and time window, stored as parallel arrays
+	 */
+	private static final class Board {
+		private final long[] ids;
+		private final int[] scores;
+		private final String[] dates;
+		private final long[] timestamps;
+		private final int difficulty;
+
+		/* Bounds of the board's window, in milliseconds since the epoch */
+		private final long since;
+		private final long until;
+
+		private int size;
+
+		/* True if the board holds every row of its difficulty and window */
+		private boolean complete;
+
+		private Board(int difficulty, long since, long until, int capacity) {
+			this.difficulty = difficulty;
+			this.since = since;
+			this.until = until;
+			ids = new long[capacity];
+			scores = new int[capacity];
+			dates = new String[capacity];
+			timestamps = new long[capacity];
+		}
+
+		/**
+		 * Appends sorted rows until the board is full
+		 *
+		 * @param cursor  Rows holding the id, date, score and timestamp columns
+		 */
+		private void append(Cursor cursor) {
+			int idColumn = cursor.getColumnIndexOrThrow(LeaderboardContract.Scores._ID);
+			int dateColumn = cursor.getColumnIndexOrThrow(LeaderboardContract.Scores.DATE_TIME);
+			int scoreColumn = cursor.getColumnIndexOrThrow(LeaderboardContract.Scores.SCORE);
+			int timestampColumn =
+					cursor.getColumnIndexOrThrow(LeaderboardContract.Scores.TIMESTAMP);
+
+			while (size < ids.length && cursor.moveToNext()) {
+				ids[size] = cursor.getLong(idColumn);
+				dates[size] = cursor.getString(dateColumn);
+				scores[size] = cursor.getInt(scoreColumn);
+				timestamps[size] = cursor.getLong(timestampColumn);
+				size++;
+			}
+		}
+
+		/**
+		 * Inserts a row at its sorted position, dropping the lowest row if the board is full
+		 */
+		private void insert(long id, int score, String dateTime, long timestamp) {
+			/* Rows are ordered by score descending, then by id ascending */
+			int low = 0;
+			int high = size;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (scores[mid] > score || (scores[mid] == score && ids[mid] < id)) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+
+			/* The row may already have been read while loading the board */
+			if (low < size && ids[low] == id) {
+				return;
+			}
+			if (low == ids.length) {
+				complete = false;
+				return;
+			}
+			if (size == ids.length) {
+				complete = false;
+				size--;
+			}
+			System.arraycopy(ids, low, ids, low + 1, size - low);
+			System.arraycopy(scores, low, scores, low + 1, size - low);
+			System.arraycopy(dates, low, dates, low + 1, size - low);
+			System.arraycopy(timestamps, low, timestamps, low + 1, size - low);
+			ids[low] = id;
+			scores[low] = score;
+			dates[low] = dateTime;
+			timestamps[low] = timestamp;
+			size++;
+		}
+
+		/**
+		 * Removes the row with the given id
+		 *
+		 * @return  True if the row was cached
+		 */
+		private boolean remove(long id) {
+			int i = indexOf(id);
+			if (i == -1) {
+				return false;
+			}
+			System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+			System.arraycopy(scores, i + 1, scores, i, size - i - 1);
+			System.arraycopy(dates, i + 1, dates, i, size - i - 1);
+			System.arraycopy(timestamps, i + 1, timestamps, i, size - i - 1);
+			size--;
+			dates[size] = null;
+			return true;
+		}
+
+		/**
+		 * Finds the position of the row with the given id
+		 *
+		 * @return  The index of the row, or -1 if it is not cached
+		 */
+		private int indexOf(long id) {
+			for (int i = 0; i < size; i++) {
+				if (ids[i] == id) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * Copies a range of rows of the board into a new Cursor
+		 */
+		private Cursor toCursor(String[] projection, int first, int limit) {
+			int count = Math.min(limit, size - first);
+			int[] columns = new int[projection.length];
+			for (int i = 0; i < projection.length; i++) {
+				columns[i] = columnIndex(projection[i]);
+			}
+
+			MatrixCursor cursor = new MatrixCursor(projection, count);
+			Object[] row = new Object[projection.length];
+			for (int r = first; r < first + count; r++) {
+				for (int c = 0; c < columns.length; c++) {
+					switch (columns[c]) {
+						case 0:
+							row[c] = ids[r];
+							break;
+						case 1:
+							row[c] = dates[r];
+							break;
+						case 2:
+							row[c] = difficulty;
+							break;
+						case 3:
+							row[c] = scores[r];
+							break;
+						default:
+							row[c] = timestamps[r];
+							break;
+					}
+				}
+				cursor.addRow(row);
+			}
+			return cursor;
+		}
+	}
+}
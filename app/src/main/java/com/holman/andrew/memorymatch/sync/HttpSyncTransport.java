@@ -0,0 +1,144 @@
+package com.holman.andrew.memorymatch.sync;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * {@link SyncTransport} exchanging gzip-compressed JSON with an HTTP service
+ * <p>
+ *     Request bodies are compressed before sending. Compressed responses are decompressed,
+ *     whether or not the platform has already done so transparently.
+ * </p>
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+public final class HttpSyncTransport implements SyncTransport {
+	private static final String TAG = "HttpSyncTransport";
+
+	private static final int CONNECT_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(15);
+	private static final int READ_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(30);
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final String baseUrl;
+
+	/**
+	 * Constructor
+	 *
+	 * @param baseUrl  The URL of the service, without a trailing slash
+	 */
+	public HttpSyncTransport(String baseUrl) {
+		this.baseUrl = baseUrl;
+	}
+
+	@Override
+	public JSONObject post(String path, JSONObject body) throws IOException, JSONException {
+		byte[] compressed = gzip(body.toString().getBytes(UTF_8));
+
+		HttpURLConnection connection = open(path);
+		try {
+			connection.setRequestMethod("POST");
+			connection.setDoOutput(true);
+			connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+			connection.setRequestProperty("Content-Encoding", "gzip");
+			connection.setFixedLengthStreamingMode(compressed.length);
+
+			OutputStream output = connection.getOutputStream();
+			try {
+				output.write(compressed);
+			} finally {
+				output.close();
+			}
+			return readResponse(connection);
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	@Override
+	public JSONObject get(String path) throws IOException, JSONException {
+		HttpURLConnection connection = open(path);
+		try {
+			return readResponse(connection);
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	/**
+	 * Opens a connection to a resource of the service
+	 *
+	 * @param path  The path and query of the resource
+	 * @return  The unconnected connection
+	 */
+	private HttpURLConnection open(String path) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+		connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+		connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+		connection.setRequestProperty("Accept", "application/json");
+		connection.setRequestProperty("Accept-Encoding", "gzip");
+		return connection;
+	}
+
+	/**
+	 * Reads the JSON document returned by a request
+	 *
+	 * @param connection  The connection of the request
+	 * @return  The returned document, empty if the response has no body
+	 * @throws IOException  If the response status is not successful
+	 */
+	private static JSONObject readResponse(HttpURLConnection connection)
+			throws IOException, JSONException {
+		int status = connection.getResponseCode();
+		if (status / 100 != 2) {
+			throw new IOException("Leaderboard service returned HTTP " + status);
+		}
+
+		InputStream input = connection.getInputStream();
+		try {
+			if ("gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+				input = new GZIPInputStream(input);
+			}
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int count;
+			while ((count = input.read(buffer)) != -1) {
+				bytes.write(buffer, 0, count);
+			}
+			String text = new String(bytes.toByteArray(), UTF_8).trim();
+			return text.isEmpty() ? new JSONObject() : new JSONObject(text);
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Compresses a request body
+	 *
+	 * @param data  The uncompressed body
+	 * @return  The gzip-compressed body
+	 */
+	private static byte[] gzip(byte[] data) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 4 + 64);
+		GZIPOutputStream output = new GZIPOutputStream(bytes);
+		try {
+			output.write(data);
+		} finally {
+			output.close();
+		}
+		return bytes.toByteArray();
+	}
+}
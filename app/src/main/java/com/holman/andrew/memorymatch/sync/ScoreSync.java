@@ -0,0 +1,360 @@
+package com.holman.andrew.memorymatch.sync;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.net.Uri;
+import android.os.Process;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.holman.andrew.memorymatch.BuildConfig;
+import com.holman.andrew.memorymatch.provider.LeaderboardContract;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Offline-first synchronization of recorded scores with the remote leaderboard service
+ * <p>
+ *     Every score recorded on the device is queued in {@link LeaderboardContract.Outbox} within
+ *     the transaction that records it. A sync uploads the outbox in batches of up to
+ *     {@link #UPLOAD_BATCH_SIZE} scores, one compressed request per batch, then downloads the
+ *     remote top scores recorded since the previous sync and merges them into the local
+ *     leaderboard. Scores already recorded locally are skipped by the provider.
+ * </p>
+ * <p>
+ *     Sync requests are coalesced: a request schedules one sync {@link #BATCH_DELAY_MILLIS}
+ *     later, and further requests made before it runs are absorbed by it. A failed sync is retried
+ *     with exponential backoff and jitter. Nothing is scheduled while the app is not running, so
+ *     syncing never wakes the device.
+ * </p>
+ * <p>
+ *     The radio wakeups saved by batching are counted by {@link #getRequestsSaved()}: the number
+ *     of upload requests that sending each score individually would have cost, minus the number
+ *     actually sent.
+ * </p>
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+public final class ScoreSync {
+	private static final String TAG = "ScoreSync";
+
+	/**
+	 * Maximum number of scores uploaded per request
+	 */
+	static final int UPLOAD_BATCH_SIZE = 200;
+
+	/**
+	 * Delay between a sync request and the sync, during which further requests are coalesced
+	 */
+	static final long BATCH_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+	/* Backoff after the first failure, doubled for every further consecutive failure */
+	private static final long INITIAL_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(30);
+	private static final long MAX_BACKOFF_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+	private static final String PATH_SCORES = "/scores";
+	private static final String PATH_TOP_SCORES = "/scores/top?since=";
+
+	private static final String JSON_SCORES = "scores";
+	private static final String JSON_CURSOR = "cursor";
+
+	private static final String PREFERENCES = "leaderboard_sync";
+	private static final String PREF_REMOTE_CURSOR = "remote_cursor";
+
+	/* Columns read from the outbox, in upload order */
+	private static final String[] UPLOAD_PROJECTION = {
+			LeaderboardContract.Scores._ID,
+			LeaderboardContract.Scores.DATE_TIME,
+			LeaderboardContract.Scores.DIFFICULTY,
+			LeaderboardContract.Scores.SCORE,
+			LeaderboardContract.Scores.TIMESTAMP
+	};
+
+	private static ScoreSync instance;
+
+	private final Context context;
+	private final SyncTransport transport;
+	private final ScheduledExecutorService executor;
+	private final Random random = new Random();
+
+	/* True while a sync has been scheduled but has not yet started */
+	private final AtomicBoolean syncScheduled = new AtomicBoolean();
+
+	/* Consecutive failed syncs. Only accessed by the executor thread. */
+	private int failures;
+
+	private final AtomicLong uploadRequests = new AtomicLong();
+	private final AtomicLong scoresUploaded = new AtomicLong();
+	private final AtomicLong downloadRequests = new AtomicLong();
+	private final AtomicLong scoresMerged = new AtomicLong();
+
+	private final Runnable sync = new Runnable() {
+		@Override
+		public void run() {
+			sync();
+		}
+	};
+
+	/**
+	 * Retrieves the process-wide synchronizer
+	 * <p>
+	 *     Syncing is disabled when the build does not configure a leaderboard service URL.
+	 * </p>
+	 *
+	 * @param context  The current Context
+	 * @return  The ScoreSync instance
+	 */
+	public static synchronized ScoreSync getInstance(Context context) {
+		if (instance == null) {
+			String url = BuildConfig.LEADERBOARD_SYNC_URL;
+			instance = new ScoreSync(context.getApplicationContext(),
+					TextUtils.isEmpty(url) ? null : new HttpSyncTransport(url));
+		}
+		return instance;
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param context  The application Context
+	 * @param transport  The channel to the leaderboard service, or null to disable syncing
+	 */
+	ScoreSync(Context context, SyncTransport transport) {
+		this.context = context;
+		this.transport = transport;
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable runnable) {
+				return new Thread(new Runnable() {
+					@Override
+					public void run() {
+						Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+						runnable.run();
+					}
+				}, TAG);
+			}
+		});
+	}
+
+	/**
+	 * Requests a sync
+	 * <p>
+	 *     Returns immediately. If no sync is pending, one is scheduled after
+	 *     {@link #BATCH_DELAY_MILLIS}. A pending sync, including a retry waiting out its backoff,
+	 *     absorbs the request.
+	 * </p>
+	 */
+	public void requestSync() {
+		if (transport != null && syncScheduled.compareAndSet(false, true)) {
+			executor.schedule(sync, BATCH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Total number of upload requests sent
+	 */
+	public long getUploadRequests() {
+		return uploadRequests.get();
+	}
+
+	/**
+	 * Total number of scores uploaded
+	 */
+	public long getScoresUploaded() {
+		return scoresUploaded.get();
+	}
+
+	/**
+	 * Total number of download requests sent
+	 */
+	public long getDownloadRequests() {
+		return downloadRequests.get();
+	}
+
+	/**
+	 * Total number of remote scores merged into the local leaderboard
+	 */
+	public long getScoresMerged() {
+		return scoresMerged.get();
+	}
+
+	/**
+	 * Number of upload requests avoided by batching, compared to uploading every score on its own
+	 */
+	public long getRequestsSaved() {
+		return scoresUploaded.get() - uploadRequests.get();
+	}
+
+	/**
+	 * Checks whether a sync, or a retry waiting out its backoff, is pending
+	 *
+	 * @return  True if a sync is scheduled but has not yet started
+	 */
+	boolean isSyncScheduled() {
+		return syncScheduled.get();
+	}
+
+	/**
+	 * Uploads the outbox and merges remote top scores, scheduling a retry on failure
+	 * <p>
+	 *     Runs on the executor, or directly from tests.
+	 * </p>
+	 */
+	void sync() {
+		/* Clear the flag first so requests made while syncing schedule another sync */
+		syncScheduled.set(false);
+
+		if (!isConnected()) {
+			retry();
+			return;
+		}
+
+		try {
+			upload();
+			download();
+			failures = 0;
+			Log.d(TAG, "Uploaded " + scoresUploaded.get() + " scores in " + uploadRequests.get()
+					+ " requests, saving " + getRequestsSaved() + " requests");
+		} catch (IOException | JSONException | RuntimeException e) {
+			/* Runtime exceptions include database errors, which would otherwise end the executor's
+				task and leave the outbox unsent until the next request */
+			Log.w(TAG, "Leaderboard sync failed: " + e.getMessage());
+			retry();
+		}
+	}
+
+	/**
+	 * Schedules the next attempt after a failed sync
+	 */
+	private void retry() {
+		failures++;
+		long backoff = Math.min(MAX_BACKOFF_MILLIS,
+				INITIAL_BACKOFF_MILLIS << Math.min(failures - 1, 16));
+		/* Jitter spreads out retries from many devices after a shared outage */
+		long delay = backoff / 2 + (long) (random.nextDouble() * (backoff / 2));
+		if (syncScheduled.compareAndSet(false, true)) {
+			executor.schedule(sync, delay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Uploads every score in the outbox, one batch per request
+	 * <p>
+	 *     Scores are removed from the outbox only once the service has accepted their batch.
+	 * </p>
+	 */
+	private void upload() throws IOException, JSONException {
+		ContentResolver resolver = context.getContentResolver();
+		Uri uri = LeaderboardContract.Outbox.OUTBOX_CONTENT_URI.buildUpon()
+				.appendQueryParameter(LeaderboardContract.Scores.QUERY_PARAMETER_LIMIT,
+						Integer.toString(UPLOAD_BATCH_SIZE))
+				.build();
+
+		int count;
+		do {
+			Cursor cursor = resolver.query(uri, UPLOAD_PROJECTION, null, null, null);
+			if (cursor == null) {
+				return;
+			}
+
+			JSONArray scores = new JSONArray();
+			long lastId = -1;
+			try {
+				while (cursor.moveToNext()) {
+					lastId = cursor.getLong(0);
+					scores.put(new JSONObject()
+							.put(LeaderboardContract.Scores.DATE_TIME, cursor.getString(1))
+							.put(LeaderboardContract.Scores.DIFFICULTY, cursor.getInt(2))
+							.put(LeaderboardContract.Scores.SCORE, cursor.getInt(3))
+							.put(LeaderboardContract.Scores.TIMESTAMP, cursor.getLong(4)));
+				}
+			} finally {
+				cursor.close();
+			}
+
+			count = scores.length();
+			if (count == 0) {
+				return;
+			}
+			transport.post(PATH_SCORES, new JSONObject().put(JSON_SCORES, scores));
+			uploadRequests.incrementAndGet();
+			scoresUploaded.addAndGet(count);
+
+			/* The batch holds the oldest queued scores, so it ends at the last uploaded id */
+			resolver.delete(LeaderboardContract.Outbox.OUTBOX_CONTENT_URI,
+					LeaderboardContract.Scores._ID + " <= ?", new String[]{Long.toString(lastId)});
+		} while (count == UPLOAD_BATCH_SIZE);
+	}
+
+	/**
+	 * Merges the remote top scores recorded since the previous sync into the local leaderboard
+	 */
+	private void download() throws IOException, JSONException {
+		SharedPreferences preferences =
+				context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+		long since = preferences.getLong(PREF_REMOTE_CURSOR, 0);
+
+		JSONObject response = transport.get(PATH_TOP_SCORES + since);
+		downloadRequests.incrementAndGet();
+
+		JSONArray scores = response.optJSONArray(JSON_SCORES);
+		if (scores != null && scores.length() > 0) {
+			ContentValues[] values = new ContentValues[scores.length()];
+			for (int i = 0; i < values.length; i++) {
+				JSONObject score = scores.getJSONObject(i);
+				values[i] = new ContentValues();
+				values[i].put(LeaderboardContract.Scores.DATE_TIME,
+						score.getString(LeaderboardContract.Scores.DATE_TIME));
+				values[i].put(LeaderboardContract.Scores.DIFFICULTY,
+						score.getInt(LeaderboardContract.Scores.DIFFICULTY));
+				values[i].put(LeaderboardContract.Scores.SCORE,
+						score.getInt(LeaderboardContract.Scores.SCORE));
+				values[i].put(LeaderboardContract.Scores.TIMESTAMP,
+						score.getLong(LeaderboardContract.Scores.TIMESTAMP));
+				/* Remote scores count towards the global leaderboard but no personal best */
+				values[i].put(LeaderboardContract.Scores.PLAYER,
+						LeaderboardContract.Players.REMOTE_PLAYER_ID);
+			}
+
+			Uri uri = LeaderboardContract.Scores.SCORES_CONTENT_URI.buildUpon()
+					.appendQueryParameter(LeaderboardContract.Scores.QUERY_PARAMETER_CALLER_IS_SYNC,
+							Boolean.toString(true))
+					.build();
+			scoresMerged.addAndGet(context.getContentResolver().bulkInsert(uri, values));
+		}
+
+		preferences.edit()
+				.putLong(PREF_REMOTE_CURSOR, response.optLong(JSON_CURSOR, since))
+				.apply();
+	}
+
+	/**
+	 * Checks whether a network connection is available
+	 *
+	 * @return  True if the device is connected
+	 */
+	private boolean isConnected() {
+		ConnectivityManager connectivity =
+				(ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+		NetworkInfo network = (connectivity == null) ? null : connectivity.getActiveNetworkInfo();
+		return network != null && network.isConnected();
+	}
+}
@@ -0,0 +1,40 @@
+package com.holman.andrew.memorymatch.sync;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+
+/**
+ * Request channel between {@link ScoreSync} and the remote leaderboard service
+ * <p>
+ *     {@link HttpSyncTransport} talks to the real service. Any other implementation, such as an
+ *     in-process stand-in, can be handed to {@link ScoreSync} instead.
+ * </p>
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+public interface SyncTransport {
+	/**
+	 * Sends a JSON document to the service
+	 *
+	 * @param path  The path of the resource, relative to the service
+	 * @param body  The document to send
+	 * @return  The document returned by the service, empty if it returned none
+	 * @throws IOException  If the request fails or the service rejects it
+	 * @throws JSONException  If the service's response is not a JSON object
+	 */
+	JSONObject post(String path, JSONObject body) throws IOException, JSONException;
+
+	/**
+	 * Retrieves a JSON document from the service
+	 *
+	 * @param path  The path and query of the resource, relative to the service
+	 * @return  The document returned by the service
+	 * @throws IOException  If the request fails or the service rejects it
+	 * @throws JSONException  If the service's response is not a JSON object
+	 */
+	JSONObject get(String path) throws IOException, JSONException;
+}
@@ -0,0 +1,76 @@
+package com.holman.andrew.memorymatch.leaderboard;
+
+import android.support.v7.widget.RecyclerView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of the diff {@link LeaderboardAdapter} runs when a new leaderboard is set
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 26)
+public class LeaderboardAdapterTest {
+	private static final String TAG = "LeaderboardAdapterTest";
+
+	private static final String DATE = "01/01/17 12:00 PM";
+
+	private LeaderboardAdapter adapter;
+	private ChangeCounter changes;
+
+	@Before
+	public void setUp() {
+		adapter = new LeaderboardAdapter(RuntimeEnvironment.application);
+		changes = new ChangeCounter();
+		adapter.registerAdapterDataObserver(changes);
+	}
+
+	@Test
+	public void entriesWithoutDateAreDiffed() {
+		/* Scores imported from a backup may have no date */
+		adapter.setEntries(Arrays.asList(new LeaderboardEntry(1, 50, null),
+				new LeaderboardEntry(2, 40, DATE)));
+		changes.changed = 0;
+
+		adapter.setEntries(Arrays.asList(new LeaderboardEntry(1, 50, null),
+				new LeaderboardEntry(2, 40, DATE)));
+		assertEquals(2, adapter.getItemCount());
+		assertEquals(0, changes.changed);
+	}
+
+	@Test
+	public void dateChangedFromNoneIsRebound() {
+		adapter.setEntries(Arrays.asList(new LeaderboardEntry(1, 50, null)));
+		changes.changed = 0;
+
+		adapter.setEntries(Arrays.asList(new LeaderboardEntry(1, 50, DATE)));
+		assertEquals(1, changes.changed);
+
+		adapter.setEntries(Arrays.asList(new LeaderboardEntry(1, 50, null)));
+		assertEquals(2, changes.changed);
+	}
+
+	/**
+	 * Counts the rows notified as changed
+	 */
+	private static final class ChangeCounter extends RecyclerView.AdapterDataObserver {
+		int changed;
+
+		@Override
+		public void onItemRangeChanged(int positionStart, int itemCount) {
+			changed += itemCount;
+		}
+	}
+}
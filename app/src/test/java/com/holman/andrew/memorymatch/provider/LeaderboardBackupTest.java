@@ -0,0 +1,147 @@
+package com.holman.andrew.memorymatch.provider;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests of {@link LeaderboardBackup} round trips through {@link LeaderboardProvider}
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 26)
+public class LeaderboardBackupTest {
+	private static final String TAG = "LeaderboardBackupTest";
+
+	private static final Uri SCORES = LeaderboardContract.Scores.SCORES_CONTENT_URI;
+
+	/* Time the scores of each test are recorded at, in milliseconds since the epoch */
+	private static final long TIMESTAMP = 1000000000000L;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Context context;
+	private long player;
+
+	@Before
+	public void setUp() {
+		Robolectric.setupContentProvider(LeaderboardProvider.class, LeaderboardContract.AUTHORITY);
+		context = RuntimeEnvironment.application;
+
+		ContentValues values = new ContentValues();
+		values.put(LeaderboardContract.Players.NAME, "Player 2");
+		player = ContentUris.parseId(context.getContentResolver().insert(
+				LeaderboardContract.Players.PLAYERS_CONTENT_URI, values));
+	}
+
+	@Test
+	public void csvKeepsPlayers() throws IOException {
+		roundTrip(LeaderboardBackup.FORMAT_CSV);
+	}
+
+	@Test
+	public void binaryKeepsPlayers() throws IOException {
+		roundTrip(LeaderboardBackup.FORMAT_BINARY);
+	}
+
+	@Test
+	public void csvWithoutPlayerColumnGoesToDefaultPlayer() throws IOException {
+		File file = folder.newFile("scores.csv");
+		FileOutputStream output = new FileOutputStream(file);
+		try {
+			output.write(("dateTime,difficulty,score,timestamp\n"
+					+ "\"01/01/01 12:00 PM\",1,40," + TIMESTAMP + "\n").getBytes("UTF-8"));
+		} finally {
+			output.close();
+		}
+
+		assertEquals(1, LeaderboardBackup.importScores(context, file));
+		assertEquals(1, countScores(LeaderboardContract.Players.DEFAULT_PLAYER_ID));
+	}
+
+	@Test
+	public void binaryVersion1GoesToDefaultPlayer() throws IOException {
+		byte[] date = "01/01/01 12:00 PM".getBytes("UTF-8");
+		ByteBuffer record = ByteBuffer.allocate(5 + 19 + date.length);
+		/* Magic and version, then null flags, difficulty, score, timestamp, and the date */
+		record.putInt(0x4D4D4C42).put((byte) 1)
+				.put((byte) 0).putInt(1).putInt(40).putLong(TIMESTAMP)
+				.putShort((short) date.length).put(date);
+
+		File file = folder.newFile("scores.bin");
+		FileOutputStream output = new FileOutputStream(file);
+		try {
+			output.write(record.array());
+		} finally {
+			output.close();
+		}
+
+		assertEquals(1, LeaderboardBackup.importScores(context, file));
+		assertEquals(1, countScores(LeaderboardContract.Players.DEFAULT_PLAYER_ID));
+	}
+
+	/**
+	 * Exports scores of two players, deletes them, and imports the export
+	 *
+	 * @param format  The export format
+	 * @throws IOException  If the export cannot be written or read
+	 */
+	private void roundTrip(int format) throws IOException {
+		insertScore(LeaderboardContract.Players.DEFAULT_PLAYER_ID, 10, TIMESTAMP);
+		insertScore(player, 20, TIMESTAMP + 1);
+		insertScore(player, 30, TIMESTAMP + 2);
+
+		File file = folder.newFile();
+		assertEquals(3, LeaderboardBackup.exportScores(context, file, format));
+		context.getContentResolver().delete(SCORES, null, null);
+
+		assertEquals(3, LeaderboardBackup.importScores(context, file));
+		assertEquals(1, countScores(LeaderboardContract.Players.DEFAULT_PLAYER_ID));
+		assertEquals(2, countScores(player));
+	}
+
+	private void insertScore(long player, int score, long timestamp) {
+		ContentValues values = new ContentValues();
+		values.put(LeaderboardContract.Scores.DATE_TIME, "01/01/01 12:00 PM");
+		values.put(LeaderboardContract.Scores.DIFFICULTY, 0);
+		values.put(LeaderboardContract.Scores.SCORE, score);
+		values.put(LeaderboardContract.Scores.TIMESTAMP, timestamp);
+		values.put(LeaderboardContract.Scores.PLAYER, player);
+		context.getContentResolver().insert(SCORES, values);
+	}
+
+	private int countScores(long player) {
+		Cursor cursor = context.getContentResolver().query(SCORES,
+				new String[]{LeaderboardContract.Scores._ID},
+				LeaderboardContract.Scores.PLAYER + " = ?", new String[]{Long.toString(player)},
+				null);
+		try {
+			return cursor.getCount();
+		} finally {
+			cursor.close();
+		}
+	}
+}
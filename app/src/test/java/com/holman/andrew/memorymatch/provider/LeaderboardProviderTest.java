@@ -0,0 +1,311 @@
+package com.holman.andrew.memorymatch.provider;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.net.Uri;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests of {@link LeaderboardProvider} against a database created by
+ * {@link LeaderboardOpenHelper}
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 26)
+public class LeaderboardProviderTest {
+	private static final String TAG = "LeaderboardProviderTest";
+
+	private static final Uri SCORES = LeaderboardContract.Scores.SCORES_CONTENT_URI;
+
+	/* Time the scores of each test are recorded at, in milliseconds since the epoch */
+	private static final long TIMESTAMP = 1000000000000L;
+
+	private LeaderboardProvider provider;
+
+	@Before
+	public void setUp() {
+		provider = Robolectric.setupContentProvider(LeaderboardProvider.class,
+				LeaderboardContract.AUTHORITY);
+	}
+
+	@After
+	public void tearDown() {
+		LeaderboardProvider.clearTopScores();
+	}
+
+	@Test
+	public void bulkInsertInsertsEveryRow() {
+		ContentValues[] values = new ContentValues[100];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = score(i % 2, i, TIMESTAMP + i);
+		}
+
+		assertEquals(values.length, provider.bulkInsert(SCORES, values));
+		assertEquals(values.length, countScores());
+	}
+
+	@Test
+	public void bulkInsertSkipsDuplicates() {
+		provider.insert(SCORES, score(0, 10, TIMESTAMP));
+
+		ContentValues[] values = {score(0, 10, TIMESTAMP), score(0, 20, TIMESTAMP + 1),
+				score(0, 20, TIMESTAMP + 1)};
+		/* Robolectric's SQLite reports the previous row id rather than -1 for an ignored row, so
+			only the stored rows are checked and not the returned count */
+		provider.bulkInsert(SCORES, values);
+		assertEquals(2, countScores());
+	}
+
+	@Test
+	public void bulkInsertRecompilesForDifferentColumns() {
+		ContentValues withoutPlayer = score(1, 30, TIMESTAMP);
+		ContentValues withPlayer = score(1, 40, TIMESTAMP + 1);
+		withPlayer.put(LeaderboardContract.Scores.PLAYER,
+				LeaderboardContract.Players.DEFAULT_PLAYER_ID);
+
+		assertEquals(2, provider.bulkInsert(SCORES,
+				new ContentValues[]{withoutPlayer, withPlayer}));
+		assertEquals(2, countScores());
+	}
+
+	@Test
+	public void applyBatchAppliesEveryOperation() throws OperationApplicationException {
+		ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+		operations.add(ContentProviderOperation.newInsert(SCORES)
+				.withValues(score(0, 50, TIMESTAMP)).build());
+		operations.add(ContentProviderOperation.newInsert(SCORES)
+				.withValues(score(0, 60, TIMESTAMP + 1)).build());
+
+		ContentProviderResult[] results = provider.applyBatch(operations);
+		assertEquals(2, results.length);
+		assertEquals(2, countScores());
+	}
+
+	@Test
+	public void applyBatchRollsBackOnFailedAssertion() {
+		ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+		operations.add(ContentProviderOperation.newInsert(SCORES)
+				.withValues(score(0, 70, TIMESTAMP)).build());
+		operations.add(ContentProviderOperation.newAssertQuery(SCORES)
+				.withExpectedCount(2).build());
+
+		try {
+			provider.applyBatch(operations);
+			fail("The assertion should have failed");
+		} catch (OperationApplicationException expected) {
+			/* The insert preceding the assertion must not have been committed */
+		}
+		assertEquals(0, countScores());
+	}
+
+	@Test
+	public void applyBatchRollsBackOnFailedOperation() {
+		ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+		operations.add(ContentProviderOperation.newInsert(SCORES)
+				.withValues(score(0, 80, TIMESTAMP)).build());
+		operations.add(ContentProviderOperation.newInsert(
+				LeaderboardContract.Statistics.STATISTICS_CONTENT_URI)
+				.withValues(score(0, 90, TIMESTAMP + 1)).build());
+
+		try {
+			provider.applyBatch(operations);
+			fail("The insert into an unsupported Uri should have failed");
+		} catch (IllegalArgumentException | OperationApplicationException expected) {
+			/* The insert preceding the failed one must not have been committed */
+		}
+		assertEquals(0, countScores());
+	}
+
+	@Test
+	public void queryByIdReturnsTheScore() {
+		Uri uri = provider.insert(SCORES, score(1, 120, TIMESTAMP));
+		provider.insert(SCORES, score(1, 130, TIMESTAMP + 1));
+
+		Cursor cursor = provider.query(uri, null, null, null, null);
+		try {
+			assertEquals(1, cursor.getCount());
+			cursor.moveToFirst();
+			assertEquals(ContentUris.parseId(uri), cursor.getLong(
+					cursor.getColumnIndexOrThrow(LeaderboardContract.Scores._ID)));
+			assertEquals(120, cursor.getInt(
+					cursor.getColumnIndexOrThrow(LeaderboardContract.Scores.SCORE)));
+			assertEquals(TIMESTAMP, cursor.getLong(
+					cursor.getColumnIndexOrThrow(LeaderboardContract.Scores.TIMESTAMP)));
+		} finally {
+			cursor.close();
+		}
+	}
+
+	@Test
+	public void queryByIdProjectsColumns() {
+		Uri uri = provider.insert(SCORES, score(0, 140, TIMESTAMP));
+
+		Cursor cursor = provider.query(uri, new String[]{LeaderboardContract.Scores.SCORE},
+				null, null, null);
+		try {
+			assertEquals(1, cursor.getColumnCount());
+			assertTrue(cursor.moveToFirst());
+			assertEquals(140, cursor.getInt(0));
+		} finally {
+			cursor.close();
+		}
+	}
+
+	@Test
+	public void queryByMissingIdReturnsNoRows() {
+		Uri uri = provider.insert(SCORES, score(0, 150, TIMESTAMP));
+
+		Cursor cursor = provider.query(ContentUris.withAppendedId(SCORES,
+				ContentUris.parseId(uri) + 1), null, null, null, null);
+		try {
+			assertEquals(0, cursor.getCount());
+		} finally {
+			cursor.close();
+		}
+	}
+
+	@Test
+	public void queryByIdAppliesSelection() {
+		Uri uri = provider.insert(SCORES, score(0, 160, TIMESTAMP));
+		String selection = LeaderboardContract.Scores.SCORE + " > ?";
+
+		/* Only found if the id's argument is bound before the selection's */
+		Cursor matching = provider.query(uri, null, selection, new String[]{"150"}, null);
+		try {
+			assertEquals(1, matching.getCount());
+		} finally {
+			matching.close();
+		}
+
+		Cursor filtered = provider.query(uri, null, selection, new String[]{"170"}, null);
+		try {
+			assertEquals(0, filtered.getCount());
+		} finally {
+			filtered.close();
+		}
+	}
+
+	@Test
+	public void windowedQueryReturnsOnlyScoresInWindow() {
+		long now = System.currentTimeMillis();
+		provider.insert(SCORES, score(0, 170, now - 2 * 86400000L));
+		provider.insert(SCORES, score(0, 180, now));
+		provider.insert(SCORES, score(1, 190, now));
+
+		/* Without a limit the board cache is bypassed */
+		Uri day = SCORES.buildUpon().appendQueryParameter(
+				LeaderboardContract.Scores.QUERY_PARAMETER_WINDOW,
+				LeaderboardContract.Scores.WINDOW_DAY).build();
+		Cursor cursor = provider.query(day, new String[]{LeaderboardContract.Scores.SCORE},
+				LeaderboardContract.Scores.DIFFICULTY + " = ?", new String[]{"0"}, null);
+		try {
+			assertEquals(1, cursor.getCount());
+			assertTrue(cursor.moveToFirst());
+			assertEquals(180, cursor.getInt(0));
+		} finally {
+			cursor.close();
+		}
+	}
+
+	@Test
+	public void firstBoardQueryCountsOneMiss() {
+		provider.insert(SCORES, score(1, 200, System.currentTimeMillis()));
+
+		/* The counters are shared by the process, so they are compared before and after */
+		long hits = LeaderboardProvider.getTopScoresHitCount();
+		long misses = LeaderboardProvider.getTopScoresMissCount();
+		Uri week = SCORES.buildUpon()
+				.appendQueryParameter(LeaderboardContract.Scores.QUERY_PARAMETER_WINDOW,
+						LeaderboardContract.Scores.WINDOW_WEEK)
+				.appendQueryParameter(LeaderboardContract.Scores.QUERY_PARAMETER_LIMIT, "10")
+				.build();
+		Cursor cursor = provider.query(week, new String[]{LeaderboardContract.Scores.SCORE},
+				LeaderboardContract.Scores.SELECTION_DIFFICULTY, new String[]{"1"},
+				LeaderboardContract.Scores.SORT_ORDER_DEFAULT);
+		try {
+			assertEquals(1, cursor.getCount());
+		} finally {
+			cursor.close();
+		}
+
+		assertEquals(0, LeaderboardProvider.getTopScoresHitCount() - hits);
+		assertEquals(1, LeaderboardProvider.getTopScoresMissCount() - misses);
+	}
+
+	@Test
+	public void queryPlayerByIdReturnsOnlyThatPlayer() {
+		ContentValues values = new ContentValues();
+		values.put(LeaderboardContract.Players.NAME, "Player 2");
+		Uri uri = provider.insert(LeaderboardContract.Players.PLAYERS_CONTENT_URI, values);
+
+		Cursor all = provider.query(LeaderboardContract.Players.PLAYERS_CONTENT_URI, null, null,
+				null, null);
+		try {
+			assertEquals(2, all.getCount());
+		} finally {
+			all.close();
+		}
+
+		Cursor cursor = provider.query(uri, new String[]{LeaderboardContract.Players.NAME}, null,
+				null, null);
+		try {
+			assertEquals(1, cursor.getCount());
+			assertTrue(cursor.moveToFirst());
+			assertEquals("Player 2", cursor.getString(0));
+		} finally {
+			cursor.close();
+		}
+	}
+
+	/**
+	 * Builds the values of a score
+	 *
+	 * @param difficulty  The difficulty
+	 * @param value  The score
+	 * @param timestamp  The time the score was recorded
+	 * @return  The ContentValues of the score
+	 */
+	private static ContentValues score(int difficulty, int value, long timestamp) {
+		ContentValues values = new ContentValues();
+		values.put(LeaderboardContract.Scores.DATE_TIME, "01/01/01 12:00 PM");
+		values.put(LeaderboardContract.Scores.DIFFICULTY, difficulty);
+		values.put(LeaderboardContract.Scores.SCORE, value);
+		values.put(LeaderboardContract.Scores.TIMESTAMP, timestamp);
+		return values;
+	}
+
+	/**
+	 * Counts the recorded scores
+	 *
+	 * @return  The number of rows in the scores table
+	 */
+	private int countScores() {
+		Cursor cursor = provider.query(SCORES, new String[]{LeaderboardContract.Scores._ID},
+				null, null, null);
+		try {
+			return cursor.getCount();
+		} finally {
+			cursor.close();
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package com.holman.andrew.memorymatch.sync;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * In-process HTTP stand-in for the remote leaderboard service
+ * <p>
+ *     Listens on an ephemeral loopback port, records every request with its decompressed body,
+ *     and answers with a configurable status and body.
+ * </p>
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+final class LeaderboardServiceStandIn {
+	private static final String TAG = "LeaderboardServiceStandIn";
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final String LOOPBACK = "127.0.0.1";
+
+	private final HttpServer server;
+	private final List<Request> requests = new ArrayList<>();
+
+	private int uploadStatus = 200;
+	private String topScores = "{}";
+
+	/**
+	 * Starts the stand-in
+	 *
+	 * @throws IOException  If no port can be bound
+	 */
+	LeaderboardServiceStandIn() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(LOOPBACK, 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				respond(exchange);
+			}
+		});
+		server.start();
+	}
+
+	/**
+	 * Retrieves the URL of the stand-in, as configured for the real service
+	 *
+	 * @return  The base URL, without a trailing slash
+	 */
+	String getUrl() {
+		return "http://" + LOOPBACK + ":" + server.getAddress().getPort();
+	}
+
+	/**
+	 * Sets the status returned to uploads
+	 *
+	 * @param status  An HTTP status code
+	 */
+	synchronized void setUploadStatus(int status) {
+		uploadStatus = status;
+	}
+
+	/**
+	 * Sets the document returned to downloads of the top scores
+	 *
+	 * @param json  A JSON object
+	 */
+	synchronized void setTopScores(String json) {
+		topScores = json;
+	}
+
+	/**
+	 * Retrieves the requests received so far
+	 *
+	 * @return  A copy of the requests, in the order received
+	 */
+	synchronized List<Request> getRequests() {
+		return new ArrayList<>(requests);
+	}
+
+	void stop() {
+		server.stop(0);
+	}
+
+	/**
+	 * Records a request and answers it
+	 *
+	 * @param exchange  The request and its response
+	 */
+	private void respond(HttpExchange exchange) throws IOException {
+		InputStream input = exchange.getRequestBody();
+		if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+			input = new GZIPInputStream(input);
+		}
+		String body = read(input);
+
+		int status;
+		String response;
+		synchronized (this) {
+			requests.add(new Request(exchange.getRequestMethod(),
+					exchange.getRequestURI().toString(), body));
+			if ("POST".equals(exchange.getRequestMethod())) {
+				status = uploadStatus;
+				response = "";
+			} else {
+				status = 200;
+				response = topScores;
+			}
+		}
+
+		byte[] bytes = response.getBytes(UTF_8);
+		exchange.sendResponseHeaders(status, (bytes.length == 0) ? -1 : bytes.length);
+		OutputStream output = exchange.getResponseBody();
+		try {
+			output.write(bytes);
+		} finally {
+			output.close();
+		}
+	}
+
+	private static String read(InputStream input) throws IOException {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int count;
+			while ((count = input.read(buffer)) != -1) {
+				bytes.write(buffer, 0, count);
+			}
+			return new String(bytes.toByteArray(), UTF_8);
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * A request received by the stand-in
+	 */
+	static final class Request {
+		final String method;
+		final String uri;
+		final String body;
+
+		Request(String method, String uri, String body) {
+			this.method = method;
+			this.uri = uri;
+			this.body = body;
+		}
+	}
+}
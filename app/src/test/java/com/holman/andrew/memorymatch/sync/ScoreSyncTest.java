@@ -0,0 +1,194 @@
+package com.holman.andrew.memorymatch.sync;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import com.holman.andrew.memorymatch.provider.LeaderboardContract;
+import com.holman.andrew.memorymatch.provider.LeaderboardProvider;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of {@link ScoreSync} against {@link LeaderboardProvider} and an in-process stand-in for
+ * the remote leaderboard service, reached through {@link HttpSyncTransport}
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 26)
+public class ScoreSyncTest {
+	private static final String TAG = "ScoreSyncTest";
+
+	/* Time the local scores of each test are recorded at, in milliseconds since the epoch */
+	private static final long TIMESTAMP = 1000000000000L;
+
+	private LeaderboardServiceStandIn service;
+	private ContentResolver resolver;
+
+	@Before
+	public void setUp() throws IOException {
+		Robolectric.setupContentProvider(LeaderboardProvider.class, LeaderboardContract.AUTHORITY);
+		resolver = RuntimeEnvironment.application.getContentResolver();
+		service = new LeaderboardServiceStandIn();
+	}
+
+	@After
+	public void tearDown() {
+		service.stop();
+	}
+
+	@Test
+	public void uploadsOutboxInBatches() throws JSONException {
+		int recorded = ScoreSync.UPLOAD_BATCH_SIZE + 50;
+		recordScores(recorded);
+
+		ScoreSync sync = newScoreSync(new HttpSyncTransport(service.getUrl()));
+		sync.sync();
+
+		List<LeaderboardServiceStandIn.Request> requests = service.getRequests();
+		assertEquals(3, requests.size());
+		assertEquals("POST", requests.get(0).method);
+		assertEquals(ScoreSync.UPLOAD_BATCH_SIZE, scoresIn(requests.get(0)));
+		assertEquals("POST", requests.get(1).method);
+		assertEquals(50, scoresIn(requests.get(1)));
+		assertEquals("GET", requests.get(2).method);
+
+		assertEquals(0, count(LeaderboardContract.Outbox.OUTBOX_CONTENT_URI));
+		assertEquals(2, sync.getUploadRequests());
+		assertEquals(recorded, sync.getScoresUploaded());
+		assertEquals(recorded - 2, sync.getRequestsSaved());
+		assertFalse(sync.isSyncScheduled());
+	}
+
+	@Test
+	public void mergesRemoteScoresAndAdvancesCursor() throws JSONException {
+		service.setTopScores("{\"cursor\": 42, \"scores\": ["
+				+ remoteScore(0, 90, TIMESTAMP + 1) + ", " + remoteScore(1, 80, TIMESTAMP + 2)
+				+ "]}");
+
+		ScoreSync sync = newScoreSync(new HttpSyncTransport(service.getUrl()));
+		sync.sync();
+		assertEquals(2, sync.getScoresMerged());
+		assertEquals(2, count(LeaderboardContract.Scores.SCORES_CONTENT_URI));
+		/* Downloaded scores are not uploaded back */
+		assertEquals(0, count(LeaderboardContract.Outbox.OUTBOX_CONTENT_URI));
+
+		/* The same scores downloaded again are skipped, and the cursor is sent back */
+		sync.sync();
+		assertEquals(2, count(LeaderboardContract.Scores.SCORES_CONTENT_URI));
+		List<LeaderboardServiceStandIn.Request> requests = service.getRequests();
+		assertEquals("/scores/top?since=0", requests.get(0).uri);
+		assertEquals("/scores/top?since=42", requests.get(requests.size() - 1).uri);
+	}
+
+	@Test
+	public void rejectedUploadKeepsOutboxAndRetries() {
+		recordScores(3);
+		service.setUploadStatus(503);
+
+		ScoreSync sync = newScoreSync(new HttpSyncTransport(service.getUrl()));
+		sync.sync();
+		assertEquals(3, count(LeaderboardContract.Outbox.OUTBOX_CONTENT_URI));
+		assertEquals(0, sync.getScoresUploaded());
+		assertTrue(sync.isSyncScheduled());
+
+		service.setUploadStatus(200);
+		sync.sync();
+		assertEquals(0, count(LeaderboardContract.Outbox.OUTBOX_CONTENT_URI));
+		assertEquals(3, sync.getScoresUploaded());
+	}
+
+	@Test
+	public void runtimeExceptionSchedulesRetry() {
+		recordScores(1);
+
+		ScoreSync sync = newScoreSync(new SyncTransport() {
+			@Override
+			public JSONObject post(String path, JSONObject body) {
+				throw new IllegalStateException("database is locked");
+			}
+
+			@Override
+			public JSONObject get(String path) {
+				return new JSONObject();
+			}
+		});
+		sync.sync();
+		assertEquals(1, count(LeaderboardContract.Outbox.OUTBOX_CONTENT_URI));
+		assertTrue(sync.isSyncScheduled());
+	}
+
+	private static ScoreSync newScoreSync(SyncTransport transport) {
+		return new ScoreSync(RuntimeEnvironment.application, transport);
+	}
+
+	/**
+	 * Records scores locally, as played games do, which queues them in the outbox
+	 *
+	 * @param count  Number of scores to record
+	 */
+	private void recordScores(int count) {
+		ContentValues[] values = new ContentValues[count];
+		for (int i = 0; i < count; i++) {
+			values[i] = new ContentValues();
+			values[i].put(LeaderboardContract.Scores.DATE_TIME, "01/01/01 12:00 PM");
+			values[i].put(LeaderboardContract.Scores.DIFFICULTY, i % 2);
+			values[i].put(LeaderboardContract.Scores.SCORE, i);
+			values[i].put(LeaderboardContract.Scores.TIMESTAMP, TIMESTAMP + i);
+		}
+		resolver.bulkInsert(LeaderboardContract.Scores.SCORES_CONTENT_URI, values);
+	}
+
+	/**
+	 * Builds a score as the remote service returns it
+	 *
+	 * @param difficulty  The difficulty
+	 * @param score  The score
+	 * @param timestamp  The time the score was recorded
+	 * @return  The JSON object of the score
+	 */
+	private static String remoteScore(int difficulty, int score, long timestamp) {
+		return "{\"dateTime\": \"01/01/01 12:00 PM\", \"difficulty\": " + difficulty
+				+ ", \"score\": " + score + ", \"timestamp\": " + timestamp + "}";
+	}
+
+	/**
+	 * Counts the scores uploaded by a request
+	 *
+	 * @param request  An upload request
+	 * @return  The number of scores in its body
+	 */
+	private static int scoresIn(LeaderboardServiceStandIn.Request request) throws JSONException {
+		return new JSONObject(request.body).getJSONArray("scores").length();
+	}
+
+	private int count(Uri uri) {
+		Cursor cursor = resolver.query(uri, new String[]{LeaderboardContract.Scores._ID},
+				null, null, null);
+		try {
+			return cursor.getCount();
+		} finally {
+			cursor.close();
+		}
+	}
+}
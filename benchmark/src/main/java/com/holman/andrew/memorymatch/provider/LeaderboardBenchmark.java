@@ -0,0 +1,639 @@
+package com.holman.andrew.memorymatch.provider;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the latency of the leaderboard database's hot paths on the JVM
+ * <p>
+ *     Builds the schema of {@link LeaderboardSchema}, including its indexes and triggers, in a
+ *     SQLite database through the xerial JDBC driver, fills it with synthetic scores, and times the
+ *     statements run by {@link LeaderboardProvider}: single and batched inserts, ranked leaderboard
+ *     queries, point lookups, rank lookups, and deletes. The 50th, 90th, 99th, and 99.9th
+ *     percentile latencies of each path are printed along with the query plan of every query, so
+ *     that a schema change can be compared against the previous one at production scale. Last,
+ *     100,000 scores are imported in a single transaction, as by a bulk insert restoring a backup,
+ *     and the time per row is compared with that of a row inserted in its own transaction.
+ * </p>
+ * <p>
+ *     Usage: {@code gradlew :benchmark:run -PbenchmarkArgs="[rows] [samples] [database]"}.
+ *     Defaults to 2,000,000 rows and 2,000 samples per path in a temporary database. The journal
+ *     is configured as on Android, so the paths compare with each other as they do on a device,
+ *     although absolute numbers differ.
+ * </p>
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+public final class LeaderboardBenchmark {
+	private static final String TAG = "LeaderboardBenchmark";
+
+	private static final int DEFAULT_ROWS = 2000000;
+	private static final int DEFAULT_SAMPLES = 2000;
+
+	/* Rows written per transaction while generating, as by a bulk insert */
+	private static final int BATCH_SIZE = 1000;
+
+	/* Rows written by the timed import, as by a bulk insert restoring a backup */
+	private static final int IMPORT_ROWS = 100000;
+
+	/* Number of rows on a leaderboard. Matches LeaderboardContract.Scores.LEADERBOARD_SIZE. */
+	private static final int LEADERBOARD_SIZE = 100;
+
+	/* Synthetic player profiles, including the default player */
+	private static final int PLAYER_COUNT = 8;
+
+	/* Synthetic scores are spread over this many days before now */
+	private static final int HISTORY_DAYS = 365;
+
+	private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+	/* Columns bound by the insert statement of a synthetic score */
+	private static final String[] INSERT_COLUMNS = {LeaderboardSchema.SCORE_DATE_TIME,
+			LeaderboardSchema.SCORE_DIFFICULTY, LeaderboardSchema.SCORE_VALUE,
+			LeaderboardSchema.SCORE_TIMESTAMP, LeaderboardSchema.SCORE_PLAYER};
+
+	private final Connection connection;
+	private final Random random = new Random(42);
+	private final SimpleDateFormat dateFormat = new SimpleDateFormat("MM/dd/yy hh:mm a", Locale.US);
+	private final long now = System.currentTimeMillis();
+	private final int samples;
+
+	/* Largest row id written so far */
+	private long maxId;
+
+	/**
+	 * Runs the benchmark
+	 *
+	 * @param args  The number of rows to generate, the number of samples per path, and the path
+	 *              of a database file that must not exist yet. All are optional.
+	 * @throws IOException  If the temporary database cannot be created
+	 * @throws SQLException  If a statement fails
+	 */
+	public static void main(String[] args) throws IOException, SQLException {
+		int rows = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_ROWS;
+		int samples = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_SAMPLES;
+
+		File database;
+		if (args.length > 2) {
+			database = new File(args[2]);
+			if (database.exists()) {
+				throw new IllegalArgumentException(database + " already exists");
+			}
+		} else {
+			database = File.createTempFile("leaderboard", ".db");
+			database.delete();
+			deleteOnExit(database);
+		}
+
+		Connection connection = DriverManager.getConnection("jdbc:sqlite:" + database.getPath());
+		try {
+			LeaderboardBenchmark benchmark = new LeaderboardBenchmark(connection, samples);
+			benchmark.createSchema();
+			System.out.println("Generating " + rows + " scores in " + database);
+			benchmark.run(rows);
+		} finally {
+			connection.close();
+		}
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param connection  Connection to an empty database
+	 * @param samples  Number of timed operations per path
+	 */
+	private LeaderboardBenchmark(Connection connection, int samples) {
+		this.connection = connection;
+		this.samples = samples;
+	}
+
+	/**
+	 * Configures the connection as Android does and creates the current schema
+	 *
+	 * @throws SQLException  If a statement fails
+	 */
+	private void createSchema() throws SQLException {
+		Statement statement = connection.createStatement();
+		try {
+			/* Android runs write-ahead logging databases with synchronous=NORMAL */
+			statement.execute("PRAGMA journal_mode=WAL");
+			statement.execute("PRAGMA synchronous=NORMAL");
+
+			connection.setAutoCommit(false);
+			for (String sql : LeaderboardSchema.create()) {
+				statement.execute(sql);
+			}
+			for (int player = 1; player <= PLAYER_COUNT; player++) {
+				statement.execute("INSERT OR IGNORE INTO " + LeaderboardSchema.TABLE_PLAYERS + " ("
+						+ LeaderboardSchema.PLAYER_ID + ", " + LeaderboardSchema.PLAYER_NAME + ", "
+						+ LeaderboardSchema.PLAYER_CREATED + ") VALUES (" + player + ", 'Player "
+						+ player + "', " + now + ")");
+			}
+			connection.commit();
+		} finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * Generates the synthetic scores, then times every path
+	 *
+	 * @param rows  Number of scores to generate
+	 * @throws SQLException  If a statement fails
+	 */
+	private void run(int rows) throws SQLException {
+		Latencies bulkInsert = new Latencies("bulk insert (" + BATCH_SIZE + ")",
+				(rows + BATCH_SIZE - 1) / BATCH_SIZE);
+		long started = System.nanoTime();
+		PreparedStatement insert = connection.prepareStatement(
+				LeaderboardSchema.buildInsert(INSERT_COLUMNS));
+		try {
+			for (int written = 0; written < rows; written += BATCH_SIZE) {
+				int batch = Math.min(BATCH_SIZE, rows - written);
+				long start = System.nanoTime();
+				for (int i = 0; i < batch; i++) {
+					bindScore(insert);
+					insert.addBatch();
+				}
+				insert.executeBatch();
+				connection.commit();
+				bulkInsert.add(System.nanoTime() - start);
+			}
+		} finally {
+			insert.close();
+		}
+		maxId = queryLong("SELECT max(" + LeaderboardSchema.SCORE_ID + ") FROM "
+				+ LeaderboardSchema.TABLE_SCORES);
+		System.out.printf(Locale.US, "Generated %d scores in %.1f s%n%n", maxId,
+				(System.nanoTime() - started) / 1e9);
+		analyze();
+
+		System.out.println(Latencies.HEADER);
+		bulkInsert.print();
+		Latencies singleInsert = benchmarkInsert();
+		singleInsert.print();
+		benchmarkBoard("top scores", LeaderboardSchema.TABLE_SCORES, 0).print();
+		benchmarkBoard("top scores (day)", LeaderboardSchema.TABLE_SCORES_BY_WINDOW,
+				now - DAY_MILLIS).print();
+		benchmarkBoard("top scores (week)", LeaderboardSchema.TABLE_SCORES, now - 7 * DAY_MILLIS)
+				.print();
+		/* A day that has just rolled over, with no scores yet */
+		benchmarkBoard("top scores (new day)", LeaderboardSchema.TABLE_SCORES_BY_WINDOW, now)
+				.print();
+		benchmarkPlayerBoard().print();
+		benchmarkRefill().print();
+		benchmarkScoreById().print();
+		benchmarkRank().print();
+		benchmarkDelete().print();
+
+		long elapsed = benchmarkImport();
+		System.out.printf(Locale.US, "%nImported %d scores in one transaction in %.1f ms, %.2f us "
+				+ "per row against a median of %.1f us for a row in its own transaction%n",
+				IMPORT_ROWS, elapsed / 1e6, elapsed / 1e3 / IMPORT_ROWS, singleInsert.median());
+	}
+
+	/**
+	 * Times single scores inserted in their own transaction, as by a finished game
+	 *
+	 * @return  The measured latencies
+	 * @throws SQLException  If a statement fails
+	 */
+	private Latencies benchmarkInsert() throws SQLException {
+		Latencies latencies = new Latencies("insert", samples);
+		PreparedStatement insert = connection.prepareStatement(
+				LeaderboardSchema.buildInsert(INSERT_COLUMNS));
+		try {
+			for (int i = 0; i < samples; i++) {
+				long start = System.nanoTime();
+				bindScore(insert);
+				insert.executeUpdate();
+				connection.commit();
+				latencies.add(System.nanoTime() - start);
+			}
+		} finally {
+			insert.close();
+		}
+		return latencies;
+	}
+
+	/**
+	 * Times inserting {@link #IMPORT_ROWS} scores within a single transaction through one compiled
+	 * statement, as LeaderboardProvider.bulkInsert does
+	 *
+	 * @return  Elapsed nanoseconds, including the commit
+	 * @throws SQLException  If a statement fails
+	 */
+	private long benchmarkImport() throws SQLException {
+		PreparedStatement insert = connection.prepareStatement(
+				LeaderboardSchema.buildInsert(INSERT_COLUMNS));
+		try {
+			long start = System.nanoTime();
+			for (int i = 0; i < IMPORT_ROWS; i++) {
+				bindScore(insert);
+				insert.executeUpdate();
+			}
+			connection.commit();
+			return System.nanoTime() - start;
+		} finally {
+			insert.close();
+		}
+	}
+
+	/**
+	 * Times reading a whole leaderboard of a random difficulty
+	 *
+	 * @param name  Name of the path in the report
+	 * @param table  The table as the provider reads it for the board's time window
+	 * @param since  Start of the time window in milliseconds since the epoch
+	 * @return  The measured latencies
+	 * @throws SQLException  If a statement fails
+	 */
+	private Latencies benchmarkBoard(String name, String table, long since) throws SQLException {
+		String sql = buildQuery(table, LeaderboardSchema.BOARD_SELECTION);
+		printPlan(name, sql);
+		Latencies latencies = new Latencies(name, samples);
+		PreparedStatement query = connection.prepareStatement(sql);
+		try {
+			for (int i = 0; i < samples; i++) {
+				query.setInt(1, random.nextInt(2));
+				query.setLong(2, since);
+				latencies.add(timeQuery(query));
+			}
+		} finally {
+			query.close();
+		}
+		return latencies;
+	}
+
+	/**
+	 * Times reading the leaderboard of a random player and difficulty
+	 *
+	 * @return  The measured latencies
+	 * @throws SQLException  If a statement fails
+	 */
+	private Latencies benchmarkPlayerBoard() throws SQLException {
+		String name = "player scores";
+		String sql = buildQuery(LeaderboardSchema.TABLE_SCORES,
+				LeaderboardSchema.PLAYER_BOARD_SELECTION);
+		printPlan(name, sql);
+		Latencies latencies = new Latencies(name, samples);
+		PreparedStatement query = connection.prepareStatement(sql);
+		try {
+			for (int i = 0; i < samples; i++) {
+				query.setInt(1, 1 + random.nextInt(PLAYER_COUNT));
+				query.setInt(2, random.nextInt(2));
+				latencies.add(timeQuery(query));
+			}
+		} finally {
+			query.close();
+		}
+		return latencies;
+	}
+
+	/**
+	 * Times refilling an all-time leaderboard below a random score, as after a cached row is
+	 * deleted
+	 *
+	 * @return  The measured latencies
+	 * @throws SQLException  If a statement fails
+	 */
+	private Latencies benchmarkRefill() throws SQLException {
+		String name = "refill";
+		String sql = buildQuery(LeaderboardSchema.TABLE_SCORES, LeaderboardSchema.REFILL_SELECTION);
+		printPlan(name, sql);
+		Latencies latencies = new Latencies(name, samples);
+		PreparedStatement query = connection.prepareStatement(sql);
+		try {
+			for (int i = 0; i < samples; i++) {
+				int score = randomScore();
+				query.setInt(1, random.nextInt(2));
+				query.setLong(2, 0);
+				query.setInt(3, score);
+				query.setInt(4, score);
+				query.setLong(5, randomId());
+				latencies.add(timeQuery(query));
+			}
+		} finally {
+			query.close();
+		}
+		return latencies;
+	}
+
+	/**
+	 * Times looking up random scores by row id
+	 *
+	 * @return  The measured latencies
+	 * @throws SQLException  If a statement fails
+	 */
+	private Latencies benchmarkScoreById() throws SQLException {
+		String name = "score by id";
+		printPlan(name, LeaderboardSchema.SQL_SCORE_BY_ID);
+		Latencies latencies = new Latencies(name, samples);
+		PreparedStatement query = connection.prepareStatement(LeaderboardSchema.SQL_SCORE_BY_ID);
+		try {
+			for (int i = 0; i < samples; i++) {
+				query.setLong(1, randomId());
+				latencies.add(timeQuery(query));
+			}
+		} finally {
+			query.close();
+		}
+		return latencies;
+	}
+
+	/**
+	 * Times computing the all-time rank of a random score, the number of scores of its difficulty
+	 * ranked above it
+	 *
+	 * @return  The measured latencies
+	 * @throws SQLException  If a statement fails
+	 */
+	private Latencies benchmarkRank() throws SQLException {
+		String name = "rank lookup";
+		String sql = "SELECT count(*) FROM " + LeaderboardSchema.TABLE_SCORES + " WHERE "
+				+ LeaderboardSchema.SCORE_DIFFICULTY + " = ? AND (" + LeaderboardSchema.SCORE_VALUE
+				+ " > ? OR (" + LeaderboardSchema.SCORE_VALUE + " = ? AND "
+				+ LeaderboardSchema.SCORE_ID + " < ?))";
+		printPlan(name, sql);
+		Latencies latencies = new Latencies(name, samples);
+		PreparedStatement query = connection.prepareStatement(sql);
+		try {
+			for (int i = 0; i < samples; i++) {
+				int score = randomScore();
+				query.setInt(1, random.nextInt(2));
+				query.setInt(2, score);
+				query.setInt(3, score);
+				query.setLong(4, randomId());
+				latencies.add(timeQuery(query));
+			}
+		} finally {
+			query.close();
+		}
+		return latencies;
+	}
+
+	/**
+	 * Times deleting random scores in their own transaction, firing the statistics, outbox, and
+	 * personal best triggers
+	 *
+	 * @return  The measured latencies
+	 * @throws SQLException  If a statement fails
+	 */
+	private Latencies benchmarkDelete() throws SQLException {
+		Latencies latencies = new Latencies("delete", samples);
+		PreparedStatement delete = connection.prepareStatement("DELETE FROM "
+				+ LeaderboardSchema.TABLE_SCORES + " WHERE " + LeaderboardSchema.SCORE_ID + " = ?");
+		try {
+			for (int i = 0; i < samples; i++) {
+				delete.setLong(1, randomId());
+				long start = System.nanoTime();
+				delete.executeUpdate();
+				connection.commit();
+				latencies.add(System.nanoTime() - start);
+			}
+		} finally {
+			delete.close();
+		}
+		return latencies;
+	}
+
+	/**
+	 * Builds a leaderboard query as SQLiteQueryBuilder does for the provider
+	 *
+	 * @param table  The table, with any index hint
+	 * @param selection  The selection of the query
+	 * @return  The SQL statement
+	 */
+	private static String buildQuery(String table, String selection) {
+		StringBuilder sql = new StringBuilder("SELECT ");
+		for (int i = 0; i < LeaderboardSchema.SCORE_COLUMNS.length; i++) {
+			sql.append(i == 0 ? "" : ", ").append(LeaderboardSchema.SCORE_COLUMNS[i]);
+		}
+		return sql.append(" FROM ").append(table)
+				.append(" WHERE (").append(selection).append(") ORDER BY ")
+				.append(LeaderboardSchema.SORT_ORDER_RANK).append(" LIMIT ")
+				.append(LEADERBOARD_SIZE).toString();
+	}
+
+	/**
+	 * Runs a bound query and reads every column of every row
+	 *
+	 * @param query  The query
+	 * @return  Elapsed nanoseconds
+	 * @throws SQLException  If the query fails
+	 */
+	private static long timeQuery(PreparedStatement query) throws SQLException {
+		long start = System.nanoTime();
+		ResultSet rows = query.executeQuery();
+		try {
+			int columns = rows.getMetaData().getColumnCount();
+			while (rows.next()) {
+				for (int column = 1; column <= columns; column++) {
+					rows.getObject(column);
+				}
+			}
+		} finally {
+			rows.close();
+		}
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Binds a synthetic score to the insert statement
+	 *
+	 * @param insert  Statement compiled from {@link #INSERT_COLUMNS}
+	 * @throws SQLException  If a value cannot be bound
+	 */
+	private void bindScore(PreparedStatement insert) throws SQLException {
+		long timestamp = now - (long) (random.nextDouble() * HISTORY_DAYS * DAY_MILLIS);
+		insert.setString(1, dateFormat.format(new Date(timestamp)));
+		insert.setInt(2, random.nextInt(2));
+		insert.setInt(3, randomScore());
+		insert.setLong(4, timestamp);
+		insert.setInt(5, 1 + random.nextInt(PLAYER_COUNT));
+	}
+
+	/**
+	 * Draws a score distributed around the middle of the histogram, as played games are
+	 *
+	 * @return  A non-negative score
+	 */
+	private int randomScore() {
+		int range = LeaderboardSchema.HISTOGRAM_BUCKET_WIDTH
+				* LeaderboardSchema.HISTOGRAM_BUCKET_COUNT;
+		int score = (int) (range / 2 + random.nextGaussian() * range / 6);
+		return (score < 0) ? 0 : score;
+	}
+
+	/**
+	 * Draws a row id that was written, which may since have been deleted
+	 *
+	 * @return  A row id
+	 */
+	private long randomId() {
+		return 1 + (long) (random.nextDouble() * maxId);
+	}
+
+	/**
+	 * Gathers planner statistics, as LeaderboardMaintenance does
+	 *
+	 * @throws SQLException  If the statement fails
+	 */
+	private void analyze() throws SQLException {
+		Statement statement = connection.createStatement();
+		try {
+			statement.execute("ANALYZE");
+			connection.commit();
+		} finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * Prints the query plan of a statement
+	 *
+	 * @param name  Name of the path in the report
+	 * @param sql  The statement
+	 * @throws SQLException  If the statement cannot be planned
+	 */
+	private void printPlan(String name, String sql) throws SQLException {
+		PreparedStatement explain = connection.prepareStatement("EXPLAIN QUERY PLAN " + sql);
+		try {
+			/* The plan's shape does not depend on the bound values */
+			int parameters = explain.getParameterMetaData().getParameterCount();
+			for (int i = 1; i <= parameters; i++) {
+				explain.setLong(i, 0);
+			}
+			ResultSet plan = explain.executeQuery();
+			try {
+				int detail = plan.getMetaData().getColumnCount();
+				while (plan.next()) {
+					System.err.println("plan: " + name + ": " + plan.getString(detail));
+				}
+			} finally {
+				plan.close();
+			}
+		} finally {
+			explain.close();
+		}
+	}
+
+	/**
+	 * Runs a query returning a single number
+	 *
+	 * @param sql  The query
+	 * @return  The number, or 0 if the result is null
+	 * @throws SQLException  If the query fails
+	 */
+	private long queryLong(String sql) throws SQLException {
+		Statement statement = connection.createStatement();
+		try {
+			ResultSet result = statement.executeQuery(sql);
+			try {
+				return result.next() ? result.getLong(1) : 0;
+			} finally {
+				result.close();
+			}
+		} finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * Deletes a temporary database and its journal files when the JVM exits
+	 *
+	 * @param database  The database file
+	 */
+	private static void deleteOnExit(File database) {
+		database.deleteOnExit();
+		new File(database.getPath() + "-wal").deleteOnExit();
+		new File(database.getPath() + "-shm").deleteOnExit();
+	}
+
+	/**
+	 * Latencies of a single path
+	 */
+	private static final class Latencies {
+		static final String HEADER = String.format(Locale.US, "%-22s %8s %10s %10s %10s %10s %10s",
+				"path (us)", "n", "p50", "p90", "p99", "p99.9", "max");
+
+		private final String name;
+		private long[] nanos;
+		private int count;
+
+		/**
+		 * Constructor
+		 *
+		 * @param name  Name of the path in the report
+		 * @param expected  Expected number of samples
+		 */
+		Latencies(String name, int expected) {
+			this.name = name;
+			this.nanos = new long[Math.max(expected, 1)];
+		}
+
+		/**
+		 * Records a sample
+		 *
+		 * @param elapsed  Elapsed nanoseconds
+		 */
+		void add(long elapsed) {
+			if (count == nanos.length) {
+				nanos = Arrays.copyOf(nanos, count * 2);
+			}
+			nanos[count++] = elapsed;
+		}
+
+		/**
+		 * Prints the percentiles of the recorded samples in microseconds
+		 */
+		void print() {
+			long[] sorted = Arrays.copyOf(nanos, count);
+			Arrays.sort(sorted);
+			System.out.println(String.format(Locale.US,
+					"%-22s %8d %10.1f %10.1f %10.1f %10.1f %10.1f", name, count,
+					percentile(sorted, 0.5), percentile(sorted, 0.9), percentile(sorted, 0.99),
+					percentile(sorted, 0.999), percentile(sorted, 1)));
+		}
+
+		/**
+		 * Retrieves the median of the recorded samples
+		 *
+		 * @return  The median in microseconds, or 0 without samples
+		 */
+		double median() {
+			long[] sorted = Arrays.copyOf(nanos, count);
+			Arrays.sort(sorted);
+			return percentile(sorted, 0.5);
+		}
+
+		/**
+		 * Retrieves a percentile by the nearest-rank method
+		 *
+		 * @param sorted  Samples in ascending order
+		 * @param fraction  The percentile as a fraction between 0 and 1
+		 * @return  The percentile in microseconds, or 0 without samples
+		 */
+		private static double percentile(long[] sorted, double fraction) {
+			if (sorted.length == 0) {
+				return 0;
+			}
+			int rank = (int) Math.ceil(fraction * sorted.length);
+			return sorted[Math.max(rank, 1) - 1] / 1e3;
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package com.holman.andrew.memorymatch.game;
+
+import com.holman.andrew.memorymatch.Constants;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Tests that the per-move path of {@link GameModel} allocates nothing in steady state
+ * <p>
+ *     Plays thousands of games through {@code makeSelection}, {@code isMatch}, {@code removePair},
+ *     {@code decreaseScore}, and {@code tickScore} after a warm-up long enough for the JIT to
+ *     compile them, and reads the calling thread's allocated bytes from the HotSpot
+ *     {@link ThreadMXBean}. Skipped on JVMs without thread allocation counters.
+ * </p>
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+public class GameModelAllocationTest {
+	private static final String TAG = "GameModelAllocationTest";
+
+	private static final int WARM_UP_MOVES = 200000;
+	private static final int MEASURED_MOVES = 100000;
+
+	private com.sun.management.ThreadMXBean counters;
+
+	private GameModel model;
+
+	/* Position of the scan over tile pairs, advanced by every move */
+	private int first;
+	private int second = 1;
+
+	@Before
+	public void setUp() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+		counters = (com.sun.management.ThreadMXBean) threads;
+		assumeTrue(counters.isThreadAllocatedMemorySupported());
+		counters.setThreadAllocatedMemoryEnabled(true);
+	}
+
+	@Test
+	public void easyMovesDoNotAllocate() {
+		assertMovesDoNotAllocate(Constants.DIFFICULTY_EASY);
+	}
+
+	@Test
+	public void hardMovesDoNotAllocate() {
+		assertMovesDoNotAllocate(Constants.DIFFICULTY_HARD);
+	}
+
+	/**
+	 * Measures the bytes allocated by the moves of one difficulty after a warm-up, and asserts
+	 * there were none
+	 *
+	 * @param difficulty  The difficulty to play
+	 */
+	private void assertMovesDoNotAllocate(int difficulty) {
+		model = new GameModel(difficulty);
+		model.startGame();
+		play(WARM_UP_MOVES);
+
+		long thread = Thread.currentThread().getId();
+		/* Reading the counter may itself allocate, which is measured with nothing in between */
+		long overhead = -counters.getThreadAllocatedBytes(thread);
+		overhead += counters.getThreadAllocatedBytes(thread);
+
+		long before = counters.getThreadAllocatedBytes(thread);
+		int checksum = play(MEASURED_MOVES);
+		long allocated = counters.getThreadAllocatedBytes(thread) - before - overhead;
+
+		/* The checksum is consumed so the moves cannot be optimized away */
+		assertEquals(String.format(Locale.US, "Bytes allocated by %d moves of difficulty %d"
+				+ " (checksum %d)", MEASURED_MOVES, difficulty, checksum), 0,
+				Math.max(allocated, 0));
+	}
+
+	/**
+	 * Plays moves as GameActivity does, starting a new game whenever one ends
+	 *
+	 * @param moves  The number of pairs to select
+	 * @return  A value derived from the scores, so the moves cannot be optimized away
+	 */
+	private int play(int moves) {
+		int checksum = 0;
+		for (int move = 0; move < moves; move++) {
+			selectPair();
+			if (model.isMatch()) {
+				model.removePair();
+				model.increaseScore();
+			} else {
+				model.decreaseScore();
+				model.resetSelection();
+			}
+			checksum += model.tickScore();
+
+			if (model.isOver()) {
+				model.startGame();
+			}
+		}
+		return checksum;
+	}
+
+	/**
+	 * Selects the next two distinct tiles still on the board
+	 */
+	private void selectPair() {
+		int tiles = GameModel.size * GameModel.size;
+		do {
+			second++;
+			if (second >= tiles) {
+				first = (first + 1) % tiles;
+				second = 0;
+			}
+		} while (first == second || !isOnBoard(first) || !isOnBoard(second));
+		model.makeSelection(first / GameModel.size, first % GameModel.size);
+		model.makeSelection(second / GameModel.size, second % GameModel.size);
+	}
+
+	/**
+	 * Checks whether a tile has not been matched yet
+	 *
+	 * @param tile  The tile index, row-major
+	 * @return  True if the tile is still on the board
+	 */
+	private boolean isOnBoard(int tile) {
+		return model.getSymbol(tile / GameModel.size, tile % GameModel.size) != null;
+	}
+}
@@ -0,0 +1,171 @@
+package com.holman.andrew.memorymatch.game;
+
+import com.holman.andrew.memorymatch.Constants;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests that {@link GameModel#fromSnapshot(byte[])} restores what {@link GameModel#toSnapshot()}
+ * saved, and rejects snapshots of games that cannot be played
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+public class GameModelSnapshotTest {
+	private static final String TAG = "GameModelSnapshotTest";
+
+	/* Offsets into a snapshot, following the order toSnapshot writes the fields in */
+	private static final int DIFFICULTY_OFFSET = 1;
+	private static final int SYMBOLS_OFFSET = 2;
+	private static final int SELECTION_OFFSET = 36;
+
+	@Test
+	public void easyGameRoundTrips() {
+		assertRoundTrips(Constants.DIFFICULTY_EASY);
+	}
+
+	@Test
+	public void hardGameRoundTrips() {
+		assertRoundTrips(Constants.DIFFICULTY_HARD);
+	}
+
+	@Test
+	public void unknownDifficultyIsRejected() {
+		byte[] snapshot = playedGame(Constants.DIFFICULTY_EASY).toSnapshot();
+		snapshot[DIFFICULTY_OFFSET] = 7;
+		assertRejected(snapshot);
+	}
+
+	@Test
+	public void symbolBeyondDifficultyIsRejected() {
+		/* Easy deals four copies of four symbols, so only 0 to 3 are valid */
+		byte[] snapshot = playedGame(Constants.DIFFICULTY_EASY).toSnapshot();
+		snapshot[SYMBOLS_OFFSET] = 4;
+		assertRejected(snapshot);
+
+		snapshot = playedGame(Constants.DIFFICULTY_HARD).toSnapshot();
+		snapshot[SYMBOLS_OFFSET] = 8;
+		assertRejected(snapshot);
+
+		snapshot[SYMBOLS_OFFSET] = -1;
+		assertRejected(snapshot);
+	}
+
+	@Test
+	public void selectedRemovedTileIsRejected() {
+		GameModel model = playedGame(Constants.DIFFICULTY_HARD);
+		int tile = removedTile(model);
+		assertTrue("A pair should have been matched", tile >= 0);
+
+		byte[] snapshot = model.toSnapshot();
+		snapshot[SELECTION_OFFSET] = (byte) tile;
+		assertRejected(snapshot);
+	}
+
+	@Test
+	public void selectionOffBoardIsRejected() {
+		byte[] snapshot = playedGame(Constants.DIFFICULTY_EASY).toSnapshot();
+		snapshot[SELECTION_OFFSET] = (byte) (GameModel.size * GameModel.size);
+		assertRejected(snapshot);
+
+		snapshot[SELECTION_OFFSET] = -2;
+		assertRejected(snapshot);
+	}
+
+	@Test
+	public void otherVersionOrLengthIsRejected() {
+		byte[] snapshot = playedGame(Constants.DIFFICULTY_EASY).toSnapshot();
+		assertRejected(Arrays.copyOf(snapshot, snapshot.length - 1));
+
+		snapshot[0]++;
+		assertRejected(snapshot);
+	}
+
+	/**
+	 * Saves and restores a game in progress, and asserts the restored game is the same
+	 *
+	 * @param difficulty  The difficulty to play
+	 */
+	private static void assertRoundTrips(int difficulty) {
+		GameModel model = playedGame(difficulty);
+		/* Tile 0 was matched by playedGame, so the last tile is still on the board */
+		model.makeSelection(GameModel.size - 1, GameModel.size - 1);
+		model.setElapsedMillis(12345L);
+		byte[] snapshot = model.toSnapshot();
+
+		GameModel restored = GameModel.fromSnapshot(snapshot);
+		assertArrayEquals(snapshot, restored.toSnapshot());
+		assertEquals(difficulty, restored.getDifficulty());
+		assertEquals(model.getScore(), restored.getScore());
+		assertEquals(12345L, restored.getElapsedMillis());
+		assertFalse(restored.isOver());
+		for (int i = 0; i < GameModel.size; i++) {
+			for (int j = 0; j < GameModel.size; j++) {
+				assertEquals(model.getSymbolIndex(i, j), restored.getSymbolIndex(i, j));
+			}
+		}
+		assertArrayEquals(model.getSelections(), restored.getSelections());
+	}
+
+	/**
+	 * Starts a game and matches one pair, mismatching the pairs tried before it
+	 *
+	 * @param difficulty  The difficulty to play
+	 * @return  The game, with one pair removed and no selection
+	 */
+	private static GameModel playedGame(int difficulty) {
+		GameModel model = new GameModel(difficulty);
+		model.startGame();
+		int tiles = GameModel.size * GameModel.size;
+		for (int second = 1; second < tiles; second++) {
+			model.makeSelection(0, 0);
+			model.makeSelection(second / GameModel.size, second % GameModel.size);
+			if (model.isMatch()) {
+				model.removePair();
+				model.increaseScore();
+				return model;
+			}
+			model.decreaseScore();
+			model.resetSelection();
+		}
+		throw new AssertionError("Every symbol is dealt more than once");
+	}
+
+	/**
+	 * Finds a matched tile
+	 *
+	 * @param model  The game
+	 * @return  The index of a removed tile, row-major, or -1 if there is none
+	 */
+	private static int removedTile(GameModel model) {
+		for (int tile = 0; tile < GameModel.size * GameModel.size; tile++) {
+			if (model.isRemoved(tile / GameModel.size, tile % GameModel.size)) {
+				return tile;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Asserts a snapshot is rejected
+	 *
+	 * @param snapshot  The snapshot
+	 */
+	private static void assertRejected(byte[] snapshot) {
+		try {
+			GameModel.fromSnapshot(snapshot);
+			fail("The snapshot should have been rejected");
+		} catch (IllegalArgumentException expected) {
+			/* GameActivity discards the saved game and starts a new one */
+		}
+	}
+}
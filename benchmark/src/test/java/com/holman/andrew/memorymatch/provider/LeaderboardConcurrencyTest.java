@@ -0,0 +1,317 @@
+package com.holman.andrew.memorymatch.provider;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Stress test of concurrent leaderboard reads and score writes
+ * <p>
+ *     A writer commits one score per transaction, as finished games do, while several readers
+ *     query leaderboards on their own connections without waiting for locks. The reads completed
+ *     and the reads refused because the database was locked are counted under the rollback
+ *     journal used before and under the write-ahead log LeaderboardOpenHelper enables, and both
+ *     are reported by the assertions. Only the write-ahead log must never refuse a read.
+ * </p>
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+public class LeaderboardConcurrencyTest {
+	private static final String TAG = "LeaderboardConcurrencyTest";
+
+	private static final int READERS = 4;
+	private static final long DURATION_MILLIS = 2000;
+	private static final int SEED_ROWS = 20000;
+
+	/* Rows on a leaderboard. Matches LeaderboardContract.Scores.LEADERBOARD_SIZE. */
+	private static final int LEADERBOARD_SIZE = 100;
+
+	/* Primary result code of SQLite for a locked database */
+	private static final int SQLITE_BUSY = 5;
+
+	/* Columns bound by the insert statement of a synthetic score */
+	private static final String[] INSERT_COLUMNS = {LeaderboardSchema.SCORE_DATE_TIME,
+			LeaderboardSchema.SCORE_DIFFICULTY, LeaderboardSchema.SCORE_VALUE,
+			LeaderboardSchema.SCORE_TIMESTAMP};
+
+	private static final String SQL_BOARD = "SELECT " + LeaderboardSchema.SCORE_ID + ", "
+			+ LeaderboardSchema.SCORE_VALUE + " FROM " + LeaderboardSchema.TABLE_SCORES
+			+ " WHERE " + LeaderboardSchema.BOARD_SELECTION + " ORDER BY "
+			+ LeaderboardSchema.SORT_ORDER_RANK + " LIMIT " + LEADERBOARD_SIZE;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void writeAheadLogNeverRefusesReads() throws Exception {
+		/* Reported for comparison only, as a commit under the rollback journal locks out readers */
+		Result rollback = stress("DELETE", "FULL");
+		Result wal = stress("WAL", "NORMAL");
+
+		String message = wal + ", against " + rollback;
+		assertTrue(message, wal.writes > 0);
+		assertTrue(message, wal.reads > 0);
+		assertEquals(message, 0, wal.refusedReads);
+	}
+
+	/**
+	 * Runs the writer and readers against a new database for {@link #DURATION_MILLIS}
+	 *
+	 * @param journalMode  The journal mode of the database
+	 * @param synchronous  The synchronous mode Android pairs with the journal mode
+	 * @return  The operations completed
+	 * @throws Exception  If a statement fails other than by finding the database locked
+	 */
+	private Result stress(String journalMode, String synchronous) throws Exception {
+		final File database = folder.newFile(journalMode + ".db");
+		database.delete();
+		createDatabase(database, journalMode, synchronous);
+
+		final CountDownLatch ready = new CountDownLatch(1 + READERS);
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicLong writes = new AtomicLong();
+		final AtomicLong reads = new AtomicLong();
+		final AtomicLong refusedReads = new AtomicLong();
+		final AtomicReference<Exception> failure = new AtomicReference<>();
+
+		List<Thread> threads = new ArrayList<>();
+		threads.add(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					write(database, ready, start, writes);
+				} catch (Exception e) {
+					failure.compareAndSet(null, e);
+				}
+			}
+		}, "writer"));
+		for (int i = 0; i < READERS; i++) {
+			threads.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						read(database, ready, start, reads, refusedReads);
+					} catch (Exception e) {
+						failure.compareAndSet(null, e);
+					}
+				}
+			}, "reader " + i));
+		}
+
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		ready.await();
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		if (failure.get() != null) {
+			throw failure.get();
+		}
+
+		return new Result(journalMode, writes.get(), reads.get(), refusedReads.get());
+	}
+
+	/**
+	 * Creates the schema and a history of scores
+	 *
+	 * @param database  The database file, which must not exist
+	 * @param journalMode  The journal mode of the database
+	 * @param synchronous  The synchronous mode of the database
+	 * @throws SQLException  If a statement fails
+	 */
+	private static void createDatabase(File database, String journalMode, String synchronous)
+			throws SQLException {
+		Connection connection = open(database);
+		try {
+			Statement statement = connection.createStatement();
+			try {
+				statement.execute("PRAGMA journal_mode=" + journalMode);
+				statement.execute("PRAGMA synchronous=" + synchronous);
+				connection.setAutoCommit(false);
+				for (String sql : LeaderboardSchema.create()) {
+					statement.execute(sql);
+				}
+			} finally {
+				statement.close();
+			}
+
+			PreparedStatement insert = connection.prepareStatement(
+					LeaderboardSchema.buildInsert(INSERT_COLUMNS));
+			try {
+				Random random = new Random(42);
+				for (int i = 0; i < SEED_ROWS; i++) {
+					bindScore(insert, random, i);
+					insert.executeUpdate();
+				}
+			} finally {
+				insert.close();
+			}
+			connection.commit();
+		} finally {
+			connection.close();
+		}
+	}
+
+	/**
+	 * Commits one score per transaction for {@link #DURATION_MILLIS}, waiting for locks as
+	 * Android does
+	 *
+	 * @param database  The database file
+	 * @param ready  Counted down once the insert statement is compiled
+	 * @param start  Awaited before writing
+	 * @param writes  Receives the number of committed scores
+	 * @throws SQLException  If a statement fails
+	 * @throws InterruptedException  If interrupted while waiting to start
+	 */
+	private static void write(File database, CountDownLatch ready, CountDownLatch start,
+	                          AtomicLong writes) throws SQLException, InterruptedException {
+		Connection connection = open(database);
+		try {
+			execute(connection, "PRAGMA busy_timeout=10000");
+			connection.setAutoCommit(false);
+			PreparedStatement insert = connection.prepareStatement(
+					LeaderboardSchema.buildInsert(INSERT_COLUMNS));
+			try {
+				ready.countDown();
+				start.await();
+				long deadline = System.currentTimeMillis() + DURATION_MILLIS;
+				Random random = new Random(7);
+				for (int i = SEED_ROWS; System.currentTimeMillis() < deadline; i++) {
+					bindScore(insert, random, i);
+					insert.executeUpdate();
+					connection.commit();
+					writes.incrementAndGet();
+				}
+			} finally {
+				insert.close();
+			}
+		} finally {
+			connection.close();
+		}
+	}
+
+	/**
+	 * Reads leaderboards for {@link #DURATION_MILLIS} without waiting for locks
+	 *
+	 * @param database  The database file
+	 * @param ready  Counted down once the query is compiled
+	 * @param start  Awaited before reading
+	 * @param reads  Receives the number of leaderboards read
+	 * @param refusedReads  Receives the number of reads refused because the database was locked
+	 * @throws SQLException  If a statement fails other than by finding the database locked
+	 * @throws InterruptedException  If interrupted while waiting to start
+	 */
+	private static void read(File database, CountDownLatch ready, CountDownLatch start,
+	                         AtomicLong reads, AtomicLong refusedReads)
+			throws SQLException, InterruptedException {
+		Connection connection = open(database);
+		try {
+			execute(connection, "PRAGMA busy_timeout=0");
+			PreparedStatement query = connection.prepareStatement(SQL_BOARD);
+			try {
+				ready.countDown();
+				start.await();
+				long deadline = System.currentTimeMillis() + DURATION_MILLIS;
+				Random random = new Random();
+				while (System.currentTimeMillis() < deadline) {
+					query.setInt(1, random.nextInt(2));
+					query.setLong(2, 0);
+					try {
+						ResultSet rows = query.executeQuery();
+						try {
+							while (rows.next()) {
+								rows.getLong(1);
+							}
+						} finally {
+							rows.close();
+						}
+						reads.incrementAndGet();
+					} catch (SQLException e) {
+						if ((e.getErrorCode() & 0xff) != SQLITE_BUSY) {
+							throw e;
+						}
+						refusedReads.incrementAndGet();
+					}
+				}
+			} finally {
+				query.close();
+			}
+		} finally {
+			connection.close();
+		}
+	}
+
+	/**
+	 * Binds a synthetic score to the insert statement
+	 *
+	 * @param insert  Statement compiled from {@link #INSERT_COLUMNS}
+	 * @param random  Source of the score's difficulty and value
+	 * @param sequence  Distinguishes the score from every other one
+	 * @throws SQLException  If a value cannot be bound
+	 */
+	private static void bindScore(PreparedStatement insert, Random random, int sequence)
+			throws SQLException {
+		insert.setString(1, "01/01/18 12:00 PM");
+		insert.setInt(2, random.nextInt(2));
+		insert.setInt(3, random.nextInt(200));
+		insert.setLong(4, sequence);
+	}
+
+	private static Connection open(File database) throws SQLException {
+		return DriverManager.getConnection("jdbc:sqlite:" + database.getPath());
+	}
+
+	private static void execute(Connection connection, String sql) throws SQLException {
+		Statement statement = connection.createStatement();
+		try {
+			statement.execute(sql);
+		} finally {
+			statement.close();
+		}
+	}
+
+	/**
+	 * Operations completed by a run
+	 */
+	private static final class Result {
+		final String journalMode;
+		final long writes;
+		final long reads;
+		final long refusedReads;
+
+		Result(String journalMode, long writes, long reads, long refusedReads) {
+			this.journalMode = journalMode;
+			this.writes = writes;
+			this.reads = reads;
+			this.refusedReads = refusedReads;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.US, "%s: %d writes, %d reads, %d reads refused",
+					journalMode, writes, reads, refusedReads);
+		}
+	}
+}
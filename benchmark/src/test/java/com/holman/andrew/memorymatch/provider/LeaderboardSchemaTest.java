@@ -0,0 +1,143 @@
+package com.holman.andrew.memorymatch.provider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests of the migrations built by {@link LeaderboardSchema}
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+public class LeaderboardSchemaTest {
+	private static final String TAG = "LeaderboardSchemaTest";
+
+	/* Columns bound by the insert statement of a timestamped score */
+	private static final String[] INSERT_COLUMNS = {LeaderboardSchema.SCORE_DATE_TIME,
+			LeaderboardSchema.SCORE_DIFFICULTY, LeaderboardSchema.SCORE_VALUE,
+			LeaderboardSchema.SCORE_TIMESTAMP};
+
+	private Connection connection;
+
+	@Before
+	public void setUp() throws SQLException {
+		connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		connection.close();
+	}
+
+	@Test
+	public void upgradeKeepsLookAlikeScoresWithoutTimestamp() throws SQLException {
+		createVersion2();
+		for (int i = 0; i < 3; i++) {
+			insertLegacy("01/01/17 12:00 PM", 0, 50);
+		}
+		insertLegacy("01/01/17 12:00 PM", 0, 60);
+
+		for (String sql : LeaderboardSchema.upgrade(2)) {
+			execute(sql);
+		}
+
+		assertEquals(4, queryLong("select count(*) from " + LeaderboardSchema.TABLE_SCORES));
+		assertEquals(3, queryLong("select count(distinct " + LeaderboardSchema.SCORE_TIMESTAMP
+				+ ") from " + LeaderboardSchema.TABLE_SCORES + " where "
+				+ LeaderboardSchema.SCORE_VALUE + " = 50"));
+		/* Still older than a day-old score, and still on the all-time board */
+		assertTrue(queryLong("select max(" + LeaderboardSchema.SCORE_TIMESTAMP + ") from "
+				+ LeaderboardSchema.TABLE_SCORES) < 86400000L);
+		assertEquals(4, queryLong("select count(*) from " + LeaderboardSchema.TABLE_SCORES
+				+ " where " + LeaderboardSchema.SCORE_TIMESTAMP + " >= 0"));
+		assertEquals(4, queryLong("select " + LeaderboardSchema.SUMMARY_COUNT + " from "
+				+ LeaderboardSchema.TABLE_SUMMARY));
+	}
+
+	@Test
+	public void upgradedDatabaseSkipsDuplicateScores() throws SQLException {
+		createVersion2();
+		for (String sql : LeaderboardSchema.upgrade(2)) {
+			execute(sql);
+		}
+
+		PreparedStatement insert = connection.prepareStatement(
+				LeaderboardSchema.buildInsert(INSERT_COLUMNS));
+		try {
+			for (int i = 0; i < 2; i++) {
+				insert.setString(1, "02/01/18 09:30 AM");
+				insert.setInt(2, 1);
+				insert.setInt(3, 70);
+				insert.setLong(4, 1517477400000L);
+				insert.executeUpdate();
+			}
+		} finally {
+			insert.close();
+		}
+
+		assertEquals(1, queryLong("select count(*) from " + LeaderboardSchema.TABLE_SCORES));
+	}
+
+	/**
+	 * Creates the scores table of version 2, before scores were timestamped
+	 *
+	 * @throws SQLException  If the statement fails
+	 */
+	private void createVersion2() throws SQLException {
+		execute("create table " + LeaderboardSchema.TABLE_SCORES + "( "
+				+ LeaderboardSchema.SCORE_ID + " integer primary key autoincrement, "
+				+ LeaderboardSchema.SCORE_DATE_TIME + " text, "
+				+ LeaderboardSchema.SCORE_DIFFICULTY + " integer, "
+				+ LeaderboardSchema.SCORE_VALUE + " integer)");
+	}
+
+	/**
+	 * Inserts a score as version 2 recorded it
+	 *
+	 * @param dateTime  The formatted date, to the minute
+	 * @param difficulty  The difficulty
+	 * @param score  The score
+	 * @throws SQLException  If the statement fails
+	 */
+	private void insertLegacy(String dateTime, int difficulty, int score) throws SQLException {
+		execute("insert into " + LeaderboardSchema.TABLE_SCORES + " ("
+				+ LeaderboardSchema.SCORE_DATE_TIME + ", " + LeaderboardSchema.SCORE_DIFFICULTY
+				+ ", " + LeaderboardSchema.SCORE_VALUE + ") values ('" + dateTime + "', "
+				+ difficulty + ", " + score + ")");
+	}
+
+	private void execute(String sql) throws SQLException {
+		Statement statement = connection.createStatement();
+		try {
+			statement.execute(sql);
+		} finally {
+			statement.close();
+		}
+	}
+
+	private long queryLong(String sql) throws SQLException {
+		Statement statement = connection.createStatement();
+		try {
+			ResultSet result = statement.executeQuery(sql);
+			try {
+				return result.next() ? result.getLong(1) : 0;
+			} finally {
+				result.close();
+			}
+		} finally {
+			statement.close();
+		}
+	}
+}
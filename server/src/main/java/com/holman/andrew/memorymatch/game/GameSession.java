@@ -0,0 +1,194 @@
+package com.holman.andrew.memorymatch.game;
+
+import com.holman.andrew.memorymatch.Constants;
+
+/**
+ * A game hosted by the server, played through tile indices rather than views
+ * <p>
+ *     A session wraps a {@link GameModel} and is confined to the event loop of the connection
+ *     playing it, so it is never locked. The pair of tiles is resolved as soon as the second one
+ *     is selected, leaving the re-flip delay to the client. Score ticks are applied lazily from
+ *     the time played whenever the session is used, so idle sessions cost no timer.
+ * </p>
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+public final class GameSession {
+	private static final String TAG = "GameSession";
+
+	/**
+	 * Number of tiles on the board, indexed row-major
+	 */
+	public static final int TILES = GameModel.size * GameModel.size;
+
+	/**
+	 * Length in bytes of a snapshot of the whole game
+	 */
+	public static final int SNAPSHOT_SIZE = GameModel.SNAPSHOT_SIZE;
+
+	/**
+	 * Result of a selection that was not allowed: no game, a removed tile, or the same tile twice
+	 */
+	public static final int REJECTED = 0;
+
+	/**
+	 * Result of selecting the first tile of a pair
+	 */
+	public static final int REVEALED = 1;
+
+	/**
+	 * Result of selecting the second tile of a matching pair, which was removed
+	 */
+	public static final int MATCHED = 2;
+
+	/**
+	 * Result of selecting the second tile of a pair that does not match
+	 */
+	public static final int MISMATCHED = 3;
+
+	private final int id;
+	private GameModel model;
+	private long startMillis;
+	private long ticksApplied;
+
+	/* Symbol of the tile revealed by the last accepted selection */
+	private int revealedSymbol = -1;
+
+	/**
+	 * Constructor
+	 *
+	 * @param id  The identifier of the session on the server
+	 */
+	public GameSession(int id) {
+		this.id = id;
+	}
+
+	/**
+	 * Starts a new game, reusing the model of the previous one if it had the same difficulty
+	 *
+	 * @param difficulty  The integer representation of the game's difficulty. See
+	 *                    {@link Constants} for expected values.
+	 * @param nowMillis  The current time in milliseconds
+	 */
+	public void start(int difficulty, long nowMillis) {
+		if (model == null || model.getDifficulty() != difficulty) {
+			model = new GameModel(difficulty);
+		}
+		model.startGame();
+		startMillis = nowMillis;
+		ticksApplied = 0;
+	}
+
+	/**
+	 * Selects a tile, resolving the pair when it is the second one
+	 *
+	 * @param tile  The row-major index of the tile
+	 * @param nowMillis  The current time in milliseconds
+	 * @return  {@link #REJECTED}, {@link #REVEALED}, {@link #MATCHED}, or {@link #MISMATCHED}
+	 */
+	public int select(int tile, long nowMillis) {
+		if (!isStarted() || model.isOver() || tile < 0 || tile >= TILES) {
+			return REJECTED;
+		}
+		int i = tile / GameModel.size;
+		int j = tile % GameModel.size;
+		if (model.isRemoved(i, j) || !model.makeSelection(i, j)) {
+			return REJECTED;
+		}
+		applyTicks(nowMillis);
+		revealedSymbol = model.getSymbolIndex(i, j);
+
+		/* -1 represents no tile selected */
+		if (model.getSelections()[1][0] == -1) {
+			return REVEALED;
+		}
+		if (model.isMatch()) {
+			model.removePair();
+			model.increaseScore();
+			if (model.isOver()) {
+				model.setElapsedMillis(nowMillis - startMillis);
+			}
+			return MATCHED;
+		}
+		model.decreaseScore();
+		model.resetSelection();
+		return MISMATCHED;
+	}
+
+	/**
+	 * Decreases the score once for every tick due since the last time it was used, as the timer
+	 * of {@link GameActivity} would have
+	 *
+	 * @param nowMillis  The current time in milliseconds
+	 */
+	private void applyTicks(long nowMillis) {
+		long due = (nowMillis - startMillis) / getTickDelay();
+		long pending = due - ticksApplied;
+		ticksApplied = due;
+		/* Ticks stop changing the score at 0 */
+		for (; pending > 0 && model.getScore() > 0; pending--) {
+			model.tickScore();
+		}
+	}
+
+	/**
+	 * Retrieves the interval between score ticks for the game's difficulty
+	 *
+	 * @return  {@link GameModel#EASY_TICK_DELAY_MILLIS} or {@link GameModel#HARD_TICK_DELAY_MILLIS}
+	 */
+	private long getTickDelay() {
+		return (model.getDifficulty() == Constants.DIFFICULTY_EASY)
+				? GameModel.EASY_TICK_DELAY_MILLIS
+				: GameModel.HARD_TICK_DELAY_MILLIS;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public boolean isStarted() {
+		return model != null;
+	}
+
+	public boolean isOver() {
+		return isStarted() && model.isOver();
+	}
+
+	public int getDifficulty() {
+		return model.getDifficulty();
+	}
+
+	/**
+	 * Retrieves the symbol of the tile revealed by the last accepted selection
+	 *
+	 * @return  The index of the symbol, which stays valid after the tile is matched
+	 */
+	public int getRevealedSymbol() {
+		return revealedSymbol;
+	}
+
+	/**
+	 * Retrieves the score, including the ticks due
+	 *
+	 * @param nowMillis  The current time in milliseconds
+	 * @return  The score
+	 */
+	public int getScore(long nowMillis) {
+		if (!model.isOver()) {
+			applyTicks(nowMillis);
+		}
+		return model.getScore();
+	}
+
+	/**
+	 * Retrieves the time played
+	 *
+	 * @param nowMillis  The current time in milliseconds
+	 * @return  The time from the start until now, or until the game ended
+	 */
+	public long getElapsedMillis(long nowMillis) {
+		return model.isOver() ? model.getElapsedMillis() : nowMillis - startMillis;
+	}
+}
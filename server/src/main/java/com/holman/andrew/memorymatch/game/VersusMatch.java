@@ -0,0 +1,171 @@
+package com.holman.andrew.memorymatch.game;
+
+import com.holman.andrew.memorymatch.Constants;
+
+/**
+ * Two players racing to match the pairs of the same board
+ * <p>
+ *     Both seats select tiles on one shuffled {@link GameModel} independently, each with its own
+ *     pair in progress and its own score, scored by the same rules as a single game. The first to
+ *     remove a pair takes it: a tile the other seat had selected is deselected. The game ends once
+ *     the board is cleared, won by the higher score. There are no score ticks, as the race itself
+ *     rewards speed.
+ * </p>
+ * <p>
+ *     Like {@link GameSession}, a match is confined to the event loop of both its players.
+ * </p>
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+public final class VersusMatch {
+	private static final String TAG = "VersusMatch";
+
+	/**
+	 * Number of players in a match
+	 */
+	public static final int SEATS = 2;
+
+	/**
+	 * Winner of a match ending with equal scores
+	 */
+	public static final int DRAW = -1;
+
+	private final int id;
+	private final GameModel model;
+
+	/* Per seat: first tile of the pair in progress or -1, and score */
+	private final int[] firstTiles = {-1, -1};
+	private final int[] scores = new int[SEATS];
+
+	/* Symbol revealed by the last accepted selection, and the tiles of the last removed pair */
+	private int revealedSymbol = -1;
+	private final int[] removedPair = new int[2];
+
+	/**
+	 * Constructor. Shuffles the board.
+	 *
+	 * @param id  The identifier of the match on the server
+	 * @param difficulty  The integer representation of the match's difficulty. See
+	 *                    {@link Constants} for expected values.
+	 */
+	public VersusMatch(int id, int difficulty) {
+		this.id = id;
+		model = new GameModel(difficulty);
+		model.startGame();
+	}
+
+	/**
+	 * Selects a tile for a seat, resolving the seat's pair when it is the second one
+	 *
+	 * @param seat  The seat selecting, 0 or 1
+	 * @param tile  The row-major index of the tile
+	 * @return  {@link GameSession#REJECTED}, {@link GameSession#REVEALED},
+	 *          {@link GameSession#MATCHED}, or {@link GameSession#MISMATCHED}
+	 */
+	public int select(int seat, int tile) {
+		if (model.isOver() || tile < 0 || tile >= GameSession.TILES || tile == firstTiles[seat]) {
+			return GameSession.REJECTED;
+		}
+		int i = tile / GameModel.size;
+		int j = tile % GameModel.size;
+		if (model.isRemoved(i, j)) {
+			return GameSession.REJECTED;
+		}
+		revealedSymbol = model.getSymbolIndex(i, j);
+
+		int first = firstTiles[seat];
+		if (first < 0) {
+			firstTiles[seat] = tile;
+			return GameSession.REVEALED;
+		}
+		firstTiles[seat] = -1;
+
+		/* The model holds one pair and one score, so the seat's are swapped in to resolve it */
+		model.resetSelection();
+		model.makeSelection(first / GameModel.size, first % GameModel.size);
+		model.makeSelection(i, j);
+		model.setScore(scores[seat]);
+		int result;
+		if (model.isMatch()) {
+			model.removePair();
+			model.increaseScore();
+			removedPair[0] = first;
+			removedPair[1] = tile;
+			int other = 1 - seat;
+			if (firstTiles[other] == first || firstTiles[other] == tile) {
+				firstTiles[other] = -1;
+			}
+			result = GameSession.MATCHED;
+		} else {
+			model.decreaseScore();
+			model.resetSelection();
+			result = GameSession.MISMATCHED;
+		}
+		scores[seat] = model.getScore();
+		return result;
+	}
+
+	public int getId() {
+		return id;
+	}
+
+	public int getDifficulty() {
+		return model.getDifficulty();
+	}
+
+	public int getScore(int seat) {
+		return scores[seat];
+	}
+
+	/**
+	 * Retrieves the symbol of the tile revealed by the last accepted selection
+	 *
+	 * @return  The index of the symbol, which stays valid after the tile is matched
+	 */
+	public int getRevealedSymbol() {
+		return revealedSymbol;
+	}
+
+	/**
+	 * Retrieves a tile of the last pair removed
+	 *
+	 * @param n  0 for the first tile selected, 1 for the second
+	 * @return  The row-major tile index
+	 */
+	public int getRemovedTile(int n) {
+		return removedPair[n];
+	}
+
+	/**
+	 * Retrieves the tiles removed so far
+	 *
+	 * @return  A bitset in which bit n is set once tile n is removed
+	 */
+	public int getRemovedTiles() {
+		int removed = 0;
+		for (int tile = 0; tile < GameSession.TILES; tile++) {
+			if (model.isRemoved(tile / GameModel.size, tile % GameModel.size)) {
+				removed |= 1 << tile;
+			}
+		}
+		return removed;
+	}
+
+	public boolean isOver() {
+		return model.isOver();
+	}
+
+	/**
+	 * Retrieves the seat with the higher score
+	 *
+	 * @return  The winning seat, or {@link #DRAW}
+	 */
+	public int getWinner() {
+		if (scores[0] == scores[1]) {
+			return DRAW;
+		}
+		return (scores[0] > scores[1]) ? 0 : 1;
+	}
+}
@@ -0,0 +1,248 @@
+package com.holman.andrew.memorymatch.server;
+
+import com.holman.andrew.memorymatch.game.VersusMatch;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * Live view of a versus match, fanned out to any number of spectators
+ * <p>
+ *     Every move is encoded once, into a byte array shared by all the spectators, and handed to
+ *     each loop serving some of them as a single task, which writes it to its own spectators. The
+ *     cost of a move to the match's loop therefore grows with the number of loops rather than of
+ *     spectators, and each spectator only costs its loop one write. A spectator whose client
+ *     stops reading is disconnected once its queued output reaches a small bound, instead of
+ *     holding up the others.
+ * </p>
+ * <p>
+ *     A spectator joining late is sent a snapshot of the match, re-encoded every
+ *     {@link #SNAPSHOT_INTERVAL} moves, followed by the moves since it, so that joining costs no
+ *     encoding however many spectators join.
+ * </p>
+ * <p>
+ *     Like the match, the broadcast is confined to the loop of the players, which other loops
+ *     reach through {@link EventLoop#execute}. The spectators of each loop are kept by an
+ *     {@link Audience} confined to that loop.
+ * </p>
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+final class Broadcast {
+	private static final String TAG = "Broadcast";
+
+	/* Moves after which the snapshot sent to new spectators is re-encoded */
+	private static final int SNAPSHOT_INTERVAL = 16;
+
+	private final VersusMatch match;
+	private final EventLoop owner;
+
+	/* Per loop index: the loop's spectators, null until one of its connections watches */
+	private final Audience[] audiences;
+
+	/* Snapshot for new spectators, and the moves published since */
+	private byte[] snapshot;
+	private final ArrayList<byte[]> tail = new ArrayList<>();
+
+	private int sequence;
+	private boolean ended;
+
+	/**
+	 * Constructor
+	 *
+	 * @param match  The match shown, which has just started
+	 * @param owner  The loop serving the players
+	 */
+	Broadcast(VersusMatch match, EventLoop owner) {
+		this.match = match;
+		this.owner = owner;
+		audiences = new Audience[owner.server.getLoopCount()];
+		snapshot = encodeSnapshot();
+	}
+
+	int getMatchId() {
+		return match.getId();
+	}
+
+	/**
+	 * Adds a spectator, which is sent the match so far, then every move. Must be called on the
+	 * spectator's loop, whose connection has asked to watch this broadcast.
+	 *
+	 * @param spectator  The spectator
+	 */
+	void watch(final Connection spectator) {
+		final EventLoop home = spectator.getLoop();
+		owner.execute(new Runnable() {
+			@Override
+			public void run() {
+				subscribe(spectator, home);
+			}
+		});
+	}
+
+	/**
+	 * Hands a spectator what it needs to catch up, on its loop. Must be called on the owner.
+	 *
+	 * @param spectator  The spectator
+	 * @param home  The spectator's loop
+	 */
+	private void subscribe(final Connection spectator, EventLoop home) {
+		if (ended) {
+			home.execute(new Runnable() {
+				@Override
+				public void run() {
+					spectator.onWatchRefused(Broadcast.this);
+				}
+			});
+			return;
+		}
+		Audience audience = audiences[home.index];
+		if (audience == null) {
+			audience = new Audience(home);
+			audiences[home.index] = audience;
+		}
+
+		/* Moves published from now on are queued to the loop after the catch-up */
+		final Audience joined = audience;
+		final byte[] start = snapshot;
+		final byte[][] since = tail.toArray(new byte[tail.size()][]);
+		home.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (spectator.isWatching(Broadcast.this)) {
+					joined.add(spectator, start, since);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Shows a move to every spectator. Must be called on the owner.
+	 *
+	 * @param frames  The messages describing the move, consumed entirely
+	 * @param last  True if the move ends the match, after which the broadcast can no longer be
+	 *              watched
+	 */
+	void publish(ByteBuffer frames, boolean last) {
+		final byte[] move = new byte[frames.remaining()];
+		frames.get(move);
+		sequence++;
+		if (last) {
+			ended = true;
+			owner.server.broadcasts.remove(getMatchId());
+		} else {
+			tail.add(move);
+			if (tail.size() >= SNAPSHOT_INTERVAL) {
+				snapshot = encodeSnapshot();
+				tail.clear();
+			}
+		}
+
+		for (final Audience audience : audiences) {
+			if (audience == null) {
+				continue;
+			}
+			/* Also queued on the owner, so that the players' replies are written first */
+			final boolean end = last;
+			audience.loop.execute(new Runnable() {
+				@Override
+				public void run() {
+					audience.deliver(move, end);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Encodes the current state of the match
+	 *
+	 * @return  A {@link Protocol#WATCHING} frame
+	 */
+	private byte[] encodeSnapshot() {
+		ByteBuffer frame = ByteBuffer.allocate(Protocol.MAX_FRAME);
+		Protocol.putWatching(frame, match.getId(), match.getDifficulty(), match.getRemovedTiles(),
+				match.getScore(0), match.getScore(1), sequence);
+		frame.flip();
+		byte[] bytes = new byte[frame.remaining()];
+		frame.get(bytes);
+		return bytes;
+	}
+
+	/**
+	 * The spectators of a broadcast served by one loop, and confined to it
+	 */
+	final class Audience {
+		private final EventLoop loop;
+		private final ArrayList<Connection> spectators = new ArrayList<>();
+
+		/**
+		 * Constructor
+		 *
+		 * @param loop  The loop serving the spectators
+		 */
+		Audience(EventLoop loop) {
+			this.loop = loop;
+		}
+
+		/**
+		 * Adds a spectator and sends it the match so far
+		 *
+		 * @param spectator  The spectator
+		 * @param start  The snapshot to start from
+		 * @param since  The moves published after the snapshot
+		 */
+		void add(Connection spectator, byte[] start, byte[][] since) {
+			spectators.add(spectator);
+			loop.spectators++;
+			spectator.setAudience(this);
+			spectator.show(start);
+			for (byte[] move : since) {
+				spectator.show(move);
+			}
+		}
+
+		/**
+		 * Removes a spectator, which is no longer sent moves
+		 *
+		 * @param spectator  The spectator
+		 */
+		void remove(Connection spectator) {
+			int index = spectators.indexOf(spectator);
+			if (index < 0) {
+				return;
+			}
+			/* Order does not matter, so the last spectator fills the gap */
+			int last = spectators.size() - 1;
+			spectators.set(index, spectators.get(last));
+			spectators.remove(last);
+			loop.spectators--;
+		}
+
+		/**
+		 * Writes a move to every spectator
+		 *
+		 * @param move  The encoded move
+		 * @param last  True if the move ends the match
+		 */
+		void deliver(byte[] move, boolean last) {
+			long start = System.nanoTime();
+			int count = spectators.size();
+			/* Backwards, as a spectator disconnected for lagging removes itself */
+			for (int i = count - 1; i >= 0; i--) {
+				spectators.get(i).show(move);
+			}
+			loop.deliveries += count;
+			loop.fanOutNanos += System.nanoTime() - start;
+
+			if (last) {
+				for (Connection spectator : spectators) {
+					spectator.onWatchEnded();
+				}
+				loop.spectators -= spectators.size();
+				spectators.clear();
+			}
+		}
+	}
+}
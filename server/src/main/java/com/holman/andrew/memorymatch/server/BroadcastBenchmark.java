@@ -0,0 +1,464 @@
+package com.holman.andrew.memorymatch.server;
+
+import com.holman.andrew.memorymatch.Constants;
+import com.holman.andrew.memorymatch.game.GameSession;
+import com.holman.andrew.memorymatch.game.VersusMatch;
+import com.holman.andrew.memorymatch.metrics.LatencyHistogram;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Shows versus matches to growing numbers of spectators through a local {@link GameServer}
+ * <p>
+ *     For each number of viewers, two scripted players play a match on the server, one move every
+ *     {@link #TAP_INTERVAL_MILLIS}, while the viewers ask to watch it at random times during its
+ *     first {@link #WATCH_SPREAD_MILLIS}, so that nearly all of them join late. Every viewer
+ *     rebuilds the board from the snapshot and moves it is sent. The benchmark reports:
+ * </p>
+ * <ul>
+ *     <li>the latency of a live move, from the player's tap to {@link Protocol#FLIPPED} reaching
+ *     a viewer</li>
+ *     <li>the viewers whose board and scores matched the players' at the end</li>
+ *     <li>the moves viewers caught up on, and the viewers the server dropped</li>
+ * </ul>
+ * <p>
+ *     The server's own report gives the time spent writing each move to a spectator, which stays
+ *     flat as viewers are added. Usage, with the server running:
+ *     {@code gradlew :server:broadcastTest -PbroadcastArgs="[viewers,viewers...] [port]"}. The open
+ *     file limit of both processes must exceed the number of viewers.
+ * </p>
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+public final class BroadcastBenchmark {
+	private static final String TAG = "BroadcastBenchmark";
+
+	private static final String DEFAULT_VIEWERS = "100,1000,5000";
+	private static final long TAP_INTERVAL_MILLIS = 25;
+	private static final long WATCH_SPREAD_MILLIS = 500;
+
+	/* Time allowed for viewers to see the end of the match once it is over */
+	private static final long DRAIN_MILLIS = 5000;
+
+	/* More moves than a match of random taps takes */
+	private static final int MAX_MOVES = 4096;
+
+	private static final int ALL_REMOVED = (1 << GameSession.TILES) - 1;
+
+	private static final LatencyHistogram LIVE = new LatencyHistogram("live move");
+
+	/* Time each move of the current match was tapped, by sequence number */
+	private static final AtomicLongArray TAPS = new AtomicLongArray(MAX_MOVES);
+
+	/**
+	 * Runs the benchmark, then exits
+	 *
+	 * @param args  Optional comma-separated numbers of viewers, and server port
+	 * @throws IOException  If the server cannot be reached
+	 * @throws InterruptedException  If interrupted while playing
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		String[] levels = ((args.length > 0) ? args[0] : DEFAULT_VIEWERS).split(",");
+		int port = (args.length > 1) ? Integer.parseInt(args[1]) : GameServer.DEFAULT_PORT;
+		InetSocketAddress address = new InetSocketAddress("127.0.0.1", port);
+		for (String level : levels) {
+			watchMatch(address, Integer.parseInt(level));
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Plays a match watched by viewers, then prints what they saw
+	 *
+	 * @param address  The server's address
+	 * @param viewerCount  The number of viewers
+	 * @throws IOException  If the server cannot be reached
+	 * @throws InterruptedException  If interrupted while playing
+	 */
+	private static void watchMatch(InetSocketAddress address, int viewerCount)
+			throws IOException, InterruptedException {
+		LIVE.reset();
+		Selector selector = Selector.open();
+		Viewer[] viewers = new Viewer[viewerCount];
+		for (int i = 0; i < viewerCount; i++) {
+			SocketChannel channel = SocketChannel.open(address);
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			channel.configureBlocking(false);
+			viewers[i] = new Viewer(channel);
+			channel.register(selector, SelectionKey.OP_READ, viewers[i]);
+		}
+
+		Match match = new Match(address);
+		int matchId = match.join();
+		Thread players = new Thread(match, TAG + "-players");
+		players.setDaemon(true);
+		players.start();
+
+		Random random = new Random();
+		long start = System.nanoTime();
+		long spread = TimeUnit.MILLISECONDS.toNanos(WATCH_SPREAD_MILLIS);
+		for (Viewer viewer : viewers) {
+			viewer.watchNanos = start + (long) (random.nextDouble() * spread);
+		}
+		Arrays.sort(viewers, new Comparator<Viewer>() {
+			@Override
+			public int compare(Viewer a, Viewer b) {
+				return Long.compare(a.watchNanos, b.watchNanos);
+			}
+		});
+
+		ByteBuffer out = ByteBuffer.allocate(Protocol.MAX_FRAME);
+		int nextWatch = 0;
+		int finished = 0;
+		long deadline = Long.MAX_VALUE;
+		while (finished < viewerCount && System.nanoTime() < deadline) {
+			long now = System.nanoTime();
+			while (nextWatch < viewerCount && viewers[nextWatch].watchNanos <= now) {
+				Viewer viewer = viewers[nextWatch++];
+				viewer.watchNanos = System.nanoTime();
+				Protocol.putWatch(out, matchId);
+				out.flip();
+				viewer.channel.write(out);
+				out.clear();
+			}
+			long timeoutMillis = 100;
+			if (nextWatch < viewerCount) {
+				long untilWatch = viewers[nextWatch].watchNanos - now;
+				timeoutMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(untilWatch));
+			}
+			selector.select(timeoutMillis);
+			now = System.nanoTime();
+			Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+			while (keys.hasNext()) {
+				SelectionKey key = keys.next();
+				keys.remove();
+				Viewer viewer = (Viewer) key.attachment();
+				if (!viewer.read(now)) {
+					key.cancel();
+				}
+				if (viewer.isFinished()) {
+					finished++;
+					key.cancel();
+				}
+			}
+			if (match.over && deadline == Long.MAX_VALUE) {
+				deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DRAIN_MILLIS);
+			}
+		}
+		players.join();
+
+		int consistent = 0;
+		int refused = 0;
+		int dropped = 0;
+		long caughtUp = 0;
+		for (Viewer viewer : viewers) {
+			if (viewer.over && viewer.removed == ALL_REMOVED
+					&& viewer.scores[0] == match.scores[0] && viewer.scores[1] == match.scores[1]) {
+				consistent++;
+			}
+			if (viewer.refused) {
+				refused++;
+			}
+			if (viewer.dropped) {
+				dropped++;
+			}
+			caughtUp += viewer.caughtUp;
+			viewer.channel.close();
+		}
+		selector.close();
+		match.close();
+
+		System.out.println(String.format(Locale.US, "%s: %d viewers, %d moves, %d consistent at"
+				+ " the end, %d refused, %d dropped, %.1f moves caught up per viewer", TAG,
+				viewerCount, match.moves, consistent, refused, dropped,
+				(double) caughtUp / viewerCount));
+		System.out.println(String.format(Locale.US, "%s %s: %d samples, p50 %d us, p99 %d us,"
+				+ " p999 %d us, max %d us", TAG, LIVE.getName(), LIVE.getCount(),
+				LIVE.getPercentileMicros(50), LIVE.getPercentileMicros(99),
+				LIVE.getPercentileMicros(99.9), LIVE.getMaxMicros()));
+	}
+
+	/**
+	 * A spectator, rebuilding the board from what it is shown
+	 */
+	private static final class Viewer {
+		private final SocketChannel channel;
+		private final ByteBuffer in = ByteBuffer.allocate(Protocol.MAX_FRAME * 4);
+
+		/* Time the viewer asked to watch, moves tapped before being caught up on */
+		private long watchNanos;
+		private int caughtUp;
+
+		/* Sequence number of the next move shown, -1 until the snapshot arrives */
+		private int sequence = -1;
+		private int removed;
+		private final int[] scores = new int[VersusMatch.SEATS];
+		private boolean over;
+		private boolean refused;
+		private boolean dropped;
+
+		Viewer(SocketChannel channel) {
+			this.channel = channel;
+		}
+
+		boolean isFinished() {
+			return over || refused || dropped;
+		}
+
+		/**
+		 * Applies every complete message available
+		 *
+		 * @param now  Time the messages were received
+		 * @return  False if the server disconnected the viewer
+		 * @throws IOException  If the channel fails
+		 */
+		boolean read(long now) throws IOException {
+			if (channel.read(in) < 0) {
+				dropped = true;
+				return false;
+			}
+			in.flip();
+			while (in.remaining() > 0 && in.remaining() >= 1 + (in.get(in.position()) & 0xff)) {
+				int end = in.position() + 1 + (in.get() & 0xff);
+				apply(in.get(), in, now);
+				in.position(end);
+			}
+			in.compact();
+			return true;
+		}
+
+		/**
+		 * Applies a message
+		 *
+		 * @param type  The message type
+		 * @param body  The message body
+		 * @param now  Time the message was received
+		 */
+		private void apply(byte type, ByteBuffer body, long now) {
+			switch (type) {
+				case Protocol.WATCHING :
+					body.getInt();
+					body.get();
+					removed = body.getShort() & 0xffff;
+					scores[0] = body.getInt();
+					scores[1] = body.getInt();
+					sequence = body.getShort() & 0xffff;
+					break;
+				case Protocol.FLIPPED :
+					long tapNanos = TAPS.get(sequence++);
+					if (tapNanos > watchNanos) {
+						LIVE.record(now - tapNanos);
+					} else {
+						caughtUp++;
+					}
+					break;
+				case Protocol.REMOVED :
+					removed |= (1 << (body.get() & 0xff)) | (1 << (body.get() & 0xff));
+					break;
+				case Protocol.SCORE :
+					int seat = body.get();
+					scores[seat] = body.getInt();
+					break;
+				case Protocol.VERSUS_OVER :
+					over = true;
+					break;
+				case Protocol.ERROR :
+					refused = true;
+					break;
+			}
+		}
+	}
+
+	/**
+	 * Two players tapping random tiles in turn, mirroring the match to know what is allowed
+	 */
+	private static final class Match implements Runnable {
+		private final Player[] players = new Player[VersusMatch.SEATS];
+		private final Random random = new Random();
+
+		/* Per seat: first tile of the pair in progress or -1 */
+		private final int[] firstTiles = {-1, -1};
+		private int removed;
+
+		/* Read once the match is over */
+		private final int[] scores = new int[VersusMatch.SEATS];
+		private volatile int moves;
+		private volatile boolean over;
+
+		/**
+		 * Constructor. Connects both players.
+		 *
+		 * @param address  The server's address
+		 * @throws IOException  If the server cannot be reached
+		 */
+		Match(InetSocketAddress address) throws IOException {
+			for (int seat = 0; seat < VersusMatch.SEATS; seat++) {
+				players[seat] = new Player(address);
+			}
+		}
+
+		/**
+		 * Joins both players, seating each as the server does
+		 *
+		 * @return  The match id
+		 * @throws IOException  If the channel fails
+		 */
+		int join() throws IOException {
+			Player[] seated = new Player[VersusMatch.SEATS];
+			int matchId = -1;
+			for (Player player : players) {
+				Protocol.putJoin(player.out, Constants.DIFFICULTY_HARD);
+				player.flush();
+			}
+			for (Player player : players) {
+				if (player.next() != Protocol.PAIRED) {
+					throw new IOException("not paired");
+				}
+				matchId = player.in.getInt();
+				player.in.get();
+				seated[player.in.get()] = player;
+				player.skip();
+			}
+			System.arraycopy(seated, 0, players, 0, VersusMatch.SEATS);
+			return matchId;
+		}
+
+		/**
+		 * Plays until the board is cleared
+		 */
+		@Override
+		public void run() {
+			try {
+				for (int seat = 0; removed != ALL_REMOVED; seat = 1 - seat) {
+					Thread.sleep(TAP_INTERVAL_MILLIS);
+					tap(seat);
+				}
+			} catch (IOException | InterruptedException e) {
+				System.err.println(TAG + ": players failed: " + e);
+			} finally {
+				over = true;
+			}
+		}
+
+		/**
+		 * Taps a random tile for a seat and applies the server's replies
+		 *
+		 * @param seat  The seat
+		 * @throws IOException  If the channel fails or the tap is refused
+		 */
+		private void tap(int seat) throws IOException {
+			int tile;
+			do {
+				tile = random.nextInt(GameSession.TILES);
+			} while ((removed & (1 << tile)) != 0 || tile == firstTiles[seat]);
+
+			Player player = players[seat];
+			TAPS.set(moves++, System.nanoTime());
+			Protocol.putSelect(player.out, tile);
+			player.flush();
+			byte type;
+			while ((type = player.next()) != Protocol.REVEALED) {
+				if (type == Protocol.ERROR) {
+					throw new IOException("tap refused");
+				}
+				player.skip();
+			}
+			player.skip();
+			int first = firstTiles[seat];
+			if (first < 0) {
+				firstTiles[seat] = tile;
+				return;
+			}
+			firstTiles[seat] = -1;
+			if (player.next() != Protocol.RESOLVED) {
+				throw new IOException("pair not resolved");
+			}
+			boolean matched = player.in.get() != 0;
+			scores[seat] = player.in.getInt();
+			player.skip();
+			if (matched) {
+				removed |= (1 << first) | (1 << tile);
+				int other = 1 - seat;
+				if (firstTiles[other] == first || firstTiles[other] == tile) {
+					firstTiles[other] = -1;
+				}
+			}
+		}
+
+		void close() throws IOException {
+			for (Player player : players) {
+				player.channel.close();
+			}
+		}
+	}
+
+	/**
+	 * A blocking connection reading one message at a time
+	 */
+	private static final class Player {
+		private final SocketChannel channel;
+		private final ByteBuffer out = ByteBuffer.allocate(Protocol.MAX_FRAME);
+
+		/* In read mode, positioned at the body of the last message returned by next() */
+		private final ByteBuffer in = ByteBuffer.allocate(Protocol.MAX_FRAME * 4);
+		private int end;
+
+		Player(InetSocketAddress address) throws IOException {
+			channel = SocketChannel.open(address);
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			in.flip();
+		}
+
+		/**
+		 * Sends and clears the messages encoded into {@link #out}
+		 *
+		 * @throws IOException  If the channel fails
+		 */
+		void flush() throws IOException {
+			out.flip();
+			while (out.hasRemaining()) {
+				channel.write(out);
+			}
+			out.clear();
+		}
+
+		/**
+		 * Waits for the next message
+		 *
+		 * @return  Its type, with {@link #in} positioned at its body until {@link #skip()}
+		 * @throws IOException  If the channel fails
+		 */
+		byte next() throws IOException {
+			while (in.remaining() == 0 || in.remaining() < 1 + (in.get(in.position()) & 0xff)) {
+				in.compact();
+				int read = channel.read(in);
+				in.flip();
+				if (read < 0) {
+					throw new EOFException();
+				}
+			}
+			end = in.position() + 1 + (in.get() & 0xff);
+			return in.get();
+		}
+
+		void skip() {
+			in.position(end);
+		}
+	}
+}
@@ -0,0 +1,658 @@
+package com.holman.andrew.memorymatch.server;
+
+import com.holman.andrew.memorymatch.Constants;
+import com.holman.andrew.memorymatch.game.GameSession;
+import com.holman.andrew.memorymatch.game.VersusMatch;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A client connected to {@link GameServer}, and the game it plays
+ * <p>
+ *     A connection is served by one {@link EventLoop} at a time, and so is its
+ *     {@link GameSession} or {@link VersusMatch}. Frames are read through the loop's shared
+ *     buffers, so an idle connection only keeps the few bytes of a frame split across reads, and
+ *     the output a slow client has not accepted yet.
+ * </p>
+ * <p>
+ *     The two players of a versus match are served by the same loop, so that the match is
+ *     confined to it like a single game. When the {@link Lobby} pairs a connection with one
+ *     waiting on another loop, the joiner stops being served by its loop and is adopted by the
+ *     opponent's.
+ * </p>
+ * <p>
+ *     A connection that is neither playing nor waiting can watch a match through its
+ *     {@link Broadcast}, which writes every move to it from the match's loop, and disconnects it
+ *     if it falls behind by more than {@link #MAX_SPECTATOR_PENDING}.
+ * </p>
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+final class Connection {
+	private static final String TAG = "Connection";
+
+	/* Output queued for a client that stopped reading, past which it is disconnected */
+	private static final int MAX_PENDING = 64 * 1024;
+
+	/* Output queued for a spectator, far smaller as it only ever falls further behind */
+	private static final int MAX_SPECTATOR_PENDING = 4 * 1024;
+
+	/* Read by other loops looking for the loop of an opponent */
+	private volatile EventLoop loop;
+	private final SocketChannel channel;
+	private SelectionKey key;
+	private boolean counted;
+	private GameSession session;
+
+	/* Versus match in progress, this connection's seat in it, and the other player */
+	private VersusMatch match;
+	private int seat;
+	private Connection opponent;
+	private Broadcast broadcast;
+
+	/* Broadcast watched or asked to, and the spectators of it this connection is among */
+	private Broadcast watching;
+	private Broadcast.Audience audience;
+
+	/* Difficulty of the versus match waited for in the lobby, -1 when not waiting. Only read by
+		the connection's own loop. */
+	private int waitingDifficulty = -1;
+
+	/* Waiting opponent on another loop, to be adopted by once the frames read are handled, and
+		the difficulty both asked for */
+	private Connection movingTo;
+	private int movingDifficulty;
+
+	/* Start of a frame split across reads, allocated the first time one is */
+	private byte[] carry;
+	private int carryLength;
+
+	/* Output the socket did not accept, in fill mode, null when there is none */
+	private ByteBuffer pending;
+
+	/**
+	 * Constructor
+	 *
+	 * @param loop  The event loop serving the connection
+	 * @param channel  The connected, non-blocking channel
+	 */
+	Connection(EventLoop loop, SocketChannel channel) {
+		this.loop = loop;
+		this.channel = channel;
+	}
+
+	/**
+	 * Sets the key of the connection on the selector of the loop serving it
+	 *
+	 * @param key  The key
+	 */
+	void setKey(SelectionKey key) {
+		this.key = key;
+		counted = true;
+	}
+
+	void setLoop(EventLoop loop) {
+		this.loop = loop;
+	}
+
+	EventLoop getLoop() {
+		return loop;
+	}
+
+	SocketChannel getChannel() {
+		return channel;
+	}
+
+	boolean hasPending() {
+		return pending != null;
+	}
+
+	/**
+	 * Reads and handles every complete frame available
+	 *
+	 * @throws IOException  If the channel fails, in which case the caller closes the connection
+	 */
+	void onReadable() throws IOException {
+		ByteBuffer in = loop.input;
+		in.clear();
+		if (carryLength > 0) {
+			in.put(carry, 0, carryLength);
+			carryLength = 0;
+		}
+		if (channel.read(in) < 0) {
+			close();
+			return;
+		}
+		in.flip();
+
+		ByteBuffer out = loop.output;
+		out.clear();
+		while (in.hasRemaining() && movingTo == null) {
+			int length = in.get(in.position()) & 0xff;
+			if (in.remaining() < 1 + length) {
+				break;
+			}
+			byte type = (length > 0) ? in.get(in.position() + 1) : 0;
+			int body = Protocol.getClientBodyLength(type);
+			if (body < 0 || length != 1 + body) {
+				close();
+				return;
+			}
+			in.position(in.position() + 2);
+			handle(type, in, out);
+			loop.messages++;
+
+			/* Leaves room for the replies to the next frame */
+			if (out.remaining() < Protocol.MAX_FRAME * 4) {
+				flush(out);
+				if (!channel.isOpen()) {
+					return;
+				}
+			}
+		}
+
+		/* Frames read after joining a match on another loop are handled there */
+		if (in.hasRemaining()) {
+			if (carry == null) {
+				carry = new byte[Protocol.MAX_FRAME];
+			}
+			carryLength = in.remaining();
+			in.get(carry, 0, carryLength);
+		}
+		out.flip();
+		send(out);
+
+		if (movingTo != null && channel.isOpen()) {
+			Connection waiter = movingTo;
+			movingTo = null;
+			moveTo(waiter, movingDifficulty);
+		}
+	}
+
+	/**
+	 * Handles a client message
+	 *
+	 * @param type  The message type
+	 * @param in  The buffer positioned at the message body
+	 * @param out  The buffer receiving the replies
+	 * @throws IOException  If the channel fails
+	 */
+	private void handle(byte type, ByteBuffer in, ByteBuffer out) throws IOException {
+		switch (type) {
+			case Protocol.START :
+				onStart(in.get(), out);
+				break;
+			case Protocol.SELECT :
+				if (match != null) {
+					onVersusSelect(in.get() & 0xff, out);
+				} else {
+					onSelect(in.get() & 0xff, out);
+				}
+				break;
+			case Protocol.JOIN :
+				onJoin(in.get(), out);
+				break;
+			case Protocol.WATCH :
+				onWatch(in.getInt(), out);
+				break;
+		}
+	}
+
+	/**
+	 * Starts a new game
+	 *
+	 * @param difficulty  The requested difficulty
+	 * @param out  The buffer receiving the replies
+	 */
+	private void onStart(int difficulty, ByteBuffer out) {
+		if (!isDifficulty(difficulty)) {
+			Protocol.putError(out, Protocol.ERROR_DIFFICULTY);
+			return;
+		}
+		if (match != null || waitingDifficulty >= 0) {
+			Protocol.putError(out, Protocol.ERROR_VERSUS);
+			return;
+		}
+		unwatch();
+		if (session == null) {
+			session = new GameSession(loop.server.nextSessionId());
+		}
+		session.start(difficulty, loop.nowMillis);
+		loop.games++;
+		Protocol.putStarted(out, session.getId(), difficulty);
+	}
+
+	/**
+	 * Selects a tile of the game in progress
+	 *
+	 * @param tile  The row-major index of the tile
+	 * @param out  The buffer receiving the replies
+	 */
+	private void onSelect(int tile, ByteBuffer out) {
+		long now = loop.nowMillis;
+		int result = (session == null) ? GameSession.REJECTED : session.select(tile, now);
+		if (result == GameSession.REJECTED) {
+			Protocol.putError(out, Protocol.ERROR_SELECTION);
+			return;
+		}
+
+		Protocol.putRevealed(out, tile, session.getRevealedSymbol());
+		if (result == GameSession.REVEALED) {
+			return;
+		}
+		int score = session.getScore(now);
+		Protocol.putResolved(out, result == GameSession.MATCHED, score);
+		if (session.isOver()) {
+			Protocol.putOver(out, score, (int) session.getElapsedMillis(now));
+		}
+	}
+
+	/**
+	 * Asks the lobby for a versus match
+	 *
+	 * @param difficulty  The requested difficulty
+	 * @param out  The buffer receiving the replies
+	 * @throws IOException  If the channel fails
+	 */
+	private void onJoin(int difficulty, ByteBuffer out) throws IOException {
+		if (!isDifficulty(difficulty)) {
+			Protocol.putError(out, Protocol.ERROR_DIFFICULTY);
+			return;
+		}
+		if (match != null || waitingDifficulty >= 0) {
+			Protocol.putError(out, Protocol.ERROR_VERSUS);
+			return;
+		}
+		unwatch();
+		/* Keeps replies in order with PAIRED, which is sent on its own */
+		flush(out);
+		movingTo = join(difficulty);
+		movingDifficulty = difficulty;
+	}
+
+	/**
+	 * Pairs the connection with a waiting one, or waits
+	 *
+	 * @param difficulty  The requested difficulty
+	 * @return  The opponent if it is served by another loop, which must adopt this connection
+	 *          before the match starts, null otherwise
+	 */
+	private Connection join(int difficulty) {
+		/* Set before the connection is published to the lobby, where the waiter's loop finds it */
+		waitingDifficulty = difficulty;
+		Connection waiter = loop.server.lobby.pair(this, difficulty);
+		if (waiter == null) {
+			return null;
+		}
+		waitingDifficulty = -1;
+		if (waiter.loop != loop) {
+			return waiter;
+		}
+		startMatch(waiter, this, difficulty);
+		return null;
+	}
+
+	/**
+	 * Hands the connection over to the loop of a waiting opponent, which starts the match
+	 * <p>
+	 *     The difficulty is passed in rather than read from the opponent, whose fields belong to
+	 *     its own loop.
+	 * </p>
+	 *
+	 * @param waiter  The opponent
+	 * @param difficulty  The difficulty both connections asked for
+	 */
+	private void moveTo(final Connection waiter, final int difficulty) {
+		key.cancel();
+		counted = false;
+		loop.connections--;
+		final EventLoop target = waiter.loop;
+		target.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					target.adopt(Connection.this);
+				} catch (IOException e) {
+					close();
+					return;
+				}
+				/* The opponent may have left while this connection was handed over */
+				if (waiter.channel.isOpen() && waiter.waitingDifficulty == difficulty) {
+					startMatch(waiter, Connection.this, difficulty);
+					return;
+				}
+				Connection other = join(difficulty);
+				if (other != null) {
+					moveTo(other, difficulty);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Starts a versus match between two connections served by the calling loop
+	 *
+	 * @param waiter  The connection that waited, seated first
+	 * @param joiner  The connection that joined
+	 * @param difficulty  The match's difficulty
+	 */
+	private static void startMatch(Connection waiter, Connection joiner, int difficulty) {
+		EventLoop loop = joiner.loop;
+		VersusMatch match = new VersusMatch(loop.server.nextSessionId(), difficulty);
+		loop.games++;
+		Broadcast broadcast = new Broadcast(match, loop);
+		loop.server.broadcasts.put(match.getId(), broadcast);
+		waiter.enter(match, 0, joiner, broadcast);
+		joiner.enter(match, 1, waiter, broadcast);
+	}
+
+	/**
+	 * Seats the connection in a match and tells its client
+	 *
+	 * @param match  The match
+	 * @param seat  The seat
+	 * @param opponent  The other player
+	 * @param broadcast  The broadcast of the match to spectators
+	 */
+	private void enter(VersusMatch match, int seat, Connection opponent, Broadcast broadcast) {
+		this.match = match;
+		this.seat = seat;
+		this.opponent = opponent;
+		this.broadcast = broadcast;
+		waitingDifficulty = -1;
+
+		ByteBuffer relay = loop.relay;
+		relay.clear();
+		Protocol.putPaired(relay, match.getId(), match.getDifficulty(), seat);
+		relay.flip();
+		relay(relay);
+	}
+
+	/**
+	 * Selects a tile of the versus match, telling the opponent what changed on the board and the
+	 * spectators what was played
+	 *
+	 * @param tile  The row-major index of the tile
+	 * @param out  The buffer receiving the replies
+	 */
+	private void onVersusSelect(int tile, ByteBuffer out) {
+		int scoreBefore = match.getScore(seat);
+		int result = match.select(seat, tile);
+		if (result == GameSession.REJECTED) {
+			Protocol.putError(out, Protocol.ERROR_SELECTION);
+			return;
+		}
+
+		Protocol.putRevealed(out, tile, match.getRevealedSymbol());
+		if (result == GameSession.REVEALED) {
+			publish(tile, result, false);
+			return;
+		}
+		int score = match.getScore(seat);
+		Protocol.putResolved(out, result == GameSession.MATCHED, score);
+		publish(tile, result, score != scoreBefore);
+
+		ByteBuffer relay = loop.relay;
+		relay.clear();
+		if (result == GameSession.MATCHED) {
+			Protocol.putRemoved(relay, match.getRemovedTile(0), match.getRemovedTile(1), seat);
+		}
+		if (score != scoreBefore) {
+			Protocol.putScore(relay, seat, score);
+		}
+		Connection other = opponent;
+		if (match.isOver()) {
+			int winner = match.getWinner();
+			Protocol.putVersusOver(out, winner);
+			Protocol.putVersusOver(relay, winner);
+			leaveMatch();
+			other.leaveMatch();
+		}
+		relay.flip();
+		other.relay(relay);
+	}
+
+	/**
+	 * Shows a selection to the spectators of the match
+	 *
+	 * @param tile  The row-major index of the tile
+	 * @param result  The result of the selection
+	 * @param scored  True if the selection changed the seat's score
+	 */
+	private void publish(int tile, int result, boolean scored) {
+		ByteBuffer relay = loop.relay;
+		relay.clear();
+		Protocol.putFlipped(relay, seat, tile, match.getRevealedSymbol());
+		if (result == GameSession.MATCHED) {
+			Protocol.putRemoved(relay, match.getRemovedTile(0), match.getRemovedTile(1), seat);
+		}
+		if (scored) {
+			Protocol.putScore(relay, seat, match.getScore(seat));
+		}
+		boolean over = match.isOver();
+		if (over) {
+			Protocol.putVersusOver(relay, match.getWinner());
+		}
+		relay.flip();
+		broadcast.publish(relay, over);
+	}
+
+	private void leaveMatch() {
+		match = null;
+		opponent = null;
+		broadcast = null;
+	}
+
+	/**
+	 * Starts watching a versus match in progress
+	 *
+	 * @param matchId  The identifier of the match
+	 * @param out  The buffer receiving the replies
+	 */
+	private void onWatch(int matchId, ByteBuffer out) {
+		if (match != null || waitingDifficulty >= 0) {
+			Protocol.putError(out, Protocol.ERROR_VERSUS);
+			return;
+		}
+		unwatch();
+		Broadcast watched = loop.server.broadcasts.get(matchId);
+		if (watched == null) {
+			Protocol.putError(out, Protocol.ERROR_WATCH);
+			return;
+		}
+		watching = watched;
+		watched.watch(this);
+	}
+
+	/**
+	 * Checks whether the connection still wants to watch a broadcast
+	 *
+	 * @param watched  The broadcast
+	 * @return  True if the connection is open, asked to watch the broadcast, and is not among its
+	 *          spectators yet
+	 */
+	boolean isWatching(Broadcast watched) {
+		return channel.isOpen() && watching == watched && audience == null;
+	}
+
+	void setAudience(Broadcast.Audience audience) {
+		this.audience = audience;
+	}
+
+	/**
+	 * Tells the client that the match it asked to watch ended before it could be shown
+	 *
+	 * @param watched  The broadcast that refused the connection
+	 */
+	void onWatchRefused(Broadcast watched) {
+		if (watching != watched) {
+			return;
+		}
+		watching = null;
+		ByteBuffer relay = loop.relay;
+		relay.clear();
+		Protocol.putError(relay, Protocol.ERROR_WATCH);
+		relay.flip();
+		relay(relay);
+	}
+
+	/**
+	 * Stops watching once the match watched has ended
+	 */
+	void onWatchEnded() {
+		watching = null;
+		audience = null;
+	}
+
+	/**
+	 * Stops watching, or asking to watch, a match
+	 */
+	private void unwatch() {
+		if (audience != null) {
+			audience.remove(this);
+			audience = null;
+		}
+		watching = null;
+	}
+
+	/**
+	 * Writes part of a broadcast to a spectator, disconnecting it if it fails or lags
+	 *
+	 * @param frames  The encoded messages
+	 */
+	void show(byte[] frames) {
+		ByteBuffer relay = loop.relay;
+		relay.clear();
+		relay.put(frames);
+		relay.flip();
+		relay(relay);
+	}
+
+	/**
+	 * Sends output produced while handling another connection, disconnecting this one if it
+	 * fails
+	 *
+	 * @param src  The output, consumed entirely
+	 */
+	private void relay(ByteBuffer src) {
+		try {
+			send(src);
+		} catch (IOException e) {
+			close();
+		}
+	}
+
+	private static boolean isDifficulty(int difficulty) {
+		return difficulty == Constants.DIFFICULTY_EASY || difficulty == Constants.DIFFICULTY_HARD;
+	}
+
+	/**
+	 * Sends and clears the replies written so far
+	 *
+	 * @param out  The buffer holding the replies
+	 * @throws IOException  If the channel fails
+	 */
+	private void flush(ByteBuffer out) throws IOException {
+		out.flip();
+		send(out);
+		out.clear();
+	}
+
+	/**
+	 * Writes output to the client, queueing what the socket does not accept
+	 *
+	 * @param src  The output, consumed entirely
+	 * @throws IOException  If the channel fails
+	 */
+	void send(ByteBuffer src) throws IOException {
+		if (!src.hasRemaining() || !channel.isOpen()) {
+			return;
+		}
+		if (pending == null) {
+			channel.write(src);
+			if (!src.hasRemaining()) {
+				return;
+			}
+			pending = ByteBuffer.allocate(Math.max(src.remaining(), Protocol.MAX_FRAME));
+			key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+		} else if (pending.remaining() < src.remaining()) {
+			int limit = (watching != null) ? MAX_SPECTATOR_PENDING : MAX_PENDING;
+			int needed = pending.position() + src.remaining();
+			if (needed > limit) {
+				if (watching != null) {
+					loop.dropped++;
+				}
+				close();
+				return;
+			}
+			ByteBuffer grown = ByteBuffer.allocate(Math.min(Math.max(needed, pending.capacity() * 2),
+					limit));
+			pending.flip();
+			grown.put(pending);
+			pending = grown;
+		}
+		pending.put(src);
+	}
+
+	/**
+	 * Writes queued output once the socket accepts more
+	 *
+	 * @throws IOException  If the channel fails
+	 */
+	void onWritable() throws IOException {
+		pending.flip();
+		channel.write(pending);
+		if (pending.hasRemaining()) {
+			pending.compact();
+			return;
+		}
+		pending = null;
+		key.interestOps(SelectionKey.OP_READ);
+	}
+
+	/**
+	 * Disconnects the client, leaving the lobby, the spectators of a match, or forfeiting the
+	 * match in progress
+	 */
+	void close() {
+		if (!channel.isOpen()) {
+			return;
+		}
+		if (key != null) {
+			key.cancel();
+		}
+		try {
+			channel.close();
+		} catch (IOException e) {
+			/* Nothing left to release */
+		}
+		if (counted) {
+			counted = false;
+			loop.connections--;
+		}
+
+		if (waitingDifficulty >= 0) {
+			loop.server.lobby.leave(this, waitingDifficulty);
+			waitingDifficulty = -1;
+		}
+		unwatch();
+		if (match != null) {
+			Connection other = opponent;
+			Broadcast shown = broadcast;
+			leaveMatch();
+			other.leaveMatch();
+			ByteBuffer relay = loop.relay;
+			relay.clear();
+			Protocol.putVersusOver(relay, 1 - seat);
+			relay.flip();
+			shown.publish(relay, true);
+			relay.rewind();
+			other.relay(relay);
+		}
+	}
+}
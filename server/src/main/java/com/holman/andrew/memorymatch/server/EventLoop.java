@@ -0,0 +1,180 @@
+package com.holman.andrew.memorymatch.server;
+
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread serving a share of the server's connections through one Selector
+ * <p>
+ *     Every connection, and the game it plays, is only ever touched by the loop it was assigned
+ *     to, so sessions are confined to a single writer and never locked. Loops share nothing but
+ *     the queues through which the acceptor hands them new connections, and other loops hand
+ *     them tasks, such as adopting the opponent of one of their connections, or writing a move to
+ *     the spectators of a {@link Broadcast}.
+ * </p>
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+final class EventLoop implements Runnable {
+	private static final String TAG = "EventLoop";
+
+	/* Size of the buffers shared by the loop's connections */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	final GameServer server;
+
+	/* Position of the loop among the server's */
+	final int index;
+
+	/* Shared by every connection of the loop, which handles one at a time */
+	final ByteBuffer input = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	final ByteBuffer output = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+	/* Output to a connection other than the one being handled */
+	final ByteBuffer relay = ByteBuffer.allocateDirect(Protocol.MAX_FRAME * 4);
+
+	/* Time of the current iteration, read by the sessions instead of the clock */
+	long nowMillis;
+
+	/* Written by the loop only, read by the statistics reporter */
+	volatile int connections;
+	volatile long messages;
+	volatile long games;
+	volatile int spectators;
+	volatile long deliveries;
+	volatile long fanOutNanos;
+	volatile long dropped;
+
+	private final Selector selector;
+	private final Queue<SocketChannel> accepted = new ConcurrentLinkedQueue<>();
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param server  The server the loop belongs to
+	 * @param index  The position of the loop among the server's
+	 * @throws IOException  If the selector cannot be opened
+	 */
+	EventLoop(GameServer server, int index) throws IOException {
+		this.server = server;
+		this.index = index;
+		selector = Selector.open();
+	}
+
+	/**
+	 * Hands a connection accepted on another thread to the loop
+	 *
+	 * @param channel  The accepted channel
+	 */
+	void add(SocketChannel channel) {
+		accepted.add(channel);
+		selector.wakeup();
+	}
+
+	/**
+	 * Runs a task on the loop
+	 *
+	 * @param task  The task, run before the next connection is served
+	 */
+	void execute(Runnable task) {
+		tasks.add(task);
+		selector.wakeup();
+	}
+
+	/**
+	 * Takes over a connection from another loop, which no longer serves it. Must be called on
+	 * this loop.
+	 *
+	 * @param connection  The connection
+	 * @throws IOException  If the channel cannot be registered
+	 */
+	void adopt(Connection connection) throws IOException {
+		connection.setLoop(this);
+		SocketChannel channel = connection.getChannel();
+		int ops = connection.hasPending()
+				? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+				: SelectionKey.OP_READ;
+		connection.setKey(channel.register(selector, ops, connection));
+		connections++;
+	}
+
+	/**
+	 * Serves the loop's connections until the process exits
+	 */
+	@Override
+	public void run() {
+		while (true) {
+			try {
+				selector.select();
+			} catch (IOException e) {
+				System.err.println(TAG + ": select failed: " + e);
+				return;
+			}
+			nowMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+			registerAccepted();
+			Runnable task;
+			while ((task = tasks.poll()) != null) {
+				/* A failed task must not stop the loop serving its other connections */
+				try {
+					task.run();
+				} catch (RuntimeException e) {
+					System.err.println(TAG + ": task failed: " + e);
+				}
+			}
+
+			Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+			while (keys.hasNext()) {
+				SelectionKey key = keys.next();
+				keys.remove();
+				Connection connection = (Connection) key.attachment();
+				try {
+					if (key.isValid() && key.isWritable()) {
+						connection.onWritable();
+					}
+					if (key.isValid() && key.isReadable()) {
+						connection.onReadable();
+					}
+				} catch (IOException e) {
+					connection.close();
+				} catch (RuntimeException e) {
+					/* Such as a CancelledKeyException. Only the connection is dropped. */
+					System.err.println(TAG + ": dropping connection: " + e);
+					connection.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Registers the connections handed over since the last iteration
+	 */
+	private void registerAccepted() {
+		SocketChannel channel;
+		while ((channel = accepted.poll()) != null) {
+			Connection connection = new Connection(this, channel);
+			try {
+				channel.configureBlocking(false);
+				channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+				connection.setKey(channel.register(selector, SelectionKey.OP_READ, connection));
+				connections++;
+			} catch (IOException e) {
+				try {
+					channel.close();
+				} catch (IOException ignored) {
+					/* Nothing left to release */
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,201 @@
+package com.holman.andrew.memorymatch.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Headless server hosting concurrent Memory Match games over {@link Protocol}
+ * <p>
+ *     The acceptor hands connections to a fixed set of {@link EventLoop}s in turn, one per core by
+ *     default. Each connection plays one {@link com.holman.andrew.memorymatch.game.GameSession}
+ *     or {@link com.holman.andrew.memorymatch.game.VersusMatch} at a time, confined to its loop,
+ *     so the server takes no lock while playing. Matches in progress can be watched by any number
+ *     of spectators through their {@link Broadcast}. Statistics are printed every
+ *     {@link #REPORT_INTERVAL_MILLIS}.
+ * </p>
+ * <p>
+ *     Usage: {@code gradlew :server:run -PserverArgs="[port] [loops] [host]"}. Tens of thousands
+ *     of connections need the open file limit raised accordingly, with {@code ulimit -n}.
+ * </p>
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+public final class GameServer {
+	private static final String TAG = "GameServer";
+
+	/**
+	 * Port listened on unless one is given
+	 */
+	public static final int DEFAULT_PORT = 4747;
+
+	private static final String DEFAULT_HOST = "127.0.0.1";
+	private static final int ACCEPT_BACKLOG = 4096;
+	private static final long REPORT_INTERVAL_MILLIS = 10000;
+
+	/* Pause after a failed accept, such as when out of file descriptors, before trying again */
+	private static final long ACCEPT_RETRY_MILLIS = 100;
+
+	private final EventLoop[] loops;
+	private final AtomicInteger sessionIds = new AtomicInteger();
+
+	/* Shared by every loop to pair versus players */
+	final Lobby lobby = new Lobby();
+
+	/* Versus matches in progress by id, for spectators to find */
+	final ConcurrentMap<Integer, Broadcast> broadcasts = new ConcurrentHashMap<>();
+
+	/**
+	 * Starts a server and serves until the process is stopped
+	 *
+	 * @param args  Optional port, number of event loops, and host to bind
+	 * @throws IOException  If the server socket cannot be bound
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		int loops = (args.length > 1)
+				? Integer.parseInt(args[1])
+				: Runtime.getRuntime().availableProcessors();
+		String host = (args.length > 2) ? args[2] : DEFAULT_HOST;
+		new GameServer(loops).serve(new InetSocketAddress(host, port));
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param loops  The number of event loops
+	 * @throws IOException  If a selector cannot be opened
+	 */
+	GameServer(int loops) throws IOException {
+		this.loops = new EventLoop[loops];
+		for (int i = 0; i < loops; i++) {
+			this.loops[i] = new EventLoop(this, i);
+		}
+	}
+
+	/**
+	 * Starts the event loops and the reporter, then accepts connections on the calling thread
+	 *
+	 * @param address  The address to bind
+	 * @throws IOException  If the server socket cannot be bound
+	 */
+	void serve(InetSocketAddress address) throws IOException {
+		for (int i = 0; i < loops.length; i++) {
+			Thread thread = new Thread(loops[i], TAG + "-loop-" + i);
+			thread.setDaemon(true);
+			thread.start();
+		}
+		Thread reporter = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				report();
+			}
+		}, TAG + "-report");
+		reporter.setDaemon(true);
+		reporter.start();
+
+		ServerSocketChannel acceptor = ServerSocketChannel.open();
+		acceptor.bind(address, ACCEPT_BACKLOG);
+		System.out.println(TAG + ": listening on " + address + " with " + loops.length
+				+ " event loops");
+		for (int next = 0; ; next = (next + 1) % loops.length) {
+			SocketChannel channel;
+			try {
+				channel = acceptor.accept();
+			} catch (IOException e) {
+				/* The pending connection stays queued, so running out of file descriptors
+					would otherwise spin until one is released */
+				System.err.println(TAG + ": accept failed: " + e);
+				pause(ACCEPT_RETRY_MILLIS);
+				continue;
+			}
+			loops[next].add(channel);
+		}
+	}
+
+	/**
+	 * Sleeps, returning early if interrupted
+	 *
+	 * @param millis  The time to sleep
+	 */
+	private static void pause(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Assigns a session identifier unique to this server
+	 *
+	 * @return  The identifier
+	 */
+	int nextSessionId() {
+		return sessionIds.incrementAndGet();
+	}
+
+	int getLoopCount() {
+		return loops.length;
+	}
+
+	/**
+	 * Prints connections, message and game rates, and heap used per connection, periodically,
+	 * then the cost of showing moves to spectators if there are any
+	 */
+	private void report() {
+		long lastMessages = 0;
+		long lastGames = 0;
+		long lastDeliveries = 0;
+		long lastFanOutNanos = 0;
+		while (true) {
+			try {
+				Thread.sleep(REPORT_INTERVAL_MILLIS);
+			} catch (InterruptedException e) {
+				return;
+			}
+			int connections = 0;
+			long messages = 0;
+			long games = 0;
+			int spectators = 0;
+			long deliveries = 0;
+			long fanOutNanos = 0;
+			long dropped = 0;
+			for (EventLoop loop : loops) {
+				connections += loop.connections;
+				messages += loop.messages;
+				games += loop.games;
+				spectators += loop.spectators;
+				deliveries += loop.deliveries;
+				fanOutNanos += loop.fanOutNanos;
+				dropped += loop.dropped;
+			}
+			Runtime runtime = Runtime.getRuntime();
+			long heap = runtime.totalMemory() - runtime.freeMemory();
+			double seconds = REPORT_INTERVAL_MILLIS / 1000.0;
+			System.out.println(String.format(Locale.US,
+					"%s: %d connections, %.0f messages/s, %.0f games/s, %d MB heap (%d B/connection)",
+					TAG, connections, (messages - lastMessages) / seconds,
+					(games - lastGames) / seconds, heap >> 20,
+					heap / Math.max(connections, 1)));
+			if (deliveries > lastDeliveries) {
+				System.out.println(String.format(Locale.US,
+						"%s: %d spectators, %.0f moves shown/s, %.0f ns per move shown, %d dropped",
+						TAG, spectators, (deliveries - lastDeliveries) / seconds,
+						(double) (fanOutNanos - lastFanOutNanos) / (deliveries - lastDeliveries),
+						dropped));
+			}
+			lastMessages = messages;
+			lastGames = games;
+			lastDeliveries = deliveries;
+			lastFanOutNanos = fanOutNanos;
+		}
+	}
+}
@@ -0,0 +1,301 @@
+package com.holman.andrew.memorymatch.server;
+
+import com.holman.andrew.memorymatch.metrics.LatencyHistogram;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load generator simulating thousands of players against a local {@link GameServer}
+ * <p>
+ *     Players are spread over a few client loops, each driving its share through one Selector
+ *     and a queue of timers ordered by when each player next taps, so a player costs a socket
+ *     and a few hundred bytes rather than a thread. Players connect gradually over the ramp, then
+ *     play for the measured duration. Every {@link #REPORT_INTERVAL_SECONDS} and at the end, the
+ *     generator prints connected players, move throughput, and move latency percentiles. Given the
+ *     server's process id, it also reports the server's resident memory per connected player.
+ * </p>
+ * <p>
+ *     Usage, with the server running:
+ *     {@code gradlew :server:loadTest -PloadArgs="[players] [seconds] [port] [loops] [server pid]"}.
+ *     The open file limit of both processes must exceed the number of players.
+ * </p>
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+public final class LoadGenerator {
+	private static final String TAG = "LoadGenerator";
+
+	private static final int DEFAULT_PLAYERS = 10000;
+	private static final int DEFAULT_SECONDS = 60;
+	private static final int DEFAULT_LOOPS = 2;
+	private static final int REPORT_INTERVAL_SECONDS = 10;
+
+	/* Players connecting per second while ramping up */
+	private static final int CONNECTS_PER_SECOND = 2000;
+
+	/* Latencies of the last interval, and of the whole measured duration */
+	private static final LatencyHistogram INTERVAL = new LatencyHistogram("interval");
+	private static final LatencyHistogram TOTAL = new LatencyHistogram("move");
+
+	/**
+	 * Runs the generator, then exits
+	 *
+	 * @param args  Optional number of players, seconds measured, server port, client loops, and
+	 *              server process id
+	 * @throws IOException  If a selector cannot be opened
+	 * @throws InterruptedException  If interrupted while waiting
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		int players = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PLAYERS;
+		int seconds = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_SECONDS;
+		int port = (args.length > 2) ? Integer.parseInt(args[2]) : GameServer.DEFAULT_PORT;
+		int loopCount = (args.length > 3) ? Integer.parseInt(args[3]) : DEFAULT_LOOPS;
+		String serverPid = (args.length > 4) ? args[4] : null;
+
+		InetSocketAddress address = new InetSocketAddress("127.0.0.1", port);
+		long rampNanos = TimeUnit.SECONDS.toNanos(players / CONNECTS_PER_SECOND + 1);
+		long startNanos = System.nanoTime();
+		ClientLoop[] loops = new ClientLoop[loopCount];
+		for (int i = 0; i < loopCount; i++) {
+			loops[i] = new ClientLoop(address);
+		}
+		for (int i = 0; i < players; i++) {
+			loops[i % loopCount].add(startNanos + rampNanos * i / players);
+		}
+		for (int i = 0; i < loopCount; i++) {
+			Thread thread = new Thread(loops[i], TAG + "-loop-" + i);
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		System.out.println(String.format(Locale.US, "%s: %d players against %s, %d s ramp, %d s"
+				+ " measured", TAG, players, address, TimeUnit.NANOSECONDS.toSeconds(rampNanos),
+				seconds));
+		TimeUnit.NANOSECONDS.sleep(rampNanos);
+		INTERVAL.reset();
+		TOTAL.reset();
+		long measuredStart = System.nanoTime();
+		long gamesAtStart = sum(loops, false);
+
+		for (int elapsed = 0; elapsed < seconds; ) {
+			int interval = Math.min(REPORT_INTERVAL_SECONDS, seconds - elapsed);
+			TimeUnit.SECONDS.sleep(interval);
+			elapsed += interval;
+			report("t=" + elapsed + "s", INTERVAL, interval, loops, serverPid);
+			INTERVAL.reset();
+		}
+
+		double measuredSeconds = (System.nanoTime() - measuredStart) / 1e9;
+		report("total", TOTAL, measuredSeconds, loops, serverPid);
+		System.out.println(String.format(Locale.US, "%s: %d games completed, %d errors", TAG,
+				sum(loops, false) - gamesAtStart, sum(loops, true)));
+		System.exit(0);
+	}
+
+	/**
+	 * Prints throughput and latency percentiles
+	 *
+	 * @param label  The period reported
+	 * @param histogram  The move latencies of the period
+	 * @param seconds  The length of the period
+	 * @param loops  The client loops
+	 * @param serverPid  The server's process id, or null if not known
+	 */
+	private static void report(String label, LatencyHistogram histogram, double seconds,
+			ClientLoop[] loops, String serverPid) {
+		int connected = 0;
+		for (ClientLoop loop : loops) {
+			connected += loop.connected;
+		}
+		StringBuilder line = new StringBuilder(String.format(Locale.US,
+				"%s %s: %d players, %.0f moves/s, latency p50 %d us, p99 %d us, p999 %d us,"
+						+ " max %d us", TAG, label, connected, histogram.getCount() / seconds,
+				histogram.getPercentileMicros(50), histogram.getPercentileMicros(99),
+				histogram.getPercentileMicros(99.9), histogram.getMaxMicros()));
+		long rssKb = (serverPid == null) ? -1 : readRssKb(serverPid);
+		if (rssKb >= 0) {
+			line.append(String.format(Locale.US, ", server RSS %d MB (%d B/player)", rssKb >> 10,
+					rssKb * 1024 / Math.max(connected, 1)));
+		}
+		System.out.println(line);
+	}
+
+	/**
+	 * Reads the resident memory of a process from {@code /proc}
+	 *
+	 * @param pid  The process id
+	 * @return  The resident set size in kilobytes, or -1 if it cannot be read
+	 */
+	private static long readRssKb(String pid) {
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new FileReader("/proc/" + pid + "/status"));
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith("VmRSS:")) {
+					return Long.parseLong(line.replaceAll("[^0-9]", ""));
+				}
+			}
+		} catch (IOException | NumberFormatException e) {
+			System.err.println(TAG + ": cannot read memory of process " + pid + ": " + e);
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (IOException e) {
+					/* Nothing left to release */
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Adds up a counter of every loop
+	 *
+	 * @param loops  The client loops
+	 * @param errors  True to add errors, false to add games completed
+	 * @return  The total
+	 */
+	private static long sum(ClientLoop[] loops, boolean errors) {
+		long total = 0;
+		for (ClientLoop loop : loops) {
+			total += errors ? loop.errors : loop.games;
+		}
+		return total;
+	}
+
+	/**
+	 * Thread driving a share of the players
+	 */
+	static final class ClientLoop implements Runnable {
+		final Selector selector;
+		final InetSocketAddress address;
+
+		/* Written by the loop only, read by the reporter */
+		volatile int connected;
+		volatile long games;
+		volatile long errors;
+
+		private final Random random = new Random();
+		private final PriorityQueue<SimulatedPlayer> timers = new PriorityQueue<>(1024,
+				new Comparator<SimulatedPlayer>() {
+					@Override
+					public int compare(SimulatedPlayer a, SimulatedPlayer b) {
+						return Long.compare(a.getDueNanos(), b.getDueNanos());
+					}
+				});
+
+		/**
+		 * Constructor
+		 *
+		 * @param address  The server's address
+		 * @throws IOException  If the selector cannot be opened
+		 */
+		ClientLoop(InetSocketAddress address) throws IOException {
+			this.address = address;
+			selector = Selector.open();
+		}
+
+		/**
+		 * Adds a player before the loop starts
+		 *
+		 * @param connectNanos  Time at which the player connects
+		 */
+		void add(long connectNanos) {
+			timers.add(new SimulatedPlayer(this, random, connectNanos));
+		}
+
+		/**
+		 * Queues a player's next action. Must be called on the loop.
+		 *
+		 * @param player  The player, whose due time is set
+		 */
+		void schedule(SimulatedPlayer player) {
+			timers.add(player);
+		}
+
+		/**
+		 * Records the round trip of a message
+		 *
+		 * @param nanos  The latency
+		 */
+		void recordMove(long nanos) {
+			INTERVAL.record(nanos);
+			TOTAL.record(nanos);
+		}
+
+		/**
+		 * Serves replies and fires due players until the process exits
+		 */
+		@Override
+		public void run() {
+			while (true) {
+				SimulatedPlayer next = timers.peek();
+				try {
+					long waitNanos = (next == null) ? 0 : next.getDueNanos() - System.nanoTime();
+					if (next != null && waitNanos <= 0) {
+						selector.selectNow();
+					} else {
+						/* select(0) waits indefinitely, so wait at least a millisecond */
+						selector.select(Math.max(TimeUnit.NANOSECONDS.toMillis(waitNanos), 1));
+					}
+				} catch (IOException e) {
+					System.err.println(TAG + ": select failed: " + e);
+					return;
+				}
+
+				long now = System.nanoTime();
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					SimulatedPlayer player = (SimulatedPlayer) key.attachment();
+					try {
+						if (key.isValid() && key.isConnectable()) {
+							player.onConnectable();
+						} else if (key.isValid() && key.isReadable()) {
+							player.onReadable(now);
+						}
+					} catch (IOException e) {
+						disconnect(player);
+					}
+				}
+
+				while ((next = timers.peek()) != null && next.getDueNanos() <= now) {
+					timers.poll();
+					try {
+						next.onDue(now);
+					} catch (IOException e) {
+						disconnect(next);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Drops a player whose connection failed
+		 *
+		 * @param player  The player
+		 */
+		private void disconnect(SimulatedPlayer player) {
+			errors++;
+			if (player.close()) {
+				connected--;
+			}
+		}
+	}
+}
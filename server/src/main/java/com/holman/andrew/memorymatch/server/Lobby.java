@@ -0,0 +1,54 @@
+package com.holman.andrew.memorymatch.server;
+
+import com.holman.andrew.memorymatch.Constants;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Pairs connections asking for a versus match of the same difficulty
+ * <p>
+ *     At most one connection waits per difficulty, in a slot claimed with compare-and-set, so
+ *     loops pair their connections without locking each other.
+ * </p>
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+final class Lobby {
+	private static final String TAG = "Lobby";
+
+	/* Waiting connection per difficulty */
+	private final AtomicReferenceArray<Connection> waiting = new AtomicReferenceArray<>(
+			Constants.DIFFICULTY_HARD + 1);
+
+	/**
+	 * Takes the connection waiting for a difficulty, or waits in its place
+	 *
+	 * @param joiner  The connection asking for a match
+	 * @param difficulty  The difficulty. See {@link Constants} for expected values.
+	 * @return  The opponent, who no longer waits, or null if the joiner now waits
+	 */
+	Connection pair(Connection joiner, int difficulty) {
+		while (true) {
+			Connection waiter = waiting.get(difficulty);
+			if (waiter == null) {
+				if (waiting.compareAndSet(difficulty, null, joiner)) {
+					return null;
+				}
+			} else if (waiting.compareAndSet(difficulty, waiter, null)) {
+				return waiter;
+			}
+		}
+	}
+
+	/**
+	 * Stops a connection waiting, if it still is
+	 *
+	 * @param waiter  The connection
+	 * @param difficulty  The difficulty it waits for
+	 */
+	void leave(Connection waiter, int difficulty) {
+		waiting.compareAndSet(difficulty, waiter, null);
+	}
+}
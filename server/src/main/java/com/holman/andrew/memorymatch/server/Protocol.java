@@ -0,0 +1,253 @@
+package com.holman.andrew.memorymatch.server;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Binary protocol spoken between game clients and {@link GameServer}
+ * <p>
+ *     Every message is a frame of one unsigned length byte, counting the type and body, followed
+ *     by one type byte and the body. Integers are big-endian. A client starts a game, then selects
+ *     tiles by their row-major index:
+ * </p>
+ * <pre>
+ * client                         server
+ * START difficulty        -->
+ *                         <--    STARTED session difficulty
+ * SELECT tile             -->
+ *                         <--    REVEALED tile symbol
+ * SELECT tile             -->
+ *                         <--    REVEALED tile symbol
+ *                         <--    RESOLVED matched score
+ *                         <--    OVER score elapsed        (after the last pair)
+ * </pre>
+ * <p>
+ *     A versus match is joined instead of started. Once paired, each player selects tiles as
+ *     above, while the opponent is only sent what changed on the shared board:
+ * </p>
+ * <pre>
+ * player                         server                          opponent
+ * JOIN difficulty         -->
+ *                         <--    PAIRED match difficulty seat   -->
+ * SELECT tile             -->
+ *                         <--    REVEALED tile symbol
+ * SELECT tile             -->
+ *                         <--    REVEALED tile symbol
+ *                         <--    RESOLVED matched score
+ *                                REMOVED tile tile seat          -->   (if matched)
+ *                                SCORE seat score                -->   (if changed)
+ *                         <--    VERSUS_OVER winner              -->   (after the last pair)
+ * </pre>
+ * <p>
+ *     Any client can watch a versus match in progress. It is sent the state of the match as of a
+ *     recent point, then every change since, and then every change as it happens:
+ * </p>
+ * <pre>
+ * spectator                      server
+ * WATCH match             -->
+ *                         <--    WATCHING match difficulty removed score score sequence
+ *                         <--    FLIPPED seat tile symbol, REMOVED, SCORE  (each move since)
+ *                         <--    FLIPPED seat tile symbol, REMOVED, SCORE  (each move, live)
+ *                         <--    VERSUS_OVER winner
+ * </pre>
+ * <p>
+ *     A selection that is not allowed is answered with {@link #ERROR}. A malformed frame closes
+ *     the connection.
+ * </p>
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+public final class Protocol {
+	private static final String TAG = "Protocol";
+
+	/**
+	 * Largest frame, including its length byte
+	 */
+	public static final int MAX_FRAME = 256;
+
+	/**
+	 * Client message starting a new game. Body: difficulty (1 byte).
+	 */
+	public static final byte START = 0x01;
+
+	/**
+	 * Client message selecting a tile. Body: row-major tile index (1 byte).
+	 */
+	public static final byte SELECT = 0x02;
+
+	/**
+	 * Client message asking for a versus match. Body: difficulty (1 byte).
+	 */
+	public static final byte JOIN = 0x03;
+
+	/**
+	 * Client message asking to watch a versus match. Body: match id (4 bytes).
+	 */
+	public static final byte WATCH = 0x04;
+
+	/**
+	 * Server message acknowledging {@link #START}. Body: session id (4), difficulty (1).
+	 */
+	public static final byte STARTED = 0x41;
+
+	/**
+	 * Server message revealing a selected tile. Body: tile index (1), symbol index (1).
+	 */
+	public static final byte REVEALED = 0x42;
+
+	/**
+	 * Server message resolving a pair. Body: 1 if removed, 0 if to re-flip (1), score (4).
+	 */
+	public static final byte RESOLVED = 0x43;
+
+	/**
+	 * Server message ending the game. Body: final score (4), milliseconds played (4).
+	 */
+	public static final byte OVER = 0x44;
+
+	/**
+	 * Server message starting a versus match. Body: match id (4), difficulty (1), seat (1).
+	 */
+	public static final byte PAIRED = 0x45;
+
+	/**
+	 * Server message telling a player the opponent removed a pair. Body: the two tile indices
+	 * (1, 1), opponent's seat (1).
+	 */
+	public static final byte REMOVED = 0x46;
+
+	/**
+	 * Server message telling a player the opponent's score changed. Body: seat (1), score (4).
+	 */
+	public static final byte SCORE = 0x47;
+
+	/**
+	 * Server message ending a versus match, also sent when the opponent leaves. Body: winning
+	 * seat, or 0xff for a draw (1).
+	 */
+	public static final byte VERSUS_OVER = 0x48;
+
+	/**
+	 * Server message starting to show a match to a spectator. Body: match id (4), difficulty (1),
+	 * bitset of removed tiles (2), scores of both seats (4, 4), number of moves before this state
+	 * (2).
+	 */
+	public static final byte WATCHING = 0x49;
+
+	/**
+	 * Server message showing spectators a tile turned over. Body: seat (1), tile index (1),
+	 * symbol index (1).
+	 */
+	public static final byte FLIPPED = 0x4a;
+
+	/**
+	 * Server message rejecting a client message. Body: one of the ERROR_ codes (1).
+	 */
+	public static final byte ERROR = 0x7f;
+
+	/**
+	 * Error code of a {@link #START} with an unknown difficulty
+	 */
+	public static final byte ERROR_DIFFICULTY = 1;
+
+	/**
+	 * Error code of a {@link #SELECT} before a game started, after it ended, or of a tile that
+	 * cannot be selected
+	 */
+	public static final byte ERROR_SELECTION = 2;
+
+	/**
+	 * Error code of a {@link #START} or {@link #JOIN} while waiting for or playing a versus match
+	 */
+	public static final byte ERROR_VERSUS = 3;
+
+	/**
+	 * Error code of a {@link #WATCH} of a match that is not in progress
+	 */
+	public static final byte ERROR_WATCH = 4;
+
+	private Protocol() {
+	}
+
+	/**
+	 * Retrieves the body length of a client message
+	 *
+	 * @param type  The message type
+	 * @return  The number of body bytes, or -1 if the type is unknown
+	 */
+	public static int getClientBodyLength(byte type) {
+		switch (type) {
+			case START :
+			case SELECT :
+			case JOIN :
+				return 1;
+			case WATCH :
+				return 4;
+			default :
+				return -1;
+		}
+	}
+
+	public static void putStart(ByteBuffer out, int difficulty) {
+		out.put((byte) 2).put(START).put((byte) difficulty);
+	}
+
+	public static void putSelect(ByteBuffer out, int tile) {
+		out.put((byte) 2).put(SELECT).put((byte) tile);
+	}
+
+	public static void putJoin(ByteBuffer out, int difficulty) {
+		out.put((byte) 2).put(JOIN).put((byte) difficulty);
+	}
+
+	public static void putWatch(ByteBuffer out, int match) {
+		out.put((byte) 5).put(WATCH).putInt(match);
+	}
+
+	public static void putStarted(ByteBuffer out, int session, int difficulty) {
+		out.put((byte) 6).put(STARTED).putInt(session).put((byte) difficulty);
+	}
+
+	public static void putRevealed(ByteBuffer out, int tile, int symbol) {
+		out.put((byte) 3).put(REVEALED).put((byte) tile).put((byte) symbol);
+	}
+
+	public static void putResolved(ByteBuffer out, boolean matched, int score) {
+		out.put((byte) 6).put(RESOLVED).put((byte) (matched ? 1 : 0)).putInt(score);
+	}
+
+	public static void putOver(ByteBuffer out, int score, int elapsedMillis) {
+		out.put((byte) 9).put(OVER).putInt(score).putInt(elapsedMillis);
+	}
+
+	public static void putPaired(ByteBuffer out, int match, int difficulty, int seat) {
+		out.put((byte) 7).put(PAIRED).putInt(match).put((byte) difficulty).put((byte) seat);
+	}
+
+	public static void putRemoved(ByteBuffer out, int first, int second, int seat) {
+		out.put((byte) 4).put(REMOVED).put((byte) first).put((byte) second).put((byte) seat);
+	}
+
+	public static void putScore(ByteBuffer out, int seat, int score) {
+		out.put((byte) 6).put(SCORE).put((byte) seat).putInt(score);
+	}
+
+	public static void putVersusOver(ByteBuffer out, int winner) {
+		out.put((byte) 2).put(VERSUS_OVER).put((byte) winner);
+	}
+
+	public static void putWatching(ByteBuffer out, int match, int difficulty, int removed,
+			int score0, int score1, int sequence) {
+		out.put((byte) 18).put(WATCHING).putInt(match).put((byte) difficulty)
+				.putShort((short) removed).putInt(score0).putInt(score1).putShort((short) sequence);
+	}
+
+	public static void putFlipped(ByteBuffer out, int seat, int tile, int symbol) {
+		out.put((byte) 4).put(FLIPPED).put((byte) seat).put((byte) tile).put((byte) symbol);
+	}
+
+	public static void putError(ByteBuffer out, byte code) {
+		out.put((byte) 2).put(ERROR).put(code);
+	}
+}
@@ -0,0 +1,314 @@
+package com.holman.andrew.memorymatch.server;
+
+import com.holman.andrew.memorymatch.game.GameSession;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A player of {@link LoadGenerator}, connected to {@link GameServer} over {@link Protocol}
+ * <p>
+ *     The player taps like a person would: it waits a think time before every tap, lets a
+ *     resolved pair stay on screen as long as the app does, and looks at the leaderboard between
+ *     games. It remembers every symbol it has seen, so it matches pairs it knows and otherwise
+ *     turns over tiles it has not seen yet. Each player has at most one message in flight, whose
+ *     round trip is recorded as the move latency.
+ * </p>
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+final class SimulatedPlayer {
+	private static final String TAG = "SimulatedPlayer";
+
+	/* Median and spread of the log-normal time between taps */
+	private static final double THINK_MEDIAN_MILLIS = 700;
+	private static final double THINK_SIGMA = 0.5;
+
+	/* Time a resolved pair stays on screen in GameActivity before the next tap */
+	private static final long RESOLVE_DELAY_MILLIS = 500;
+
+	/* Time spent on the leaderboard between games */
+	private static final long LEADERBOARD_MILLIS = 3000;
+
+	/* Tiles matched once the game is over */
+	private static final int ALL_REMOVED = (1 << GameSession.TILES) - 1;
+
+	/* Action taken when the player is next due */
+	private static final int CONNECT = 0;
+	private static final int START = 1;
+	private static final int TAP = 2;
+	private static final int WAIT = 3;
+
+	private final LoadGenerator.ClientLoop loop;
+	private final Random random;
+	private SocketChannel channel;
+	private SelectionKey key;
+	private final ByteBuffer in = ByteBuffer.allocate(Protocol.MAX_FRAME * 2);
+	private final ByteBuffer out = ByteBuffer.allocate(Protocol.MAX_FRAME);
+
+	private boolean connected;
+	private int action = CONNECT;
+	private long dueNanos;
+	private long sentNanos;
+
+	/* Symbol seen on each tile, -1 if never revealed */
+	private final int[] known = new int[GameSession.TILES];
+	private int removed;
+	private int firstTile = -1;
+
+	/**
+	 * Constructor
+	 *
+	 * @param loop  The client loop driving the player
+	 * @param random  The loop's source of think times and choices
+	 * @param dueNanos  Time at which to connect, from {@link System#nanoTime()}
+	 */
+	SimulatedPlayer(LoadGenerator.ClientLoop loop, Random random, long dueNanos) {
+		this.loop = loop;
+		this.random = random;
+		this.dueNanos = dueNanos;
+	}
+
+	long getDueNanos() {
+		return dueNanos;
+	}
+
+	/**
+	 * Takes the scheduled action
+	 *
+	 * @param nowNanos  The current time
+	 * @throws IOException  If the channel fails
+	 */
+	void onDue(long nowNanos) throws IOException {
+		switch (action) {
+			case CONNECT :
+				channel = SocketChannel.open();
+				channel.configureBlocking(false);
+				key = channel.register(loop.selector, SelectionKey.OP_CONNECT, this);
+				action = WAIT;
+				if (channel.connect(loop.address)) {
+					onConnectable();
+				}
+				break;
+			case START :
+				action = WAIT;
+				Protocol.putStart(out, random.nextInt(2));
+				send(nowNanos);
+				break;
+			case TAP :
+				action = WAIT;
+				Protocol.putSelect(out, (firstTile < 0) ? chooseFirst() : chooseSecond());
+				send(nowNanos);
+				break;
+		}
+	}
+
+	/**
+	 * Completes the connection and starts the first game
+	 *
+	 * @throws IOException  If the connection failed
+	 */
+	void onConnectable() throws IOException {
+		if (!channel.finishConnect()) {
+			return;
+		}
+		key.interestOps(SelectionKey.OP_READ);
+		connected = true;
+		loop.connected++;
+		action = START;
+		onDue(System.nanoTime());
+	}
+
+	/**
+	 * Handles every complete frame received
+	 *
+	 * @param nowNanos  The current time
+	 * @throws IOException  If the channel fails or the server closed it
+	 */
+	void onReadable(long nowNanos) throws IOException {
+		if (channel.read(in) < 0) {
+			throw new IOException("Closed by server");
+		}
+		in.flip();
+		while (in.remaining() > 0 && in.remaining() >= 1 + (in.get(in.position()) & 0xff)) {
+			int length = in.get() & 0xff;
+			int end = in.position() + length;
+			onFrame(in.get(), nowNanos);
+			in.position(end);
+		}
+		in.compact();
+	}
+
+	/**
+	 * Updates what the player knows from a server message and schedules its next action
+	 *
+	 * @param type  The message type, followed in {@link #in} by its body
+	 * @param nowNanos  The current time
+	 */
+	private void onFrame(byte type, long nowNanos) {
+		switch (type) {
+			case Protocol.STARTED :
+				Arrays.fill(known, -1);
+				removed = 0;
+				firstTile = -1;
+				schedule(TAP, nowNanos, thinkMillis());
+				break;
+			case Protocol.REVEALED :
+				int tile = in.get() & 0xff;
+				known[tile] = in.get();
+				if (firstTile < 0) {
+					loop.recordMove(nowNanos - sentNanos);
+					firstTile = tile;
+					schedule(TAP, nowNanos, thinkMillis());
+				} else if (known[tile] == known[firstTile]) {
+					removed |= (1 << tile) | (1 << firstTile);
+				}
+				break;
+			case Protocol.RESOLVED :
+				loop.recordMove(nowNanos - sentNanos);
+				firstTile = -1;
+				if (removed == ALL_REMOVED) {
+					schedule(START, nowNanos, LEADERBOARD_MILLIS);
+				} else {
+					schedule(TAP, nowNanos, RESOLVE_DELAY_MILLIS + thinkMillis());
+				}
+				break;
+			case Protocol.OVER :
+				loop.games++;
+				break;
+			case Protocol.ERROR :
+				loop.errors++;
+				schedule(START, nowNanos, thinkMillis());
+				break;
+		}
+	}
+
+	/**
+	 * Chooses the first tile of a pair: one of a known pair, or one never seen
+	 *
+	 * @return  The tile index
+	 */
+	private int chooseFirst() {
+		for (int i = 0; i < known.length; i++) {
+			if (isOnBoard(i) && known[i] >= 0 && findPartner(i) >= 0) {
+				return i;
+			}
+		}
+		return chooseUnseen(-1);
+	}
+
+	/**
+	 * Chooses the second tile of a pair: the first one's partner if it was seen, or one never
+	 * seen
+	 *
+	 * @return  The tile index
+	 */
+	private int chooseSecond() {
+		int partner = findPartner(firstTile);
+		return (partner >= 0) ? partner : chooseUnseen(firstTile);
+	}
+
+	/**
+	 * Finds a tile on the board known to hold the same symbol as another
+	 *
+	 * @param tile  The tile whose symbol to look for
+	 * @return  The other tile, or -1 if none is known
+	 */
+	private int findPartner(int tile) {
+		for (int i = 0; i < known.length; i++) {
+			if (i != tile && isOnBoard(i) && known[i] == known[tile]) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Picks a random tile on the board, preferring ones never seen
+	 *
+	 * @param excluded  A tile that must not be picked, or -1
+	 * @return  The tile index
+	 */
+	private int chooseUnseen(int excluded) {
+		int start = random.nextInt(known.length);
+		int fallback = -1;
+		for (int n = 0; n < known.length; n++) {
+			int i = (start + n) % known.length;
+			if (i == excluded || !isOnBoard(i)) {
+				continue;
+			}
+			if (known[i] < 0) {
+				return i;
+			}
+			fallback = i;
+		}
+		return fallback;
+	}
+
+	private boolean isOnBoard(int tile) {
+		return (removed & (1 << tile)) == 0;
+	}
+
+	/**
+	 * Draws the time a player takes before tapping
+	 *
+	 * @return  A log-normal think time in milliseconds
+	 */
+	private long thinkMillis() {
+		return (long) (THINK_MEDIAN_MILLIS * Math.exp(THINK_SIGMA * random.nextGaussian()));
+	}
+
+	/**
+	 * Queues the player's next action with its loop
+	 *
+	 * @param next  The action
+	 * @param nowNanos  The current time
+	 * @param delayMillis  Milliseconds from now
+	 */
+	private void schedule(int next, long nowNanos, long delayMillis) {
+		action = next;
+		dueNanos = nowNanos + delayMillis * 1000000L;
+		loop.schedule(this);
+	}
+
+	/**
+	 * Sends the message in {@link #out}
+	 *
+	 * @param nowNanos  The current time, from which the reply's latency is measured
+	 * @throws IOException  If the channel fails or cannot take a few bytes
+	 */
+	private void send(long nowNanos) throws IOException {
+		out.flip();
+		sentNanos = nowNanos;
+		channel.write(out);
+		if (out.hasRemaining()) {
+			throw new IOException("Send buffer full");
+		}
+		out.clear();
+	}
+
+	/**
+	 * Disconnects the player
+	 *
+	 * @return  True if the player had been connected
+	 */
+	boolean close() {
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				/* Nothing left to release */
+			}
+			channel = null;
+		}
+		boolean wasConnected = connected;
+		connected = false;
+		return wasConnected;
+	}
+}
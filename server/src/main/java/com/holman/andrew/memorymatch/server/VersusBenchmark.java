@@ -0,0 +1,320 @@
+package com.holman.andrew.memorymatch.server;
+
+import com.holman.andrew.memorymatch.game.GameSession;
+import com.holman.andrew.memorymatch.metrics.LatencyHistogram;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Plays versus matches between bots through a local {@link GameServer} relaying their moves
+ * <p>
+ *     Every bot keeps its board in a {@link VersusClient}, and runs a thread tapping tiles after a
+ *     think time and a thread applying the server's messages as soon as they arrive. Since both
+ *     players of a match run in this process, the time a pair is resolved by one bot can be
+ *     compared with the time its delta reaches the other. The benchmark reports:
+ * </p>
+ * <ul>
+ *     <li>the confirmation latency of a predicted flip, from tap to {@link Protocol#REVEALED}</li>
+ *     <li>the end-to-end latency of a delta, from the opponent's tap resolving a pair to
+ *     {@link Protocol#REMOVED} or {@link Protocol#SCORE} being applied</li>
+ *     <li>the bytes sent and received per move by both players, against sending both players
+ *     the whole board after every move</li>
+ *     <li>the predicted flips rolled back</li>
+ * </ul>
+ * <p>
+ *     Usage, with the server running:
+ *     {@code gradlew :server:versusTest -PversusArgs="[pairs] [matches] [port]"}.
+ * </p>
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+public final class VersusBenchmark {
+	private static final String TAG = "VersusBenchmark";
+
+	private static final int DEFAULT_PAIRS = 100;
+	private static final int DEFAULT_MATCHES = 5;
+
+	/* Median and spread of the log-normal time between taps, quicker than a relaxed game */
+	private static final double THINK_MEDIAN_MILLIS = 250;
+	private static final double THINK_SIGMA = 0.5;
+
+	private static final LatencyHistogram CONFIRM = new LatencyHistogram("confirm");
+	private static final LatencyHistogram DELTA = new LatencyHistogram("delta");
+
+	private static final AtomicLong MOVES = new AtomicLong();
+	private static final AtomicLong BYTES = new AtomicLong();
+	private static final AtomicLong ROLLBACKS = new AtomicLong();
+
+	/* Per match id: when each seat last sent the second tile of a pair */
+	private static final ConcurrentMap<Integer, AtomicLongArray> RESOLVE_TIMES =
+			new ConcurrentHashMap<>();
+
+	/**
+	 * Runs the benchmark, then exits
+	 *
+	 * @param args  Optional number of concurrent pairs, matches per bot, and server port
+	 * @throws InterruptedException  If interrupted while waiting for the bots
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		int pairs = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PAIRS;
+		int matches = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_MATCHES;
+		int port = (args.length > 2) ? Integer.parseInt(args[2]) : GameServer.DEFAULT_PORT;
+		InetSocketAddress address = new InetSocketAddress("127.0.0.1", port);
+
+		int bots = pairs * 2;
+		CountDownLatch finished = new CountDownLatch(bots);
+		long start = System.nanoTime();
+		/* An even number of bots per difficulty, so that every join is paired */
+		for (int i = 0; i < bots; i++) {
+			new Bot(address, (i / 2) % 2, matches, finished).start();
+		}
+		finished.await();
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		long moves = MOVES.get();
+		double bytesPerMove = (double) BYTES.get() / Math.max(moves, 1);
+		/* Whole board, as a game snapshot in a frame, to both players after every move */
+		int boardSyncBytes = 2 * (2 + GameSession.SNAPSHOT_SIZE);
+		System.out.println(String.format(Locale.US, "%s: %d bots, %d matches each, %d moves in"
+				+ " %.1f s", TAG, bots, matches, moves, seconds));
+		print(CONFIRM);
+		print(DELTA);
+		System.out.println(String.format(Locale.US, "%s: %.1f bytes per move for both players,"
+				+ " %d with whole-board sync, %d predicted flips rolled back", TAG, bytesPerMove,
+				boardSyncBytes, ROLLBACKS.get()));
+		System.exit(0);
+	}
+
+	private static void print(LatencyHistogram histogram) {
+		System.out.println(String.format(Locale.US, "%s %s: %d samples, p50 %d us, p99 %d us,"
+				+ " p999 %d us, max %d us", TAG, histogram.getName(), histogram.getCount(),
+				histogram.getPercentileMicros(50), histogram.getPercentileMicros(99),
+				histogram.getPercentileMicros(99.9), histogram.getMaxMicros()));
+	}
+
+	/**
+	 * A player joining matches until it has played its share
+	 */
+	private static final class Bot extends Thread {
+		private final InetSocketAddress address;
+		private final int difficulty;
+		private final int matches;
+		private final CountDownLatch finished;
+
+		/* Guarded by itself, and notified when a message has been applied */
+		private final VersusClient client = new VersusClient();
+		private final Random random = new Random();
+		private SocketChannel channel;
+		private long tapNanos;
+
+		/**
+		 * Constructor
+		 *
+		 * @param address  The server's address
+		 * @param difficulty  The difficulty of the matches joined
+		 * @param matches  The number of matches to play
+		 * @param finished  Counted down when the bot is done
+		 */
+		Bot(InetSocketAddress address, int difficulty, int matches, CountDownLatch finished) {
+			super(TAG + "-bot");
+			this.address = address;
+			this.difficulty = difficulty;
+			this.matches = matches;
+			this.finished = finished;
+			setDaemon(true);
+		}
+
+		/**
+		 * Plays the bot's matches, tapping on this thread while another applies messages
+		 */
+		@Override
+		public void run() {
+			try {
+				channel = SocketChannel.open(address);
+				channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+				Thread reader = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						read();
+					}
+				}, TAG + "-reader");
+				reader.setDaemon(true);
+				reader.start();
+
+				ByteBuffer out = ByteBuffer.allocate(Protocol.MAX_FRAME);
+				for (int played = 0; played < matches; played++) {
+					int lastMatch = client.getMatchId();
+					Protocol.putJoin(out, difficulty);
+					write(out);
+					synchronized (client) {
+						while (client.getMatchId() == lastMatch || !client.isPlaying()) {
+							client.wait();
+						}
+					}
+					play(out);
+				}
+				ROLLBACKS.addAndGet(client.getRollbacks());
+			} catch (IOException | InterruptedException e) {
+				System.err.println(TAG + ": bot failed: " + e);
+			} finally {
+				finished.countDown();
+			}
+		}
+
+		/**
+		 * Taps tiles until the match is over
+		 *
+		 * @param out  The buffer to encode taps into
+		 * @throws IOException  If the channel fails
+		 * @throws InterruptedException  If interrupted while thinking
+		 */
+		private void play(ByteBuffer out) throws IOException, InterruptedException {
+			while (true) {
+				Thread.sleep((long) (THINK_MEDIAN_MILLIS
+						* Math.exp(THINK_SIGMA * random.nextGaussian())));
+				synchronized (client) {
+					while (client.isAwaiting()) {
+						client.wait();
+					}
+					if (!client.isPlaying()) {
+						return;
+					}
+					boolean second = client.getFirstTile() >= 0;
+					int tile = chooseTile();
+					if (tile < 0 || !client.tap(tile, out)) {
+						continue;
+					}
+					tapNanos = System.nanoTime();
+					if (second) {
+						resolveTimes(client.getMatchId()).set(client.getSeat(), tapNanos);
+					}
+				}
+				MOVES.incrementAndGet();
+				write(out);
+			}
+		}
+
+		/**
+		 * Chooses a tile as {@link SimulatedPlayer} does: a known partner, or an unseen tile
+		 *
+		 * @return  The tile index
+		 */
+		private int chooseTile() {
+			int first = client.getFirstTile();
+			for (int i = 0; i < GameSession.TILES; i++) {
+				if (!client.isOnBoard(i) || client.getKnownSymbol(i) < 0) {
+					continue;
+				}
+				for (int j = 0; j < GameSession.TILES; j++) {
+					if (j != i && client.isOnBoard(j)
+							&& client.getKnownSymbol(j) == client.getKnownSymbol(i)) {
+						if (first < 0) {
+							return i;
+						}
+						if (i == first) {
+							return j;
+						}
+					}
+				}
+			}
+			int start = random.nextInt(GameSession.TILES);
+			int fallback = -1;
+			for (int n = 0; n < GameSession.TILES; n++) {
+				int i = (start + n) % GameSession.TILES;
+				if (i == first || !client.isOnBoard(i)) {
+					continue;
+				}
+				if (client.getKnownSymbol(i) < 0) {
+					return i;
+				}
+				fallback = i;
+			}
+			return fallback;
+		}
+
+		/**
+		 * Applies the server's messages as they arrive, until the connection closes
+		 */
+		private void read() {
+			ByteBuffer in = ByteBuffer.allocate(Protocol.MAX_FRAME * 4);
+			try {
+				while (true) {
+					int read = channel.read(in);
+					if (read < 0) {
+						return;
+					}
+					BYTES.addAndGet(read);
+					long now = System.nanoTime();
+					in.flip();
+					while (in.remaining() > 0
+							&& in.remaining() >= 1 + (in.get(in.position()) & 0xff)) {
+						int end = in.position() + 1 + (in.get() & 0xff);
+						apply(in.get(), in, now);
+						in.position(end);
+					}
+					in.compact();
+				}
+			} catch (IOException e) {
+				/* The process is exiting */
+			}
+		}
+
+		/**
+		 * Applies a message and measures the latency it ends
+		 *
+		 * @param type  The message type
+		 * @param body  The message body
+		 * @param now  Time the message was received
+		 */
+		private void apply(byte type, ByteBuffer body, long now) {
+			synchronized (client) {
+				int matchId = client.getMatchId();
+				if (type == Protocol.REVEALED && client.isAwaiting()) {
+					CONFIRM.record(now - tapNanos);
+				} else if (type == Protocol.REMOVED || type == Protocol.SCORE) {
+					int opponent = 1 - client.getSeat();
+					DELTA.record(now - resolveTimes(matchId).get(opponent));
+				}
+				client.onFrame(type, body);
+				client.notifyAll();
+			}
+		}
+
+		private static AtomicLongArray resolveTimes(int matchId) {
+			AtomicLongArray times = RESOLVE_TIMES.get(matchId);
+			if (times == null) {
+				RESOLVE_TIMES.putIfAbsent(matchId, new AtomicLongArray(2));
+				times = RESOLVE_TIMES.get(matchId);
+			}
+			return times;
+		}
+
+		/**
+		 * Sends and clears an encoded message
+		 *
+		 * @param out  The buffer holding the message
+		 * @throws IOException  If the channel fails
+		 */
+		private void write(ByteBuffer out) throws IOException {
+			out.flip();
+			BYTES.addAndGet(out.remaining());
+			while (out.hasRemaining()) {
+				channel.write(out);
+			}
+			out.clear();
+		}
+	}
+}
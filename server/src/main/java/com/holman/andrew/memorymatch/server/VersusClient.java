@@ -0,0 +1,215 @@
+package com.holman.andrew.memorymatch.server;
+
+import com.holman.andrew.memorymatch.game.GameSession;
+import com.holman.andrew.memorymatch.game.VersusMatch;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Client-side state of a versus match, kept in sync from the server's deltas
+ * <p>
+ *     A tapped tile is shown turned over at once, before the server confirms it, so the board
+ *     responds without waiting for a round trip. The prediction is confirmed by the server
+ *     revealing the tile's symbol, and rolled back if the server rejects the selection or the
+ *     opponent removes the tile first. Everything else is only changed by the server: pairs
+ *     removed by either player and both scores.
+ * </p>
+ * <p>
+ *     Transport-agnostic: messages are encoded into and decoded from buffers provided by the
+ *     caller. Not thread-safe.
+ * </p>
+ *
+ * @author Andrew Holman
+ * @version 2.1
+ * @since 2.1
+ */
+final class VersusClient {
+	private static final String TAG = "VersusClient";
+
+	/* Symbol seen on each tile, -1 if never revealed */
+	private final int[] known = new int[GameSession.TILES];
+	private int removed;
+
+	/* Own pair in progress: first tile confirmed by the server, tile awaiting confirmation */
+	private int firstTile = -1;
+	private int predictedTile = -1;
+
+	private int matchId = -1;
+	private int seat;
+	private final int[] scores = new int[VersusMatch.SEATS];
+	private boolean over;
+	private int winner;
+	private int rollbacks;
+
+	VersusClient() {
+		Arrays.fill(known, -1);
+	}
+
+	/**
+	 * Turns over a tile and encodes its selection
+	 *
+	 * @param tile  The row-major tile index
+	 * @param out  The buffer receiving the message
+	 * @return  True if the tile was turned over, false if it cannot be selected, in which case
+	 *          nothing is encoded
+	 */
+	boolean tap(int tile, ByteBuffer out) {
+		if (!isPlaying() || predictedTile >= 0 || tile == firstTile || !isOnBoard(tile)) {
+			return false;
+		}
+		predictedTile = tile;
+		Protocol.putSelect(out, tile);
+		return true;
+	}
+
+	/**
+	 * Applies a server message
+	 *
+	 * @param type  The message type
+	 * @param body  The message body, consumed
+	 */
+	void onFrame(byte type, ByteBuffer body) {
+		switch (type) {
+			case Protocol.PAIRED :
+				matchId = body.getInt();
+				body.get();
+				seat = body.get();
+				Arrays.fill(known, -1);
+				Arrays.fill(scores, 0);
+				removed = 0;
+				firstTile = -1;
+				predictedTile = -1;
+				over = false;
+				break;
+			case Protocol.REVEALED :
+				int tile = body.get() & 0xff;
+				known[tile] = body.get();
+				if (tile == predictedTile) {
+					predictedTile = -1;
+					if (firstTile < 0) {
+						firstTile = tile;
+					} else if (known[firstTile] == known[tile]) {
+						remove(firstTile, tile);
+					}
+				}
+				break;
+			case Protocol.RESOLVED :
+				body.get();
+				scores[seat] = body.getInt();
+				firstTile = -1;
+				break;
+			case Protocol.REMOVED :
+				remove(body.get() & 0xff, body.get() & 0xff);
+				break;
+			case Protocol.SCORE :
+				int scoreSeat = body.get();
+				scores[scoreSeat] = body.getInt();
+				break;
+			case Protocol.VERSUS_OVER :
+				over = true;
+				winner = body.get();
+				predictedTile = -1;
+				firstTile = -1;
+				break;
+			case Protocol.ERROR :
+				if (predictedTile >= 0) {
+					predictedTile = -1;
+					rollbacks++;
+				}
+				break;
+		}
+	}
+
+	/**
+	 * Removes a pair from the board, deselecting own tiles that were in it
+	 *
+	 * @param first  A tile of the pair
+	 * @param second  The other tile
+	 */
+	private void remove(int first, int second) {
+		removed |= (1 << first) | (1 << second);
+		if (firstTile == first || firstTile == second) {
+			firstTile = -1;
+		}
+		if (predictedTile == first || predictedTile == second) {
+			predictedTile = -1;
+			rollbacks++;
+		}
+	}
+
+	/**
+	 * Checks whether a tile is shown turned over, confirmed or predicted
+	 *
+	 * @param tile  The row-major tile index
+	 * @return  True if the tile shows its symbol, or is about to
+	 */
+	boolean isFaceUp(int tile) {
+		return tile == firstTile || tile == predictedTile;
+	}
+
+	boolean isOnBoard(int tile) {
+		return (removed & (1 << tile)) == 0;
+	}
+
+	/**
+	 * Retrieves the symbol of a tile, if it was ever revealed
+	 *
+	 * @param tile  The row-major tile index
+	 * @return  The symbol index, or -1
+	 */
+	int getKnownSymbol(int tile) {
+		return known[tile];
+	}
+
+	/**
+	 * Checks whether a selection is waiting for the server
+	 *
+	 * @return  True until the last tap is confirmed or rolled back
+	 */
+	boolean isAwaiting() {
+		return predictedTile >= 0;
+	}
+
+	boolean isPlaying() {
+		return matchId >= 0 && !over;
+	}
+
+	int getFirstTile() {
+		return firstTile;
+	}
+
+	int getMatchId() {
+		return matchId;
+	}
+
+	int getSeat() {
+		return seat;
+	}
+
+	int getScore(int seat) {
+		return scores[seat];
+	}
+
+	boolean isOver() {
+		return over;
+	}
+
+	/**
+	 * Retrieves the winner of the finished match
+	 *
+	 * @return  The winning seat, or {@link VersusMatch#DRAW}
+	 */
+	int getWinner() {
+		return winner;
+	}
+
+	/**
+	 * Retrieves the number of predicted flips undone
+	 *
+	 * @return  Flips rejected by the server or taken by the opponent before confirmation
+	 */
+	int getRollbacks() {
+		return rollbacks;
+	}
+}